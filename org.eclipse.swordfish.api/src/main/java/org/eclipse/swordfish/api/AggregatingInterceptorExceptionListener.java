@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.api;
+
+import java.util.List;
+
+import javax.jbi.messaging.MessageExchange;
+
+/**
+ * An interceptor exception listener which accepts collapsed notifications.
+ * When an interceptor keeps failing with the same exception for the same
+ * service the Swordfish framework reports the first failure through
+ * {@link #handle(Exception, MessageExchange, Interceptor)} and the repeats
+ * of the aggregation window in a single call of
+ * {@link #handle(Exception, List, Interceptor, int)}. Plain listeners only
+ * receive the latest exception and the first sample exchange of the repeats.
+ */
+public interface AggregatingInterceptorExceptionListener extends InterceptorExceptionListener {
+
+    /**
+     * invoked at the end of an aggregation window in which the interceptor
+     * has thrown the same exception more than once
+     * @param exception - the latest of the collapsed exceptions
+     * @param sampleExchanges - some of the message exchanges that caused the failures
+     * @param interceptor - that threw the exceptions
+     * @param count - the number of collapsed failures
+     */
+    void handle(Exception exception, List<MessageExchange> sampleExchanges, Interceptor interceptor, int count);
+}
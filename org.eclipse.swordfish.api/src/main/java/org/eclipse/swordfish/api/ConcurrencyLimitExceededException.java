@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.api;
+
+/**
+ * Thrown when a request of a consumer is rejected because the service or
+ * endpoint it is addressed to already processes as many requests as it can
+ * handle.
+ */
+public class ConcurrencyLimitExceededException extends SwordfishException {
+
+	private static final long serialVersionUID = -2484911658330179544L;
+
+	private final String target;
+
+	/**
+	 * @param message - the detail message
+	 * @param target - the overloaded service, endpoint or interface
+	 */
+	public ConcurrencyLimitExceededException(String message, String target) {
+		super(message);
+		this.target = target;
+	}
+
+	public String getTarget() {
+		return target;
+	}
+
+}
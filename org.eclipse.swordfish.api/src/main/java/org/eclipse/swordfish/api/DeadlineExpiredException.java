@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.api;
+
+/**
+ * Thrown when a message exchange is failed because the deadline of its
+ * consumer has passed, nobody waits for the result of the exchange any more.
+ */
+public class DeadlineExpiredException extends SwordfishException {
+
+	private static final long serialVersionUID = 3725139871224086411L;
+
+	private final long deadline;
+
+	/**
+	 * @param message - the detail message
+	 * @param deadline - the expired deadline in milliseconds since the epoch
+	 */
+	public DeadlineExpiredException(String message, long deadline) {
+		super(message);
+		this.deadline = deadline;
+	}
+
+	/**
+	 * @return the expired deadline in milliseconds since the epoch
+	 */
+	public long getDeadline() {
+		return deadline;
+	}
+
+}
@@ -31,6 +31,61 @@ public interface Interceptor {
 	 */
 	String TYPE_PROPERTY = "type";
 
+	/**
+	 * Name of the optional property holding the {@link InterceptorPhase phases}
+	 * the interceptor participates in, see {@link InterceptorPhase#fromProperty(Object)}
+	 * for the accepted values. Interceptors without this property are invoked
+	 * in all phases.
+	 */
+	String PHASES_PROPERTY = "phases";
+
+	/**
+	 * Name of the optional property naming the interceptor in the
+	 * {@link #AFTER_PROPERTY} of other interceptors. Defaults to the class name
+	 * of the interceptor.
+	 */
+	String NAME_PROPERTY = "name";
+
+	/**
+	 * Name of the optional boolean property declaring that the interceptor only
+	 * reads the exchange and does not depend on the changes other interceptors
+	 * make to it. Neighbouring concurrent interceptors of a chain may be invoked
+	 * in parallel on the same exchange, which is not thread safe: they must not
+	 * change its status, properties or messages. Defaults to <code>false</code>.
+	 */
+	String CONCURRENT_PROPERTY = "concurrent";
+
+	/**
+	 * Name of the optional property holding the names of the interceptors which
+	 * must have completed before a concurrent interceptor is invoked, as a
+	 * collection, an array or a comma separated list. It does not change the
+	 * order of the chain, it only keeps the interceptor out of the parallel
+	 * group of the named interceptors.
+	 */
+	String AFTER_PROPERTY = "after";
+
+	/**
+	 * Name of the optional property declaring what happens to an exchange
+	 * while the circuit breaker of the interceptor is open or its concurrency
+	 * limit is reached: <code>fail</code> fails the exchange with an
+	 * {@link InterceptorRejectedException}, <code>skip</code> passes the
+	 * exchange on without the interceptor and <code>none</code> does not open
+	 * a circuit breaker for the interceptor, it only enforces the
+	 * {@link #MAX_CONCURRENT_CALLS_PROPERTY} like <code>fail</code>. The property is looked up in the registration
+	 * properties of the interceptor before its own properties. Defaults to the
+	 * setting of the Swordfish core, which is <code>none</code>.
+	 */
+	String GUARD_POLICY_PROPERTY = "guardPolicy";
+
+	/**
+	 * Name of the optional integer property limiting the number of exchanges
+	 * the interceptor processes at the same time, the excess is handled
+	 * according to the {@link #GUARD_POLICY_PROPERTY}. The limit applies
+	 * whatever the policy, with the default policy <code>none</code> the
+	 * exchanges exceeding it are failed.
+	 */
+	String MAX_CONCURRENT_CALLS_PROPERTY = "maxConcurrentCalls";
+
     /**
      * @param exchange the messageExchange to be processed
      * @throws RuntimeException if the processing error occured and some
@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.api;
+
+/**
+ * Assigns a stable bit index to every registered interceptor, so sets of
+ * interceptors can be expressed as {@link java.util.BitSet} masks by
+ * {@link MaskHintExtractor} and {@link MaskFilterStrategy} components. The
+ * index of an interceptor does not change while it is registered, indices
+ * of unregistered interceptors may be reused.
+ */
+public interface InterceptorIndex {
+
+    /**
+     * @return an upper bound of the bit indices in use
+     */
+    int size();
+
+    /**
+     * @return the interceptor with the given bit index or <code>null</code>
+     * if the index is not in use
+     */
+    Interceptor get(int index);
+
+    /**
+     * @return the bit index of the interceptor or -1 if it is not registered
+     */
+    int indexOf(Interceptor interceptor);
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.api;
+
+import java.util.Collection;
+import java.util.EnumSet;
+
+import javax.jbi.messaging.ExchangeStatus;
+import javax.jbi.messaging.MessageExchange;
+
+/**
+ * The hops of a message exchange the interceptors are invoked on. Every time
+ * an exchange is sent the Swordfish core determines the phase of the send
+ * and only invokes the interceptors participating in that phase, see
+ * {@link Interceptor#PHASES_PROPERTY}.
+ */
+public enum InterceptorPhase {
+    /**
+     * The consumer sends the request to the provider.
+     */
+    CONSUMER_REQUEST,
+    /**
+     * The provider sends the response to the consumer.
+     */
+    PROVIDER_RESPONSE,
+    /**
+     * A fault is sent by either side.
+     */
+    FAULT,
+    /**
+     * The exchange is completed with the done status.
+     */
+    DONE,
+    /**
+     * The exchange is completed with the error status.
+     */
+    ERROR;
+
+    /**
+     * @return the phase of the send of the given exchange
+     */
+    public static InterceptorPhase forExchange(MessageExchange exchange) {
+        ExchangeStatus status = exchange.getStatus();
+        if (ExchangeStatus.DONE.equals(status)) {
+            return DONE;
+        } else if (ExchangeStatus.ERROR.equals(status)) {
+            return ERROR;
+        } else if (exchange.getFault() != null) {
+            return FAULT;
+        } else if (exchange.getRole() == MessageExchange.Role.PROVIDER) {
+            return PROVIDER_RESPONSE;
+        }
+        return CONSUMER_REQUEST;
+    }
+
+    /**
+     * Converts the value of the {@link Interceptor#PHASES_PROPERTY} property
+     * into a set of phases. The value may be a phase, a collection or an
+     * array of phases or phase names, or a comma separated list of phase
+     * names.
+     * @return the phases, all phases if the value is <code>null</code>
+     * @throws SwordfishException if the value contains an unknown phase
+     */
+    public static EnumSet<InterceptorPhase> fromProperty(Object value) throws SwordfishException {
+        if (value == null) {
+            return EnumSet.allOf(InterceptorPhase.class);
+        }
+        EnumSet<InterceptorPhase> phases = EnumSet.noneOf(InterceptorPhase.class);
+        if (value instanceof Collection) {
+            for (Object element : (Collection<?>) value) {
+                add(phases, element);
+            }
+        } else if (value instanceof Object[]) {
+            for (Object element : (Object[]) value) {
+                add(phases, element);
+            }
+        } else {
+            add(phases, value);
+        }
+        return phases;
+    }
+
+    private static void add(EnumSet<InterceptorPhase> phases, Object value) {
+        if (value instanceof InterceptorPhase) {
+            phases.add((InterceptorPhase) value);
+            return;
+        }
+        for (String name : value.toString().split(",")) {
+            name = name.trim();
+            if (name.length() == 0) {
+                continue;
+            }
+            try {
+                phases.add(valueOf(name.toUpperCase().replace('-', '_')));
+            } catch (IllegalArgumentException ex) {
+                throw new SwordfishException("Unknown interceptor phase " + name);
+            }
+        }
+    }
+}
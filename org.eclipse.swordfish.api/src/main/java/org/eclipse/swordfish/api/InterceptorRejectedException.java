@@ -0,0 +1,26 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.api;
+
+/**
+ * Thrown instead of invoking an interceptor which is unavailable because its
+ * circuit breaker is open or its concurrency limit is reached, see
+ * {@link Interceptor#GUARD_POLICY_PROPERTY}.
+ */
+public class InterceptorRejectedException extends SwordfishException {
+
+	private static final long serialVersionUID = 6170530372716396475L;
+
+	public InterceptorRejectedException(String message) {
+		super(message);
+	}
+
+}
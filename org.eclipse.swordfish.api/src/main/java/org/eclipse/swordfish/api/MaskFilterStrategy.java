@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.api;
+
+import java.util.BitSet;
+
+/**
+ * A {@link FilterStrategy} working on bit masks over the
+ * {@link InterceptorIndex} instead of interceptor lists. The planner
+ * intersects the returned mask with the pre-sorted interceptor chain, so
+ * the order of the interceptors is preserved.
+ */
+public interface MaskFilterStrategy extends FilterStrategy {
+
+    /**
+     * @param index - the bit indices of the registered interceptors
+     * @param registry - the interceptor registry containing the merged
+     * properties of the interceptors, see
+     * {@link FilterStrategy#filter(java.util.List, ReadOnlyRegistry, java.util.List)}
+     * @param hintMask - the interceptors excluded by the
+     * {@link MaskHintExtractor} or <code>null</code>, must not be modified
+     * @return a mask with the bits of the interceptors to remove set, or
+     * <code>null</code> if no interceptor is removed
+     */
+    BitSet filter(InterceptorIndex index, ReadOnlyRegistry<Interceptor> registry, BitSet hintMask);
+}
@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.api;
+
+import java.util.BitSet;
+
+import javax.jbi.messaging.MessageExchange;
+
+/**
+ * A {@link HintExtractor} which expresses its hints as a bit mask over the
+ * {@link InterceptorIndex}, so the planner can apply them without creating
+ * and walking lists of hints.
+ */
+public interface MaskHintExtractor extends HintExtractor {
+
+    /**
+     * Extracts the interceptors which must not process the given message
+     * exchange.
+     * @return a mask with the bits of the excluded interceptors set, or
+     * <code>null</code> if no interceptor is excluded. The mask must not be
+     * modified after it has been returned.
+     */
+    BitSet extractHintMask(MessageExchange messageExchange, InterceptorIndex index);
+}
@@ -11,15 +11,22 @@
 package org.eclipse.swordfish.api.configuration;
 
 import java.util.Map;
+import java.util.concurrent.Future;
 
 public interface ConfigurationService {
     /**
-     * Updates the configuration with the specified id
+     * Updates the configuration with the specified id. The update is applied
+     * asynchronously, failures are not thrown to the caller but reported
+     * through the returned future. Callers which need the update to be
+     * applied wait for the future, its {@link Future#get()} throws an
+     * ExecutionException wrapping the SwordfishException of a failed update.
      * @see org.eclipse.swordfish.api.configuration.ConfigurationConsumer
      * @param <T> Type of configuration appropriate for the id passed.
      * @param id unique configuration identifier, must not be <code>null</code>
      * or an empty String
      * @param configurationData Map of configurationData
+     * @return completes once the configuration has been handed to the
+     * ConfigurationAdmin or has been skipped because it did not change
      */
-    public <T> void updateConfiguration(String id, Map<String, T> configurationData);
+    public <T> Future<?> updateConfiguration(String id, Map<String, T> configurationData);
 }
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.api.configuration;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.namespace.QName;
+
+/**
+ * Immutable view of one configuration update with typed accessors.
+ * <p>
+ * Every value is converted at most once per snapshot and the result is
+ * cached, so consumers can keep the snapshot in a volatile field and read
+ * it on the hot path without parsing or locking. A new snapshot is created
+ * for every configuration update.
+ * <p>
+ * The typed accessors throw a {@link org.eclipse.swordfish.api.SwordfishException}
+ * if the value can not be converted.
+ */
+public interface ConfigurationSnapshot {
+
+    /**
+     * @return the PID of the configuration
+     */
+    String getId();
+
+    boolean contains(String key);
+
+    /**
+     * @return the value as String or <code>null</code> if there is no such property
+     */
+    String getString(String key);
+
+    int getInt(String key, int defaultValue);
+
+    long getLong(String key, long defaultValue);
+
+    double getDouble(String key, double defaultValue);
+
+    boolean getBoolean(String key, boolean defaultValue);
+
+    /**
+     * Durations are given as a number with an optional unit suffix: ms, s, m,
+     * h or d. Numbers without suffix are milliseconds.
+     * @return the duration converted to the given unit
+     */
+    long getDuration(String key, TimeUnit unit, long defaultValue);
+
+    /**
+     * @return the value as URL or <code>null</code> if there is no such property
+     */
+    URL getURL(String key);
+
+    /**
+     * QNames are given in the <code>{namespace}localPart</code> form.
+     * @return the value as QName or <code>null</code> if there is no such property
+     */
+    QName getQName(String key);
+
+    /**
+     * @return the unconverted values, the map can not be modified
+     */
+    Map<String, ?> asMap();
+}
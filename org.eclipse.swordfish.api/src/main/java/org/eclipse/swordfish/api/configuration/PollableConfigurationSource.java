@@ -22,6 +22,21 @@ import java.util.Map;
  */
 public interface PollableConfigurationSource<T> {
 
+    /**
+     * Property holding the interval in milliseconds in which the source is
+     * polled for changes. Sources without this property are read only once,
+     * when they are registered.
+     */
+    String POLLING_INTERVAL = "pollingInterval";
+
+    /**
+     * Property holding the fraction (0..1) by which the polling interval is
+     * randomly varied, so that many nodes sharing a configuration server do
+     * not poll it at the same time. Defaults to 0.1.
+     */
+    String POLLING_JITTER = "pollingJitter";
+
+
 	/**
      * Returns the mapping between PID(configuration ids as described in
      * {@link ConfigurationConsumer#getId()}) and the configuration data.
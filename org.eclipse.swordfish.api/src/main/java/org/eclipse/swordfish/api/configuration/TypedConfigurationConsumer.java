@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.api.configuration;
+
+/**
+ * ConfigurationConsumer which receives the configuration as a
+ * {@link ConfigurationSnapshot} instead of a raw map. For implementors of this
+ * interface only {@link #onReceiveSnapshot(ConfigurationSnapshot)} is invoked
+ * by the Swordfish environment.
+ * @param T The type of the configuration consumed by the receiver.
+ */
+public interface TypedConfigurationConsumer<T> extends ConfigurationConsumer<T> {
+
+    /**
+     * The callback method invoked by the Swordfish environment when the
+     * configuration is changed
+     * @param snapshot the new/updated configuration, <code>null</code> if the
+     * configuration has been deleted.
+     */
+    void onReceiveSnapshot(ConfigurationSnapshot snapshot);
+}
@@ -29,4 +29,13 @@ public interface EventService {
      * @param event the event to be posted.
      */
     void postEvent(Event event);
+
+    /**
+     * Tells whether an event posted to the topic would be delivered to anybody,
+     * so that the caller can skip building events nobody is interested in.
+     * Implementations which can not tell return <code>true</code>.
+     * @param topic the topic of the event.
+     * @return <code>false</code> if there is no subscriber for the topic.
+     */
+    boolean hasSubscribers(String topic);
 }
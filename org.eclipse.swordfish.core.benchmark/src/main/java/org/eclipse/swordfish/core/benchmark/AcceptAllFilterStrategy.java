@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.benchmark;
+
+import java.util.List;
+
+import org.eclipse.swordfish.api.FilterStrategy;
+import org.eclipse.swordfish.api.Hint;
+import org.eclipse.swordfish.api.Interceptor;
+import org.eclipse.swordfish.api.ReadOnlyRegistry;
+
+/**
+ * Filter strategy which lets every interceptor pass. Measures the cost of the
+ * delegation in the planner without any filtering work.
+ */
+public class AcceptAllFilterStrategy implements FilterStrategy {
+
+    public List<Interceptor> filter(List<Interceptor> interceptors,
+            ReadOnlyRegistry<Interceptor> registry, List<Hint<?>> hints) {
+        return interceptors;
+    }
+
+    public int getPriority() {
+        return 0;
+    }
+}
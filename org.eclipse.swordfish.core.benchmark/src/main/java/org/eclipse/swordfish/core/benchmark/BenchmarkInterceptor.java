@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.jbi.messaging.MessageExchange;
+import javax.jbi.messaging.NormalizedMessage;
+import javax.xml.transform.Source;
+
+import org.eclipse.swordfish.api.Interceptor;
+import org.eclipse.swordfish.api.SwordfishException;
+import org.eclipse.swordfish.core.util.xml.StringSource;
+
+/**
+ * Interceptor used by the benchmarks. Depending on the configuration it either
+ * does nothing or scans the whole inbound payload, so that the payload size
+ * becomes visible in the measurements.
+ */
+public class BenchmarkInterceptor implements Interceptor {
+
+    public static final String ID_PROPERTY = "id";
+
+    private final Map<String, Object> properties = new HashMap<String, Object>();
+    private final boolean scanPayload;
+    private int checksum;
+
+    public BenchmarkInterceptor(String id, int priority, boolean scanPayload) {
+        this.scanPayload = scanPayload;
+        properties.put(ID_PROPERTY, id);
+        properties.put("priority", priority);
+    }
+
+    public void process(MessageExchange exchange) throws SwordfishException {
+        if (!scanPayload) {
+            return;
+        }
+        NormalizedMessage in = exchange.getMessage("in");
+        Source content = in != null ? in.getContent() : null;
+        if (content instanceof StringSource) {
+            String text = ((StringSource) content).getText();
+            int hash = checksum;
+            for (int i = 0; i < text.length(); i++) {
+                hash = 31 * hash + text.charAt(i);
+            }
+            checksum = hash;
+        }
+    }
+
+    public Map<String, ?> getProperties() {
+        return properties;
+    }
+
+    public String getId() {
+        return (String) properties.get(ID_PROPERTY);
+    }
+
+    public int getChecksum() {
+        return checksum;
+    }
+}
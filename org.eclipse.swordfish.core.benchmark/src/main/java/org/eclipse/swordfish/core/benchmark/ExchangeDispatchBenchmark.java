@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.servicemix.nmr.api.Exchange;
+import org.apache.servicemix.nmr.api.Pattern;
+import org.apache.servicemix.nmr.core.ExchangeImpl;
+import org.eclipse.swordfish.api.FilterStrategy;
+import org.eclipse.swordfish.api.SortingStrategy;
+import org.eclipse.swordfish.core.context.SwordfishContextImpl;
+import org.eclipse.swordfish.core.event.EventServiceImpl;
+import org.eclipse.swordfish.core.exception.InterceptorExceptionNofiticationSender;
+import org.eclipse.swordfish.core.integration.nmr.SwordfishExchangeListener;
+import org.eclipse.swordfish.core.planner.DefaultHintExtractor;
+import org.eclipse.swordfish.core.planner.FilterStrategyImpl;
+import org.eclipse.swordfish.core.planner.InterceptorListener;
+import org.eclipse.swordfish.core.planner.InterceptorRegistry;
+import org.eclipse.swordfish.core.planner.PlannerImpl;
+import org.eclipse.swordfish.core.planner.SimpleSortingStrategy;
+import org.eclipse.swordfish.core.planner.SortingStrategyImpl;
+import org.eclipse.swordfish.core.util.xml.StringSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Drives {@link SwordfishExchangeListener#exchangeSent(Exchange)} with a plain
+ * NMR exchange, the real planner and interceptor registry, and an EventAdmin
+ * which drops all events. No OSGi container or ServiceMix instance is needed.
+ * <p>
+ * Run with the GC profiler to get the allocation rate as well:
+ * <pre>
+ * java -jar target/benchmarks.jar ExchangeDispatchBenchmark -prof gc
+ * java -jar target/benchmarks.jar ExchangeDispatchBenchmark -p interceptorCount=20 -p filterStrategy=hint
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExchangeDispatchBenchmark {
+
+    /** Number of interceptors registered in the interceptor registry. */
+    @Param({"1", "5", "20"})
+    public int interceptorCount;
+
+    /** "priority" uses SimpleSortingStrategy, "registration" keeps registry order. */
+    @Param({"priority", "registration"})
+    public String sortingStrategy;
+
+    /** "none" leaves the filter chain empty, "acceptAll" and "hint" delegate to a filter. */
+    @Param({"none", "acceptAll", "hint"})
+    public String filterStrategy;
+
+    /** Size of the inbound payload in characters. */
+    @Param({"256", "16384"})
+    public int payloadSize;
+
+    /** Whether the interceptors read the complete inbound payload. */
+    @Param({"false", "true"})
+    public boolean scanPayload;
+
+    private SwordfishExchangeListener listener;
+    private Exchange exchange;
+    private String payload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        InterceptorRegistry registry = new InterceptorRegistry();
+        InterceptorListener interceptorListener = new InterceptorListener();
+        interceptorListener.setInterceptorRegistry(registry);
+        for (int i = 0; i < interceptorCount; i++) {
+            // spread the priorities so that the sorting strategy has to reorder
+            int priority = (i * 7) % Math.max(interceptorCount, 1);
+            interceptorListener.onBindInterceptor(
+                    new BenchmarkInterceptor("interceptor" + i, priority, scanPayload), null);
+        }
+
+        PlannerImpl planner = new PlannerImpl();
+        planner.setInterceptorRegistry(registry);
+        planner.setSortingStrategy(createSortingStrategy());
+        planner.setFilterStrategy(createFilterStrategy());
+        planner.setHintExtractor(new DefaultHintExtractor());
+
+        EventServiceImpl eventService = new EventServiceImpl();
+        eventService.setEventAdmin(new NullEventAdmin());
+        SwordfishContextImpl swordfishContext = new SwordfishContextImpl();
+        swordfishContext.setEventService(eventService);
+        InterceptorExceptionNofiticationSender exceptionNotificationSender =
+            new InterceptorExceptionNofiticationSender();
+        exceptionNotificationSender.setEventService(eventService);
+
+        listener = new SwordfishExchangeListener();
+        listener.setPlanner(planner);
+        listener.setInterceptorRegistry(registry);
+        listener.setSwordfishContext(swordfishContext);
+        listener.setExceptionNotificationSender(exceptionNotificationSender);
+
+        payload = createPayload(payloadSize);
+        exchange = createExchange(payload);
+    }
+
+    /**
+     * Dispatches the same exchange over and over, which isolates the per-send
+     * cost of the listener from the cost of creating exchanges.
+     */
+    @Benchmark
+    public Exchange exchangeSent() {
+        listener.exchangeSent(exchange);
+        return exchange;
+    }
+
+    /**
+     * Creates a new exchange for every invocation, as the NMR does for every
+     * consumer request.
+     */
+    @Benchmark
+    public Exchange newExchangeSent() {
+        Exchange newExchange = createExchange(payload);
+        listener.exchangeSent(newExchange);
+        return newExchange;
+    }
+
+    private SortingStrategy createSortingStrategy() {
+        List<SortingStrategy> strategies = new ArrayList<SortingStrategy>();
+        if ("priority".equals(sortingStrategy)) {
+            strategies.add(new SimpleSortingStrategy());
+        } else if ("registration".equals(sortingStrategy)) {
+            strategies.add(new RegistrationOrderSortingStrategy());
+        } else {
+            throw new IllegalArgumentException("Unknown sorting strategy " + sortingStrategy);
+        }
+        SortingStrategyImpl sortingStrategyImpl = new SortingStrategyImpl();
+        sortingStrategyImpl.setSortingStrategies(strategies);
+        return sortingStrategyImpl;
+    }
+
+    private FilterStrategy createFilterStrategy() {
+        List<FilterStrategy> strategies;
+        if ("none".equals(filterStrategy)) {
+            strategies = Collections.emptyList();
+        } else if ("acceptAll".equals(filterStrategy)) {
+            strategies = Collections.<FilterStrategy>singletonList(new AcceptAllFilterStrategy());
+        } else if ("hint".equals(filterStrategy)) {
+            strategies = Collections.<FilterStrategy>singletonList(new HintFilterStrategy());
+        } else {
+            throw new IllegalArgumentException("Unknown filter strategy " + filterStrategy);
+        }
+        FilterStrategyImpl filterStrategyImpl = new FilterStrategyImpl();
+        filterStrategyImpl.setFilterStrategies(strategies);
+        return filterStrategyImpl;
+    }
+
+    static Exchange createExchange(String payload) {
+        ExchangeImpl exchange = new ExchangeImpl(Pattern.InOut);
+        exchange.getIn().setBody(new StringSource(payload));
+        return exchange;
+    }
+
+    static String createPayload(int size) {
+        String prefix = "<payload xmlns=\"http://www.eclipse.org/swordfish/benchmark\">";
+        String suffix = "</payload>";
+        StringBuilder builder = new StringBuilder(Math.max(size, prefix.length() + suffix.length()));
+        builder.append(prefix);
+        while (builder.length() < size - suffix.length()) {
+            builder.append('x');
+        }
+        builder.append(suffix);
+        return builder.toString();
+    }
+}
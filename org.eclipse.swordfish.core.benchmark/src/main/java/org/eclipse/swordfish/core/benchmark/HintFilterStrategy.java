@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.swordfish.api.FilterStrategy;
+import org.eclipse.swordfish.api.Hint;
+import org.eclipse.swordfish.api.Interceptor;
+import org.eclipse.swordfish.api.ReadOnlyRegistry;
+
+/**
+ * Filter strategy which evaluates the map based hints produced by the
+ * DefaultHintExtractor. Interceptors explicitly mapped to false are removed,
+ * every other interceptor passes.
+ */
+public class HintFilterStrategy implements FilterStrategy {
+
+    @SuppressWarnings("unchecked")
+    public List<Interceptor> filter(List<Interceptor> interceptors,
+            ReadOnlyRegistry<Interceptor> registry, List<Hint<?>> hints) {
+        List<Interceptor> filtered = new ArrayList<Interceptor>(interceptors.size());
+        for (Interceptor interceptor : interceptors) {
+            boolean accepted = true;
+            for (Hint<?> hint : hints) {
+                if (hint.getInfo() instanceof Map) {
+                    Object id = registry.getProperties(interceptor).get(BenchmarkInterceptor.ID_PROPERTY);
+                    if (Boolean.FALSE.equals(((Map<String, Boolean>) hint.getInfo()).get(id))) {
+                        accepted = false;
+                        break;
+                    }
+                }
+            }
+            if (accepted) {
+                filtered.add(interceptor);
+            }
+        }
+        return filtered;
+    }
+
+    public int getPriority() {
+        return 0;
+    }
+}
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.benchmark;
+
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventAdmin;
+
+/**
+ * EventAdmin which drops every event. The benchmarks still pay for building the
+ * Swordfish and OSGi events, but not for delivering them.
+ */
+public class NullEventAdmin implements EventAdmin {
+
+    private volatile int posted;
+
+    public void postEvent(Event event) {
+        posted++;
+    }
+
+    public void sendEvent(Event event) {
+        posted++;
+    }
+
+    public int getPosted() {
+        return posted;
+    }
+}
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.swordfish.api.Interceptor;
+import org.eclipse.swordfish.api.ReadOnlyRegistry;
+import org.eclipse.swordfish.api.SortingStrategy;
+
+/**
+ * Sorting strategy which keeps the iteration order of the registry. Serves as
+ * the baseline for the priority based sorting.
+ */
+public class RegistrationOrderSortingStrategy implements SortingStrategy {
+
+    public List<Interceptor> sort(Set<Interceptor> interceptors,
+            ReadOnlyRegistry<Interceptor> registry) {
+        return new ArrayList<Interceptor>(interceptors);
+    }
+
+    public int getPriority() {
+        return 0;
+    }
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.benchmark.wsdl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.namespace.QName;
+
+import org.apache.servicemix.jbi.runtime.impl.MessageExchangeImpl;
+import org.apache.servicemix.nmr.api.Channel;
+import org.apache.servicemix.nmr.api.Endpoint;
+import org.apache.servicemix.nmr.api.Exchange;
+import org.apache.servicemix.nmr.api.Pattern;
+import org.apache.servicemix.nmr.api.Reference;
+import org.apache.servicemix.nmr.api.Role;
+import org.apache.servicemix.nmr.core.ExchangeImpl;
+import org.apache.servicemix.nmr.core.ServiceMix;
+import org.eclipse.swordfish.core.interceptor.EndpointResolverInterceptor;
+import org.eclipse.swordfish.core.util.JbiConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Resolution latency of the EndpointResolverInterceptor with several
+ * concurrent readers. Half of the services in the corpus have an endpoint
+ * registered under their service name, the other half are resolved through
+ * the transport endpoint fallback, so both branches of the interceptor are
+ * exercised. Use -t to change the number of reader threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class EndpointResolutionBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int corpusSize;
+
+    private WsdlCorpus corpus;
+    private EndpointResolverInterceptor<Object> interceptor;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int position;
+
+        int next(int size) {
+            int current = position;
+            position = current + 1 == size ? 0 : current + 1;
+            return current;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        corpus = WsdlCorpus.generate(corpusSize);
+
+        ServiceMix nmr = new ServiceMix();
+        nmr.init();
+        for (int i = 0; i < corpusSize; i += 2) {
+            Map<String, Object> properties = new HashMap<String, Object>();
+            properties.put(Endpoint.NAME, "endpoint" + i);
+            properties.put(Endpoint.SERVICE_NAME, corpus.getService(i).toString());
+            nmr.getEndpointRegistry().register(new NoOpEndpoint(), properties);
+        }
+        Map<String, Object> transportProperties = new HashMap<String, Object>();
+        transportProperties.put(Endpoint.NAME, "httpTransport");
+        transportProperties.put(JbiConstants.PROTOCOL_TYPE, WsdlCorpus.SOAP_HTTP_TRANSPORT);
+        nmr.getEndpointRegistry().register(new NoOpEndpoint(), transportProperties);
+
+        interceptor = new EndpointResolverInterceptor<Object>();
+        interceptor.setNmr(nmr);
+        interceptor.afterPropertiesSet();
+        Map<String, Object> configuration = new HashMap<String, Object>();
+        configuration.put("wsdlStorage", corpus.getZipUrl().toString());
+        interceptor.onReceiveConfiguration(configuration);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        corpus.delete();
+    }
+
+    @Benchmark
+    public Reference resolve(Cursor cursor) {
+        int index = cursor.next(corpusSize);
+        Exchange exchange = createConsumerExchange(corpus.getPortType(index),
+                new QName(corpus.getPortType(index).getNamespaceURI(),
+                        WsdlCorpus.OPERATIONS[index % WsdlCorpus.OPERATIONS.length]));
+        interceptor.process(new MessageExchangeImpl(exchange));
+        return exchange.getTarget();
+    }
+
+    private static Exchange createConsumerExchange(QName interfaceName, QName operation) {
+        ExchangeImpl exchange = new ExchangeImpl(Pattern.InOut);
+        exchange.setRole(Role.Consumer);
+        exchange.setOperation(operation);
+        exchange.setProperty(Endpoint.INTERFACE_NAME, interfaceName);
+        return exchange;
+    }
+
+    private static class NoOpEndpoint implements Endpoint {
+        public void setChannel(Channel channel) {
+        }
+
+        public void process(Exchange exchange) {
+        }
+    }
+}
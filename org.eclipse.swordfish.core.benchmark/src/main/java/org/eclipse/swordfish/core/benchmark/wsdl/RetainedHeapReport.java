@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.benchmark.wsdl;
+
+import org.eclipse.swordfish.core.wsdl.ServiceDescriptionImpl;
+import org.eclipse.swordfish.core.wsdl.WSDLManagerImpl;
+import org.eclipse.swordfish.registry.BenchmarkRegistrySupport;
+import org.eclipse.swordfish.registry.InMemoryRepositoryImpl;
+
+/**
+ * Reports the heap retained per WSDL definition for the generated corpora.
+ * JMH has no notion of retained size, so this is a plain main class. The used
+ * heap is compared after full collections before and after the corpus is
+ * loaded, while the loaded structures are still reachable.
+ * <pre>
+ * java -cp target/benchmarks.jar org.eclipse.swordfish.core.benchmark.wsdl.RetainedHeapReport 10 1000 10000
+ * </pre>
+ * Run it with a fixed heap (-Xms equal to -Xmx) to keep the numbers stable.
+ */
+public class RetainedHeapReport {
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = args.length == 0 ? new int[] {10, 1000, 10000} : new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+        System.out.println("contracts  wsdlManager[bytes/def]  +descriptions[bytes/def]  registry[bytes/def]");
+        for (int size : sizes) {
+            WsdlCorpus corpus = WsdlCorpus.generate(size);
+            try {
+                report(corpus);
+            } finally {
+                corpus.delete();
+            }
+        }
+    }
+
+    private static void report(WsdlCorpus corpus) throws Exception {
+        int size = corpus.size();
+
+        long before = usedHeap();
+        WSDLManagerImpl wsdlManager = new WSDLManagerImpl();
+        wsdlManager.setupWSDLs(corpus.getZipUrl());
+        long managerBytes = usedHeap() - before;
+
+        before = usedHeap();
+        ServiceDescriptionImpl[] descriptions = new ServiceDescriptionImpl[size];
+        for (int i = 0; i < size; i++) {
+            descriptions[i] = (ServiceDescriptionImpl) wsdlManager.getServiceDescription(corpus.getPortType(i));
+            descriptions[i].getAvailableLocations();
+        }
+        long descriptionBytes = usedHeap() - before;
+
+        before = usedHeap();
+        InMemoryRepositoryImpl repository = new InMemoryRepositoryImpl();
+        for (int i = 0; i < size; i++) {
+            BenchmarkRegistrySupport.register(repository, "contract" + i, corpus.getDocument(i));
+        }
+        long registryBytes = usedHeap() - before;
+
+        System.out.println(String.format("%9d  %22d  %24d  %19d", size,
+                managerBytes / size, descriptionBytes / size, registryBytes / size));
+
+        // keep everything reachable until all measurements are taken
+        if (wsdlManager.getDefinitions().isEmpty() || descriptions.length != size
+                || repository.getWithId("contract0") == null) {
+            System.out.println("corpus was not loaded completely");
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // collect until the used heap stops shrinking
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            Thread.sleep(50);
+            long current = runtime.totalMemory() - runtime.freeMemory();
+            if (current >= used) {
+                return current;
+            }
+            used = current;
+        }
+        return used;
+    }
+}
@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.benchmark.wsdl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.xml.namespace.QName;
+
+/**
+ * Generated set of WSDL contracts. Every contract declares its own target
+ * namespace with one port type, a SOAP/HTTP binding and one service with a
+ * single port, which is the layout the WSDLManager and the registry expect.
+ * The documents are kept in memory and are also written into a zip file, the
+ * format the EndpointResolverInterceptor loads its wsdlStorage from.
+ */
+public class WsdlCorpus {
+
+    public static final String NAMESPACE_PREFIX = "http://www.eclipse.org/swordfish/benchmark/contract";
+    public static final String SOAP_HTTP_TRANSPORT = "http://schemas.xmlsoap.org/soap/http";
+    public static final String[] OPERATIONS = {"create", "read", "update", "delete"};
+
+    private final String[] documents;
+    private final QName[] portTypes;
+    private final QName[] services;
+    private File zipFile;
+
+    private WsdlCorpus(int size) {
+        documents = new String[size];
+        portTypes = new QName[size];
+        services = new QName[size];
+        for (int i = 0; i < size; i++) {
+            String namespace = NAMESPACE_PREFIX + i;
+            portTypes[i] = new QName(namespace, "PortType" + i);
+            services[i] = new QName(namespace, "Service" + i);
+            documents[i] = createDocument(i, namespace);
+        }
+    }
+
+    public static WsdlCorpus generate(int size) throws IOException {
+        WsdlCorpus corpus = new WsdlCorpus(size);
+        corpus.writeZip();
+        return corpus;
+    }
+
+    public int size() {
+        return documents.length;
+    }
+
+    public String getDocument(int index) {
+        return documents[index];
+    }
+
+    public QName getPortType(int index) {
+        return portTypes[index];
+    }
+
+    public QName getService(int index) {
+        return services[index];
+    }
+
+    public URL getZipUrl() throws IOException {
+        return zipFile.toURI().toURL();
+    }
+
+    public void delete() {
+        if (zipFile != null) {
+            zipFile.delete();
+        }
+    }
+
+    private void writeZip() throws IOException {
+        zipFile = File.createTempFile("swordfish-wsdl-corpus-" + documents.length + "-", ".zip");
+        zipFile.deleteOnExit();
+        OutputStream out = new FileOutputStream(zipFile);
+        try {
+            ZipOutputStream zip = new ZipOutputStream(out);
+            for (int i = 0; i < documents.length; i++) {
+                zip.putNextEntry(new ZipEntry("contract" + i + ".wsdl"));
+                zip.write(documents[i].getBytes("UTF-8"));
+                zip.closeEntry();
+            }
+            zip.finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String createDocument(int index, String namespace) {
+        StringBuilder wsdl = new StringBuilder(4096);
+        wsdl.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        wsdl.append("<wsdl:definitions name=\"Contract").append(index).append("\"")
+            .append(" targetNamespace=\"").append(namespace).append("\"")
+            .append(" xmlns:tns=\"").append(namespace).append("\"")
+            .append(" xmlns:wsdl=\"http://schemas.xmlsoap.org/wsdl/\"")
+            .append(" xmlns:soap=\"http://schemas.xmlsoap.org/wsdl/soap/\"")
+            .append(" xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\">\n");
+        wsdl.append("  <wsdl:types>\n")
+            .append("    <xsd:schema targetNamespace=\"").append(namespace)
+            .append("\" elementFormDefault=\"qualified\">\n");
+        for (String operation : OPERATIONS) {
+            wsdl.append("      <xsd:element name=\"").append(operation).append("Request\" type=\"xsd:string\"/>\n");
+            wsdl.append("      <xsd:element name=\"").append(operation).append("Response\" type=\"xsd:string\"/>\n");
+        }
+        wsdl.append("    </xsd:schema>\n  </wsdl:types>\n");
+        for (String operation : OPERATIONS) {
+            wsdl.append("  <wsdl:message name=\"").append(operation).append("Request\">")
+                .append("<wsdl:part name=\"parameters\" element=\"tns:").append(operation).append("Request\"/>")
+                .append("</wsdl:message>\n");
+            wsdl.append("  <wsdl:message name=\"").append(operation).append("Response\">")
+                .append("<wsdl:part name=\"parameters\" element=\"tns:").append(operation).append("Response\"/>")
+                .append("</wsdl:message>\n");
+        }
+        wsdl.append("  <wsdl:portType name=\"PortType").append(index).append("\">\n");
+        for (String operation : OPERATIONS) {
+            wsdl.append("    <wsdl:operation name=\"").append(operation).append("\">")
+                .append("<wsdl:input message=\"tns:").append(operation).append("Request\"/>")
+                .append("<wsdl:output message=\"tns:").append(operation).append("Response\"/>")
+                .append("</wsdl:operation>\n");
+        }
+        wsdl.append("  </wsdl:portType>\n");
+        wsdl.append("  <wsdl:binding name=\"Binding").append(index).append("\" type=\"tns:PortType").append(index).append("\">\n")
+            .append("    <soap:binding style=\"document\" transport=\"").append(SOAP_HTTP_TRANSPORT).append("\"/>\n");
+        for (String operation : OPERATIONS) {
+            wsdl.append("    <wsdl:operation name=\"").append(operation).append("\">")
+                .append("<soap:operation soapAction=\"").append(operation).append("\"/>")
+                .append("<wsdl:input><soap:body use=\"literal\"/></wsdl:input>")
+                .append("<wsdl:output><soap:body use=\"literal\"/></wsdl:output>")
+                .append("</wsdl:operation>\n");
+        }
+        wsdl.append("  </wsdl:binding>\n");
+        wsdl.append("  <wsdl:service name=\"Service").append(index).append("\">\n")
+            .append("    <wsdl:port name=\"Port").append(index).append("\" binding=\"tns:Binding").append(index).append("\">")
+            .append("<soap:address location=\"http://localhost:8192/service").append(index).append("/\"/>")
+            .append("</wsdl:port>\n")
+            .append("  </wsdl:service>\n");
+        wsdl.append("</wsdl:definitions>\n");
+        return wsdl.toString();
+    }
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.benchmark.wsdl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.swordfish.core.wsdl.WSDLManager;
+import org.eclipse.swordfish.core.wsdl.WSDLManagerImpl;
+import org.eclipse.swordfish.registry.BenchmarkRegistrySupport;
+import org.eclipse.swordfish.registry.InMemoryRepositoryImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cold load time of a complete WSDL corpus, once through the
+ * WSDLManagerImpl zip loader used by the EndpointResolverInterceptor and once
+ * through the registry's WSDLResource registration. Every invocation starts
+ * with empty caches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WsdlLoadBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int corpusSize;
+
+    private WsdlCorpus corpus;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        corpus = WsdlCorpus.generate(corpusSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        corpus.delete();
+    }
+
+    @Benchmark
+    public WSDLManager loadWsdlManager() throws Exception {
+        WSDLManager manager = new WSDLManagerImpl();
+        manager.setupWSDLs(corpus.getZipUrl());
+        return manager;
+    }
+
+    @Benchmark
+    public InMemoryRepositoryImpl loadRegistry() throws Exception {
+        InMemoryRepositoryImpl repository = new InMemoryRepositoryImpl();
+        for (int i = 0; i < corpus.size(); i++) {
+            BenchmarkRegistrySupport.register(repository, "contract" + i, corpus.getDocument(i));
+        }
+        return repository;
+    }
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.benchmark.wsdl;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.wsdl.Definition;
+import javax.wsdl.extensions.soap.SOAPAddress;
+import javax.wsdl.extensions.soap.SOAPBinding;
+import javax.xml.namespace.QName;
+
+import org.eclipse.swordfish.core.wsdl.ServiceDescription;
+import org.eclipse.swordfish.core.wsdl.ServiceDescriptionImpl;
+import org.eclipse.swordfish.core.wsdl.SwordfishPort;
+import org.eclipse.swordfish.core.wsdl.Transport;
+import org.eclipse.swordfish.core.wsdl.WSDLManagerImpl;
+import org.eclipse.swordfish.registry.BenchmarkRegistrySupport;
+import org.eclipse.swordfish.registry.InMemoryRepositoryImpl;
+import org.eclipse.swordfish.registry.ListResource;
+import org.eclipse.swordfish.registry.WSDLResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookup latency against a loaded corpus: port type lookups in the
+ * WSDLManagerImpl and the registry, and the per message work done on a
+ * ServiceDescriptionImpl. Keys are visited round robin so the whole corpus is
+ * touched instead of a single hot entry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WsdlLookupBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int corpusSize;
+
+    private WsdlCorpus corpus;
+    private WSDLManagerImpl wsdlManager;
+    private InMemoryRepositoryImpl repository;
+    private ServiceDescriptionImpl[] descriptions;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int position;
+
+        int next(int size) {
+            int current = position;
+            position = current + 1 == size ? 0 : current + 1;
+            return current;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        corpus = WsdlCorpus.generate(corpusSize);
+        wsdlManager = new WSDLManagerImpl();
+        wsdlManager.setupWSDLs(corpus.getZipUrl());
+        repository = new InMemoryRepositoryImpl();
+        descriptions = new ServiceDescriptionImpl[corpusSize];
+        for (int i = 0; i < corpusSize; i++) {
+            BenchmarkRegistrySupport.register(repository, "contract" + i, corpus.getDocument(i));
+            descriptions[i] = new ServiceDescriptionImpl(wsdlManager.getDefinition(corpus.getPortType(i)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        corpus.delete();
+    }
+
+    @Benchmark
+    public Definition definitionByPortType(Cursor cursor) throws Exception {
+        return wsdlManager.getDefinition(corpus.getPortType(cursor.next(corpusSize)));
+    }
+
+    @Benchmark
+    public ServiceDescription serviceDescriptionByPortType(Cursor cursor) throws Exception {
+        return wsdlManager.getServiceDescription(corpus.getPortType(cursor.next(corpusSize)));
+    }
+
+    @Benchmark
+    public SwordfishPort choosePort(Cursor cursor) {
+        int index = cursor.next(corpusSize);
+        String operation = WsdlCorpus.OPERATIONS[index % WsdlCorpus.OPERATIONS.length];
+        return descriptions[index].choosePort(operation, Transport.HTTP_STR);
+    }
+
+    @Benchmark
+    public Map<SOAPAddress, SOAPBinding> availableLocations(Cursor cursor) {
+        return descriptions[cursor.next(corpusSize)].getAvailableLocations();
+    }
+
+    @Benchmark
+    public ListResource<WSDLResource> registryByPortType(Cursor cursor) {
+        return repository.getByPortTypeName(corpus.getPortType(cursor.next(corpusSize)));
+    }
+
+    @Benchmark
+    public ListResource<WSDLResource> registryReferencingPortType(Cursor cursor) {
+        return repository.getReferencingPortType(corpus.getPortType(cursor.next(corpusSize)));
+    }
+
+    @Benchmark
+    public QName serviceDescriptionCold(Cursor cursor) throws Exception {
+        // what getServiceDescription pays on a cache miss
+        ServiceDescriptionImpl description =
+            new ServiceDescriptionImpl(wsdlManager.getDefinition(corpus.getPortType(cursor.next(corpusSize))));
+        return description.getServiceQName();
+    }
+}
@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.registry;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Gives the benchmarks access to the package private PersistentData contract,
+ * so WSDL documents can be registered through the regular WSDLResource path.
+ */
+public final class BenchmarkRegistrySupport {
+
+    private BenchmarkRegistrySupport() {
+    }
+
+    public static WSDLResource register(InMemoryRepository repository, String id, String document)
+            throws RegistryException {
+        WSDLResource resource = new WSDLResource();
+        resource.setData(new InMemoryData(id, document));
+        resource.register(repository);
+        return resource;
+    }
+
+    private static class InMemoryData implements PersistentData {
+
+        private final String id;
+        private final byte[] content;
+
+        InMemoryData(String id, String document) {
+            this.id = id;
+            try {
+                this.content = document.getBytes("UTF-8");
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public InputStream getContent() throws IOException {
+            return new ByteArrayInputStream(content);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.configuration;
+
+/**
+ * Implemented by PollableConfigurationSources which can tell cheaply whether
+ * their backing resource has changed, e.g. by means of HTTP ETags or
+ * modification times. The poller calls {@link #refresh()} before reading
+ * the configurations and skips the source if nothing has changed.
+ */
+public interface ConditionalConfigurationSource {
+
+    /**
+     * Reloads the configuration if the backing resource has been modified.
+     * @return false if the resource is known to be unchanged, true otherwise
+     */
+    public boolean refresh();
+}
@@ -48,6 +48,10 @@ public class ConfigurationAgentImpl implements EventHandler<ConfigurationEvent>,
         Assert.notNull(configurationService);
         for (Object id : configurations.keySet()) {
             Object configuration = configurations.get(id);
+            if (configuration == null) {
+                configurationService.updateConfiguration((String) id, null);
+                continue;
+            }
             if (! (configuration instanceof Map)) {
                 throw new UnsupportedOperationException("Only map based configuration is supported as for now");
             }
@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Delivers configuration updates asynchronously on a bounded pool of worker
+ * threads.
+ * <p>
+ * Only the latest pending update of a PID is kept: when several updates for
+ * the same PID arrive before the worker picks them up, the intermediate ones
+ * are dropped. The updates of one PID are never delivered concurrently, and
+ * updates whose content equals the last delivered one are skipped, so
+ * the ConfigurationAdmin only fires ManagedService callbacks for PIDs
+ * which have actually changed.
+ * <p>
+ * Every submission returns a {@link Future} which completes once the update
+ * has been delivered or skipped as unchanged, and fails with the exception of
+ * the delivery. A dropped intermediate update completes with the update
+ * which replaced it.
+ * <p>
+ * The submitted maps must not be modified afterwards.
+ */
+public class ConfigurationDeliveryQueue {
+    private static final Logger LOG = LoggerFactory.getLogger(ConfigurationDeliveryQueue.class);
+    private static final Object REMOVAL = new Object();
+
+    public static interface Delivery {
+        public void deliver(String pid, Map<String, ?> configuration) throws Exception;
+    }
+
+    private final Delivery delivery;
+    private final ConfigurationFingerprints fingerprints;
+    private final ConcurrentHashMap<String, Update> pending = new ConcurrentHashMap<String, Update>();
+    private final ConcurrentHashMap<String, Boolean> scheduled = new ConcurrentHashMap<String, Boolean>();
+    private final ThreadPoolExecutor executor;
+
+    public ConfigurationDeliveryQueue(Delivery delivery, ConfigurationFingerprints fingerprints, int threads) {
+        Assert.notNull(delivery, "The delivery callback must be supplied");
+        Assert.notNull(fingerprints, "The fingerprints must be supplied");
+        Assert.isTrue(threads > 0, "At least one delivery thread is required");
+        this.delivery = delivery;
+        this.fingerprints = fingerprints;
+        final AtomicInteger threadCounter = new AtomicInteger();
+        // every PID occupies at most one slot of the work queue, so it is bounded by the number of PIDs
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "Swordfish-configuration-delivery-" + threadCounter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Schedules the configuration for delivery, null removes the configuration.
+     * @return the outcome of the delivery
+     */
+    public Future<?> submit(String pid, Map<String, ?> configuration) {
+        Assert.notNull(pid, "The PID must be supplied");
+        Assert.state(!executor.isShutdown(), "The configuration delivery queue has been shut down");
+        Update update = new Update(configuration != null ? configuration : REMOVAL);
+        Update replaced = pending.put(pid, update);
+        if (replaced != null) {
+            // the replaced update has not been picked up, it shares the outcome of the new one
+            update.result.addFollower(replaced.result);
+        }
+        schedule(pid);
+        return update.result;
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Waits until all submitted updates have been delivered or the timeout elapsed.
+     * @return true if nothing is pending any more
+     */
+    public boolean awaitDelivery(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!pending.isEmpty() || !scheduled.isEmpty()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    private void schedule(String pid) {
+        if (scheduled.putIfAbsent(pid, Boolean.TRUE) == null) {
+            executor.execute(new DeliveryTask(pid));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void deliverPending(String pid) {
+        while (true) {
+            Update update = pending.remove(pid);
+            if (update == null) {
+                scheduled.remove(pid);
+                // an update may have arrived after the remove, reclaim the PID unless another task did
+                if (!pending.containsKey(pid) || scheduled.putIfAbsent(pid, Boolean.TRUE) != null) {
+                    return;
+                }
+                continue;
+            }
+            Map<String, ?> configuration = update.configuration != REMOVAL
+                ? (Map<String, ?>) update.configuration : null;
+            if (!fingerprints.isChanged(pid, configuration)) {
+                LOG.debug("Configuration with id = [" + pid + "] has not changed, skipping the update");
+                update.result.complete(null);
+                continue;
+            }
+            try {
+                delivery.deliver(pid, configuration);
+                fingerprints.record(pid, configuration);
+                update.result.complete(null);
+            } catch (Exception ex) {
+                LOG.error("Could not deliver the configuration with id = [" + pid + "]", ex);
+                update.result.complete(ex);
+            }
+        }
+    }
+
+    private class DeliveryTask implements Runnable {
+        private final String pid;
+
+        public DeliveryTask(String pid) {
+            this.pid = pid;
+        }
+
+        public void run() {
+            deliverPending(pid);
+        }
+    }
+
+    private static class Update {
+        private final Object configuration;
+        private final DeliveryResult result = new DeliveryResult();
+
+        public Update(Object configuration) {
+            this.configuration = configuration;
+        }
+    }
+
+    private static class DeliveryResult implements Future<Object> {
+        private boolean done;
+        private Exception failure;
+        private List<DeliveryResult> followers;
+
+        public synchronized void addFollower(DeliveryResult follower) {
+            if (done) {
+                follower.complete(failure);
+                return;
+            }
+            if (followers == null) {
+                followers = new ArrayList<DeliveryResult>();
+            }
+            followers.add(follower);
+        }
+
+        /**
+         * The followers are completed first, so they are done when this one is.
+         * They are always older than this one, so the locks are taken in order.
+         */
+        public synchronized void complete(Exception failure) {
+            if (followers != null) {
+                for (DeliveryResult follower : followers) {
+                    follower.complete(failure);
+                }
+                followers = null;
+            }
+            this.done = true;
+            this.failure = failure;
+            notifyAll();
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        public boolean isCancelled() {
+            return false;
+        }
+
+        public synchronized boolean isDone() {
+            return done;
+        }
+
+        public synchronized Object get() throws InterruptedException, ExecutionException {
+            while (!done) {
+                wait();
+            }
+            return getResult();
+        }
+
+        public synchronized Object get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (!done) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new TimeoutException();
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return getResult();
+        }
+
+        private Object getResult() throws ExecutionException {
+            if (failure != null) {
+                throw new ExecutionException(failure);
+            }
+            return null;
+        }
+    }
+}
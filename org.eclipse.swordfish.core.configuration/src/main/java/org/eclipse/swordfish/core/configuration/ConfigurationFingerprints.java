@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.configuration;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the content last delivered for every PID, so that unchanged
+ * configurations do not have to be pushed to the ConfigurationAdmin again.
+ * The hash code of the configuration map is compared first, the retained
+ * copy is only compared when the hashes are equal.
+ */
+public class ConfigurationFingerprints {
+    private static final Fingerprint REMOVED = new Fingerprint(null);
+
+    private final ConcurrentHashMap<String, Fingerprint> fingerprints = new ConcurrentHashMap<String, Fingerprint>();
+
+    /**
+     * @return true if the configuration differs from the one recorded for the PID,
+     * a null configuration stands for a removed one
+     */
+    public boolean isChanged(String pid, Map<String, ?> configuration) {
+        Fingerprint fingerprint = fingerprints.get(pid);
+        return fingerprint == null || !fingerprint.matches(configuration);
+    }
+
+    public void record(String pid, Map<String, ?> configuration) {
+        fingerprints.put(pid, configuration != null ? new Fingerprint(configuration) : REMOVED);
+    }
+
+    public void forget(String pid) {
+        fingerprints.remove(pid);
+    }
+
+    public void clear() {
+        fingerprints.clear();
+    }
+
+    private static class Fingerprint {
+        private final int hash;
+        private final Map<String, ?> content;
+
+        public Fingerprint(Map<String, ?> configuration) {
+            if (configuration == null) {
+                hash = 0;
+                content = null;
+            } else {
+                content = Collections.unmodifiableMap(new HashMap<String, Object>(configuration));
+                hash = content.hashCode();
+            }
+        }
+
+        public boolean matches(Map<String, ?> configuration) {
+            if (configuration == null || content == null) {
+                return configuration == content;
+            }
+            return hash == configuration.hashCode() && content.equals(configuration);
+        }
+    }
+}
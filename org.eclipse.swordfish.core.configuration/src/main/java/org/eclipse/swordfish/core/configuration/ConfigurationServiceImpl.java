@@ -13,22 +13,56 @@ package org.eclipse.swordfish.core.configuration;
 import java.util.Dictionary;
 import java.util.Hashtable;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import org.eclipse.swordfish.api.SwordfishException;
 import org.eclipse.swordfish.api.configuration.ConfigurationService;
 import org.osgi.service.cm.Configuration;
 import org.osgi.service.cm.ConfigurationAdmin;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.util.Assert;
 
-public class ConfigurationServiceImpl implements ConfigurationService {
+/**
+ * Pushes configurations to the ConfigurationAdmin. The updates are applied
+ * asynchronously by a {@link ConfigurationDeliveryQueue}, which coalesces
+ * rapid updates of the same PID and skips unchanged configurations.
+ */
+public class ConfigurationServiceImpl implements ConfigurationService, ConfigurationDeliveryQueue.Delivery,
+        InitializingBean, DisposableBean {
     private ConfigurationAdmin configurationAdmin;
+    private ConfigurationFingerprints fingerprints = new ConfigurationFingerprints();
+    private int deliveryThreads = 2;
+    private ConfigurationDeliveryQueue deliveryQueue;
+
     public ConfigurationAdmin getConfigurationAdmin() {
         return configurationAdmin;
     }
     public void setConfigurationAdmin(ConfigurationAdmin configurationAdmin) {
         this.configurationAdmin = configurationAdmin;
     }
-    public <T> void updateConfiguration(String id, Map<String, T> configurationData) {
+    public ConfigurationFingerprints getFingerprints() {
+        return fingerprints;
+    }
+    public void setFingerprints(ConfigurationFingerprints fingerprints) {
+        this.fingerprints = fingerprints;
+    }
+    public int getDeliveryThreads() {
+        return deliveryThreads;
+    }
+    public void setDeliveryThreads(int deliveryThreads) {
+        this.deliveryThreads = deliveryThreads;
+    }
+    public ConfigurationDeliveryQueue getDeliveryQueue() {
+        return deliveryQueue;
+    }
+
+    public <T> Future<?> updateConfiguration(String id, Map<String, T> configurationData) {
+        Assert.notNull(deliveryQueue, "The configuration service has not been initialized");
+        return deliveryQueue.submit(id, configurationData);
+    }
+
+    public void deliver(String id, Map<String, ?> configurationData) {
         try {
             Configuration configuration = configurationAdmin.getConfiguration(id);
             Assert.notNull(configuration, "Could npot find configuration by id = " + id);
@@ -48,4 +82,15 @@ public class ConfigurationServiceImpl implements ConfigurationService {
 
     }
 
+    public void afterPropertiesSet() throws Exception {
+        Assert.notNull(configurationAdmin, "The ConfigurationAdmin must be supplied");
+        deliveryQueue = new ConfigurationDeliveryQueue(this, fingerprints, deliveryThreads);
+    }
+
+    public void destroy() throws Exception {
+        if (deliveryQueue != null) {
+            deliveryQueue.shutdown();
+        }
+    }
+
 }
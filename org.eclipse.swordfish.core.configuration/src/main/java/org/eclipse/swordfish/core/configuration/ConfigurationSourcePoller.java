@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.swordfish.api.configuration.PollableConfigurationSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Polls the registered PollableConfigurationSources in the interval given by
+ * their {@link PollableConfigurationSource#POLLING_INTERVAL} property and hands
+ * the PIDs whose configuration has changed to the ConfigurationAgent. Removed
+ * PIDs are handed over with a null configuration. The delta is taken from
+ * {@link IncrementalConfigurationSource}s directly, for all the other sources
+ * it is computed from the previous and the current configurations.
+ * <p>
+ * Every poll is rescheduled with a random deviation of
+ * {@link PollableConfigurationSource#POLLING_JITTER}, so that nodes started
+ * at the same time do not poll a shared configuration server in lockstep.
+ */
+public class ConfigurationSourcePoller {
+    private static final Logger LOG = LoggerFactory.getLogger(ConfigurationSourcePoller.class);
+    public static final double DEFAULT_JITTER = 0.1;
+
+    private final ConfigurationAgent configurationAgent;
+    private final Map<PollableConfigurationSource, PollTask> tasks = new ConcurrentHashMap<PollableConfigurationSource, PollTask>();
+    private final Random random = new Random();
+    private ScheduledExecutorService executor;
+
+    public ConfigurationSourcePoller(ConfigurationAgent configurationAgent) {
+        Assert.notNull(configurationAgent);
+        this.configurationAgent = configurationAgent;
+    }
+
+    /**
+     * Starts polling the source if an interval is configured for it.
+     * @param properties - merged properties of the source
+     * @param initialConfigurations - configurations which have already been handed to the agent
+     * @return true if the source is polled
+     */
+    public synchronized boolean schedule(PollableConfigurationSource source, Map<String, ?> properties,
+            Map<String, ?> initialConfigurations) {
+        long interval = getLong(properties.get(PollableConfigurationSource.POLLING_INTERVAL), 0);
+        if (interval <= 0) {
+            return false;
+        }
+        double jitter = getDouble(properties.get(PollableConfigurationSource.POLLING_JITTER), DEFAULT_JITTER);
+        Assert.isTrue(jitter >= 0 && jitter <= 1, PollableConfigurationSource.POLLING_JITTER + " must be between 0 and 1");
+        if (executor == null) {
+            executor = createExecutor();
+        }
+        PollTask task = new PollTask(source, interval, jitter, initialConfigurations);
+        PollTask previous = tasks.put(source, task);
+        if (previous != null) {
+            previous.cancel();
+        }
+        task.scheduleNext();
+        LOG.info("Polling configuration source " + source + " every " + interval + " ms");
+        return true;
+    }
+
+    public void cancel(PollableConfigurationSource source) {
+        PollTask task = tasks.remove(source);
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
+    public synchronized void shutdown() {
+        for (PollTask task : tasks.values()) {
+            task.cancel();
+        }
+        tasks.clear();
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    public boolean isScheduled(PollableConfigurationSource source) {
+        return tasks.containsKey(source);
+    }
+
+    /**
+     * @return the PIDs whose configuration differs between the two snapshots,
+     * the PIDs missing in the current snapshot are mapped to null
+     */
+    static Map<String, Object> diff(Map<String, ?> previous, Map<String, ?> current) {
+        Map<String, Object> changed = new HashMap<String, Object>();
+        for (Map.Entry<String, ?> entry : current.entrySet()) {
+            Object old = previous.get(entry.getKey());
+            if (old == null ? entry.getValue() != null : !old.equals(entry.getValue())) {
+                changed.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (String pid : previous.keySet()) {
+            if (!current.containsKey(pid)) {
+                changed.put(pid, null);
+            }
+        }
+        return changed;
+    }
+
+    private ScheduledExecutorService createExecutor() {
+        return new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Swordfish-configuration-poller");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private static long getLong(Object value, long defaultValue) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return value != null ? Long.parseLong(value.toString().trim()) : defaultValue;
+    }
+
+    private static double getDouble(Object value, double defaultValue) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return value != null ? Double.parseDouble(value.toString().trim()) : defaultValue;
+    }
+
+    private class PollTask implements Runnable {
+        private final PollableConfigurationSource source;
+        private final long interval;
+        private final double jitter;
+        private Map<String, ?> lastConfigurations;
+        private volatile boolean cancelled;
+        private volatile ScheduledFuture<?> future;
+
+        public PollTask(PollableConfigurationSource source, long interval, double jitter,
+                Map<String, ?> initialConfigurations) {
+            this.source = source;
+            this.interval = interval;
+            this.jitter = jitter;
+            if (source instanceof IncrementalConfigurationSource) {
+                // the initial configurations have already been handed over
+                ((IncrementalConfigurationSource) source).getChangedConfigurations();
+            } else {
+                lastConfigurations = initialConfigurations != null
+                    ? initialConfigurations : new HashMap<String, Object>();
+            }
+        }
+
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            try {
+                poll();
+            } catch (Exception ex) {
+                LOG.warn("Could not poll the configuration source " + source, ex);
+            } finally {
+                scheduleNext();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void poll() {
+            Map<String, ?> changed;
+            if (source instanceof IncrementalConfigurationSource) {
+                // the delta may also contain changes from loads triggered outside the poller
+                ((IncrementalConfigurationSource) source).refresh();
+                changed = ((IncrementalConfigurationSource) source).getChangedConfigurations();
+            } else if (source instanceof ConditionalConfigurationSource
+                    && !((ConditionalConfigurationSource) source).refresh()) {
+                LOG.debug("Configuration source " + source + " has not changed");
+                return;
+            } else {
+                Map<String, ?> configurations = source.getConfigurations();
+                if (configurations == null) {
+                    configurations = new HashMap<String, Object>();
+                }
+                changed = diff(lastConfigurations, configurations);
+                lastConfigurations = configurations;
+            }
+            if (!changed.isEmpty()) {
+                LOG.info("Configuration source " + source + " has changed the configurations " + changed.keySet());
+                configurationAgent.handleConfiguration(changed);
+            }
+        }
+
+        void scheduleNext() {
+            synchronized (ConfigurationSourcePoller.this) {
+                if (cancelled || executor == null) {
+                    return;
+                }
+                long delay = Math.max(1, Math.round(interval * (1 + jitter * (2 * random.nextDouble() - 1))));
+                future = executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            ScheduledFuture<?> scheduled = future;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+}
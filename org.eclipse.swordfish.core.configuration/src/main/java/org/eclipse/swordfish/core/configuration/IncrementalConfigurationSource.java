@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.configuration;
+
+import java.util.Map;
+
+/**
+ * Implemented by ConditionalConfigurationSources which track the content of
+ * every PID between two loads. The poller hands only the delta reported by
+ * the source to the ConfigurationAgent instead of comparing the complete
+ * configuration maps itself.
+ */
+public interface IncrementalConfigurationSource extends ConditionalConfigurationSource {
+
+    /**
+     * Returns the PIDs whose properties have changed since the previous call
+     * and resets the delta. PIDs which have been removed are mapped to null.
+     * @return the changed configurations, never null
+     */
+    public Map<String, ?> getChangedConfigurations();
+}
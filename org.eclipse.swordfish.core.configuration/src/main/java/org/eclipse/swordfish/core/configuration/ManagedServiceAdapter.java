@@ -16,6 +16,8 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.eclipse.swordfish.api.configuration.ConfigurationConsumer;
+import org.eclipse.swordfish.api.configuration.TypedConfigurationConsumer;
+import org.eclipse.swordfish.core.util.ConfigurationSnapshotImpl;
 import org.osgi.service.cm.ConfigurationException;
 import org.osgi.service.cm.ManagedService;
 import org.slf4j.Logger;
@@ -36,6 +38,10 @@ public class ManagedServiceAdapter implements ManagedService {
 
     public void updated(Dictionary properties) throws ConfigurationException {
         Assert.notNull(delegate, "The ConfigurationConsumer delegate must be supplied");
+        if (delegate instanceof TypedConfigurationConsumer) {
+            updateSnapshot((TypedConfigurationConsumer) delegate, properties);
+            return;
+        }
         if (properties == null) {
             delegate.onReceiveConfiguration(null);
             return;
@@ -51,6 +57,15 @@ public class ManagedServiceAdapter implements ManagedService {
         delegate.onReceiveConfiguration(configuration);
 
     }
+    private void updateSnapshot(TypedConfigurationConsumer consumer, Dictionary properties) {
+        if (properties == null) {
+            consumer.onReceiveSnapshot(null);
+            return;
+        }
+        ConfigurationSnapshotImpl snapshot = ConfigurationSnapshotImpl.fromDictionary(consumer.getId(), properties);
+        LOG.info(String.format("Received configuration [%s] for the configurationConsumer with id = [%s] ", snapshot.asMap().toString(), consumer.getId()));
+        consumer.onReceiveSnapshot(snapshot);
+    }
     public ConfigurationConsumer getDelegate() {
         return delegate;
     }
@@ -10,28 +10,79 @@
  *******************************************************************************/
 package org.eclipse.swordfish.core.configuration;
 
+import java.util.HashMap;
 import java.util.Map;
 
 import org.eclipse.swordfish.api.configuration.PollableConfigurationSource;
 import org.eclipse.swordfish.core.util.RegistryImpl;
 import org.springframework.util.Assert;
 
+/**
+ * Hands the configurations of a source to the ConfigurationAgent when the source
+ * is registered, sources with a polling interval are polled for changes afterwards.
+ */
 public class PollableConfigurationSourceRegistry extends RegistryImpl<PollableConfigurationSource> {
     private ConfigurationAgent configurationAgent;
+    private ConfigurationSourcePoller poller;
 
 
-    /* TODO in some time we would to create something like configuration managers to handle different types of PollableConfigurationSource instances
-     *
-     */
     @Override
     protected void doRegister(PollableConfigurationSource pollableConfigurationSource,
             Map<String, ?> properties) throws Exception {
         Assert.notNull(configurationAgent);
         Assert.notNull(pollableConfigurationSource);
-        configurationAgent.handleConfiguration(pollableConfigurationSource.getConfigurations());
+        Map<String, ?> configurations = pollableConfigurationSource.getConfigurations();
+        if (configurations != null) {
+            configurationAgent.handleConfiguration(configurations);
+        }
+        getPoller().schedule(pollableConfigurationSource,
+                mergeProperties(pollableConfigurationSource, properties), configurations);
         super.doRegister(pollableConfigurationSource, properties);
     }
 
+    @Override
+    protected void doUnregister(PollableConfigurationSource pollableConfigurationSource,
+            Map<String, ?> properties) throws Exception {
+        if (poller != null) {
+            poller.cancel(pollableConfigurationSource);
+        }
+        super.doUnregister(pollableConfigurationSource, properties);
+    }
+
+    @Override
+    protected void doDestroy() throws Exception {
+        if (poller != null) {
+            poller.shutdown();
+        }
+        super.doDestroy();
+    }
+
+    private Map<String, ?> mergeProperties(PollableConfigurationSource pollableConfigurationSource,
+            Map<String, ?> properties) {
+        Map<String, Object> merged = new HashMap<String, Object>();
+        Map<String, ?> defaults = null;
+        try {
+            defaults = pollableConfigurationSource.getProperties();
+        } catch (RuntimeException ex) {
+            LOG.warn("Could not read the default properties of the configuration source "
+                    + pollableConfigurationSource + ", only the service properties are used", ex);
+        }
+        if (defaults != null) {
+            merged.putAll(defaults);
+        }
+        if (properties != null) {
+            merged.putAll(properties);
+        }
+        return merged;
+    }
+
+    private synchronized ConfigurationSourcePoller getPoller() {
+        if (poller == null) {
+            poller = new ConfigurationSourcePoller(configurationAgent);
+        }
+        return poller;
+    }
+
     public ConfigurationAgent getConfigurationAgent() {
         return configurationAgent;
     }
@@ -39,4 +90,4 @@ public class PollableConfigurationSourceRegistry extends RegistryImpl<PollableCo
     public void setConfigurationAgent(ConfigurationAgent configurationAgent) {
         this.configurationAgent = configurationAgent;
     }
-}
\ No newline at end of file
+}
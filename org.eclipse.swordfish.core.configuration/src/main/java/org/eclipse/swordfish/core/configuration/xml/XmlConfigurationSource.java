@@ -10,25 +10,169 @@
  *******************************************************************************/
 package org.eclipse.swordfish.core.configuration.xml;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLConnection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
+import org.eclipse.swordfish.api.SwordfishException;
 import org.eclipse.swordfish.api.configuration.PollableConfigurationSource;
+import org.eclipse.swordfish.core.configuration.ConfigurationFingerprints;
+import org.eclipse.swordfish.core.configuration.IncrementalConfigurationSource;
 import org.springframework.util.Assert;
 
-public class XmlConfigurationSource implements PollableConfigurationSource<Map<String, String>> {
+/**
+ * Reads the configurations of all PIDs from one XML document. The properties
+ * of every PID are fingerprinted on each load, so that only the PIDs which
+ * have actually been modified or removed are reported as changed.
+ */
+public class XmlConfigurationSource implements PollableConfigurationSource<Map<String, String>>, IncrementalConfigurationSource {
     private Map<String, Object> props = new HashMap<String, Object>();
+    private final ConfigurationFingerprints fingerprints = new ConfigurationFingerprints();
+    private Set<String> loadedPids = new HashSet<String>();
+    private Map<String, Map<String, String>> changedConfigurations = new HashMap<String, Map<String, String>>();
     private XmlToPropertiesTransformer propertiesTransformer = new XmlToPropertiesTransformerImpl();
+    private URL configurationUrl;
+    private String entityTag;
+    private long lastModified;
+
     public void setConfigurationPath(String path) {
-        propertiesTransformer.loadConfiguration(path);
+        Assert.notNull(path);
+        try {
+            setConfigurationPath(new URL(path));
+        } catch (MalformedURLException ex) {
+           throw new SwordfishException(ex);
+        }
+    }
+
+    public synchronized void setConfigurationPath(URL path) {
+        Assert.notNull(path);
+        configurationUrl = path;
+        entityTag = null;
+        lastModified = 0;
+        load();
+    }
+
+    /**
+     * @param pollingInterval - interval in milliseconds in which the configuration file is checked for changes
+     */
+    public void setPollingInterval(long pollingInterval) {
+        props.put(POLLING_INTERVAL, pollingInterval);
+    }
+
+    public void setPollingJitter(double pollingJitter) {
+        props.put(POLLING_JITTER, pollingJitter);
+    }
+
+    /**
+     * Uses a conditional GET for http URLs and compares the modification time
+     * for all the others, the file is parsed only if it has changed.
+     */
+    public synchronized boolean refresh() {
+        if (configurationUrl == null) {
+            return false;
+        }
+        return load();
+    }
+
+    public synchronized Map<String, ?> getChangedConfigurations() {
+        Map<String, Map<String, String>> changed = changedConfigurations;
+        changedConfigurations = new HashMap<String, Map<String, String>>();
+        return changed;
+    }
+
+    private boolean load() {
+        InputStream inputStream = null;
+        File file = getFile();
+        // the modification time of files is read without opening them
+        if (file != null && lastModified > 0 && file.lastModified() == lastModified) {
+            return false;
+        }
+        try {
+            URLConnection connection = configurationUrl.openConnection();
+            connection.setUseCaches(false);
+            if (connection instanceof HttpURLConnection) {
+                if (entityTag != null) {
+                    connection.setRequestProperty("If-None-Match", entityTag);
+                }
+                if (lastModified > 0) {
+                    connection.setIfModifiedSince(lastModified);
+                }
+                if (((HttpURLConnection) connection).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    ((HttpURLConnection) connection).disconnect();
+                    return false;
+                }
+                entityTag = connection.getHeaderField("ETag");
+            } else if (lastModified > 0 && connection.getLastModified() == lastModified) {
+                // reading the modification time has connected the URL, release the stream
+                inputStream = connection.getInputStream();
+                return false;
+            }
+            inputStream = connection.getInputStream();
+            propertiesTransformer.loadConfiguration(inputStream);
+            lastModified = file != null ? file.lastModified() : connection.getLastModified();
+            return trackChanges(propertiesTransformer.getPropertiesForPids());
+        } catch (IOException ex) {
+            throw new SwordfishException("Could not read the configuration from " + configurationUrl, ex);
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException ex) {}
+            }
+        }
+    }
+
+    /**
+     * @return the configuration file or null if the URL does not denote a file
+     */
+    private File getFile() {
+        if (!"file".equals(configurationUrl.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(configurationUrl.toURI());
+        } catch (URISyntaxException ex) {
+            return null;
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
     }
 
-    public void setConfigurationPath(URL path) {
-        propertiesTransformer.loadConfiguration(path);
+    /**
+     * Adds the PIDs which differ from the previous load to the pending delta,
+     * a PID changed back before the delta has been fetched is still reported.
+     */
+    private boolean trackChanges(Map<String, Map<String, String>> configurations) {
+        boolean changed = false;
+        Set<String> pids = new HashSet<String>(configurations.keySet());
+        for (Map.Entry<String, Map<String, String>> entry : configurations.entrySet()) {
+            if (fingerprints.isChanged(entry.getKey(), entry.getValue())) {
+                fingerprints.record(entry.getKey(), entry.getValue());
+                changedConfigurations.put(entry.getKey(), entry.getValue());
+                changed = true;
+            }
+        }
+        for (String pid : loadedPids) {
+            if (!pids.contains(pid)) {
+                fingerprints.forget(pid);
+                changedConfigurations.put(pid, null);
+                changed = true;
+            }
+        }
+        loadedPids = pids;
+        return changed;
     }
 
-    public Map<String, Map<String, String>> getConfigurations() {
+    public synchronized Map<String, Map<String, String>> getConfigurations() {
        Assert.state(propertiesTransformer.isConfigurationLoaded(), "Configuration is not loaded");
        return propertiesTransformer.getPropertiesForPids();
     }
@@ -10,12 +10,14 @@
  *******************************************************************************/
 package org.eclipse.swordfish.core.configuration.xml;
 
+import java.io.InputStream;
 import java.net.URL;
 import java.util.Map;
 
 public interface XmlToPropertiesTransformer {
     public void loadConfiguration(String path);
     public void loadConfiguration(URL path);
+    public void loadConfiguration(InputStream inputStream);
     public Map<String, String> getProperties();
     public Map<String, Map<String,String>> getPropertiesForPids();
     public boolean isConfigurationLoaded();
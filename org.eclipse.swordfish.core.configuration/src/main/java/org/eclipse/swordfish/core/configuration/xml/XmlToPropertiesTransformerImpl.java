@@ -14,29 +14,41 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
-import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLInputFactory;
-import javax.xml.stream.events.Attribute;
-import javax.xml.stream.events.XMLEvent;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.eclipse.swordfish.api.SwordfishException;
 import org.springframework.util.Assert;
 
 /**
+ * Flattens an XML configuration into properties. The root element is
+ * dropped, the elements on the next level are the PIDs and the paths below
+ * them, joined with dots, are the property keys. Attributes are appended as
+ * <code>[@name]</code>, repeated keys are numbered as <code>{1}, {2}, ...</code>
+ * <p>
+ * The document is parsed in a single pass with a cursor; the current path is
+ * kept in one StringBuilder and the properties are grouped by PID while
+ * parsing, so loading is linear in the size of the configuration.
+ * <p>
  * Class is not threadsafe
  * @author vzhabiuk
  *
  */
 public class XmlToPropertiesTransformerImpl implements XmlToPropertiesTransformer {
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
     private Map<String, String> properties;
+    private Map<String, Map<String, String>> propertiesForPids;
+
     public Map<String, String> getProperties() {
         Assert.notNull(properties);
         return properties;
@@ -47,16 +59,7 @@ public class XmlToPropertiesTransformerImpl implements XmlToPropertiesTransforme
     }
     public Map<String, Map<String, String>> getPropertiesForPids() {
         Assert.state(properties != null, "Configuration is not loaded");
-        Set<String> prefixes = getPidPrefixes(properties.keySet());
-        Map<String, Map<String, String>> ret = new HashMap<String, Map<String,String>>();
-        for (String prefix : prefixes) {
-            Map<String, String> pidProps = new HashMap<String, String>();
-            for (String key : getKeysForPid(properties.keySet(), prefix)) {
-                pidProps.put(key.substring(prefix.length() + 1), properties.get(key));
-            }
-            ret.put(prefix, pidProps);
-        }
-        return ret;
+        return propertiesForPids;
     }
 
     public void loadConfiguration(String path) {
@@ -73,106 +76,187 @@ public class XmlToPropertiesTransformerImpl implements XmlToPropertiesTransforme
         InputStream inputStream = null;
         try {
             inputStream = path.openStream();
-            XMLInputFactory inputFactory = XMLInputFactory.newInstance();
-            LinkedList<String> currentElements = new LinkedList<String>();
-            XMLEventReader eventReader = inputFactory.createXMLEventReader(inputStream);
-            Map<String, List<String>> props = new HashMap<String, List<String>>();
-            // Read the XML document
-            while (eventReader.hasNext()) {
-                XMLEvent event = eventReader.nextEvent();
-                if (event.isCharacters() && !event.asCharacters().isWhiteSpace()) {
-                    putElement(props, getQualifiedName(currentElements), event.asCharacters().getData());
-
-                }else if (event.isStartElement()) {
-                    currentElements.add(event.asStartElement().getName().getLocalPart());
-                    for (Iterator attrIt = event.asStartElement().getAttributes(); attrIt.hasNext();) {
-                        Attribute attribute = (Attribute) attrIt.next();
-                        putElement(props, getQualifiedName(currentElements) + "[@" + attribute.getName() + "]", attribute.getValue());
+            loadConfiguration(inputStream);
+        } catch (IOException ex) {
+            throw new SwordfishException(ex);
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException ex) {}
+            }
+        }
+    }
 
+    public void loadConfiguration(InputStream inputStream) {
+        Assert.notNull(inputStream);
+        XMLStreamReader reader = null;
+        try {
+            reader = INPUT_FACTORY.createXMLStreamReader(inputStream);
+            ValueCollector values = new ValueCollector();
+            StringBuilder path = new StringBuilder(128);
+            int[] pathLengths = new int[16];
+            int depth = 0;
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    if (depth == pathLengths.length) {
+                        int[] grown = new int[depth * 2];
+                        System.arraycopy(pathLengths, 0, grown, 0, depth);
+                        pathLengths = grown;
+                    }
+                    pathLengths[depth++] = path.length();
+                    if (depth == 1) {
+                        // the root element is not part of the keys unless content is placed directly in it
+                        values.setRootName(reader.getLocalName());
+                    } else {
+                        if (depth > 2) {
+                            path.append('.');
+                        }
+                        path.append(reader.getLocalName());
+                        if (depth == 2) {
+                            values.setPidLength(path.length());
+                        }
+                    }
+                    for (int i = 0; i < reader.getAttributeCount(); i++) {
+                        values.add(path, depth, "[@" + getAttributeName(reader, i) + "]", reader.getAttributeValue(i));
                     }
-                } else if (event.isAttribute()) {
-                     } else if (event.isEndElement()) {
-                    String lastElem = event.asEndElement().getName().getLocalPart();
-                    if (!currentElements.getLast().equals(lastElem)) {
-                        throw new UnsupportedOperationException(lastElem+ "," + currentElements.getLast());
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    path.setLength(pathLengths[--depth]);
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                    if (!reader.isWhiteSpace()) {
+                        values.add(path, depth, null, reader.getText());
                     }
-                    currentElements.removeLast();
+                    break;
+                default:
+                    break;
                 }
             }
-            properties = flattenProperties(props);
-        } catch (Exception ex) {
+            values.flatten();
+            properties = values.properties;
+            propertiesForPids = values.propertiesForPids;
+        } catch (XMLStreamException ex) {
             throw new SwordfishException(ex);
         } finally {
-            if (inputStream != null) {
+            if (reader != null) {
                 try {
-                    inputStream.close();
-                } catch (IOException ex) {}
+                    reader.close();
+                } catch (XMLStreamException ex) {}
             }
         }
     }
 
-    private String getQualifiedName(List<String> elements) {
-        if (elements.size() == 0) {
-            return null;
+    private static String getAttributeName(XMLStreamReader reader, int index) {
+        String namespace = reader.getAttributeNamespace(index);
+        if (namespace == null || namespace.length() == 0) {
+            return reader.getAttributeLocalName(index);
         }
-        StringBuilder ret = new StringBuilder(elements.get(0));
-        for (int i = 1; i < elements.size(); i++) {
-            ret.append(".").append(elements.get(i));
-        }
-        return ret.toString();
+        return reader.getAttributeName(index).toString();
     }
 
-    private Map<String,String> flattenProperties(Map<String, List<String>> props) {
-        Map<String,String> ret = new HashMap<String, String>(props.size());
-        for (String key : props.keySet()) {
-            List<String> values = props.get(key);
-            Assert.state(values.size() > 0);
-            //remove root element
-            if (key.contains(".")) {
-                key = key.substring(key.indexOf(".") + 1);
-            }
-            if (values.size() == 1) {
-                ret.put(key, values.get(0));
-            } else {
-                for (int i = 0; i < values.size(); i++) {
-                    ret.put(key + "{" + (i+1) + "}", values.get(i));
-                }
-            }
-        }
-        return ret;
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+        // deliver the text of an element in one event, even if it contains entities or CDATA sections
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        return inputFactory;
     }
 
-    private void  putElement(Map<String, List<String>> props, String key, String value) {
-        if (props.containsKey(key)) {
-            props.get(key).add(value);
-        } else {
-            List<String> list = new LinkedList<String>();
-            list.add(value);
-            props.put(key, list);
+    /**
+     * Collects the values in document order, remembering the PID and the
+     * key relative to the PID when a key is seen for the first time.
+     */
+    private static class ValueCollector {
+        private final Map<String, Value> values = new LinkedHashMap<String, Value>();
+        private String rootName;
+        private int pidLength;
+        private Map<String, String> properties;
+        private Map<String, Map<String, String>> propertiesForPids;
+
+        public void setRootName(String rootName) {
+            this.rootName = rootName;
         }
-    }
 
-    private Set<String> getPidPrefixes(Set<String> keys) {
-        Set<String> ret = new HashSet<String>();
-        for (String key : keys) {
-            String prefix = null;
-            if (key.contains(".")) {
-                prefix = key.substring(0, key.indexOf("."));
+        public void setPidLength(int pidLength) {
+            this.pidLength = pidLength;
+        }
+
+        public void add(StringBuilder path, int depth, String suffix, String text) {
+            String key;
+            if (depth == 1) {
+                key = suffix != null ? rootName + suffix : rootName;
+            } else {
+                key = suffix != null ? path.toString() + suffix : path.toString();
             }
-            if (prefix != null) {
-                ret.add(prefix);
+            Value value = values.get(key);
+            if (value == null) {
+                value = new Value();
+                if (depth > 2) {
+                    value.pid = path.substring(0, pidLength);
+                    value.relativeKey = key.substring(pidLength + 1);
+                }
+                values.put(key, value);
             }
+            value.add(text);
+        }
 
+        public void flatten() {
+            properties = new HashMap<String, String>(values.size() * 2);
+            propertiesForPids = new HashMap<String, Map<String, String>>();
+            String currentPid = null;
+            Map<String, String> currentPidProperties = null;
+            for (Map.Entry<String, Value> entry : values.entrySet()) {
+                Value value = entry.getValue();
+                if (value.pid != null && !value.pid.equals(currentPid)) {
+                    currentPid = value.pid;
+                    currentPidProperties = propertiesForPids.get(currentPid);
+                    if (currentPidProperties == null) {
+                        currentPidProperties = new HashMap<String, String>();
+                        propertiesForPids.put(currentPid, currentPidProperties);
+                    }
+                }
+                if (value.values == null) {
+                    properties.put(entry.getKey(), value.first);
+                    if (value.pid != null) {
+                        currentPidProperties.put(value.relativeKey, value.first);
+                    }
+                } else {
+                    for (int i = 0; i < value.values.size(); i++) {
+                        String suffix = "{" + (i + 1) + "}";
+                        properties.put(entry.getKey() + suffix, value.values.get(i));
+                        if (value.pid != null) {
+                            currentPidProperties.put(value.relativeKey + suffix, value.values.get(i));
+                        }
+                    }
+                }
+            }
+            for (Map.Entry<String, Map<String, String>> entry : propertiesForPids.entrySet()) {
+                entry.setValue(Collections.unmodifiableMap(entry.getValue()));
+            }
+            properties = Collections.unmodifiableMap(properties);
+            propertiesForPids = Collections.unmodifiableMap(propertiesForPids);
         }
-        return ret;
     }
-    private Set<String> getKeysForPid(Set<String> keys, String prefix) {
-        Set<String> ret = new HashSet<String>();
-        for (String key : keys) {
-            if (key.startsWith(prefix)) {
-                ret.add(key);
+
+    private static class Value {
+        private String pid;
+        private String relativeKey;
+        private String first;
+        private List<String> values;
+
+        public void add(String text) {
+            if (first == null && values == null) {
+                first = text;
+                return;
+            }
+            if (values == null) {
+                values = new ArrayList<String>(4);
+                values.add(first);
+                first = null;
             }
+            values.add(text);
         }
-        return ret;
     }
 }
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.configuration;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConfigurationDeliveryQueueTest {
+    private RecordingDelivery delivery;
+    private ConfigurationDeliveryQueue queue;
+
+    @Before
+    public void setUp() {
+        delivery = new RecordingDelivery();
+        queue = new ConfigurationDeliveryQueue(delivery, new ConfigurationFingerprints(), 2);
+    }
+
+    @After
+    public void tearDown() {
+        delivery.release.countDown();
+        queue.shutdown();
+    }
+
+    @Test
+    public void test1UnchangedConfigurationIsSkipped() throws Exception {
+        delivery.release.countDown();
+        queue.submit("pid1", configuration("value1"));
+        assertTrue(queue.awaitDelivery(5, TimeUnit.SECONDS));
+        queue.submit("pid1", configuration("value1"));
+        assertTrue(queue.awaitDelivery(5, TimeUnit.SECONDS));
+        assertEquals(1, delivery.getDeliveries("pid1").size());
+
+        queue.submit("pid1", configuration("value2"));
+        assertTrue(queue.awaitDelivery(5, TimeUnit.SECONDS));
+        assertEquals(2, delivery.getDeliveries("pid1").size());
+    }
+
+    @Test
+    public void test2RapidUpdatesAreCoalesced() throws Exception {
+        queue.submit("pid1", configuration("value0"));
+        // the worker is blocked delivering value0, the following updates queue up
+        assertTrue(delivery.started.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 100; i++) {
+            queue.submit("pid1", configuration("value" + i));
+        }
+        delivery.release.countDown();
+        assertTrue(queue.awaitDelivery(5, TimeUnit.SECONDS));
+        List<Map<String, ?>> deliveries = delivery.getDeliveries("pid1");
+        assertEquals(2, deliveries.size());
+        assertEquals("value100", deliveries.get(1).get("key"));
+    }
+
+    @Test
+    public void test3RemovalIsDelivered() throws Exception {
+        delivery.release.countDown();
+        queue.submit("pid1", configuration("value1"));
+        queue.submit("pid2", configuration("value1"));
+        assertTrue(queue.awaitDelivery(5, TimeUnit.SECONDS));
+        queue.submit("pid1", null);
+        assertTrue(queue.awaitDelivery(5, TimeUnit.SECONDS));
+        List<Map<String, ?>> deliveries = delivery.getDeliveries("pid1");
+        assertEquals(2, deliveries.size());
+        assertNull(deliveries.get(1));
+        assertEquals(1, delivery.getDeliveries("pid2").size());
+    }
+
+    @Test
+    public void test4OutcomeIsReportedToTheSubmitter() throws Exception {
+        queue.submit("pid1", configuration("value0"));
+        assertTrue(delivery.started.await(5, TimeUnit.SECONDS));
+        Future<?> replaced = queue.submit("pid1", configuration("value1"));
+        Future<?> failing = queue.submit("pid1", configuration("fail"));
+        delivery.release.countDown();
+        try {
+            failing.get(5, TimeUnit.SECONDS);
+            fail("The failure of the delivery must be reported");
+        } catch (ExecutionException ex) {
+            assertSame(RecordingDelivery.FAILURE, ex.getCause());
+        }
+        // the replaced update shares the outcome of the update which replaced it
+        assertTrue(replaced.isDone());
+
+        Future<?> delivered = queue.submit("pid1", configuration("value2"));
+        assertNull(delivered.get(5, TimeUnit.SECONDS));
+        assertEquals("value2", delivery.getDeliveries("pid1").get(1).get("key"));
+    }
+
+    private static Map<String, String> configuration(String value) {
+        Map<String, String> configuration = new HashMap<String, String>();
+        configuration.put("key", value);
+        return configuration;
+    }
+
+    private static class RecordingDelivery implements ConfigurationDeliveryQueue.Delivery {
+        private static final Exception FAILURE = new Exception("The delivery failed");
+        private final Map<String, List<Map<String, ?>>> deliveries = new HashMap<String, List<Map<String, ?>>>();
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        public void deliver(String pid, Map<String, ?> configuration) throws Exception {
+            started.countDown();
+            release.await();
+            if (configuration != null && "fail".equals(configuration.get("key"))) {
+                throw FAILURE;
+            }
+            synchronized (deliveries) {
+                List<Map<String, ?>> list = deliveries.get(pid);
+                if (list == null) {
+                    list = new ArrayList<Map<String, ?>>();
+                    deliveries.put(pid, list);
+                }
+                list.add(configuration);
+            }
+        }
+
+        public List<Map<String, ?>> getDeliveries(String pid) {
+            synchronized (deliveries) {
+                List<Map<String, ?>> list = deliveries.get(pid);
+                return list != null ? new ArrayList<Map<String, ?>>(list) : Collections.<Map<String, ?>>emptyList();
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.configuration;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.swordfish.api.configuration.PollableConfigurationSource;
+import org.eclipse.swordfish.core.configuration.xml.XmlConfigurationSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConfigurationSourcePollerTest {
+    private File configurationFile;
+
+    @Before
+    public void setUp() throws Exception {
+        configurationFile = File.createTempFile("swordfish-configuration", ".xml");
+    }
+
+    @After
+    public void tearDown() {
+        configurationFile.delete();
+    }
+
+    @Test
+    public void test1DiffReportsChangedAndRemovedPids() {
+        Map<String, Object> previous = new HashMap<String, Object>();
+        previous.put("pid1", configuration("value1"));
+        previous.put("pid2", configuration("value2"));
+        previous.put("pid3", configuration("value3"));
+        Map<String, Object> current = new HashMap<String, Object>();
+        current.put("pid1", configuration("value1"));
+        current.put("pid2", configuration("changed"));
+        current.put("pid4", configuration("value4"));
+
+        Map<String, Object> changed = ConfigurationSourcePoller.diff(previous, current);
+        assertEquals(3, changed.size());
+        assertEquals(configuration("changed"), changed.get("pid2"));
+        assertEquals(configuration("value4"), changed.get("pid4"));
+        assertTrue(changed.containsKey("pid3"));
+        assertNull(changed.get("pid3"));
+    }
+
+    @Test
+    public void test2UnmodifiedFileIsNotReloaded() throws Exception {
+        writeConfiguration("value1");
+        XmlConfigurationSource source = new XmlConfigurationSource();
+        source.setConfigurationPath(configurationFile.toURI().toURL());
+        assertEquals("value1", source.getConfigurations().get("component1").get("property"));
+        assertFalse(source.refresh());
+
+        writeConfiguration("value2");
+        configurationFile.setLastModified(configurationFile.lastModified() + 2000);
+        assertTrue(source.refresh());
+        assertEquals("value2", source.getConfigurations().get("component1").get("property"));
+    }
+
+    @Test
+    public void test3ChangedPidsAreHandedToTheAgent() throws Exception {
+        writeConfiguration("value1");
+        XmlConfigurationSource source = new XmlConfigurationSource();
+        source.setConfigurationPath(configurationFile.toURI().toURL());
+        source.setPollingInterval(20);
+        RecordingAgent agent = new RecordingAgent();
+        ConfigurationSourcePoller poller = new ConfigurationSourcePoller(agent);
+        try {
+            assertTrue(poller.schedule(source, source.getProperties(), source.getConfigurations()));
+            writeConfiguration("value2");
+            configurationFile.setLastModified(configurationFile.lastModified() + 2000);
+            assertTrue(agent.handled.await(5, TimeUnit.SECONDS));
+            assertEquals(1, agent.configurations.size());
+            Map<String, ?> changed = agent.configurations.get(0);
+            assertEquals(1, changed.size());
+            assertTrue(changed.containsKey("component1"));
+        } finally {
+            poller.shutdown();
+        }
+    }
+
+    @Test
+    public void test4SourcesWithoutIntervalAreNotPolled() {
+        ConfigurationSourcePoller poller = new ConfigurationSourcePoller(new RecordingAgent());
+        XmlConfigurationSource source = new XmlConfigurationSource();
+        assertFalse(poller.schedule(source, new HashMap<String, Object>(), null));
+        assertFalse(poller.isScheduled(source));
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(PollableConfigurationSource.POLLING_INTERVAL, "60000");
+        assertTrue(poller.schedule(source, properties, null));
+        poller.shutdown();
+    }
+
+    @Test
+    public void test5SourceReportsOnlyChangedAndRemovedPids() throws Exception {
+        writeConfiguration("value1");
+        XmlConfigurationSource source = new XmlConfigurationSource();
+        source.setConfigurationPath(configurationFile.toURI().toURL());
+        assertEquals(2, source.getChangedConfigurations().size());
+        assertTrue(source.getChangedConfigurations().isEmpty());
+
+        writeDocument("<config><component1><property>value2</property></component1>"
+                + "<component3><property>added</property></component3></config>");
+        configurationFile.setLastModified(configurationFile.lastModified() + 2000);
+        assertTrue(source.refresh());
+        Map<String, ?> changed = source.getChangedConfigurations();
+        assertEquals(3, changed.size());
+        assertEquals("value2", ((Map<?, ?>) changed.get("component1")).get("property"));
+        assertEquals("added", ((Map<?, ?>) changed.get("component3")).get("property"));
+        assertTrue(changed.containsKey("component2"));
+        assertNull(changed.get("component2"));
+
+        writeDocument("<config>\n<component1><property>value2</property></component1>"
+                + "<component3><property>added</property></component3></config>");
+        configurationFile.setLastModified(configurationFile.lastModified() + 2000);
+        assertFalse(source.refresh());
+        assertTrue(source.getChangedConfigurations().isEmpty());
+    }
+
+    private void writeConfiguration(String value) throws Exception {
+        writeDocument("<config><component1><property>" + value + "</property></component1>"
+                + "<component2><property>unchanged</property></component2></config>");
+    }
+
+    private void writeDocument(String document) throws Exception {
+        FileWriter writer = new FileWriter(configurationFile);
+        try {
+            writer.write(document);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static Map<String, String> configuration(String value) {
+        Map<String, String> configuration = new HashMap<String, String>();
+        configuration.put("key", value);
+        return configuration;
+    }
+
+    private static class RecordingAgent implements ConfigurationAgent {
+        private final List<Map<String, ?>> configurations = new ArrayList<Map<String, ?>>();
+        private final CountDownLatch handled = new CountDownLatch(1);
+
+        public void handleConfiguration(Map<String, ?> configurations) {
+            this.configurations.add(configurations);
+            handled.countDown();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.configuration;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.namespace.QName;
+
+import org.eclipse.swordfish.api.SwordfishException;
+import org.eclipse.swordfish.api.configuration.ConfigurationConsumer;
+import org.eclipse.swordfish.api.configuration.ConfigurationSnapshot;
+import org.eclipse.swordfish.api.configuration.TypedConfigurationConsumer;
+import org.junit.Test;
+
+public class ManagedServiceAdapterTest {
+
+    @Test
+    public void test1TypedConsumerReceivesConvertedSnapshot() throws Exception {
+        RecordingConsumer consumer = new RecordingConsumer();
+        Hashtable<String, Object> properties = new Hashtable<String, Object>();
+        properties.put("port", "8192");
+        properties.put("timeout", "30s");
+        properties.put("wsdlStorage", "file:/tmp/wsdl");
+        properties.put("service", "{http://eclipse.org/swordfish}Service");
+        new ManagedServiceAdapter(consumer).updated(properties);
+
+        assertEquals(1, consumer.snapshots.size());
+        ConfigurationSnapshot snapshot = consumer.snapshots.get(0);
+        assertEquals("consumer", snapshot.getId());
+        assertEquals(8192, snapshot.getInt("port", 0));
+        assertEquals(8192L, snapshot.getLong("port", 0));
+        assertEquals(30000L, snapshot.getDuration("timeout", TimeUnit.MILLISECONDS, 0));
+        assertEquals(30L, snapshot.getDuration("timeout", TimeUnit.SECONDS, 0));
+        assertEquals(new URL("file:/tmp/wsdl"), snapshot.getURL("wsdlStorage"));
+        assertSame(snapshot.getURL("wsdlStorage"), snapshot.getURL("wsdlStorage"));
+        assertEquals(new QName("http://eclipse.org/swordfish", "Service"), snapshot.getQName("service"));
+        assertEquals(5, snapshot.getInt("missing", 5));
+        assertNull(snapshot.getURL("missing"));
+        assertTrue(consumer.rawConfigurations.isEmpty());
+    }
+
+    @Test
+    public void test2DeletedConfigurationIsPassedAsNull() throws Exception {
+        RecordingConsumer consumer = new RecordingConsumer();
+        new ManagedServiceAdapter(consumer).updated(null);
+        assertEquals(1, consumer.snapshots.size());
+        assertNull(consumer.snapshots.get(0));
+    }
+
+    @Test
+    public void test3InvalidValueIsReported() throws Exception {
+        RecordingConsumer consumer = new RecordingConsumer();
+        Hashtable<String, Object> properties = new Hashtable<String, Object>();
+        properties.put("timeout", "soon");
+        new ManagedServiceAdapter(consumer).updated(properties);
+        try {
+            consumer.snapshots.get(0).getDuration("timeout", TimeUnit.SECONDS, 0);
+            fail("The value must not be accepted as a duration");
+        } catch (SwordfishException ex) {
+            assertTrue(ex.getMessage().indexOf("timeout") >= 0);
+        }
+    }
+
+    @Test
+    public void test4GreedyProxyReceivesSnapshot() throws Exception {
+        RecordingConsumer consumer = new RecordingConsumer();
+        Hashtable<String, Object> properties = new Hashtable<String, Object>();
+        properties.put("port", "8192");
+        new ManagedServiceAdapter(proxy(consumer, ConfigurationConsumer.class,
+                TypedConfigurationConsumer.class)).updated(properties);
+
+        assertEquals(1, consumer.snapshots.size());
+        assertEquals(8192, consumer.snapshots.get(0).getInt("port", 0));
+        assertTrue(consumer.rawConfigurations.isEmpty());
+    }
+
+    @Test
+    public void test5ProxyOfConsumerInterfaceReceivesMap() throws Exception {
+        RecordingConsumer consumer = new RecordingConsumer();
+        Hashtable<String, Object> properties = new Hashtable<String, Object>();
+        properties.put("port", "8192");
+        new ManagedServiceAdapter(proxy(consumer, ConfigurationConsumer.class)).updated(properties);
+
+        assertTrue(consumer.snapshots.isEmpty());
+        assertEquals(1, consumer.rawConfigurations.size());
+        assertEquals("8192", consumer.rawConfigurations.get(0).get("port"));
+    }
+
+    /**
+     * Stands in for the Spring DM service proxy, which implements only the
+     * given interfaces of the imported service.
+     */
+    private static ConfigurationConsumer<?> proxy(final Object target, Class<?>... interfaces) {
+        return (ConfigurationConsumer<?>) Proxy.newProxyInstance(
+                ManagedServiceAdapterTest.class.getClassLoader(), interfaces, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        return method.invoke(target, args);
+                    }
+                });
+    }
+
+    private static class RecordingConsumer implements TypedConfigurationConsumer<Object> {
+        private final List<ConfigurationSnapshot> snapshots = new ArrayList<ConfigurationSnapshot>();
+        private final List<Map<String, Object>> rawConfigurations = new ArrayList<Map<String, Object>>();
+
+        public String getId() {
+            return "consumer";
+        }
+
+        public void onReceiveConfiguration(Map<String, Object> configuration) {
+            rawConfigurations.add(configuration);
+        }
+
+        public void onReceiveSnapshot(ConfigurationSnapshot snapshot) {
+            snapshots.add(snapshot);
+        }
+    }
+}
@@ -14,6 +14,7 @@ import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.net.URL;
 import java.util.Map;
 
@@ -59,6 +60,34 @@ public class XmlToPropertiesTransformerImplTest {
 
         assertEquals(component2Props.size(), 2);
     }
+    @Test
+    public void test4PidsSharingAPrefix() throws Exception {
+        xmlToPropertiesTransformer.loadConfiguration(toStream("<config>"
+                + "<component1><key>value1</key></component1>"
+                + "<component10><key>value10</key><nested attr=\"a\"><key>n1</key><key>n2</key></nested></component10>"
+                + "</config>"));
+        Map<String, Map<String, String>> propsToPIDs = xmlToPropertiesTransformer.getPropertiesForPids();
+        assertEquals(2, propsToPIDs.size());
+        assertEquals(1, propsToPIDs.get("component1").size());
+        assertEquals("value1", propsToPIDs.get("component1").get("key"));
+        Map<String, String> component10Props = propsToPIDs.get("component10");
+        assertEquals(4, component10Props.size());
+        assertEquals("a", component10Props.get("nested[@attr]"));
+        assertEquals("n2", component10Props.get("nested.key{2}"));
+        assertEquals("n1", xmlToPropertiesTransformer.getProperties().get("component10.nested.key{1}"));
+    }
+    @Test
+    public void test5DottedPid() throws Exception {
+        xmlToPropertiesTransformer.loadConfiguration(toStream("<config>"
+                + "<org.eclipse.swordfish.component><key>value</key></org.eclipse.swordfish.component>"
+                + "</config>"));
+        Map<String, Map<String, String>> propsToPIDs = xmlToPropertiesTransformer.getPropertiesForPids();
+        assertEquals(1, propsToPIDs.size());
+        assertEquals("value", propsToPIDs.get("org.eclipse.swordfish.component").get("key"));
+    }
+    private static ByteArrayInputStream toStream(String xml) throws Exception {
+        return new ByteArrayInputStream(xml.getBytes("UTF-8"));
+    }
     @Test(expected = IllegalStateException.class)
     public void test3ConfigurationNotLoaded() throws Exception {
         xmlToPropertiesTransformer.getPropertiesForPids();
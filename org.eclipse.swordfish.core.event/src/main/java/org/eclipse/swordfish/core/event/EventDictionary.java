@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.swordfish.api.event.Event;
+import org.osgi.service.event.EventConstants;
+
+/**
+ * Read only Dictionary view of a Swordfish event which is handed to the
+ * EventAdmin and to event filters. Lookups read through to the event, nothing
+ * is copied unless the keys are enumerated. The event itself is exposed under
+ * {@link EventConstants#EVENT} and the topic under {@link EventConstants#EVENT_TOPIC}.
+ */
+public class EventDictionary extends Dictionary<String, Object> {
+    private final Event event;
+
+    public EventDictionary(Event event) {
+        this.event = event;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        if (EventConstants.EVENT.equals(key)) {
+            return event;
+        }
+        if (EventConstants.EVENT_TOPIC.equals(key)) {
+            return event.getTopic();
+        }
+        return event.getProperty(key.toString());
+    }
+
+    @Override
+    public Enumeration<String> keys() {
+        return Collections.enumeration(getKeys());
+    }
+
+    @Override
+    public Enumeration<Object> elements() {
+        List<String> keys = getKeys();
+        List<Object> values = new ArrayList<Object>(keys.size());
+        for (String key : keys) {
+            values.add(get(key));
+        }
+        return Collections.enumeration(values);
+    }
+
+    @Override
+    public int size() {
+        return getKeys().size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return false;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        throw new UnsupportedOperationException("The event dictionary is read only");
+    }
+
+    @Override
+    public Object remove(Object key) {
+        throw new UnsupportedOperationException("The event dictionary is read only");
+    }
+
+    private List<String> getKeys() {
+        List<String> keys = new ArrayList<String>();
+        keys.add(EventConstants.EVENT);
+        keys.add(EventConstants.EVENT_TOPIC);
+        Map<String, ?> properties;
+        if (event instanceof EventImpl) {
+            ((EventImpl) event).addFixedPropertyNames(keys);
+            properties = ((EventImpl) event).getPropertiesIfCreated();
+        } else {
+            properties = event.getProperties();
+        }
+        if (properties != null) {
+            for (String key : properties.keySet()) {
+                if (!keys.contains(key)) {
+                    keys.add(key);
+                }
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public String toString() {
+        return "EventDictionary[" + event.getTopic() + "]";
+    }
+}
@@ -0,0 +1,384 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.event;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.swordfish.api.event.Event;
+import org.eclipse.swordfish.api.event.EventHandler;
+import org.eclipse.swordfish.core.util.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * Delivers Swordfish events to the registered handlers without going through
+ * the EventAdmin. Every handler has a bounded queue of its own, so a slow
+ * handler only backs up its own events. The queues are drained on a fixed
+ * number of lanes. The handlers are spread over the lanes in the order they
+ * are added, so handlers of the same topic are drained on different threads
+ * while the events of one handler are still delivered in order. The handlers
+ * sharing a lane still delay each other: a handler which blocks or takes long
+ * holds up the other handlers of its lane. The handlers of the topics listed
+ * in dedicatedTopics are therefore drained on a thread of their own.
+ * <p>
+ * What happens when a queue is full is decided by the {@link OverflowPolicy}
+ * configured for the subscribed topic of the handler.
+ * <p>
+ * The handlers are indexed in a {@link TopicTrie}, the handlers matching a
+ * topic are looked up once and cached until the next handler is added or
+ * removed. The event filters are evaluated as compiled {@link EventPredicate}s.
+ */
+public class EventDispatcher implements InitializingBean, DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(EventDispatcher.class);
+    private static final int MAX_CACHED_TOPICS = 1024;
+    private static final HandlerQueue[] NO_HANDLERS = new HandlerQueue[0];
+
+    private int lanes = 4;
+    private int queueCapacity = 1024;
+    private int batchSize = 64;
+    private int sampleRate = 10;
+    private long blockTimeout = 1000;
+    private OverflowPolicy defaultOverflowPolicy = OverflowPolicy.DROP_OLDEST;
+    private Map<String, OverflowPolicy> overflowPolicies = new HashMap<String, OverflowPolicy>();
+    private Set<String> dedicatedTopics = new HashSet<String>();
+
+    private final List<HandlerQueue> handlers = new CopyOnWriteArrayList<HandlerQueue>();
+    private volatile TopicTrie<HandlerQueue> index = new TopicTrie<HandlerQueue>();
+    private final ConcurrentHashMap<String, HandlerQueue[]> matchCache = new ConcurrentHashMap<String, HandlerQueue[]>();
+    private final AtomicInteger nextLane = new AtomicInteger();
+    private ExecutorService[] executors;
+
+    public void afterPropertiesSet() throws Exception {
+        Assert.isTrue(lanes > 0, "lanes must be positive");
+        Assert.isTrue(queueCapacity > 0, "queueCapacity must be positive");
+        Assert.isTrue(batchSize > 0, "batchSize must be positive");
+        Assert.isTrue(sampleRate > 0, "sampleRate must be positive");
+        Assert.notNull(defaultOverflowPolicy, "defaultOverflowPolicy must be supplied");
+        executors = new ExecutorService[lanes];
+        for (int i = 0; i < lanes; i++) {
+            executors[i] = createLane("Swordfish-event-lane-" + i);
+        }
+    }
+
+    private static ExecutorService createLane(final String name) {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public void destroy() throws Exception {
+        for (HandlerQueue handler : handlers) {
+            handler.close();
+        }
+        handlers.clear();
+        rebuildIndex();
+        if (executors != null) {
+            for (ExecutorService executor : executors) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * @param filter - the compiled event filter of the handler or null to
+     * receive all the events of the subscribed topic
+     */
+    public void addHandler(EventHandler<?> handler, EventPredicate filter) {
+        Assert.notNull(handler);
+        Assert.notNull(handler.getSubscribedTopic());
+        Assert.state(executors != null, "The dispatcher has not been initialized");
+        String topic = handler.getSubscribedTopic();
+        OverflowPolicy policy = overflowPolicies.get(topic);
+        boolean dedicated = dedicatedTopics.contains(topic);
+        HandlerQueue queue = new HandlerQueue(handler, filter, policy != null ? policy : defaultOverflowPolicy,
+                dedicated ? createLane("Swordfish-event-handler-" + topic)
+                        : executors[(nextLane.getAndIncrement() & Integer.MAX_VALUE) % executors.length],
+                dedicated);
+        handlers.add(queue);
+        rebuildIndex();
+    }
+
+    public boolean removeHandler(EventHandler<?> handler) {
+        for (HandlerQueue queue : handlers) {
+            if (queue.handler == handler) {
+                handlers.remove(queue);
+                rebuildIndex();
+                queue.close();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Queues the event for all the handlers subscribed to its topic and returns.
+     * @return the number of handlers the event has been queued for
+     */
+    public int dispatch(Event event) {
+        Assert.notNull(event.getTopic(), "The destination topic must be supplied");
+        int queued = 0;
+        for (HandlerQueue queue : lookup(event.getTopic())) {
+            if ((queue.filter == null || queue.filter.matches(event)) && queue.offer(event)) {
+                queued++;
+            }
+        }
+        return queued;
+    }
+
+    /**
+     * @return true if a handler is subscribed to the topic, the event filters
+     * of the handlers are not taken into account
+     */
+    public boolean hasSubscribers(String topic) {
+        return lookup(topic).length > 0;
+    }
+
+    private HandlerQueue[] lookup(String topic) {
+        HandlerQueue[] matches = matchCache.get(topic);
+        if (matches == null) {
+            TopicTrie<HandlerQueue> current = index;
+            List<HandlerQueue> found = current.match(topic);
+            matches = found.isEmpty() ? NO_HANDLERS : found.toArray(new HandlerQueue[found.size()]);
+            // the result is only cached if the index has not been replaced meanwhile
+            if (matchCache.size() < MAX_CACHED_TOPICS && current == index) {
+                matchCache.put(topic, matches);
+                if (current != index) {
+                    matchCache.remove(topic);
+                }
+            }
+        }
+        return matches;
+    }
+
+    private synchronized void rebuildIndex() {
+        TopicTrie<HandlerQueue> trie = new TopicTrie<HandlerQueue>();
+        for (HandlerQueue queue : handlers) {
+            trie.add(queue.handler.getSubscribedTopic(), queue);
+        }
+        index = trie;
+        matchCache.clear();
+    }
+
+    public List<EventHandlerStatistics> getStatistics() {
+        List<EventHandlerStatistics> statistics = new ArrayList<EventHandlerStatistics>(handlers.size());
+        for (HandlerQueue queue : handlers) {
+            statistics.add(queue.getStatistics());
+        }
+        return statistics;
+    }
+
+    public int getLanes() {
+        return lanes;
+    }
+
+    public void setLanes(int lanes) {
+        this.lanes = lanes;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * @param batchSize - the number of events delivered to a handler before
+     * its lane is handed over to the next handler
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * @param blockTimeout - milliseconds the {@link OverflowPolicy#BLOCK} policy
+     * waits for room in the queue
+     */
+    public void setBlockTimeout(long blockTimeout) {
+        this.blockTimeout = blockTimeout;
+    }
+
+    public OverflowPolicy getDefaultOverflowPolicy() {
+        return defaultOverflowPolicy;
+    }
+
+    public void setDefaultOverflowPolicy(OverflowPolicy defaultOverflowPolicy) {
+        this.defaultOverflowPolicy = defaultOverflowPolicy;
+    }
+
+    public Map<String, OverflowPolicy> getOverflowPolicies() {
+        return overflowPolicies;
+    }
+
+    /**
+     * @param overflowPolicies - overflow policies keyed by the subscribed topic,
+     * handlers of other topics use the default policy
+     */
+    public void setOverflowPolicies(Map<String, OverflowPolicy> overflowPolicies) {
+        this.overflowPolicies = overflowPolicies != null
+            ? overflowPolicies : new HashMap<String, OverflowPolicy>();
+    }
+
+    public Set<String> getDedicatedTopics() {
+        return dedicatedTopics;
+    }
+
+    /**
+     * @param dedicatedTopics - subscribed topics whose handlers are drained on
+     * a thread of their own instead of a shared lane
+     */
+    public void setDedicatedTopics(Set<String> dedicatedTopics) {
+        this.dedicatedTopics = dedicatedTopics != null ? dedicatedTopics : new HashSet<String>();
+    }
+
+    private class HandlerQueue implements Runnable {
+        private final EventHandler handler;
+        private final EventPredicate filter;
+        private final OverflowPolicy policy;
+        private final ExecutorService executor;
+        private final boolean dedicated;
+        private final BlockingQueue<Event> queue = new ArrayBlockingQueue<Event>(queueCapacity);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong sampled = new AtomicLong();
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private volatile boolean closed;
+
+        public HandlerQueue(EventHandler handler, EventPredicate filter, OverflowPolicy policy,
+                ExecutorService executor, boolean dedicated) {
+            this.handler = handler;
+            this.filter = filter;
+            this.policy = policy;
+            this.executor = executor;
+            this.dedicated = dedicated;
+        }
+
+        public boolean offer(Event event) {
+            if (closed) {
+                return false;
+            }
+            boolean queued;
+            switch (policy) {
+            case DROP_OLDEST:
+                queued = queue.offer(event);
+                while (!queued) {
+                    if (queue.poll() != null) {
+                        dropped.incrementAndGet();
+                    }
+                    queued = queue.offer(event);
+                }
+                break;
+            case BLOCK:
+                try {
+                    queued = queue.offer(event, blockTimeout, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    queued = false;
+                }
+                break;
+            case SAMPLE:
+                queued = (queue.size() < queueCapacity / 2 || sampled.incrementAndGet() % sampleRate == 0)
+                    && queue.offer(event);
+                break;
+            default:
+                queued = queue.offer(event);
+            }
+            if (!queued) {
+                dropped.incrementAndGet();
+                LOG.debug("Dropped event for the handler " + handler + " on topic " + event.getTopic());
+            }
+            schedule();
+            return queued;
+        }
+
+        @SuppressWarnings("unchecked")
+        public void run() {
+            try {
+                for (int i = 0; i < batchSize && !closed; i++) {
+                    Event event = queue.poll();
+                    if (event == null) {
+                        break;
+                    }
+                    long start = System.nanoTime();
+                    try {
+                        handler.handleEvent(event);
+                        delivered.incrementAndGet();
+                    } catch (RuntimeException ex) {
+                        failed.incrementAndGet();
+                        LOG.warn("The event handler " + handler + " failed to handle an event on topic " + event.getTopic(), ex);
+                    }
+                    latency.recordValue(System.nanoTime() - start);
+                }
+            } finally {
+                scheduled.set(false);
+            }
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private void schedule() {
+            if (!closed && !queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException ex) {
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        public void close() {
+            closed = true;
+            queue.clear();
+            if (dedicated) {
+                executor.shutdown();
+            }
+        }
+
+        public EventHandlerStatistics getStatistics() {
+            LatencyHistogram copy = new LatencyHistogram();
+            copy.add(latency);
+            return new EventHandlerStatistics(handler, policy, queue.size(), queueCapacity,
+                    delivered.get(), dropped.get(), failed.get(), copy);
+        }
+    }
+}
@@ -0,0 +1,365 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.event;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.eclipse.swordfish.api.event.Event;
+
+/**
+ * Compiles the LDAP style expressions of
+ * {@link org.eclipse.swordfish.api.event.EventFilter}s into predicates which
+ * read the properties straight from the event, so that no Dictionary has to
+ * be built and no string has to be parsed per event.
+ * <p>
+ * The operators <code>&amp; | ! = ~= &gt;= &lt;=</code>, presence and
+ * substring tests are supported. Values are compared according to the type
+ * of the property: numbers numerically, booleans and characters by equality,
+ * everything else as String. The elements of arrays and collections are
+ * compared one by one.
+ */
+public final class EventFilterCompiler {
+
+    private final String expression;
+    private int position;
+
+    private EventFilterCompiler(String expression) {
+        this.expression = expression;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the expression is not a valid filter
+     */
+    public static EventPredicate compile(String expression) {
+        EventFilterCompiler compiler = new EventFilterCompiler(expression);
+        EventPredicate predicate = compiler.parseFilter();
+        compiler.skipWhitespace();
+        if (compiler.position != expression.length()) {
+            throw compiler.error("Unexpected characters after the filter");
+        }
+        return predicate;
+    }
+
+    private EventPredicate parseFilter() {
+        skipWhitespace();
+        expect('(');
+        skipWhitespace();
+        EventPredicate predicate;
+        char c = peek();
+        if (c == '&') {
+            position++;
+            predicate = new And(parseFilterList());
+        } else if (c == '|') {
+            position++;
+            predicate = new Or(parseFilterList());
+        } else if (c == '!') {
+            position++;
+            predicate = new Not(parseFilter());
+        } else {
+            predicate = parseItem();
+        }
+        skipWhitespace();
+        expect(')');
+        return predicate;
+    }
+
+    private EventPredicate[] parseFilterList() {
+        List<EventPredicate> filters = new ArrayList<EventPredicate>();
+        skipWhitespace();
+        while (peek() == '(') {
+            filters.add(parseFilter());
+            skipWhitespace();
+        }
+        if (filters.isEmpty()) {
+            throw error("Empty filter list");
+        }
+        return filters.toArray(new EventPredicate[filters.size()]);
+    }
+
+    private EventPredicate parseItem() {
+        int start = position;
+        while (position < expression.length() && "=<>~()".indexOf(expression.charAt(position)) < 0) {
+            position++;
+        }
+        String attribute = expression.substring(start, position).trim();
+        if (attribute.length() == 0) {
+            throw error("Missing attribute name");
+        }
+        int operator;
+        char c = peek();
+        if (c == '=') {
+            operator = Item.EQUAL;
+            position++;
+        } else if ((c == '~' || c == '>' || c == '<') && position + 1 < expression.length()
+                && expression.charAt(position + 1) == '=') {
+            operator = c == '~' ? Item.APPROX : c == '>' ? Item.GREATER : Item.LESS;
+            position += 2;
+        } else {
+            throw error("Invalid operator");
+        }
+        List<String> parts = new ArrayList<String>();
+        StringBuilder value = new StringBuilder();
+        boolean wildcard = false;
+        while (position < expression.length() && expression.charAt(position) != ')') {
+            c = expression.charAt(position++);
+            if (c == '\\' && position < expression.length()) {
+                value.append(expression.charAt(position++));
+            } else if (c == '*' && operator == Item.EQUAL) {
+                parts.add(value.toString());
+                value.setLength(0);
+                wildcard = true;
+            } else if (c == '(') {
+                throw error("Unescaped parenthesis in value");
+            } else {
+                value.append(c);
+            }
+        }
+        parts.add(value.toString());
+        if (!wildcard) {
+            return new Item(attribute, operator, value.toString());
+        }
+        if (parts.size() == 2 && parts.get(0).length() == 0 && parts.get(1).length() == 0) {
+            return new Present(attribute);
+        }
+        return new Substring(attribute, parts.toArray(new String[parts.size()]));
+    }
+
+    private void skipWhitespace() {
+        while (position < expression.length() && Character.isWhitespace(expression.charAt(position))) {
+            position++;
+        }
+    }
+
+    private char peek() {
+        if (position >= expression.length()) {
+            throw error("Unexpected end of the filter");
+        }
+        return expression.charAt(position);
+    }
+
+    private void expect(char c) {
+        if (peek() != c) {
+            throw error("Expected '" + c + "'");
+        }
+        position++;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + position + " in " + expression);
+    }
+
+    private static class And implements EventPredicate {
+        private final EventPredicate[] filters;
+
+        And(EventPredicate[] filters) {
+            this.filters = filters;
+        }
+
+        public boolean matches(Event event) {
+            for (EventPredicate filter : filters) {
+                if (!filter.matches(event)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class Or implements EventPredicate {
+        private final EventPredicate[] filters;
+
+        Or(EventPredicate[] filters) {
+            this.filters = filters;
+        }
+
+        public boolean matches(Event event) {
+            for (EventPredicate filter : filters) {
+                if (filter.matches(event)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class Not implements EventPredicate {
+        private final EventPredicate filter;
+
+        Not(EventPredicate filter) {
+            this.filter = filter;
+        }
+
+        public boolean matches(Event event) {
+            return !filter.matches(event);
+        }
+    }
+
+    private static class Present implements EventPredicate {
+        private final String attribute;
+
+        Present(String attribute) {
+            this.attribute = attribute;
+        }
+
+        public boolean matches(Event event) {
+            return event.getProperty(attribute) != null;
+        }
+    }
+
+    /**
+     * Base class of the predicates comparing the property with each element
+     * if the property is an array or a collection.
+     */
+    private abstract static class ValuePredicate implements EventPredicate {
+        protected final String attribute;
+
+        ValuePredicate(String attribute) {
+            this.attribute = attribute;
+        }
+
+        public boolean matches(Event event) {
+            Object value = event.getProperty(attribute);
+            if (value == null) {
+                return false;
+            }
+            if (value instanceof Collection) {
+                for (Object element : (Collection<?>) value) {
+                    if (element != null && matchesValue(element)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (value.getClass().isArray()) {
+                int length = Array.getLength(value);
+                for (int i = 0; i < length; i++) {
+                    Object element = Array.get(value, i);
+                    if (element != null && matchesValue(element)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            return matchesValue(value);
+        }
+
+        protected abstract boolean matchesValue(Object value);
+    }
+
+    private static class Item extends ValuePredicate {
+        static final int EQUAL = 0;
+        static final int APPROX = 1;
+        static final int GREATER = 2;
+        static final int LESS = 3;
+
+        private final int operator;
+        private final String operand;
+        private final String approxOperand;
+        private final Long longOperand;
+        private final Double doubleOperand;
+
+        Item(String attribute, int operator, String operand) {
+            super(attribute);
+            this.operator = operator;
+            this.operand = operand;
+            approxOperand = approximate(operand);
+            Long longValue = null;
+            Double doubleValue = null;
+            try {
+                longValue = Long.valueOf(operand.trim());
+            } catch (NumberFormatException ex) {
+                // not an integral operand
+            }
+            try {
+                doubleValue = Double.valueOf(operand.trim());
+            } catch (NumberFormatException ex) {
+                // not a numeric operand
+            }
+            longOperand = longValue;
+            doubleOperand = doubleValue;
+        }
+
+        @Override
+        protected boolean matchesValue(Object value) {
+            if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+                return longOperand != null && compare(Long.valueOf(((Number) value).longValue()).compareTo(longOperand));
+            }
+            if (value instanceof Double || value instanceof Float) {
+                return doubleOperand != null && compare(Double.compare(((Number) value).doubleValue(), doubleOperand));
+            }
+            if (value instanceof Boolean) {
+                return (operator == EQUAL || operator == APPROX)
+                    && value.equals(Boolean.valueOf(operand.trim()));
+            }
+            if (value instanceof Character) {
+                return operand.length() == 1 && compare(((Character) value).compareTo(operand.charAt(0)));
+            }
+            String string = value.toString();
+            if (operator == APPROX) {
+                return approximate(string).equals(approxOperand);
+            }
+            return compare(string.compareTo(operand));
+        }
+
+        private boolean compare(int comparison) {
+            switch (operator) {
+            case GREATER:
+                return comparison >= 0;
+            case LESS:
+                return comparison <= 0;
+            default:
+                return comparison == 0;
+            }
+        }
+
+        private static String approximate(String value) {
+            StringBuilder result = new StringBuilder(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (!Character.isWhitespace(c)) {
+                    result.append(Character.toLowerCase(c));
+                }
+            }
+            return result.toString();
+        }
+    }
+
+    private static class Substring extends ValuePredicate {
+        private final String[] parts;
+
+        Substring(String attribute, String[] parts) {
+            super(attribute);
+            this.parts = parts;
+        }
+
+        @Override
+        protected boolean matchesValue(Object value) {
+            String string = value.toString();
+            String first = parts[0];
+            if (!string.startsWith(first)) {
+                return false;
+            }
+            int position = first.length();
+            for (int i = 1; i < parts.length - 1; i++) {
+                int index = string.indexOf(parts[i], position);
+                if (index < 0) {
+                    return false;
+                }
+                position = index + parts[i].length();
+            }
+            String last = parts[parts.length - 1];
+            return string.length() - position >= last.length() && string.endsWith(last);
+        }
+    }
+}
@@ -28,9 +28,23 @@ public class EventHandlerRegistry<T extends Event> extends RegistryImpl<EventHan
     
     private BundleContext bundleContext;
     
+    private EventDispatcher eventDispatcher;
+
     public void setBundleContext(BundleContext bundleContext) {
         this.bundleContext = bundleContext;
     }
+
+    public EventDispatcher getEventDispatcher() {
+        return eventDispatcher;
+    }
+
+    /**
+     * Handlers are registered with the dispatcher instead of the EventAdmin
+     * if one is supplied.
+     */
+    public void setEventDispatcher(EventDispatcher eventDispatcher) {
+        this.eventDispatcher = eventDispatcher;
+    }
     
     protected ConcurrentHashMap<EventHandler<T>, ServiceRegistration> registrations = new ConcurrentHashMap<EventHandler<T>, ServiceRegistration>();
    
@@ -41,6 +55,12 @@ public class EventHandlerRegistry<T extends Event> extends RegistryImpl<EventHan
         LOG.info("Registering event listener for [" + handler.getSubscribedTopic() + "] topic");
         
         Assert.notNull(handler.getSubscribedTopic());
+
+        if (eventDispatcher != null) {
+            eventDispatcher.addHandler(handler, createFilter(handler));
+            super.doRegister(handler, properties);
+            return;
+        }
         
         Dictionary<String, Object> props = getEventHanlderProperties(handler);
 
@@ -53,6 +73,11 @@ public class EventHandlerRegistry<T extends Event> extends RegistryImpl<EventHan
     }
     
     protected void doUnregister(EventHandler<T> key, Map<String, ?> properties) throws Exception {
+        if (eventDispatcher != null) {
+            eventDispatcher.removeHandler(key);
+            super.doUnregister(key, properties);
+            return;
+        }
         ServiceRegistration serviceRegistration = registrations.get(key);
         Assert.notNull(serviceRegistration, "serviceRegistration for the event listener with topic = ["+ key.getSubscribedTopic() + "] can not be found");
         serviceRegistration.unregister();
@@ -66,6 +91,13 @@ public class EventHandlerRegistry<T extends Event> extends RegistryImpl<EventHan
         super.doDestroy();
     }
     
+    protected EventPredicate createFilter(EventHandler<T> handler) throws Exception {
+        if (handler.getEventFilter() == null) {
+            return null;
+        }
+        return EventFilterCompiler.compile(handler.getEventFilter().getExpression());
+    }
+
     protected Dictionary<String, Object> getEventHanlderProperties(EventHandler<T> handler){
         Dictionary<String, Object> props = new Hashtable<String, Object>();
         props.put(EventConstants.EVENT_TOPIC, handler.getSubscribedTopic());
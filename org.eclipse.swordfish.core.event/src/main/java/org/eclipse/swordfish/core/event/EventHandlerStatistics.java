@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.event;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.swordfish.api.event.EventHandler;
+import org.eclipse.swordfish.core.util.LatencyHistogram;
+
+/**
+ * Snapshot of the queue and latency figures of one handler registered with
+ * the {@link EventDispatcher}.
+ */
+public class EventHandlerStatistics {
+    private final EventHandler<?> handler;
+    private final OverflowPolicy overflowPolicy;
+    private final int queueDepth;
+    private final int queueCapacity;
+    private final long deliveredCount;
+    private final long droppedCount;
+    private final long failedCount;
+    private final LatencyHistogram latency;
+
+    public EventHandlerStatistics(EventHandler<?> handler, OverflowPolicy overflowPolicy, int queueDepth,
+            int queueCapacity, long deliveredCount, long droppedCount, long failedCount, LatencyHistogram latency) {
+        this.handler = handler;
+        this.overflowPolicy = overflowPolicy;
+        this.queueDepth = queueDepth;
+        this.queueCapacity = queueCapacity;
+        this.deliveredCount = deliveredCount;
+        this.droppedCount = droppedCount;
+        this.failedCount = failedCount;
+        this.latency = latency;
+    }
+
+    public EventHandler<?> getHandler() {
+        return handler;
+    }
+
+    public String getTopic() {
+        return handler.getSubscribedTopic();
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public long getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * @return the time spent in handleEvent in nanoseconds
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s [%s] queue=%d/%d delivered=%d dropped=%d failed=%d latency(us): %s",
+                handler.getClass().getName(), getTopic(), queueDepth, queueCapacity, deliveredCount,
+                droppedCount, failedCount, latency.toSummaryString(TimeUnit.MICROSECONDS));
+    }
+}
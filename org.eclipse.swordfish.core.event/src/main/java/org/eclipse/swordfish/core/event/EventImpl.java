@@ -10,27 +10,54 @@
  *******************************************************************************/
 package org.eclipse.swordfish.core.event;
 
-import java.util.Hashtable;
+import java.util.Collection;
+import java.util.Dictionary;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.swordfish.api.event.Event;
+import org.osgi.service.event.EventConstants;
 
-
+/**
+ * Base Swordfish event. The topic and the creation time are held in fields,
+ * the map for additional properties is only created when the first property
+ * is set. Subclasses keep their well known properties in fields as well and
+ * expose them through {@link #getFixedProperty(String)}.
+ */
 public class EventImpl implements Event {
 
     private String topic;
-    private Map<String, Object>  properties = new Hashtable<String, Object>();
+    private final long timestamp = System.currentTimeMillis();
+    private Map<String, Object> properties;
     
     public Object getProperty(String key){
+        Object value = getFixedProperty(key);
+        if (value != null || properties == null) {
+            return value;
+        }
         return properties.get(key);
     }
     
     public void setProperty(String key, Object value) {
+        if (value == null) {
+            if (properties != null) {
+                properties.remove(key);
+            }
+            return;
+        }
+        if (properties == null) {
+            properties = new HashMap<String, Object>(4);
+        }
         properties.put(key, value);
     }
     
+    /**
+     * @return the additional properties, the properties held in fields are not contained
+     */
     public Map<String, Object> getProperties() {
+        if (properties == null) {
+            properties = new HashMap<String, Object>(4);
+        }
         return properties;
     }
     
@@ -45,4 +72,36 @@ public class EventImpl implements Event {
     public void setTopic(String topic){
         this.topic = topic;
     }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    Map<String, Object> getPropertiesIfCreated() {
+        return properties;
+    }
+
+    /**
+     * @return a Dictionary reading through to this event
+     */
+    public Dictionary<String, Object> asDictionary() {
+        return new EventDictionary(this);
+    }
+
+    /**
+     * @return the value of a property held in a field or null
+     */
+    protected Object getFixedProperty(String key) {
+        if (EventConstants.TIMESTAMP.equals(key)) {
+            return timestamp;
+        }
+        return null;
+    }
+
+    /**
+     * Adds the names of the properties returned by {@link #getFixedProperty(String)}.
+     */
+    protected void addFixedPropertyNames(Collection<String> names) {
+        names.add(EventConstants.TIMESTAMP);
+    }
 }
@@ -11,11 +11,13 @@
 package org.eclipse.swordfish.core.event;
 
 import java.util.Dictionary;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.swordfish.api.event.Event;
 import org.eclipse.swordfish.api.event.EventService;
-import org.eclipse.swordfish.core.util.MapBasedDictionary;
 import org.osgi.service.event.EventAdmin;
+import org.osgi.service.event.EventConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
@@ -25,6 +27,11 @@ public class EventServiceImpl implements EventService {
     private static final Logger LOG = LoggerFactory.getLogger(EventServiceImpl.class);
 
     private EventAdmin eventAdmin;
+    private EventDispatcher eventDispatcher;
+    private boolean forwardToEventAdmin = true;
+    private boolean trackEventAdminHandlers;
+    private final Map<Object, Object> eventAdminHandlers = new ConcurrentHashMap<Object, Object>();
+    private volatile TopicTrie<Object> eventAdminTopics = new TopicTrie<Object>();
 
     public EventAdmin getEventAdmin() {
         return eventAdmin;
@@ -34,14 +41,100 @@ public class EventServiceImpl implements EventService {
         this.eventAdmin = eventAdmin;
     }
 
+    public EventDispatcher getEventDispatcher() {
+        return eventDispatcher;
+    }
+
+    /**
+     * Events are delivered to the Swordfish handlers by the dispatcher if one
+     * is supplied, the EventAdmin is then only used for foreign OSGi handlers.
+     */
+    public void setEventDispatcher(EventDispatcher eventDispatcher) {
+        this.eventDispatcher = eventDispatcher;
+    }
+
+    public boolean isForwardToEventAdmin() {
+        return forwardToEventAdmin;
+    }
+
+    public void setForwardToEventAdmin(boolean forwardToEventAdmin) {
+        this.forwardToEventAdmin = forwardToEventAdmin;
+    }
+
+    public boolean isTrackEventAdminHandlers() {
+        return trackEventAdminHandlers;
+    }
+
+    /**
+     * @param trackEventAdminHandlers - true if the OSGi event handlers are
+     * reported through {@link #bindEventAdminHandler(Object, Map)}, so that
+     * their topics are known to {@link #hasSubscribers(String)}
+     */
+    public void setTrackEventAdminHandlers(boolean trackEventAdminHandlers) {
+        this.trackEventAdminHandlers = trackEventAdminHandlers;
+    }
+
+    public void bindEventAdminHandler(Object handler, Map properties) {
+        if (handler != null && properties != null && properties.get(EventConstants.EVENT_TOPIC) != null) {
+            eventAdminHandlers.put(handler, properties.get(EventConstants.EVENT_TOPIC));
+            rebuildEventAdminTopics();
+        }
+    }
+
+    public void unbindEventAdminHandler(Object handler, Map properties) {
+        if (handler != null && eventAdminHandlers.remove(handler) != null) {
+            rebuildEventAdminTopics();
+        }
+    }
+
+    private synchronized void rebuildEventAdminTopics() {
+        TopicTrie<Object> trie = new TopicTrie<Object>();
+        for (Map.Entry<Object, Object> entry : eventAdminHandlers.entrySet()) {
+            Object topics = entry.getValue();
+            if (topics instanceof String[]) {
+                for (String topic : (String[]) topics) {
+                    trie.add(topic, entry.getKey());
+                }
+            } else {
+                trie.add(topics.toString(), entry.getKey());
+            }
+        }
+        eventAdminTopics = trie;
+    }
+
+    /**
+     * Without a dispatcher, or while events are forwarded to an EventAdmin
+     * whose handlers are not tracked, the subscribers are not known and true
+     * is returned.
+     */
+    public boolean hasSubscribers(String topic) {
+        if (eventDispatcher == null) {
+            return true;
+        }
+        if (forwardToEventAdmin && eventAdmin != null) {
+            if (!trackEventAdminHandlers) {
+                return true;
+            }
+            if (!eventAdminTopics.match(topic).isEmpty()) {
+                return true;
+            }
+        }
+        return eventDispatcher.hasSubscribers(topic);
+    }
+
     public void postEvent(Event swordfishEvent) {
         LOG.debug("Sending event to topic ["+swordfishEvent.getTopic()+"]");
         Assert.notNull(swordfishEvent.getTopic(), "The destination topic must be supplied");
+        if (eventDispatcher != null) {
+            eventDispatcher.dispatch(swordfishEvent);
+            if (eventAdmin == null || !forwardToEventAdmin) {
+                return;
+            }
+        }
         Assert.notNull(eventAdmin, "The EventAdmin service must be supplied");
         
-        Dictionary properties = new MapBasedDictionary(swordfishEvent.getProperties());
-        properties.put(org.osgi.service.event.EventConstants.EVENT, swordfishEvent);
-        
+        // the OSGi event copies the properties, the dictionary only reads through
+        Dictionary properties = new EventDictionary(swordfishEvent);
         org.osgi.service.event.Event event = 
             new org.osgi.service.event.Event(swordfishEvent.getTopic(), properties);
         eventAdmin.postEvent(event);
@@ -0,0 +1,38 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.event;
+
+/**
+ * Decides what the {@link EventDispatcher} does with an event when the queue
+ * of a handler is full.
+ */
+public enum OverflowPolicy {
+    /**
+     * Discards the oldest queued event to make room for the new one.
+     */
+    DROP_OLDEST,
+    /**
+     * Discards the new event.
+     */
+    DROP_NEWEST,
+    /**
+     * Blocks the posting thread until there is room in the queue or the
+     * block timeout of the dispatcher has elapsed, the event is discarded
+     * after the timeout.
+     */
+    BLOCK,
+    /**
+     * Enqueues only every n-th event once the queue is half full, n being
+     * the sample rate of the dispatcher. Events are discarded when the queue
+     * is full.
+     */
+    SAMPLE
+}
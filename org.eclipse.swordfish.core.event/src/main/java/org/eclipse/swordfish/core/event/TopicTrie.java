@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.event;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of subscriptions by topic. Topics are split into their slash
+ * separated segments, a subscription ending with <code>*</code> matches all
+ * the topics below its prefix, a single <code>*</code> matches every topic,
+ * following the topic syntax of the OSGi EventAdmin.
+ * <p>
+ * The trie is not thread safe, it is meant to be rebuilt on modification and
+ * published to the readers afterwards.
+ */
+public class TopicTrie<T> {
+    private final Node<T> root = new Node<T>();
+
+    public void add(String topic, T value) {
+        Node<T> node = root;
+        int start = 0;
+        while (true) {
+            if (start == topic.length() - 1 && topic.charAt(start) == '*') {
+                node.wildcard.add(value);
+                return;
+            }
+            int end = topic.indexOf('/', start);
+            String segment = end < 0 ? topic.substring(start) : topic.substring(start, end);
+            Node<T> child = node.children.get(segment);
+            if (child == null) {
+                child = new Node<T>();
+                node.children.put(segment, child);
+            }
+            node = child;
+            if (end < 0) {
+                node.exact.add(value);
+                return;
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * @return the values subscribed to the topic, the values of wildcard
+     * subscriptions come before the exact ones
+     */
+    public List<T> match(String topic) {
+        List<T> matches = new ArrayList<T>();
+        Node<T> node = root;
+        int start = 0;
+        while (node != null) {
+            matches.addAll(node.wildcard);
+            int end = topic.indexOf('/', start);
+            node = node.children.get(end < 0 ? topic.substring(start) : topic.substring(start, end));
+            if (end < 0) {
+                if (node != null) {
+                    matches.addAll(node.exact);
+                }
+                break;
+            }
+            start = end + 1;
+        }
+        return matches;
+    }
+
+    public boolean isEmpty() {
+        return root.isEmpty();
+    }
+
+    private static class Node<T> {
+        private final Map<String, Node<T>> children = new HashMap<String, Node<T>>();
+        private final List<T> exact = new ArrayList<T>(1);
+        private final List<T> wildcard = new ArrayList<T>(1);
+
+        boolean isEmpty() {
+            return children.isEmpty() && exact.isEmpty() && wildcard.isEmpty();
+        }
+    }
+}
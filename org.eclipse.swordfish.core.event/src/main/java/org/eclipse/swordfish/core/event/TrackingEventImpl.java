@@ -10,37 +10,168 @@
  *******************************************************************************/
 package org.eclipse.swordfish.core.event;
 
+import java.util.Collection;
+
+import javax.jbi.messaging.ExchangeStatus;
 import javax.jbi.messaging.MessageExchange;
+import javax.jbi.messaging.NormalizedMessage;
+import javax.jbi.messaging.MessageExchange.Role;
+import javax.xml.namespace.QName;
+import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
 
 import org.eclipse.swordfish.api.event.EventConstants;
+import org.eclipse.swordfish.api.event.Severity;
 import org.eclipse.swordfish.api.event.TrackingEvent;
+import org.eclipse.swordfish.core.util.JbiConstants;
+import org.eclipse.swordfish.core.util.xml.StringSource;
+import org.eclipse.swordfish.core.util.xml.XmlUtil;
 
+/**
+ * Tracking event keeping the state the exchange had when the event was
+ * created. The handlers run later on the dispatcher threads, by then the
+ * exchange may have moved on, so they should use the getters of the event
+ * rather than read the exchange itself.
+ */
 public class TrackingEventImpl extends EventImpl implements TrackingEvent {
 
-	private MessageExchange exchange;
+	private final MessageExchange exchange;
+	private final int messageExchangeId;
+	private final String exchangeId;
+	private final Role role;
+	private final ExchangeStatus status;
+	private final QName service;
+	private final QName operation;
+	private final long elapsed;
+	private final String payload;
+	private int severity = Severity.NONE;
 	
     public TrackingEventImpl(MessageExchange exchange) {
+		this(exchange, false);
+	}
+
+    /**
+     * @param withPayload - whether the message content is copied into the
+     *  event, only contents which can be read again without consuming them are
+     */
+    public TrackingEventImpl(MessageExchange exchange, boolean withPayload) {
 		super();
 		this.exchange = exchange;
+		if (exchange == null) {
+			messageExchangeId = -1;
+			exchangeId = null;
+			role = null;
+			status = null;
+			service = null;
+			operation = null;
+			elapsed = -1;
+			payload = null;
+			return;
+		}
+		exchangeId = exchange.getExchangeId();
+		Object sequence = exchange.getProperty(JbiConstants.EXCHANGE_SEQUENCE);
+		if (sequence instanceof Integer) {
+			messageExchangeId = (Integer) sequence;
+		} else {
+			messageExchangeId = exchangeId != null ? exchangeId.hashCode() : -1;
+		}
+		role = exchange.getRole();
+		status = exchange.getStatus();
+		service = exchange.getService();
+		operation = exchange.getOperation();
+		Object start = exchange.getProperty(TrackingSampler.START_PROPERTY);
+		elapsed = start instanceof Long ? System.nanoTime() - (Long) start : -1;
+		payload = withPayload ? readPayload(exchange) : null;
+	}
+
+	private static String readPayload(MessageExchange exchange) {
+		NormalizedMessage message = exchange.getMessage("out");
+		if (message == null) {
+			message = exchange.getMessage("in");
+		}
+		Source content = message != null ? message.getContent() : null;
+		if (content instanceof StringSource || content instanceof DOMSource) {
+			return XmlUtil.toString(content);
+		}
+		return null;
 	}
 
 	public String getTopic() {
        return EventConstants.TOPIC_TRACKING_EVENT;
     }
 
+    /**
+     * Returns the sequence number assigned to the exchange when it has been
+     * sent, or the hash code of the exchange id if it has not been correlated.
+     */
     public int getMessageExchangeId() {
-        throw new UnsupportedOperationException("method not implemented yet");
+        return messageExchangeId;
     }
 
+	public String getExchangeId() {
+		return exchangeId;
+	}
+
+	public Role getRole() {
+		return role;
+	}
+
+	public ExchangeStatus getStatus() {
+		return status;
+	}
+
+	public QName getService() {
+		return service;
+	}
+
+	public QName getOperation() {
+		return operation;
+	}
+
+	/**
+	 * @return the nanoseconds since the sampler first saw the exchange, -1
+	 *  if the sampler does not stamp the exchanges with
+	 *  {@link TrackingSampler#START_PROPERTY}
+	 */
+	public long getElapsed() {
+		return elapsed;
+	}
+
+	/**
+	 * @return the message content, <code>null</code> if it has not been
+	 *  copied into the event
+	 */
+	public String getPayload() {
+		return payload;
+	}
+
 	public int getSeverity() {
-		return (Integer)getProperty(EventConstants.EVENT_SEVERITY);
+		return severity;
 	}
 
 	public void setSeverity(int severity) {
-		setProperty(EventConstants.EVENT_SEVERITY, severity);
+		this.severity = severity;
 	}
 
+	/**
+	 * @return the live exchange, which may have changed since the event
+	 *  was created
+	 */
 	public MessageExchange getExchange() {
 		return exchange;
 	}
+
+	@Override
+	protected Object getFixedProperty(String key) {
+		if (EventConstants.EVENT_SEVERITY.equals(key)) {
+			return severity;
+		}
+		return super.getFixedProperty(key);
+	}
+
+	@Override
+	protected void addFixedPropertyNames(Collection<String> names) {
+		super.addFixedPropertyNames(names);
+		names.add(EventConstants.EVENT_SEVERITY);
+	}
 }
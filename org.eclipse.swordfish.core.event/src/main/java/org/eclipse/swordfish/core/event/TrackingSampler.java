@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.event;
+
+import javax.jbi.messaging.MessageExchange;
+
+/**
+ * Decides whether a tracking event is posted for a message exchange. The
+ * sampler is asked every time the exchange passes the Swordfish exchange
+ * listener, before any event object is created, and may keep its state in
+ * the properties of the exchange.
+ */
+public interface TrackingSampler {
+
+    /**
+     * Name of the exchange property a sampler may set to the
+     * {@link System#nanoTime()} it has first seen the exchange at, tracking
+     * events report the time elapsed since.
+     */
+    String START_PROPERTY = "org.eclipse.swordfish.tracking.start";
+
+    /**
+     * @return true if the exchange in its current state is to be tracked
+     */
+    boolean sample(MessageExchange exchange);
+}
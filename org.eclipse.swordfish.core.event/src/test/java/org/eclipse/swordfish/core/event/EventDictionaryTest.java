@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.event;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.List;
+
+import org.eclipse.swordfish.api.event.EventConstants;
+import org.eclipse.swordfish.api.event.Severity;
+import org.junit.Test;
+
+public class EventDictionaryTest {
+
+    @Test
+    public void test1FixedFieldsAreReadThrough() {
+        TrackingEventImpl event = new TrackingEventImpl(null);
+        event.setSeverity(Severity.ERROR);
+        Dictionary<String, Object> dictionary = event.asDictionary();
+
+        assertSame(event, dictionary.get(org.osgi.service.event.EventConstants.EVENT));
+        assertEquals(EventConstants.TOPIC_TRACKING_EVENT, dictionary.get(org.osgi.service.event.EventConstants.EVENT_TOPIC));
+        assertEquals(Severity.ERROR, dictionary.get(EventConstants.EVENT_SEVERITY));
+        assertEquals(event.getTimestamp(), dictionary.get(org.osgi.service.event.EventConstants.TIMESTAMP));
+        assertNull(event.getPropertiesIfCreated());
+
+        event.setSeverity(Severity.DEBUG);
+        assertEquals(Severity.DEBUG, dictionary.get(EventConstants.EVENT_SEVERITY));
+    }
+
+    @Test
+    public void test2AdditionalPropertiesAreEnumerated() {
+        EventImpl event = new EventImpl();
+        event.setTopic("org/eclipse/swordfish/test");
+        event.setProperty("key", "value");
+        Dictionary<String, Object> dictionary = event.asDictionary();
+
+        assertEquals("value", dictionary.get("key"));
+        List<String> keys = Collections.list(dictionary.keys());
+        assertTrue(keys.contains("key"));
+        assertTrue(keys.contains(org.osgi.service.event.EventConstants.TIMESTAMP));
+        assertEquals(keys.size(), dictionary.size());
+        assertEquals(keys.size(), new ArrayList<Object>(Collections.list(dictionary.elements())).size());
+
+        event.setProperty("key", null);
+        assertNull(dictionary.get("key"));
+    }
+
+    @Test
+    public void test3DictionaryIsReadOnly() {
+        EventImpl event = new EventImpl();
+        try {
+            event.asDictionary().put("key", "value");
+            fail("The dictionary must not be modifiable");
+        } catch (UnsupportedOperationException ex) {
+            assertNull(event.getProperty("key"));
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.event;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.swordfish.api.event.Event;
+import org.eclipse.swordfish.api.event.EventFilter;
+import org.eclipse.swordfish.api.event.EventHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EventDispatcherTest {
+    private static final String SLOW_TOPIC = "org/eclipse/swordfish/test/slow";
+    private static final String FAST_TOPIC = "org/eclipse/swordfish/test/fast";
+
+    private EventDispatcher dispatcher;
+
+    @Before
+    public void setUp() throws Exception {
+        dispatcher = new EventDispatcher();
+        dispatcher.setLanes(2);
+        dispatcher.setQueueCapacity(4);
+        dispatcher.getOverflowPolicies().put(SLOW_TOPIC, OverflowPolicy.DROP_NEWEST);
+        dispatcher.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        dispatcher.destroy();
+    }
+
+    @Test
+    public void test1SlowHandlerDoesNotStallOtherTopics() throws Exception {
+        RecordingHandler slow = new RecordingHandler(SLOW_TOPIC, 1);
+        slow.release = new CountDownLatch(1);
+        RecordingHandler fast = new RecordingHandler(FAST_TOPIC, 4);
+        dispatcher.addHandler(slow, null);
+        dispatcher.addHandler(fast, null);
+
+        dispatcher.dispatch(event(SLOW_TOPIC, 0));
+        for (int i = 0; i < 4; i++) {
+            dispatcher.dispatch(event(FAST_TOPIC, i));
+        }
+        assertTrue(fast.received.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, fast.events.get(i).getProperty("sequence"));
+        }
+        slow.release.countDown();
+        assertTrue(slow.received.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void test2OverflowPolicyIsAppliedPerTopic() throws Exception {
+        RecordingHandler slow = new RecordingHandler(SLOW_TOPIC, 5);
+        slow.release = new CountDownLatch(1);
+        dispatcher.addHandler(slow, null);
+
+        int queued = 0;
+        for (int i = 0; i < 10; i++) {
+            queued += dispatcher.dispatch(event(SLOW_TOPIC, i));
+        }
+        // one event is being handled, four are queued, the rest is dropped
+        assertTrue(queued >= 4 && queued <= 5);
+        EventHandlerStatistics statistics = dispatcher.getStatistics().get(0);
+        assertEquals(OverflowPolicy.DROP_NEWEST, statistics.getOverflowPolicy());
+        assertEquals(10 - queued, statistics.getDroppedCount());
+
+        slow.release.countDown();
+        waitForDelivery(queued);
+        assertEquals(0, slow.events.get(0).getProperty("sequence"));
+        assertEquals(queued, dispatcher.getStatistics().get(0).getDeliveredCount());
+        assertEquals(queued, dispatcher.getStatistics().get(0).getLatency().getTotalCount());
+    }
+
+    @Test
+    public void test3DropOldestKeepsTheLatestEvents() throws Exception {
+        RecordingHandler handler = new RecordingHandler(FAST_TOPIC, 5);
+        handler.release = new CountDownLatch(1);
+        dispatcher.addHandler(handler, null);
+        dispatcher.dispatch(event(FAST_TOPIC, 0));
+        while (dispatcher.getStatistics().get(0).getQueueDepth() > 0) {
+            Thread.sleep(10);
+        }
+        for (int i = 1; i < 10; i++) {
+            assertEquals(1, dispatcher.dispatch(event(FAST_TOPIC, i)));
+        }
+        handler.release.countDown();
+        assertTrue(handler.received.await(5, TimeUnit.SECONDS));
+        assertEquals(0, handler.events.get(0).getProperty("sequence"));
+        assertEquals(6, handler.events.get(1).getProperty("sequence"));
+        assertEquals(9, handler.events.get(4).getProperty("sequence"));
+        assertEquals(5, dispatcher.getStatistics().get(0).getDroppedCount());
+    }
+
+    @Test
+    public void test4WildcardSubscription() throws Exception {
+        RecordingHandler handler = new RecordingHandler("org/eclipse/swordfish/test/*", 2);
+        dispatcher.addHandler(handler, null);
+        assertEquals(1, dispatcher.dispatch(event(SLOW_TOPIC, 0)));
+        assertEquals(1, dispatcher.dispatch(event(FAST_TOPIC, 1)));
+        assertEquals(0, dispatcher.dispatch(event("org/eclipse/swordfish/other", 2)));
+        assertTrue(handler.received.await(5, TimeUnit.SECONDS));
+        assertTrue(dispatcher.hasSubscribers(FAST_TOPIC));
+        assertTrue(dispatcher.removeHandler(handler));
+        assertFalse(dispatcher.hasSubscribers(FAST_TOPIC));
+        assertEquals(0, dispatcher.dispatch(event(FAST_TOPIC, 3)));
+    }
+
+    @Test
+    public void test5FilteredHandler() throws Exception {
+        RecordingHandler handler = new RecordingHandler(FAST_TOPIC, 1);
+        dispatcher.addHandler(handler, EventFilterCompiler.compile("(sequence>=5)"));
+        assertEquals(0, dispatcher.dispatch(event(FAST_TOPIC, 4)));
+        assertEquals(1, dispatcher.dispatch(event(FAST_TOPIC, 5)));
+        assertTrue(handler.received.await(5, TimeUnit.SECONDS));
+        assertEquals(5, handler.events.get(0).getProperty("sequence"));
+    }
+
+    @Test
+    public void test6SlowHandlerDoesNotStallHandlersOfItsTopic() throws Exception {
+        RecordingHandler slow = new RecordingHandler(FAST_TOPIC, 1);
+        slow.release = new CountDownLatch(1);
+        RecordingHandler fast = new RecordingHandler(FAST_TOPIC, 4);
+        dispatcher.addHandler(slow, null);
+        dispatcher.addHandler(fast, null);
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(2, dispatcher.dispatch(event(FAST_TOPIC, i)));
+        }
+        assertTrue(fast.received.await(5, TimeUnit.SECONDS));
+        assertEquals(1, slow.received.getCount());
+        slow.release.countDown();
+        assertTrue(slow.received.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void test7HandlersOfDedicatedTopicsDoNotShareALane() throws Exception {
+        dispatcher.getDedicatedTopics().add(SLOW_TOPIC);
+        RecordingHandler slow = new RecordingHandler(SLOW_TOPIC, 1);
+        slow.release = new CountDownLatch(1);
+        dispatcher.addHandler(slow, null);
+        RecordingHandler[] others = new RecordingHandler[2];
+        for (int i = 0; i < others.length; i++) {
+            others[i] = new RecordingHandler(FAST_TOPIC, 1);
+            dispatcher.addHandler(others[i], null);
+        }
+
+        dispatcher.dispatch(event(SLOW_TOPIC, 0));
+        dispatcher.dispatch(event(FAST_TOPIC, 1));
+        for (RecordingHandler other : others) {
+            assertTrue(other.received.await(5, TimeUnit.SECONDS));
+        }
+        slow.release.countDown();
+        assertTrue(slow.received.await(5, TimeUnit.SECONDS));
+    }
+
+    private void waitForDelivery(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (dispatcher.getStatistics().get(0).getDeliveredCount() < count
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static Event event(String topic, int sequence) {
+        EventImpl event = new EventImpl();
+        event.setTopic(topic);
+        event.setProperty("sequence", sequence);
+        return event;
+    }
+
+    private static class RecordingHandler implements EventHandler<Event> {
+        private final String topic;
+        private final List<Event> events = Collections.synchronizedList(new ArrayList<Event>());
+        private final CountDownLatch received;
+        private volatile CountDownLatch release;
+
+        public RecordingHandler(String topic, int expected) {
+            this.topic = topic;
+            received = new CountDownLatch(expected);
+        }
+
+        public String getSubscribedTopic() {
+            return topic;
+        }
+
+        public void handleEvent(Event event) {
+            if (release != null) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            events.add(event);
+            received.countDown();
+        }
+
+        public EventFilter getEventFilter() {
+            return null;
+        }
+    }
+}
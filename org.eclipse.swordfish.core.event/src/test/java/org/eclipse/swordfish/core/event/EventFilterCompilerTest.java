@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.event;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.util.Arrays;
+
+import org.eclipse.swordfish.api.event.Severity;
+import org.junit.Test;
+
+public class EventFilterCompilerTest {
+
+    @Test
+    public void test1SeverityFilter() {
+        EventPredicate filter = EventFilterCompiler.compile(new SeverityEventFilter(Severity.INFO).getExpression());
+        assertTrue(filter.matches(trackingEvent(Severity.INFO)));
+        assertTrue(filter.matches(trackingEvent(Severity.ERROR)));
+        assertFalse(filter.matches(trackingEvent(Severity.DEBUG)));
+    }
+
+    @Test
+    public void test2CompositeFilters() {
+        EventImpl event = new EventImpl();
+        event.setProperty("name", "Swordfish Runtime");
+        event.setProperty("count", 5L);
+        event.setProperty("ratio", 0.5d);
+        event.setProperty("enabled", Boolean.TRUE);
+        event.setProperty("tags", Arrays.asList("a", "b"));
+
+        assertTrue(EventFilterCompiler.compile("(&(count>=5)(count<=5)(ratio<=0.75))").matches(event));
+        assertTrue(EventFilterCompiler.compile("(|(count=4)(enabled=true))").matches(event));
+        assertTrue(EventFilterCompiler.compile("(!(count=4))").matches(event));
+        assertTrue(EventFilterCompiler.compile("(name=Swordfish*)").matches(event));
+        assertTrue(EventFilterCompiler.compile("(name=*ish*time)").matches(event));
+        assertFalse(EventFilterCompiler.compile("(name=*ish*time*x)").matches(event));
+        assertTrue(EventFilterCompiler.compile("(name~=swordfishruntime)").matches(event));
+        assertTrue(EventFilterCompiler.compile("(tags=b)").matches(event));
+        assertTrue(EventFilterCompiler.compile("(name=*)").matches(event));
+        assertFalse(EventFilterCompiler.compile("(missing=*)").matches(event));
+        assertFalse(EventFilterCompiler.compile("(count>=abc)").matches(event));
+        assertTrue(EventFilterCompiler.compile(" ( & (count=5) ) ").matches(event));
+    }
+
+    @Test
+    public void test3InvalidExpressions() {
+        for (String expression : new String[] {"", "count=5", "(count=5", "(&)", "(count!5)", "(count=5))"}) {
+            try {
+                EventFilterCompiler.compile(expression);
+                fail("The expression " + expression + " must be rejected");
+            } catch (IllegalArgumentException ex) {
+                // expected
+            }
+        }
+    }
+
+    private static TrackingEventImpl trackingEvent(int severity) {
+        TrackingEventImpl event = new TrackingEventImpl(null);
+        event.setSeverity(severity);
+        return event;
+    }
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.event;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventAdmin;
+import org.osgi.service.event.EventConstants;
+
+public class EventServiceImplTest {
+    private static final String TOPIC = "org/eclipse/swordfish/test/topic";
+
+    private final List<Event> posted = new ArrayList<Event>();
+    private EventDispatcher dispatcher;
+    private EventServiceImpl eventService;
+
+    @Before
+    public void setUp() throws Exception {
+        dispatcher = new EventDispatcher();
+        dispatcher.afterPropertiesSet();
+        eventService = new EventServiceImpl();
+        eventService.setEventDispatcher(dispatcher);
+        eventService.setEventAdmin(new EventAdmin() {
+            public void postEvent(Event event) {
+                posted.add(event);
+            }
+
+            public void sendEvent(Event event) {
+                posted.add(event);
+            }
+        });
+        eventService.setTrackEventAdminHandlers(true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        dispatcher.destroy();
+    }
+
+    @Test
+    public void test1EventsAreForwardedToTheEventAdmin() {
+        EventImpl event = new EventImpl();
+        event.setTopic(TOPIC);
+        eventService.postEvent(event);
+        assertEquals(1, posted.size());
+        assertEquals(TOPIC, posted.get(0).getTopic());
+    }
+
+    @Test
+    public void test2SubscribersOfTheEventAdminAreTracked() {
+        assertFalse(eventService.hasSubscribers(TOPIC));
+        Object handler = new Object();
+        eventService.bindEventAdminHandler(handler,
+            Collections.singletonMap(EventConstants.EVENT_TOPIC, new String[] {"org/eclipse/swordfish/test/*"}));
+        assertTrue(eventService.hasSubscribers(TOPIC));
+        assertFalse(eventService.hasSubscribers("org/eclipse/swordfish/other"));
+        eventService.unbindEventAdminHandler(handler, null);
+        assertFalse(eventService.hasSubscribers(TOPIC));
+
+        eventService.setTrackEventAdminHandlers(false);
+        assertTrue(eventService.hasSubscribers(TOPIC));
+    }
+}
@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.event;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+public class TopicTrieTest {
+
+    @Test
+    public void test1ExactAndWildcardTopics() {
+        TopicTrie<String> trie = new TopicTrie<String>();
+        trie.add("org/eclipse/swordfish/TrackingEvent", "exact");
+        trie.add("org/eclipse/swordfish/*", "prefix");
+        trie.add("org/eclipse/*", "parent");
+        trie.add("*", "all");
+
+        assertEquals(new HashSet<String>(Arrays.asList("exact", "prefix", "parent", "all")),
+                new HashSet<String>(trie.match("org/eclipse/swordfish/TrackingEvent")));
+        assertEquals(new HashSet<String>(Arrays.asList("prefix", "parent", "all")),
+                new HashSet<String>(trie.match("org/eclipse/swordfish/OperationEvent/sub")));
+        assertEquals(new HashSet<String>(Arrays.asList("parent", "all")),
+                new HashSet<String>(trie.match("org/eclipse/swordfish")));
+        assertEquals(Arrays.asList("all"), trie.match("com/example"));
+    }
+
+    @Test
+    public void test2EmptyTrie() {
+        TopicTrie<String> trie = new TopicTrie<String>();
+        assertTrue(trie.isEmpty());
+        assertTrue(trie.match("org/eclipse/swordfish").isEmpty());
+    }
+}
@@ -91,6 +91,8 @@ public class ConfigurationTest extends TargetPlatformOsgiTestCase {
 		final Map<String, Map<String, String>> pollConfig = new HashMap<String, Map<String, String>>();
 		pollConfig.put(servicePid, configuration);		
 		expect(pollableConfig.getConfigurations()).andReturn(pollConfig);
+		// ... and has no default properties, so it is not polled afterwards
+		expect(pollableConfig.getProperties()).andStubReturn(null);
 		
 		// Go, Willi!
 		replay(configurationConsumer, pollableConfig);
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.test.util.nmr;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.servicemix.nmr.api.Exchange;
+import org.apache.servicemix.nmr.api.NMR;
+import org.apache.servicemix.nmr.api.Pattern;
+import org.apache.servicemix.nmr.api.Reference;
+import org.apache.servicemix.nmr.api.Role;
+import org.apache.servicemix.nmr.api.ServiceMixException;
+import org.apache.servicemix.nmr.api.Status;
+import org.apache.servicemix.nmr.api.internal.InternalChannel;
+import org.apache.servicemix.nmr.api.internal.InternalEndpoint;
+import org.apache.servicemix.nmr.api.internal.InternalExchange;
+import org.apache.servicemix.nmr.api.internal.InternalReference;
+import org.apache.servicemix.nmr.core.ExchangeImpl;
+
+/**
+ * Channel of the {@link InMemoryNMR}. Every send is dispatched on the
+ * calling thread: the listeners are notified with exchangeSent, the role is
+ * switched, the listeners are notified with exchangeDelivered and the
+ * exchange is handed to the receiving endpoint. A provider which answers
+ * from within process() therefore completes a sendSync() before it returns,
+ * without any locking or thread hand-off.
+ * <p>
+ * Exchanges sent asynchronously are passed back to the consumer endpoint,
+ * exchanges sent with sendSync() are returned to the caller instead.
+ */
+public class InMemoryChannel implements InternalChannel {
+    private static final Map<Exchange, Boolean> SYNC_EXCHANGES = new ConcurrentHashMap<Exchange, Boolean>();
+
+    private final InMemoryNMR nmr;
+    private final InternalEndpoint owner;
+    private volatile boolean closed;
+
+    public InMemoryChannel(InMemoryNMR nmr, InternalEndpoint owner) {
+        this.nmr = nmr;
+        this.owner = owner;
+    }
+
+    public NMR getNMR() {
+        return nmr;
+    }
+
+    public Exchange createExchange(Pattern pattern) {
+        return new ExchangeImpl(pattern);
+    }
+
+    public void send(Exchange exchange) {
+        if (closed) {
+            throw new ServiceMixException("Channel has been closed");
+        }
+        dispatch((InternalExchange) exchange);
+    }
+
+    public boolean sendSync(Exchange exchange) {
+        send(exchange, true);
+        return true;
+    }
+
+    /**
+     * The exchange is always processed synchronously, so the timeout does
+     * not apply.
+     */
+    public boolean sendSync(Exchange exchange, long timeout) {
+        return sendSync(exchange);
+    }
+
+    private void send(Exchange exchange, boolean sync) {
+        if (!sync) {
+            send(exchange);
+            return;
+        }
+        SYNC_EXCHANGES.put(exchange, Boolean.TRUE);
+        try {
+            send(exchange);
+        } finally {
+            SYNC_EXCHANGES.remove(exchange);
+        }
+    }
+
+    public void deliver(InternalExchange exchange) {
+        if (owner != null) {
+            owner.process(exchange);
+        }
+    }
+
+    public void close() {
+        closed = true;
+    }
+
+    private void dispatch(InternalExchange exchange) {
+        InMemoryListenerRegistry listeners = nmr.getInMemoryListenerRegistry();
+        boolean request = exchange.getRole() != Role.Provider;
+        if (request && exchange.getSource() == null) {
+            exchange.setRole(Role.Consumer);
+            exchange.setSource(owner);
+        }
+        try {
+            listeners.fireExchangeSent(exchange);
+            if (request && exchange.getDestination() == null) {
+                exchange.setDestination(resolve(exchange));
+            }
+        } catch (RuntimeException ex) {
+            fail(exchange, ex);
+            throw ex;
+        }
+        InternalEndpoint receiver = request ? exchange.getDestination() : exchange.getSource();
+        exchange.setRole(request ? Role.Provider : Role.Consumer);
+        listeners.fireExchangeDelivered(exchange);
+        if (receiver == null || (!request && SYNC_EXCHANGES.containsKey(exchange))) {
+            return;
+        }
+        receiver.getChannel().deliver(exchange);
+    }
+
+    private InternalEndpoint resolve(InternalExchange exchange) {
+        Reference target = exchange.getTarget();
+        if (!(target instanceof InternalReference)) {
+            throw new ServiceMixException("Could not dispatch exchange, the target is not set");
+        }
+        Iterator<InternalEndpoint> endpoints = ((InternalReference) target).choose().iterator();
+        if (!endpoints.hasNext()) {
+            throw new ServiceMixException("Could not dispatch exchange, no endpoint matches " + target);
+        }
+        return endpoints.next();
+    }
+
+    private void fail(InternalExchange exchange, Exception ex) {
+        if (exchange.getError() == null) {
+            exchange.setError(ex);
+        }
+        exchange.setStatus(Status.Error);
+        nmr.getInMemoryListenerRegistry().fireExchangeFailed(exchange);
+    }
+}
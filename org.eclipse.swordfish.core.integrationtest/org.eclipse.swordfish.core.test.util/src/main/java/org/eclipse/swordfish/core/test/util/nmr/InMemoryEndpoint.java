@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.test.util.nmr;
+
+import java.util.Map;
+
+import org.apache.servicemix.nmr.api.Channel;
+import org.apache.servicemix.nmr.api.Endpoint;
+import org.apache.servicemix.nmr.api.Exchange;
+import org.apache.servicemix.nmr.api.internal.InternalChannel;
+import org.apache.servicemix.nmr.api.internal.InternalEndpoint;
+
+/**
+ * Internal view of an endpoint registered with the {@link InMemoryNMR}.
+ */
+public class InMemoryEndpoint implements InternalEndpoint {
+    private final Endpoint endpoint;
+    private final Map<String, ?> metaData;
+    private final String id;
+    private InMemoryChannel channel;
+
+    public InMemoryEndpoint(Endpoint endpoint, Map<String, ?> metaData) {
+        this.endpoint = endpoint;
+        this.metaData = metaData;
+        Object name = metaData.get(Endpoint.NAME);
+        this.id = name != null ? name.toString() : String.valueOf(System.identityHashCode(endpoint));
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Map<String, ?> getMetaData() {
+        return metaData;
+    }
+
+    public InternalChannel getChannel() {
+        return channel;
+    }
+
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    public void setChannel(Channel channel) {
+        this.channel = (InMemoryChannel) channel;
+        endpoint.setChannel(channel);
+    }
+
+    public void process(Exchange exchange) {
+        endpoint.process(exchange);
+    }
+
+    @Override
+    public String toString() {
+        return "InMemoryEndpoint[" + id + "]";
+    }
+}
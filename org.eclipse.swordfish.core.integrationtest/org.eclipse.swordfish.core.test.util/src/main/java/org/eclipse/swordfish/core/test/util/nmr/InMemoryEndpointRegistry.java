@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.test.util.nmr;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.servicemix.nmr.api.Endpoint;
+import org.apache.servicemix.nmr.api.EndpointRegistry;
+import org.apache.servicemix.nmr.api.Reference;
+import org.apache.servicemix.nmr.api.ServiceMixException;
+import org.apache.servicemix.nmr.api.internal.InternalEndpoint;
+import org.w3c.dom.Document;
+
+/**
+ * Endpoint registry of the {@link InMemoryNMR}. Registered endpoints are
+ * wrapped into {@link InMemoryEndpoint}s, which are what
+ * {@link #getServices()} and the references hand out, as the
+ * DynamicReferenceImpl filters used by Swordfish expect internal endpoints.
+ */
+public class InMemoryEndpointRegistry implements EndpointRegistry {
+    private final InMemoryNMR nmr;
+    private final List<InMemoryEndpoint> endpoints = new CopyOnWriteArrayList<InMemoryEndpoint>();
+
+    public InMemoryEndpointRegistry(InMemoryNMR nmr) {
+        this.nmr = nmr;
+    }
+
+    public void register(Endpoint endpoint, Map<String, ?> properties) {
+        if (endpoint == null) {
+            throw new ServiceMixException("Endpoint must not be null");
+        }
+        Map<String, ?> metaData = properties != null
+            ? new HashMap<String, Object>(properties) : new HashMap<String, Object>();
+        InMemoryEndpoint internalEndpoint = new InMemoryEndpoint(endpoint, metaData);
+        internalEndpoint.setChannel(new InMemoryChannel(nmr, internalEndpoint));
+        endpoints.add(internalEndpoint);
+    }
+
+    public void unregister(Endpoint endpoint, Map<String, ?> properties) {
+        InMemoryEndpoint internalEndpoint = find(endpoint);
+        if (internalEndpoint != null) {
+            endpoints.remove(internalEndpoint);
+        }
+    }
+
+    public Set<Endpoint> getServices() {
+        return Collections.unmodifiableSet(new LinkedHashSet<Endpoint>(endpoints));
+    }
+
+    public Map<String, ?> getProperties(Endpoint endpoint) {
+        InMemoryEndpoint internalEndpoint = find(endpoint);
+        return internalEndpoint != null ? internalEndpoint.getMetaData() : null;
+    }
+
+    public List<Endpoint> query(Map<String, ?> properties) {
+        List<Endpoint> result = new ArrayList<Endpoint>();
+        for (InMemoryEndpoint endpoint : endpoints) {
+            if (matches(endpoint, properties)) {
+                result.add(endpoint.getEndpoint());
+            }
+        }
+        return result;
+    }
+
+    public Reference lookup(Map<String, ?> properties) {
+        return new InMemoryReference(this, properties);
+    }
+
+    public Reference lookup(Document xml) {
+        throw new UnsupportedOperationException("XML references are not supported by the in-memory NMR");
+    }
+
+    public Reference lookup(String uri) {
+        throw new UnsupportedOperationException("URI references are not supported by the in-memory NMR");
+    }
+
+    List<InternalEndpoint> choose(Map<String, ?> properties) {
+        List<InternalEndpoint> result = new ArrayList<InternalEndpoint>(1);
+        for (InMemoryEndpoint endpoint : endpoints) {
+            if (matches(endpoint, properties)) {
+                result.add(endpoint);
+            }
+        }
+        return result;
+    }
+
+    private InMemoryEndpoint find(Endpoint endpoint) {
+        for (InMemoryEndpoint internalEndpoint : endpoints) {
+            if (internalEndpoint == endpoint || internalEndpoint.getEndpoint() == endpoint) {
+                return internalEndpoint;
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(InMemoryEndpoint endpoint, Map<String, ?> properties) {
+        if (properties == null) {
+            return true;
+        }
+        Map<String, ?> metaData = endpoint.getMetaData();
+        for (Map.Entry<String, ?> property : properties.entrySet()) {
+            if (property.getValue() != null && !property.getValue().equals(metaData.get(property.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.test.util.nmr;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.servicemix.nmr.api.event.ExchangeListener;
+import org.apache.servicemix.nmr.api.event.Listener;
+import org.apache.servicemix.nmr.api.event.ListenerRegistry;
+import org.apache.servicemix.nmr.api.Exchange;
+
+/**
+ * Keeps the listeners in registration order. The exchange listeners are
+ * held in a copy on write list, so notifying them does not allocate or lock.
+ */
+public class InMemoryListenerRegistry implements ListenerRegistry {
+    private final Map<Listener, Map<String, ?>> listeners = new ConcurrentHashMap<Listener, Map<String, ?>>();
+    private final List<ExchangeListener> exchangeListeners = new CopyOnWriteArrayList<ExchangeListener>();
+
+    public void register(Listener listener, Map<String, ?> properties) {
+        listeners.put(listener, properties != null ? properties : Collections.<String, Object>emptyMap());
+        if (listener instanceof ExchangeListener && !exchangeListeners.contains(listener)) {
+            exchangeListeners.add((ExchangeListener) listener);
+        }
+    }
+
+    public void unregister(Listener listener, Map<String, ?> properties) {
+        listeners.remove(listener);
+        exchangeListeners.remove(listener);
+    }
+
+    public Set<Listener> getServices() {
+        return Collections.unmodifiableSet(listeners.keySet());
+    }
+
+    public Map<String, ?> getProperties(Listener listener) {
+        return listeners.get(listener);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends Listener> Iterable<T> getListeners(Class<T> type) {
+        if (type == ExchangeListener.class) {
+            return (Iterable<T>) exchangeListeners;
+        }
+        List<T> result = new ArrayList<T>();
+        for (Listener listener : listeners.keySet()) {
+            if (type.isInstance(listener)) {
+                result.add((T) listener);
+            }
+        }
+        return result;
+    }
+
+    void fireExchangeSent(Exchange exchange) {
+        for (ExchangeListener listener : exchangeListeners) {
+            listener.exchangeSent(exchange);
+        }
+    }
+
+    void fireExchangeDelivered(Exchange exchange) {
+        for (ExchangeListener listener : exchangeListeners) {
+            listener.exchangeDelivered(exchange);
+        }
+    }
+
+    void fireExchangeFailed(Exchange exchange) {
+        for (ExchangeListener listener : exchangeListeners) {
+            listener.exchangeFailed(exchange);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.test.util.nmr;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+
+import org.apache.servicemix.nmr.api.Channel;
+import org.apache.servicemix.nmr.api.Endpoint;
+import org.apache.servicemix.nmr.api.EndpointRegistry;
+import org.apache.servicemix.nmr.api.Exchange;
+import org.apache.servicemix.nmr.api.NMR;
+import org.apache.servicemix.nmr.api.Status;
+import org.apache.servicemix.nmr.api.WireRegistry;
+import org.apache.servicemix.nmr.api.event.ListenerRegistry;
+import org.apache.servicemix.nmr.api.internal.FlowRegistry;
+import org.eclipse.swordfish.core.test.util.ServiceMixSupport.ExchangeProcessor;
+
+/**
+ * In-process stand-in for the ServiceMix NMR. Exchanges are routed
+ * synchronously on the calling thread to plain Java endpoints, and the
+ * registered ExchangeListeners are notified the same way the real NMR does
+ * it, so the Swordfish interceptor chain can be exercised without starting
+ * an OSGi container.
+ * <p>
+ * Flows and wires are not supported.
+ */
+public class InMemoryNMR implements NMR {
+    private final InMemoryEndpointRegistry endpointRegistry;
+    private final InMemoryListenerRegistry listenerRegistry;
+
+    public InMemoryNMR() {
+        listenerRegistry = new InMemoryListenerRegistry();
+        endpointRegistry = new InMemoryEndpointRegistry(this);
+    }
+
+    public EndpointRegistry getEndpointRegistry() {
+        return endpointRegistry;
+    }
+
+    public ListenerRegistry getListenerRegistry() {
+        return listenerRegistry;
+    }
+
+    public FlowRegistry getFlowRegistry() {
+        throw new UnsupportedOperationException("Flows are not supported by the in-memory NMR");
+    }
+
+    public WireRegistry getWireRegistry() {
+        throw new UnsupportedOperationException("Wires are not supported by the in-memory NMR");
+    }
+
+    public Channel createChannel() {
+        return new InMemoryChannel(this, null);
+    }
+
+    /**
+     * Registers an endpoint for the given service which answers every
+     * exchange with the out message filled in by the processor. The
+     * metadata follows the conventions of
+     * {@link org.eclipse.swordfish.core.test.util.ServiceMixSupport#createAndRegisterEndpoint}.
+     */
+    public Endpoint registerEndpoint(QName serviceName, final ExchangeProcessor processor) {
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put(Endpoint.ENDPOINT_NAME, serviceName.getLocalPart() + "Endpoint");
+        props.put(Endpoint.SERVICE_NAME, serviceName.toString());
+        props.put(Endpoint.NAME, serviceName.getLocalPart() + "Endpoint");
+        Endpoint endpoint = new ProcessorEndpoint(processor);
+        endpointRegistry.register(endpoint, props);
+        return endpoint;
+    }
+
+    InMemoryEndpointRegistry getInMemoryEndpointRegistry() {
+        return endpointRegistry;
+    }
+
+    InMemoryListenerRegistry getInMemoryListenerRegistry() {
+        return listenerRegistry;
+    }
+
+    private static class ProcessorEndpoint implements Endpoint {
+        private final ExchangeProcessor processor;
+        private Channel channel;
+
+        public ProcessorEndpoint(ExchangeProcessor processor) {
+            this.processor = processor;
+        }
+
+        public void setChannel(Channel channel) {
+            this.channel = channel;
+        }
+
+        public void process(Exchange exchange) {
+            if (exchange.getStatus() != Status.Active) {
+                return;
+            }
+            try {
+                if (processor != null) {
+                    processor.process(exchange);
+                }
+                if (exchange.getOut(false) == null && exchange.getFault(false) == null) {
+                    exchange.setStatus(Status.Done);
+                }
+            } catch (Exception ex) {
+                exchange.setError(ex);
+            }
+            channel.send(exchange);
+        }
+    }
+}
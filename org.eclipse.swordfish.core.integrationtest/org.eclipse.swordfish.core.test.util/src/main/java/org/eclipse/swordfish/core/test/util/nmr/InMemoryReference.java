@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.test.util.nmr;
+
+import java.util.Map;
+
+import org.apache.servicemix.nmr.api.EndpointRegistry;
+import org.apache.servicemix.nmr.api.internal.InternalEndpoint;
+import org.apache.servicemix.nmr.api.internal.InternalReference;
+import org.w3c.dom.Document;
+
+/**
+ * Reference to the endpoints whose metadata contains the given properties.
+ * The endpoints are matched on every call, so endpoints registered after the
+ * lookup are found as well.
+ */
+public class InMemoryReference implements InternalReference {
+    private final InMemoryEndpointRegistry registry;
+    private final Map<String, ?> properties;
+
+    public InMemoryReference(InMemoryEndpointRegistry registry, Map<String, ?> properties) {
+        this.registry = registry;
+        this.properties = properties;
+    }
+
+    public Iterable<InternalEndpoint> choose() {
+        return registry.choose(properties);
+    }
+
+    public Iterable<InternalEndpoint> choose(EndpointRegistry endpointRegistry) {
+        return choose();
+    }
+
+    public Map<String, ?> getProperties() {
+        return properties;
+    }
+
+    public Document toXml() {
+        throw new UnsupportedOperationException("XML references are not supported by the in-memory NMR");
+    }
+
+    @Override
+    public String toString() {
+        return "InMemoryReference" + properties;
+    }
+}
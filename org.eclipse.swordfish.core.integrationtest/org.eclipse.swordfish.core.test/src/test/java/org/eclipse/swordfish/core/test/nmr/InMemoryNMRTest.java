@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.test.nmr;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+
+import org.apache.servicemix.nmr.api.Channel;
+import org.apache.servicemix.nmr.api.Endpoint;
+import org.apache.servicemix.nmr.api.Exchange;
+import org.apache.servicemix.nmr.api.Pattern;
+import org.apache.servicemix.nmr.api.ServiceMixException;
+import org.apache.servicemix.nmr.api.event.ExchangeListener;
+import org.easymock.EasyMock;
+import org.eclipse.swordfish.core.context.SwordfishContextImpl;
+import org.eclipse.swordfish.core.event.EventServiceImpl;
+import org.eclipse.swordfish.core.exception.InterceptorExceptionNofiticationSender;
+import org.eclipse.swordfish.core.integration.nmr.SwordfishExchangeListener;
+import org.eclipse.swordfish.core.planner.InterceptorListener;
+import org.eclipse.swordfish.core.planner.InterceptorRegistry;
+import org.eclipse.swordfish.core.planner.PlannerImpl;
+import org.eclipse.swordfish.core.planner.DefaultHintExtractor;
+import org.eclipse.swordfish.core.test.util.ServiceMixSupport.ExchangeProcessorImpl;
+import org.eclipse.swordfish.core.test.util.mock.AcceptAllFilterStrategy;
+import org.eclipse.swordfish.core.test.util.mock.MockInterceptor;
+import org.eclipse.swordfish.core.test.util.mock.MockSortingStrategy;
+import org.eclipse.swordfish.core.test.util.nmr.InMemoryNMR;
+import org.eclipse.swordfish.core.util.xml.StringSource;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.event.EventAdmin;
+
+public class InMemoryNMRTest {
+    private static final QName SERVICE_NAME = new QName("namespace", "Service1");
+
+    private InMemoryNMR nmr;
+    private RecordingListener listener;
+
+    @Before
+    public void setUp() {
+        nmr = new InMemoryNMR();
+        listener = new RecordingListener();
+        nmr.getListenerRegistry().register(listener, null);
+        nmr.registerEndpoint(SERVICE_NAME, new ExchangeProcessorImpl(SERVICE_NAME.toString()));
+    }
+
+    @Test
+    public void testSendSyncRoutesToEndpoint() throws Exception {
+        Exchange exchange = createExchange();
+        nmr.createChannel().sendSync(exchange);
+
+        assertNull(exchange.getError());
+        assertNotNull(exchange.getOut(false));
+        assertEquals(2, listener.sent.size());
+        assertEquals(2, listener.delivered.size());
+        assertEquals(0, listener.failed.size());
+    }
+
+    @Test
+    public void testUnresolvableTargetFails() throws Exception {
+        Exchange exchange = createExchange();
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put(Endpoint.SERVICE_NAME, new QName("namespace", "Unknown").toString());
+        exchange.setTarget(nmr.getEndpointRegistry().lookup(props));
+        try {
+            nmr.createChannel().sendSync(exchange);
+            fail("ServiceMixException expected");
+        } catch (ServiceMixException ex) {
+            assertEquals(1, listener.failed.size());
+            assertNotNull(exchange.getError());
+        }
+    }
+
+    @Test
+    public void testInterceptorChainIsInvokedOnBothWays() throws Exception {
+        MockInterceptor interceptor = new MockInterceptor();
+        SwordfishExchangeListener swordfishListener = createSwordfishListener(interceptor);
+        swordfishListener.afterPropertiesSet();
+
+        Channel channel = nmr.createChannel();
+        for (int i = 0; i < 10; i++) {
+            channel.sendSync(createExchange());
+        }
+        assertEquals(20, interceptor.getExchanges().size());
+    }
+
+    private SwordfishExchangeListener createSwordfishListener(MockInterceptor interceptor) {
+        InterceptorRegistry registry = new InterceptorRegistry();
+        InterceptorListener interceptorListener = new InterceptorListener();
+        interceptorListener.setInterceptorRegistry(registry);
+        interceptorListener.onBindInterceptor(interceptor, null);
+
+        PlannerImpl planner = new PlannerImpl();
+        planner.setInterceptorRegistry(registry);
+        planner.setSortingStrategy(new MockSortingStrategy());
+        planner.setFilterStrategy(new AcceptAllFilterStrategy());
+        planner.setHintExtractor(new DefaultHintExtractor());
+
+        EventServiceImpl eventService = new EventServiceImpl();
+        eventService.setEventAdmin(EasyMock.createNiceMock(EventAdmin.class));
+        SwordfishContextImpl swordfishContext = new SwordfishContextImpl();
+        swordfishContext.setEventService(eventService);
+        InterceptorExceptionNofiticationSender exceptionNotificationSender =
+            new InterceptorExceptionNofiticationSender();
+        exceptionNotificationSender.setEventService(eventService);
+
+        SwordfishExchangeListener swordfishListener = new SwordfishExchangeListener();
+        swordfishListener.setNmr(nmr);
+        swordfishListener.setPlanner(planner);
+        swordfishListener.setInterceptorRegistry(registry);
+        swordfishListener.setSwordfishContext(swordfishContext);
+        swordfishListener.setExceptionNotificationSender(exceptionNotificationSender);
+        return swordfishListener;
+    }
+
+    private Exchange createExchange() {
+        Exchange exchange = nmr.createChannel().createExchange(Pattern.InOut);
+        exchange.getIn(true).setBody(new StringSource("<Hello/>"));
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put(Endpoint.SERVICE_NAME, SERVICE_NAME.toString());
+        exchange.setTarget(nmr.getEndpointRegistry().lookup(props));
+        return exchange;
+    }
+
+    private static class RecordingListener implements ExchangeListener {
+        private final List<Exchange> sent = new ArrayList<Exchange>();
+        private final List<Exchange> delivered = new ArrayList<Exchange>();
+        private final List<Exchange> failed = new ArrayList<Exchange>();
+
+        public void exchangeSent(Exchange exchange) {
+            sent.add(exchange);
+        }
+
+        public void exchangeDelivered(Exchange exchange) {
+            delivered.add(exchange);
+        }
+
+        public void exchangeFailed(Exchange exchange) {
+            failed.add(exchange);
+        }
+    }
+}
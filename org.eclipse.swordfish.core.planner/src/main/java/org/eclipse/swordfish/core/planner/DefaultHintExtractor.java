@@ -10,31 +10,41 @@
  *******************************************************************************/
 package org.eclipse.swordfish.core.planner;
 
-import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
 import javax.jbi.messaging.MessageExchange;
 
 import org.eclipse.swordfish.api.Hint;
-import org.eclipse.swordfish.api.HintExtractor;
+import org.eclipse.swordfish.api.InterceptorIndex;
+import org.eclipse.swordfish.api.MaskHintExtractor;
 
 /**
+ * Hint extractor which does not exclude any interceptor. The same hints are
+ * returned for every exchange.
+ *
  * @author dwolz
  *
  */
-public class DefaultHintExtractor implements HintExtractor {
+public class DefaultHintExtractor implements MaskHintExtractor {
+
+	private static final List<Hint<?>> HINTS = Collections.<Hint<?>>singletonList(
+			new DefaultHint(Collections.unmodifiableMap(new HashMap<String,Boolean>())));
 
 	/* (non-Javadoc)
 	 * @see org.eclipse.swordfish.api.HintExtractor#extractHints(javax.jbi.messaging.MessageExchange)
 	 */
 	public List<Hint<?>> extractHints(MessageExchange messageExchange) {
-		List<Hint<?>> hints = new ArrayList<Hint<?>>();
-		HashMap<String,Boolean> map = new HashMap<String,Boolean>();
-		//map.put(TestInterceptor1.class.getCanonicalName(), true);
-		Hint<?> hint = new DefaultHint(map);
-		hints.add(hint);
-		return hints;
+		return HINTS;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.swordfish.api.MaskHintExtractor#extractHintMask(javax.jbi.messaging.MessageExchange, org.eclipse.swordfish.api.InterceptorIndex)
+	 */
+	public BitSet extractHintMask(MessageExchange messageExchange, InterceptorIndex index) {
+		return null;
 	}
 
 }
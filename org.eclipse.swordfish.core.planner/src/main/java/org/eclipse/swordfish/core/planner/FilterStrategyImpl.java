@@ -10,11 +10,14 @@
  *******************************************************************************/
 package org.eclipse.swordfish.core.planner;
 
+import java.util.BitSet;
 import java.util.List;
 
 import org.eclipse.swordfish.api.FilterStrategy;
 import org.eclipse.swordfish.api.Hint;
 import org.eclipse.swordfish.api.Interceptor;
+import org.eclipse.swordfish.api.InterceptorIndex;
+import org.eclipse.swordfish.api.MaskFilterStrategy;
 import org.eclipse.swordfish.api.ReadOnlyRegistry;
 import org.eclipse.swordfish.api.SwordfishException;
 import org.slf4j.Logger;
@@ -24,7 +27,7 @@ import org.slf4j.LoggerFactory;
  * @author dwolz
  *
  */
-public class FilterStrategyImpl implements FilterStrategy {
+public class FilterStrategyImpl implements MaskFilterStrategy {
 
 	private Logger logger = LoggerFactory.getLogger(PlannerImpl.class);
 
@@ -60,6 +63,41 @@ public class FilterStrategyImpl implements FilterStrategy {
 		return 0;
 	}
 
+	/* (non-Javadoc)
+	 * @see org.eclipse.swordfish.api.MaskFilterStrategy#filter(org.eclipse.swordfish.api.InterceptorIndex, org.eclipse.swordfish.api.ReadOnlyRegistry, java.util.BitSet)
+	 */
+	public BitSet filter(InterceptorIndex index, ReadOnlyRegistry<Interceptor> registry, BitSet hintMask) {
+		if (filterStrategies != null) {
+			for (FilterStrategy strategy: filterStrategies) {
+				try {
+					return ((MaskFilterStrategy) strategy).filter(index, registry, hintMask);
+				} catch (SwordfishException e) {
+					continue; // try next
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return true if all the filter strategies can work on masks, see
+	 * {@link #filter(InterceptorIndex, ReadOnlyRegistry, BitSet)}
+	 */
+	public boolean supportsMasks() {
+		if (filterStrategies != null) {
+			for (FilterStrategy strategy: filterStrategies) {
+				if (!(strategy instanceof MaskFilterStrategy)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	public boolean hasFilterStrategies() {
+		return filterStrategies != null && filterStrategies.size() > 0;
+	}
+
 	public void setFilterStrategies(List<FilterStrategy> filterStrategies) {
 		this.filterStrategies = filterStrategies;
 	}
@@ -13,42 +13,193 @@
  *******************************************************************************/
 package org.eclipse.swordfish.core.planner;
 
+import java.util.BitSet;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.eclipse.swordfish.api.Interceptor;
+import org.eclipse.swordfish.api.InterceptorIndex;
 import org.eclipse.swordfish.api.SwordfishException;
 import org.eclipse.swordfish.core.util.RegistryImpl;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTracker;
+import org.osgi.util.tracker.ServiceTrackerCustomizer;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.osgi.context.BundleContextAware;
 import org.springframework.osgi.service.importer.ImportedOsgiServiceProxy;
 import org.springframework.osgi.service.importer.ServiceReferenceProxy;
 
 /**
- * @author dwolz
+ * Registry of the interceptors imported by Spring DM. Besides the imported
+ * service proxies the registry holds the interceptor service objects
+ * themselves, so the interceptor chains can invoke them directly instead
+ * of going through the proxy on every exchange. The interceptor services
+ * are tracked with a {@link ServiceTracker}, when one of them goes away its
+ * direct reference is dropped and the generation of the registry changes,
+ * so the chains are planned again.
+ * <p>
+ * Every registered interceptor is assigned a stable bit index, the bits of
+ * unregistered interceptors are reused.
  *
+ * @author dwolz
  */
-public class InterceptorRegistry extends RegistryImpl<Interceptor> implements BundleContextAware {
-private BundleContext bundleContext;
-@Override
-public void setBundleContext(BundleContext bundleContext) {
-    this.bundleContext = bundleContext;
-}
+public class InterceptorRegistry extends RegistryImpl<Interceptor>
+        implements InterceptorIndex, BundleContextAware, InitializingBean {
+    private BundleContext bundleContext;
+    private ServiceTracker serviceTracker;
+    private final ConcurrentMap<Interceptor, Target> targets = new ConcurrentHashMap<Interceptor, Target>();
+    private final ConcurrentMap<Interceptor, Integer> indices = new ConcurrentHashMap<Interceptor, Integer>();
+    private final BitSet usedIndices = new BitSet();
+    private volatile Interceptor[] slots = new Interceptor[0];
+
+    @Override
+    public void setBundleContext(BundleContext bundleContext) {
+        this.bundleContext = bundleContext;
+    }
+
+    public void afterPropertiesSet() throws Exception {
+        if (bundleContext != null) {
+            serviceTracker = new ServiceTracker(bundleContext, Interceptor.class.getName(), new TargetTracker());
+            serviceTracker.open();
+        }
+    }
+
+    @Override
+    public void register(Interceptor key, Map<String, ?> properties) throws SwordfishException {
+        ServiceReference serviceReference = getServiceReference(key);
+        if (serviceReference != null && bundleContext != null) {
+            Interceptor actualInterceptor = (Interceptor) bundleContext.getService(serviceReference);
+            if (actualInterceptor != null && targets.putIfAbsent(key, new Target(actualInterceptor, serviceReference)) != null) {
+                // already registered
+                bundleContext.ungetService(serviceReference);
+            }
+            if (actualInterceptor != null && key.getProperties() != null) {
+                ((Map) key.getProperties()).put(Interceptor.TYPE_PROPERTY, actualInterceptor.getClass());
+            }
+        }
+        super.register(key, properties);
+    }
+
+    @Override
+    protected void doRegister(Interceptor key, Map<String, ?> properties) throws Exception {
+        synchronized (usedIndices) {
+            int index = usedIndices.nextClearBit(0);
+            usedIndices.set(index);
+            Interceptor[] updated = new Interceptor[Math.max(slots.length, index + 1)];
+            System.arraycopy(slots, 0, updated, 0, slots.length);
+            updated[index] = key;
+            indices.put(key, index);
+            slots = updated;
+        }
+    }
+
+    @Override
+    protected void doUnregister(Interceptor key, Map<String, ?> properties) throws Exception {
+        release(key);
+        synchronized (usedIndices) {
+            Integer index = indices.remove(key);
+            if (index != null) {
+                Interceptor[] updated = slots.clone();
+                updated[index] = null;
+                usedIndices.clear(index);
+                slots = updated;
+            }
+        }
+    }
+
+    public int size() {
+        return slots.length;
+    }
+
+    public Interceptor get(int index) {
+        Interceptor[] current = slots;
+        return index >= 0 && index < current.length ? current[index] : null;
+    }
+
+    public int indexOf(Interceptor interceptor) {
+        Integer index = indices.get(interceptor);
+        return index != null ? index : -1;
+    }
 
-@Override
-public void register(Interceptor key, Map<String, ?> properties)
-        throws SwordfishException {
-    Interceptor actualInterceptor = key;
-    if (actualInterceptor instanceof ImportedOsgiServiceProxy) {
-        ServiceReference serviceReference = ((ImportedOsgiServiceProxy) actualInterceptor).getServiceReference();
+    @Override
+    protected void doDestroy() throws Exception {
+        if (serviceTracker != null) {
+            serviceTracker.close();
+            serviceTracker = null;
+        }
+        for (Interceptor key : targets.keySet()) {
+            release(key);
+        }
+    }
+
+    /**
+     * @return the interceptor service behind the given registered key or the
+     * key itself if there is no direct reference to the service
+     */
+    public Interceptor getTarget(Interceptor key) {
+        Target target = targets.get(key);
+        return target != null ? target.interceptor : key;
+    }
+
+    private void release(Interceptor key) {
+        Target target = targets.remove(key);
+        if (target != null && bundleContext != null) {
+            try {
+                bundleContext.ungetService(target.serviceReference);
+            } catch (IllegalStateException ex) {
+                // the bundle context is no longer valid
+            }
+        }
+    }
+
+    private static ServiceReference getServiceReference(Interceptor key) {
+        if (!(key instanceof ImportedOsgiServiceProxy)) {
+            return null;
+        }
+        ServiceReference serviceReference = ((ImportedOsgiServiceProxy) key).getServiceReference();
         if (serviceReference instanceof ServiceReferenceProxy) {
             serviceReference = ((ServiceReferenceProxy) serviceReference).getTargetServiceReference();
         }
-        actualInterceptor = (Interceptor) bundleContext.getService(serviceReference);
-        if (key.getProperties() != null) {
-            ((Map)key.getProperties()).put(Interceptor.TYPE_PROPERTY, actualInterceptor.getClass());
+        return serviceReference;
+    }
+
+    private static class Target {
+        private final Interceptor interceptor;
+        private final ServiceReference serviceReference;
+
+        Target(Interceptor interceptor, ServiceReference serviceReference) {
+            this.interceptor = interceptor;
+            this.serviceReference = serviceReference;
+        }
+    }
+
+    /**
+     * Drops the direct references to interceptor services which are being
+     * unregistered, the registered proxies are removed later by Spring DM.
+     */
+    private class TargetTracker implements ServiceTrackerCustomizer {
+
+        public Object addingService(ServiceReference reference) {
+            return reference;
+        }
+
+        public void modifiedService(ServiceReference reference, Object service) {
+        }
+
+        public void removedService(ServiceReference reference, Object service) {
+            boolean removed = false;
+            for (Map.Entry<Interceptor, Target> entry : targets.entrySet()) {
+                if (reference.equals(entry.getValue().serviceReference)) {
+                    release(entry.getKey());
+                    removed = true;
+                }
+            }
+            if (removed) {
+                LOG.debug("Interceptor service " + reference + " has gone away, the interceptor chains are replanned");
+                invalidate();
+            }
         }
     }
-    super.register(key, properties);
-}
 }
@@ -10,8 +10,17 @@
  *******************************************************************************/
 package org.eclipse.swordfish.core.planner;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Dictionary;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.jbi.messaging.MessageExchange;
@@ -20,9 +29,15 @@ import org.eclipse.swordfish.api.FilterStrategy;
 import org.eclipse.swordfish.api.Hint;
 import org.eclipse.swordfish.api.HintExtractor;
 import org.eclipse.swordfish.api.Interceptor;
+import org.eclipse.swordfish.api.InterceptorIndex;
+import org.eclipse.swordfish.api.InterceptorPhase;
+import org.eclipse.swordfish.api.MaskFilterStrategy;
+import org.eclipse.swordfish.api.MaskHintExtractor;
 import org.eclipse.swordfish.api.ReadOnlyRegistry;
 import org.eclipse.swordfish.api.SortingStrategy;
+import org.eclipse.swordfish.api.SwordfishException;
 import org.eclipse.swordfish.core.planner.api.Planner;
+import org.eclipse.swordfish.core.util.RegistryImpl;
 import org.osgi.service.cm.ConfigurationException;
 import org.osgi.service.cm.ManagedService;
 import org.slf4j.Logger;
@@ -36,6 +51,7 @@ public class PlannerImpl implements Planner, ManagedService {
     private SortingStrategy sortingStrategy;
     private FilterStrategy filterStrategy;
     private HintExtractor hintExtractor;
+    private volatile PhaseChains phaseChains;
 
 	public List<Interceptor> getInterceptorChain(
 			Set<Interceptor> interceptors, MessageExchange messageExchange) {
@@ -45,10 +61,315 @@ public class PlannerImpl implements Planner, ManagedService {
 		return filtered;
 	}
 
+	public List<Interceptor> getInterceptorChain(InterceptorPhase phase, MessageExchange messageExchange) {
+		return getInterceptorChain(getPhaseChains(), phase, messageExchange);
+	}
+
+	public List<List<Interceptor>> getInterceptorStages(InterceptorPhase phase, MessageExchange messageExchange) {
+		PhaseChains chains = getPhaseChains();
+		return chains.getStages(phase, getInterceptorChain(chains, phase, messageExchange));
+	}
+
+	private List<Interceptor> getInterceptorChain(PhaseChains chains, InterceptorPhase phase, MessageExchange messageExchange) {
+		BitSet hintMask = null;
+		if (hintExtractor instanceof MaskHintExtractor) {
+			hintMask = ((MaskHintExtractor) hintExtractor).extractHintMask(messageExchange, chains.index);
+		}
+		if (filterStrategy instanceof FilterStrategyImpl && !((FilterStrategyImpl) filterStrategy).hasFilterStrategies()) {
+			return chains.getTargets(phase, hintMask, null);
+		}
+		if (filterStrategy instanceof MaskFilterStrategy && (!(filterStrategy instanceof FilterStrategyImpl)
+				|| ((FilterStrategyImpl) filterStrategy).supportsMasks())) {
+			BitSet filterMask = ((MaskFilterStrategy) filterStrategy).filter(chains.index, interceptorRegistry, hintMask);
+			return chains.getTargets(phase, hintMask, filterMask);
+		}
+		List<Hint<?>> hints = hintExtractor.extractHints(messageExchange);
+		List<Interceptor> filtered = filterStrategy.filter(
+				chains.getKeys(phase, hintMask), interceptorRegistry, hints);
+		if (filtered == null) {
+			return null;
+		}
+		// the list of the strategy may be shared or unmodifiable
+		List<Interceptor> targets = new ArrayList<Interceptor>(filtered.size());
+		for (Interceptor interceptor : filtered) {
+			targets.add(getTarget(interceptor));
+		}
+		return targets;
+	}
+
+	/**
+	 * Interceptors imported by Spring DM are invoked through their service
+	 * objects, the proxies are only kept as registry keys.
+	 */
+	private Interceptor getTarget(Interceptor interceptor) {
+		if (interceptorRegistry instanceof InterceptorRegistry) {
+			return ((InterceptorRegistry) interceptorRegistry).getTarget(interceptor);
+		}
+		return interceptor;
+	}
+
+	private PhaseChains getPhaseChains() {
+		long generation = -1;
+		// strategies other than the composite one are taken to sort the same way every time
+		long sortingGeneration = sortingStrategy instanceof SortingStrategyImpl
+				? ((SortingStrategyImpl) sortingStrategy).getGeneration() : 0;
+		if (interceptorRegistry instanceof RegistryImpl) {
+			generation = ((RegistryImpl<Interceptor>) interceptorRegistry).getGeneration();
+			PhaseChains chains = phaseChains;
+			if (chains != null && chains.generation == generation && chains.sortingGeneration == sortingGeneration
+					&& chains.sortingStrategy == sortingStrategy) {
+				return chains;
+			}
+		}
+		List<Interceptor> sorted = sortingStrategy.sort(interceptorRegistry.getKeySet(), interceptorRegistry);
+		if (sorted == null) {
+			throw new SwordfishException("None of the sorting strategies could sort the interceptors");
+		}
+		PhaseChains chains = new PhaseChains(generation, sortingGeneration, sortingStrategy, sorted);
+		phaseChains = chains;
+		return chains;
+	}
+
+	private Object getProperty(Interceptor interceptor, String name) {
+		Map<String, ?> properties = interceptorRegistry.getProperties(interceptor);
+		Object value = properties != null ? properties.get(name) : null;
+		if (value == null && interceptor.getProperties() != null) {
+			value = interceptor.getProperties().get(name);
+		}
+		return value;
+	}
+
+	private String getName(Interceptor interceptor, Interceptor target) {
+		Object name = getProperty(interceptor, Interceptor.NAME_PROPERTY);
+		if (name != null) {
+			return name.toString();
+		}
+		Object type = getProperty(interceptor, Interceptor.TYPE_PROPERTY);
+		if (type instanceof Class) {
+			return ((Class<?>) type).getName();
+		}
+		return type != null ? type.toString() : target.getClass().getName();
+	}
+
+	private Set<String> getNames(Object value) {
+		Set<String> names = new HashSet<String>();
+		if (value instanceof Collection) {
+			for (Object element : (Collection<?>) value) {
+				names.add(element.toString().trim());
+			}
+		} else if (value instanceof Object[]) {
+			for (Object element : (Object[]) value) {
+				names.add(element.toString().trim());
+			}
+		} else if (value != null) {
+			for (String name : value.toString().split(",")) {
+				if (name.trim().length() > 0) {
+					names.add(name.trim());
+				}
+			}
+		}
+		return names;
+	}
+
+	private EnumSet<InterceptorPhase> getPhases(Interceptor interceptor) {
+		try {
+			return InterceptorPhase.fromProperty(getProperty(interceptor, Interceptor.PHASES_PROPERTY));
+		} catch (SwordfishException ex) {
+			logger.warn("Invalid phases of the interceptor " + interceptor + ", it is invoked in all phases", ex);
+			return EnumSet.allOf(InterceptorPhase.class);
+		}
+	}
+
+	/**
+	 * The sorted interceptor chains of all phases, valid as long as neither
+	 * the registry generation nor the sorting strategies change. The interceptors of a phase are
+	 * kept as a mask over the bit indices of the interceptors, the chain of
+	 * an exchange is the intersection of that mask with the complements of
+	 * the hint and filter masks, collected in the sorted order. The chains
+	 * without exclusions are computed up front.
+	 * <p>
+	 * The stages of a chain group neighbouring concurrent interceptors, an
+	 * interceptor declared to run after a member of the current group starts
+	 * a new one.
+	 */
+	private class PhaseChains {
+		private final long generation;
+		private final long sortingGeneration;
+		private final SortingStrategy sortingStrategy;
+		private final InterceptorIndex index;
+		private final Interceptor[] keys;
+		private final Interceptor[] targets;
+		private final int[] bits;
+		private final BitSet[] phaseMasks = new BitSet[InterceptorPhase.values().length];
+		private final List<List<Interceptor>> targetChains = new ArrayList<List<Interceptor>>();
+		private final Map<Interceptor, Integer> positions = new IdentityHashMap<Interceptor, Integer>();
+		private final boolean[] concurrent;
+		private final String[] names;
+		private final List<Set<String>> after = new ArrayList<Set<String>>();
+		private final List<List<List<Interceptor>>> targetStages = new ArrayList<List<List<Interceptor>>>();
+
+		PhaseChains(long generation, long sortingGeneration, SortingStrategy sortingStrategy,
+				List<Interceptor> sorted) {
+			this.generation = generation;
+			this.sortingGeneration = sortingGeneration;
+			this.sortingStrategy = sortingStrategy;
+			keys = sorted.toArray(new Interceptor[sorted.size()]);
+			index = createIndex(keys);
+			targets = new Interceptor[keys.length];
+			bits = new int[keys.length];
+			concurrent = new boolean[keys.length];
+			names = new String[keys.length];
+			for (int i = 0; i < phaseMasks.length; i++) {
+				phaseMasks[i] = new BitSet();
+			}
+			for (int i = 0; i < keys.length; i++) {
+				bits[i] = index.indexOf(keys[i]);
+				targets[i] = getTarget(keys[i]);
+				positions.put(targets[i], i);
+				Object value = getProperty(keys[i], Interceptor.CONCURRENT_PROPERTY);
+				concurrent[i] = Boolean.TRUE.equals(value) || "true".equalsIgnoreCase(String.valueOf(value));
+				names[i] = getName(keys[i], targets[i]);
+				after.add(getNames(getProperty(keys[i], Interceptor.AFTER_PROPERTY)));
+				for (InterceptorPhase phase : getPhases(keys[i])) {
+					phaseMasks[phase.ordinal()].set(bits[i]);
+				}
+			}
+			for (BitSet mask : phaseMasks) {
+				List<Interceptor> chain = Collections.unmodifiableList(collect(mask, targets));
+				targetChains.add(chain);
+				targetStages.add(createStages(chain));
+			}
+		}
+
+		List<List<Interceptor>> getStages(InterceptorPhase phase, List<Interceptor> chain) {
+			if (chain == targetChains.get(phase.ordinal())) {
+				return targetStages.get(phase.ordinal());
+			}
+			return createStages(chain);
+		}
+
+		private List<List<Interceptor>> createStages(List<Interceptor> chain) {
+			List<List<Interceptor>> stages = new ArrayList<List<Interceptor>>();
+			List<Interceptor> stage = null;
+			Set<String> stageNames = new HashSet<String>();
+			// the names the members of the stage have to run after, whatever the sort order
+			Set<String> stageAfter = new HashSet<String>();
+			boolean stageConcurrent = false;
+			for (Interceptor interceptor : chain) {
+				Integer position = positions.get(interceptor);
+				boolean isConcurrent = position != null && concurrent[position];
+				if (stage == null || !stageConcurrent || !isConcurrent
+						|| !Collections.disjoint(after.get(position), stageNames)
+						|| stageAfter.contains(names[position])) {
+					stage = new ArrayList<Interceptor>();
+					stages.add(stage);
+					stageNames.clear();
+					stageAfter.clear();
+					stageConcurrent = isConcurrent;
+				}
+				stage.add(interceptor);
+				if (position != null) {
+					stageNames.add(names[position]);
+					stageAfter.addAll(after.get(position));
+				}
+			}
+			for (int i = 0; i < stages.size(); i++) {
+				stages.set(i, Collections.unmodifiableList(stages.get(i)));
+			}
+			return Collections.unmodifiableList(stages);
+		}
+
+		List<Interceptor> getTargets(InterceptorPhase phase, BitSet hintMask, BitSet filterMask) {
+			BitSet mask = getMask(phase, hintMask, filterMask);
+			return mask == phaseMasks[phase.ordinal()] ? targetChains.get(phase.ordinal()) : collect(mask, targets);
+		}
+
+		List<Interceptor> getKeys(InterceptorPhase phase, BitSet hintMask) {
+			return collect(getMask(phase, hintMask, null), keys);
+		}
+
+		private BitSet getMask(InterceptorPhase phase, BitSet hintMask, BitSet filterMask) {
+			BitSet phaseMask = phaseMasks[phase.ordinal()];
+			if ((hintMask == null || !hintMask.intersects(phaseMask))
+					&& (filterMask == null || !filterMask.intersects(phaseMask))) {
+				return phaseMask;
+			}
+			BitSet mask = (BitSet) phaseMask.clone();
+			if (hintMask != null) {
+				mask.andNot(hintMask);
+			}
+			if (filterMask != null) {
+				mask.andNot(filterMask);
+			}
+			return mask;
+		}
+
+		private List<Interceptor> collect(BitSet mask, Interceptor[] interceptors) {
+			List<Interceptor> chain = new ArrayList<Interceptor>(mask.cardinality());
+			for (int i = 0; i < interceptors.length; i++) {
+				if (mask.get(bits[i])) {
+					chain.add(interceptors[i]);
+				}
+			}
+			return chain;
+		}
+	}
+
+	/**
+	 * Uses the stable bit indices of the registry if all the interceptors of
+	 * the chain are still registered, their positions in the chain otherwise.
+	 */
+	private InterceptorIndex createIndex(final Interceptor[] keys) {
+		if (interceptorRegistry instanceof InterceptorIndex) {
+			InterceptorIndex registryIndex = (InterceptorIndex) interceptorRegistry;
+			boolean complete = true;
+			for (Interceptor key : keys) {
+				complete &= registryIndex.indexOf(key) >= 0;
+			}
+			if (complete) {
+				return registryIndex;
+			}
+		}
+		final Map<Interceptor, Integer> positions = new HashMap<Interceptor, Integer>();
+		for (int i = 0; i < keys.length; i++) {
+			positions.put(keys[i], i);
+		}
+		return new InterceptorIndex() {
+			public int size() {
+				return keys.length;
+			}
+
+			public Interceptor get(int index) {
+				return index >= 0 && index < keys.length ? keys[index] : null;
+			}
+
+			public int indexOf(Interceptor interceptor) {
+				Integer position = positions.get(interceptor);
+				return position != null ? position : -1;
+			}
+		};
+	}
+
 	public Set<Interceptor> getRegisteredInterceptors() {
 		return interceptorRegistry.getKeySet();
 	}
 
+	public Map<String, ?> getInterceptorProperties(Interceptor interceptor) {
+		PhaseChains chains = getPhaseChains();
+		Integer position = chains.positions.get(interceptor);
+		Interceptor key = position != null ? chains.keys[position] : interceptor;
+		Map<String, ?> registered = interceptorRegistry.getProperties(key);
+		if (registered == null) {
+			return null;
+		}
+		Map<String, Object> properties = new HashMap<String, Object>();
+		if (interceptor.getProperties() != null) {
+			properties.putAll(interceptor.getProperties());
+		}
+		properties.putAll(registered);
+		return properties;
+	}
+
 	public void setSortingStrategy(SortingStrategy sortingStrategy) {
 		this.sortingStrategy = sortingStrategy;
 	}
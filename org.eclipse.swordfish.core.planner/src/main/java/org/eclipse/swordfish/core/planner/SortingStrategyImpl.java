@@ -11,7 +11,9 @@
 package org.eclipse.swordfish.core.planner;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.swordfish.api.Interceptor;
 import org.eclipse.swordfish.api.ReadOnlyRegistry;
@@ -25,6 +27,7 @@ import org.eclipse.swordfish.api.SwordfishException;
 public class SortingStrategyImpl implements SortingStrategy {
 
 	private List<SortingStrategy> sortingStrategies;
+	private final AtomicLong generation = new AtomicLong();
 
 	/* (non-Javadoc)
 	 * @see org.eclipse.swordfish.api.SortingStrategy#filter(java.util.List, org.eclipse.swordfish.api.ReadOnlyRegistry)
@@ -57,6 +60,23 @@ public class SortingStrategyImpl implements SortingStrategy {
 
 	public void setSortingStrategies(List<SortingStrategy> sortingStrategies) {
 		this.sortingStrategies = sortingStrategies;
+		generation.incrementAndGet();
+	}
+
+	/**
+	 * Returns a counter which is incremented whenever the sorting strategies
+	 * change, so callers can cache sorted chains until the counter changes.
+	 */
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	public void onBindSortingStrategy(Object strategy, Map properties) {
+		generation.incrementAndGet();
+	}
+
+	public void onUnbindSortingStrategy(Object strategy, Map properties) {
+		generation.incrementAndGet();
 	}
 
 }
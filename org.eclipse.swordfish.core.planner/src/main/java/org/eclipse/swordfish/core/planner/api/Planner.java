@@ -11,6 +11,7 @@
 package org.eclipse.swordfish.core.planner.api;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.jbi.messaging.MessageExchange;
@@ -18,6 +19,7 @@ import javax.jbi.messaging.MessageExchange;
 import org.eclipse.swordfish.api.FilterStrategy;
 import org.eclipse.swordfish.api.HintExtractor;
 import org.eclipse.swordfish.api.Interceptor;
+import org.eclipse.swordfish.api.InterceptorPhase;
 import org.eclipse.swordfish.api.ReadOnlyRegistry;
 import org.eclipse.swordfish.api.SortingStrategy;
 
@@ -43,6 +45,37 @@ public interface Planner {
 	 */
 	public List<Interceptor> getInterceptorChain(Set<Interceptor> interceptors, MessageExchange messageExchange);
 
+	/**
+	 * Returns the chain of the registered interceptors participating in the given phase.
+	 * The sorted chain of each phase is computed once and reused until the registered
+	 * interceptors change, the hints of the messageExchange are only applied if filter
+	 * strategies are present.
+	 * @param phase - the phase of the current send of the messageExchange
+	 * @param messageExchange - given jbi messageExchange
+	 * @return the interceptors to invoke, must not be modified
+	 */
+	public List<Interceptor> getInterceptorChain(InterceptorPhase phase, MessageExchange messageExchange);
+
+	/**
+	 * Returns the chain of the given phase split into stages. The stages have to be
+	 * invoked one after the other, the interceptors of a stage do not depend on each
+	 * other and may be invoked in parallel, see {@link Interceptor#CONCURRENT_PROPERTY}.
+	 * @param phase - the phase of the current send of the messageExchange
+	 * @param messageExchange - given jbi messageExchange
+	 * @return the stages of the chain, must not be modified
+	 */
+	public List<List<Interceptor>> getInterceptorStages(InterceptorPhase phase, MessageExchange messageExchange);
+
 	public Set<Interceptor> getRegisteredInterceptors();
 
+	/**
+	 * Returns the properties of an interceptor of the chains. The properties the
+	 * interceptor has been registered with take precedence over the ones it
+	 * provides itself.
+	 * @param interceptor - a member of a chain returned by the planner
+	 * @return the merged properties, <code>null</code> if the interceptor is not
+	 * registered (any more)
+	 */
+	public Map<String, ?> getInterceptorProperties(Interceptor interceptor);
+
 }
\ No newline at end of file
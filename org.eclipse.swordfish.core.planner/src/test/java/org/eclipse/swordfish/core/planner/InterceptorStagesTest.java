@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.planner;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.swordfish.api.Interceptor;
+import org.eclipse.swordfish.api.InterceptorPhase;
+import org.eclipse.swordfish.api.SortingStrategy;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InterceptorStagesTest {
+    private InterceptorRegistry registry;
+    private PlannerImpl planner;
+
+    @Before
+    public void setUp() {
+        registry = new InterceptorRegistry();
+        SortingStrategyImpl sortingStrategy = new SortingStrategyImpl();
+        sortingStrategy.setSortingStrategies(Arrays.<SortingStrategy>asList(new SimpleSortingStrategy()));
+        planner = new PlannerImpl();
+        planner.setInterceptorRegistry(registry);
+        planner.setSortingStrategy(sortingStrategy);
+        planner.setFilterStrategy(new FilterStrategyImpl());
+        planner.setHintExtractor(new DefaultHintExtractor());
+    }
+
+    @Test
+    public void test1ConcurrentNeighboursShareAStage() {
+        Interceptor first = register("first", 4, false, null);
+        Interceptor second = register("second", 3, true, null);
+        Interceptor third = register("third", 2, true, null);
+        Interceptor fourth = register("fourth", 1, false, null);
+        List<List<Interceptor>> stages = planner.getInterceptorStages(InterceptorPhase.CONSUMER_REQUEST, null);
+        assertEquals(Arrays.asList(Arrays.asList(first), Arrays.asList(second, third), Arrays.asList(fourth)), stages);
+        assertSame(stages, planner.getInterceptorStages(InterceptorPhase.CONSUMER_REQUEST, null));
+    }
+
+    @Test
+    public void test2AfterDependencySplitsTheStage() {
+        Interceptor first = register("first", 3, true, null);
+        Interceptor second = register("second", 2, true, null);
+        Interceptor third = register("third", 1, true, "first");
+        List<List<Interceptor>> stages = planner.getInterceptorStages(InterceptorPhase.CONSUMER_REQUEST, null);
+        assertEquals(Arrays.asList(Arrays.asList(first, second), Arrays.asList(third)), stages);
+    }
+
+    @Test
+    public void test3SequentialInterceptorsRunAlone() {
+        Interceptor first = register("first", 2, false, null);
+        Interceptor second = register("second", 1, false, null);
+        List<List<Interceptor>> stages = planner.getInterceptorStages(InterceptorPhase.CONSUMER_REQUEST, null);
+        assertEquals(Arrays.asList(Arrays.asList(first), Arrays.asList(second)), stages);
+    }
+
+    @Test
+    public void test4AfterDependencyOnALaterInterceptorSplitsTheStage() {
+        // the sort puts first ahead of the interceptor it has to run after
+        Interceptor first = register("first", 3, true, "third");
+        Interceptor second = register("second", 2, true, null);
+        Interceptor third = register("third", 1, true, null);
+        List<List<Interceptor>> stages = planner.getInterceptorStages(InterceptorPhase.CONSUMER_REQUEST, null);
+        assertEquals(Arrays.asList(Arrays.asList(first, second), Arrays.asList(third)), stages);
+    }
+
+    private Interceptor register(String name, int priority, boolean concurrent, String after) {
+        Interceptor interceptor = new TestInterceptor1();
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(SimpleSortingStrategy.PRIORITY_KEYWORD, priority);
+        properties.put(Interceptor.NAME_PROPERTY, name);
+        properties.put(Interceptor.CONCURRENT_PROPERTY, concurrent);
+        if (after != null) {
+            properties.put(Interceptor.AFTER_PROPERTY, after);
+        }
+        registry.register(interceptor, properties);
+        return interceptor;
+    }
+}
@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.planner;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jbi.messaging.MessageExchange;
+
+import org.eclipse.swordfish.api.FilterStrategy;
+import org.eclipse.swordfish.api.Hint;
+import org.eclipse.swordfish.api.Interceptor;
+import org.eclipse.swordfish.api.InterceptorIndex;
+import org.eclipse.swordfish.api.InterceptorPhase;
+import org.eclipse.swordfish.api.MaskFilterStrategy;
+import org.eclipse.swordfish.api.MaskHintExtractor;
+import org.eclipse.swordfish.api.ReadOnlyRegistry;
+import org.eclipse.swordfish.api.SortingStrategy;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MaskFilteringTest {
+    private InterceptorRegistry registry;
+    private PlannerImpl planner;
+    private FilterStrategyImpl filterStrategy;
+    private Interceptor first;
+    private Interceptor second;
+    private Interceptor third;
+
+    @Before
+    public void setUp() {
+        registry = new InterceptorRegistry();
+        SortingStrategyImpl sortingStrategy = new SortingStrategyImpl();
+        sortingStrategy.setSortingStrategies(Arrays.<SortingStrategy>asList(new SimpleSortingStrategy()));
+        filterStrategy = new FilterStrategyImpl();
+        planner = new PlannerImpl();
+        planner.setInterceptorRegistry(registry);
+        planner.setSortingStrategy(sortingStrategy);
+        planner.setFilterStrategy(filterStrategy);
+        planner.setHintExtractor(new DefaultHintExtractor());
+        first = register(3);
+        second = register(2);
+        third = register(1);
+    }
+
+    @Test
+    public void test1IndicesAreStableAndReused() {
+        assertEquals(0, registry.indexOf(first));
+        assertEquals(1, registry.indexOf(second));
+        assertEquals(2, registry.indexOf(third));
+        registry.unregister(second, null);
+        assertEquals(-1, registry.indexOf(second));
+        assertEquals(2, registry.indexOf(third));
+        Interceptor fourth = register(0);
+        assertEquals(1, registry.indexOf(fourth));
+        assertSame(fourth, registry.get(1));
+    }
+
+    @Test
+    public void test2HintAndFilterMasksAreIntersected() {
+        planner.setHintExtractor(new ExcludingHintExtractor(second));
+        assertEquals(Arrays.asList(first, third), planner.getInterceptorChain(InterceptorPhase.CONSUMER_REQUEST, null));
+
+        filterStrategy.setFilterStrategies(Arrays.<FilterStrategy>asList(new ExcludingFilterStrategy(third)));
+        assertEquals(Arrays.asList(first), planner.getInterceptorChain(InterceptorPhase.CONSUMER_REQUEST, null));
+    }
+
+    @Test
+    public void test3ChainIsSharedWithoutExclusions() {
+        planner.setHintExtractor(new ExcludingHintExtractor());
+        filterStrategy.setFilterStrategies(Arrays.<FilterStrategy>asList(new ExcludingFilterStrategy()));
+        List<Interceptor> chain = planner.getInterceptorChain(InterceptorPhase.DONE, null);
+        assertEquals(Arrays.asList(first, second, third), chain);
+        assertSame(chain, planner.getInterceptorChain(InterceptorPhase.DONE, null));
+    }
+
+    @Test
+    public void test4ListBasedFilterStrategiesAreStillSupported() {
+        planner.setHintExtractor(new ExcludingHintExtractor(first));
+        filterStrategy.setFilterStrategies(Arrays.<FilterStrategy>asList(new FilterStrategy() {
+            public List<Interceptor> filter(List<Interceptor> interceptors,
+                    ReadOnlyRegistry<Interceptor> registry, List<Hint<?>> hints) {
+                List<Interceptor> filtered = new ArrayList<Interceptor>(interceptors);
+                filtered.remove(third);
+                return filtered;
+            }
+
+            public int getPriority() {
+                return 0;
+            }
+        }));
+        assertEquals(Arrays.asList(second), planner.getInterceptorChain(InterceptorPhase.CONSUMER_REQUEST, null));
+    }
+
+    @Test
+    public void test5UnmodifiableFilterResultIsNotChanged() {
+        filterStrategy.setFilterStrategies(Arrays.<FilterStrategy>asList(new FilterStrategy() {
+            public List<Interceptor> filter(List<Interceptor> interceptors,
+                    ReadOnlyRegistry<Interceptor> registry, List<Hint<?>> hints) {
+                return Collections.unmodifiableList(interceptors.subList(0, 2));
+            }
+
+            public int getPriority() {
+                return 0;
+            }
+        }));
+        assertEquals(Arrays.asList(first, second), planner.getInterceptorChain(InterceptorPhase.CONSUMER_REQUEST, null));
+    }
+
+    private Interceptor register(int priority) {
+        Interceptor interceptor = new TestInterceptor1();
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(SimpleSortingStrategy.PRIORITY_KEYWORD, priority);
+        registry.register(interceptor, properties);
+        return interceptor;
+    }
+
+    private static BitSet mask(InterceptorIndex index, Interceptor... interceptors) {
+        if (interceptors.length == 0) {
+            return null;
+        }
+        BitSet mask = new BitSet(index.size());
+        for (Interceptor interceptor : interceptors) {
+            mask.set(index.indexOf(interceptor));
+        }
+        return mask;
+    }
+
+    private static class ExcludingHintExtractor extends DefaultHintExtractor implements MaskHintExtractor {
+        private final Interceptor[] excluded;
+
+        ExcludingHintExtractor(Interceptor... excluded) {
+            this.excluded = excluded;
+        }
+
+        @Override
+        public BitSet extractHintMask(MessageExchange messageExchange, InterceptorIndex index) {
+            return mask(index, excluded);
+        }
+    }
+
+    private static class ExcludingFilterStrategy implements MaskFilterStrategy {
+        private final Interceptor[] excluded;
+
+        ExcludingFilterStrategy(Interceptor... excluded) {
+            this.excluded = excluded;
+        }
+
+        public BitSet filter(InterceptorIndex index, ReadOnlyRegistry<Interceptor> registry, BitSet hintMask) {
+            return mask(index, excluded);
+        }
+
+        public List<Interceptor> filter(List<Interceptor> interceptors,
+                ReadOnlyRegistry<Interceptor> registry, List<Hint<?>> hints) {
+            throw new UnsupportedOperationException();
+        }
+
+        public int getPriority() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.planner;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.swordfish.api.Interceptor;
+import org.eclipse.swordfish.api.InterceptorPhase;
+import org.eclipse.swordfish.api.ReadOnlyRegistry;
+import org.eclipse.swordfish.api.SortingStrategy;
+import org.eclipse.swordfish.api.SwordfishException;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.springframework.osgi.service.importer.ImportedOsgiServiceProxy;
+import org.springframework.osgi.service.importer.ServiceReferenceProxy;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PhasePlannerTest {
+    private InterceptorRegistry registry;
+    private PlannerImpl planner;
+    private SortingStrategyImpl sortingStrategy;
+    private List<SortingStrategy> sortingStrategies;
+
+    @Before
+    public void setUp() {
+        registry = new InterceptorRegistry();
+        sortingStrategy = new SortingStrategyImpl();
+        sortingStrategies = new ArrayList<SortingStrategy>();
+        sortingStrategies.add(new SimpleSortingStrategy());
+        sortingStrategy.setSortingStrategies(sortingStrategies);
+        planner = new PlannerImpl();
+        planner.setInterceptorRegistry(registry);
+        planner.setSortingStrategy(sortingStrategy);
+        planner.setFilterStrategy(new FilterStrategyImpl());
+        planner.setHintExtractor(new DefaultHintExtractor());
+    }
+
+    @Test
+    public void test1ChainsContainOnlyTheInterceptorsOfThePhase() {
+        Interceptor all = new TestInterceptor1();
+        Interceptor request = new TestInterceptor1();
+        Interceptor responseAndFault = new TestInterceptor1();
+        registry.register(all, properties(null, 1));
+        registry.register(request, properties(InterceptorPhase.CONSUMER_REQUEST, 3));
+        registry.register(responseAndFault, properties("provider-response, FAULT", 2));
+
+        assertEquals(Arrays.asList(request, all), planner.getInterceptorChain(InterceptorPhase.CONSUMER_REQUEST, null));
+        assertEquals(Arrays.asList(responseAndFault, all), planner.getInterceptorChain(InterceptorPhase.PROVIDER_RESPONSE, null));
+        assertEquals(Arrays.asList(responseAndFault, all), planner.getInterceptorChain(InterceptorPhase.FAULT, null));
+        assertEquals(Arrays.asList(all), planner.getInterceptorChain(InterceptorPhase.DONE, null));
+    }
+
+    @Test
+    public void test2ChainsAreCachedUntilTheRegistryChanges() {
+        Interceptor first = new TestInterceptor1();
+        registry.register(first, properties(null, 1));
+        List<Interceptor> chain = planner.getInterceptorChain(InterceptorPhase.DONE, null);
+        assertSame(chain, planner.getInterceptorChain(InterceptorPhase.DONE, null));
+
+        Interceptor second = new TestInterceptor1();
+        registry.register(second, properties(InterceptorPhase.DONE, 2));
+        List<Interceptor> updated = planner.getInterceptorChain(InterceptorPhase.DONE, null);
+        assertNotSame(chain, updated);
+        assertEquals(Arrays.asList(second, first), updated);
+
+        registry.unregister(second, null);
+        assertEquals(Arrays.asList(first), planner.getInterceptorChain(InterceptorPhase.DONE, null));
+    }
+
+    @Test
+    public void test3InvalidPhasesFallBackToAllPhases() {
+        Interceptor interceptor = new TestInterceptor1();
+        registry.register(interceptor, properties("unknown", 0));
+        for (InterceptorPhase phase : InterceptorPhase.values()) {
+            assertTrue(planner.getInterceptorChain(phase, null).contains(interceptor));
+        }
+    }
+
+    @Test
+    public void test4ImportedInterceptorsAreInvokedDirectly() throws Exception {
+        final Interceptor target = new TestInterceptor1();
+        final ServiceReference reference = (ServiceReference) proxy(ServiceReference.class, null);
+        final ServiceReferenceProxy referenceProxy = (ServiceReferenceProxy) proxy(ServiceReferenceProxy.class, reference);
+        Interceptor imported = (Interceptor) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class[] {Interceptor.class, ImportedOsgiServiceProxy.class}, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if ("getServiceReference".equals(method.getName())) {
+                        return referenceProxy;
+                    } else if ("hashCode".equals(method.getName())) {
+                        return System.identityHashCode(proxy);
+                    } else if ("equals".equals(method.getName())) {
+                        return proxy == args[0];
+                    }
+                    return null;
+                }
+            });
+        final List<Object> released = new ArrayList<Object>();
+        registry.setBundleContext((BundleContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class[] {BundleContext.class}, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if ("getService".equals(method.getName()) && args[0] == reference) {
+                        return target;
+                    } else if ("ungetService".equals(method.getName())) {
+                        released.add(args[0]);
+                        return true;
+                    }
+                    return null;
+                }
+            }));
+
+        registry.register(imported, properties(null, 0));
+        assertSame(target, registry.getTarget(imported));
+        assertEquals(Arrays.asList(target), planner.getInterceptorChain(InterceptorPhase.CONSUMER_REQUEST, null));
+        assertEquals(Arrays.asList(imported), new ArrayList<Interceptor>(registry.getKeySet()));
+
+        registry.unregister(imported, null);
+        assertEquals(Arrays.asList(reference), released);
+        assertSame(imported, registry.getTarget(imported));
+        assertTrue(planner.getInterceptorChain(InterceptorPhase.CONSUMER_REQUEST, null).isEmpty());
+    }
+
+    @Test
+    public void test5ChainsAreResortedWhenTheStrategiesChange() {
+        Interceptor first = new TestInterceptor1();
+        Interceptor second = new TestInterceptor1();
+        registry.register(first, properties(null, 2));
+        registry.register(second, properties(null, 1));
+        assertEquals(Arrays.asList(first, second), planner.getInterceptorChain(InterceptorPhase.DONE, null));
+
+        SortingStrategy reversed = new SortingStrategy() {
+            public List<Interceptor> sort(Set<Interceptor> interceptors, ReadOnlyRegistry<Interceptor> registry) {
+                List<Interceptor> sorted = new SimpleSortingStrategy().sort(interceptors, registry);
+                Collections.reverse(sorted);
+                return sorted;
+            }
+
+            public int getPriority() {
+                return 1;
+            }
+        };
+        sortingStrategies.add(0, reversed);
+        sortingStrategy.onBindSortingStrategy(reversed, null);
+        assertEquals(Arrays.asList(second, first), planner.getInterceptorChain(InterceptorPhase.DONE, null));
+    }
+
+    @Test
+    public void test6FailedSortIsReported() {
+        registry.register(new TestInterceptor1(), properties(null, 1));
+        sortingStrategies.set(0, new SortingStrategy() {
+            public List<Interceptor> sort(Set<Interceptor> interceptors, ReadOnlyRegistry<Interceptor> registry) {
+                throw new SwordfishException("cannot sort");
+            }
+
+            public int getPriority() {
+                return 0;
+            }
+        });
+        sortingStrategy.onBindSortingStrategy(null, null);
+        try {
+            planner.getInterceptorChain(InterceptorPhase.DONE, null);
+            fail("The chain has been planned without sorting");
+        } catch (SwordfishException ex) {
+            // expected
+        }
+    }
+
+    private Object proxy(Class<?> type, final Object targetReference) {
+        return Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] {type}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("getTargetServiceReference".equals(method.getName())) {
+                    return targetReference;
+                } else if ("hashCode".equals(method.getName())) {
+                    return System.identityHashCode(proxy);
+                } else if ("equals".equals(method.getName())) {
+                    return proxy == args[0];
+                }
+                return null;
+            }
+        });
+    }
+
+    private Map<String, Object> properties(Object phases, int priority) {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        if (phases != null) {
+            properties.put(Interceptor.PHASES_PROPERTY, phases);
+        }
+        properties.put(SimpleSortingStrategy.PRIORITY_KEYWORD, priority);
+        return properties;
+    }
+}
@@ -0,0 +1,264 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.tracking;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.jbi.messaging.MessageExchange;
+import javax.xml.namespace.QName;
+
+import org.eclipse.swordfish.api.SwordfishException;
+import org.eclipse.swordfish.api.configuration.ConfigurationSnapshot;
+import org.eclipse.swordfish.api.configuration.TypedConfigurationConsumer;
+import org.eclipse.swordfish.core.event.TrackingSampler;
+import org.eclipse.swordfish.core.util.ConfigurationSnapshotImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies the sampling rules received from the configuration service. The
+ * configuration keys have the form <code>&lt;scope&gt;.&lt;setting&gt;</code>,
+ * the scope being <code>default</code>, a service name like
+ * <code>{http://example.org}Service</code> or a service name followed by a
+ * slash and the local name of an operation. Operations inherit the settings
+ * of their service, services those of the default scope.
+ * <p>
+ * The settings are
+ * <ul>
+ * <li><code>ratio</code> - share of the exchanges to track</li>
+ * <li><code>rate</code> and <code>burst</code> - maximum number of exchanges
+ * per second and service to track</li>
+ * <li><code>errors</code> - track failed exchanges regardless of the ratio and
+ * the rate, true by default</li>
+ * <li><code>slowerThan</code> - duration after which an exchange is tracked
+ * regardless of the ratio and the rate, only its steps after the duration
+ * are tracked</li>
+ * </ul>
+ * All the exchanges are tracked in a scope without ratio and rate. Without a
+ * configuration all the exchanges are tracked.
+ */
+public class ConfigurableTrackingSampler implements TrackingSampler, TypedConfigurationConsumer<Object> {
+    private static final Logger LOG = LoggerFactory.getLogger(ConfigurableTrackingSampler.class);
+
+    public static final String SAMPLED_PROPERTY = "org.eclipse.swordfish.tracking.sampled";
+    public static final String DEFAULT_SCOPE = "default";
+    public static final String RATIO = "ratio";
+    public static final String RATE = "rate";
+    public static final String BURST = "burst";
+    public static final String ERRORS = "errors";
+    public static final String SLOWER_THAN = "slowerThan";
+
+    private static final TrackingSampler ERROR_SAMPLER = new ErrorSampler();
+
+    private volatile Rules rules = new Rules(Rule.TRACK_ALL, new HashMap<QName, ServiceRules>());
+
+    public String getId() {
+        return getClass().getName();
+    }
+
+    public boolean sample(MessageExchange exchange) {
+        return rules.lookup(exchange.getService(), exchange.getOperation()).sample(exchange);
+    }
+
+    public void onReceiveConfiguration(Map<String, Object> configuration) {
+        onReceiveSnapshot(configuration != null ? new ConfigurationSnapshotImpl(getId(), configuration) : null);
+    }
+
+    public void onReceiveSnapshot(ConfigurationSnapshot snapshot) {
+        if (snapshot == null) {
+            rules = new Rules(Rule.TRACK_ALL, new HashMap<QName, ServiceRules>());
+            LOG.info("Tracking sampling configuration removed, all the exchanges are tracked");
+            return;
+        }
+        rules = parse(snapshot);
+        LOG.info("Applied the tracking sampling configuration " + snapshot.asMap());
+    }
+
+    private static Rules parse(ConfigurationSnapshot snapshot) {
+        Map<String, Settings> scopes = new HashMap<String, Settings>();
+        for (String key : snapshot.asMap().keySet()) {
+            int separator = key.lastIndexOf('.');
+            if (separator <= 0) {
+                LOG.warn("Ignoring the tracking sampling property " + key + " without scope");
+                continue;
+            }
+            String scope = key.substring(0, separator);
+            Settings settings = scopes.get(scope);
+            if (settings == null) {
+                settings = new Settings();
+                scopes.put(scope, settings);
+            }
+            settings.set(key.substring(separator + 1), key, snapshot);
+        }
+        Settings defaultSettings = scopes.remove(DEFAULT_SCOPE);
+        if (defaultSettings == null) {
+            defaultSettings = new Settings();
+        }
+        Rule defaultRule = new Rule(defaultSettings, null);
+
+        Map<QName, Settings> serviceSettings = new HashMap<QName, Settings>();
+        Map<QName, Map<String, Settings>> operationSettings = new HashMap<QName, Map<String, Settings>>();
+        for (Map.Entry<String, Settings> entry : scopes.entrySet()) {
+            QName name;
+            try {
+                name = QName.valueOf(entry.getKey());
+            } catch (IllegalArgumentException ex) {
+                throw new SwordfishException("Invalid tracking sampling scope " + entry.getKey(), ex);
+            }
+            int slash = name.getLocalPart().indexOf('/');
+            if (slash < 0) {
+                serviceSettings.put(name, entry.getValue());
+                continue;
+            }
+            QName service = new QName(name.getNamespaceURI(), name.getLocalPart().substring(0, slash));
+            Map<String, Settings> operations = operationSettings.get(service);
+            if (operations == null) {
+                operations = new HashMap<String, Settings>();
+                operationSettings.put(service, operations);
+            }
+            operations.put(name.getLocalPart().substring(slash + 1), entry.getValue());
+        }
+
+        Map<QName, ServiceRules> services = new HashMap<QName, ServiceRules>();
+        for (QName service : serviceSettings.keySet()) {
+            services.put(service, new ServiceRules(new Rule(serviceSettings.get(service), defaultRule)));
+        }
+        for (Map.Entry<QName, Map<String, Settings>> entry : operationSettings.entrySet()) {
+            ServiceRules serviceRules = services.get(entry.getKey());
+            if (serviceRules == null) {
+                serviceRules = new ServiceRules(defaultRule);
+                services.put(entry.getKey(), serviceRules);
+            }
+            for (Map.Entry<String, Settings> operation : entry.getValue().entrySet()) {
+                serviceRules.operations.put(operation.getKey(), new Rule(operation.getValue(), serviceRules.rule));
+            }
+        }
+        return new Rules(defaultRule, services);
+    }
+
+    /**
+     * The settings of one scope as configured, null for the settings which
+     * are inherited.
+     */
+    private static class Settings {
+        private Double ratio;
+        private Double rate;
+        private Integer burst;
+        private Boolean errors;
+        private Long slowerThan;
+
+        void set(String setting, String key, ConfigurationSnapshot snapshot) {
+            if (RATIO.equals(setting)) {
+                ratio = snapshot.getDouble(key, 1);
+            } else if (RATE.equals(setting)) {
+                rate = snapshot.getDouble(key, 0);
+            } else if (BURST.equals(setting)) {
+                burst = snapshot.getInt(key, 1);
+            } else if (ERRORS.equals(setting)) {
+                errors = snapshot.getBoolean(key, true);
+            } else if (SLOWER_THAN.equals(setting)) {
+                slowerThan = snapshot.getDuration(key, TimeUnit.NANOSECONDS, 0);
+            } else {
+                LOG.warn("Ignoring the unknown tracking sampling property " + key);
+            }
+        }
+    }
+
+    private static class Rule {
+        static final Rule TRACK_ALL = new Rule(new Settings(), null);
+
+        private final Double ratio;
+        private final Double rate;
+        private final Integer burst;
+        private final Boolean errors;
+        private final Long slowerThan;
+        private final RatioSampler ratioSampler;
+        private final RateLimitingSampler rateSampler;
+        private final TailSampler tailSampler;
+        private final boolean trackAll;
+
+        Rule(Settings settings, Rule parent) {
+            ratio = settings.ratio != null || parent == null ? settings.ratio : parent.ratio;
+            rate = settings.rate != null || parent == null ? settings.rate : parent.rate;
+            burst = settings.burst != null || parent == null ? settings.burst : parent.burst;
+            errors = settings.errors != null || parent == null ? settings.errors : parent.errors;
+            slowerThan = settings.slowerThan != null || parent == null ? settings.slowerThan : parent.slowerThan;
+
+            ratioSampler = ratio != null && ratio < 1 ? new RatioSampler(ratio) : null;
+            if (rate == null || rate <= 0) {
+                rateSampler = null;
+            } else if (parent != null && parent.rateSampler != null && settings.rate == null && settings.burst == null) {
+                // an inherited rate limit is shared with the parent scope
+                rateSampler = parent.rateSampler;
+            } else {
+                rateSampler = new RateLimitingSampler(rate, burst != null ? burst : (int) Math.max(1, Math.ceil(rate)));
+            }
+            tailSampler = slowerThan != null && slowerThan > 0 ? new TailSampler(slowerThan) : null;
+            trackAll = ratioSampler == null && rateSampler == null;
+        }
+
+        boolean sample(MessageExchange exchange) {
+            if (trackAll) {
+                return true;
+            }
+            // the tail sampler has to see every exchange to know when it started
+            if (tailSampler != null && tailSampler.sample(exchange)) {
+                return true;
+            }
+            if ((errors == null || errors) && ERROR_SAMPLER.sample(exchange)) {
+                return true;
+            }
+            Object sampled = exchange.getProperty(SAMPLED_PROPERTY);
+            if (sampled == null) {
+                boolean head = (ratioSampler == null || ratioSampler.sample(exchange))
+                    && (rateSampler == null || rateSampler.sample(exchange));
+                sampled = Boolean.valueOf(head);
+                exchange.setProperty(SAMPLED_PROPERTY, sampled);
+            }
+            return (Boolean) sampled;
+        }
+    }
+
+    private static class ServiceRules {
+        private final Rule rule;
+        private final Map<String, Rule> operations = new HashMap<String, Rule>();
+
+        ServiceRules(Rule rule) {
+            this.rule = rule;
+        }
+    }
+
+    private static class Rules {
+        private final Rule defaultRule;
+        private final Map<QName, ServiceRules> services;
+
+        Rules(Rule defaultRule, Map<QName, ServiceRules> services) {
+            this.defaultRule = defaultRule;
+            this.services = services;
+        }
+
+        Rule lookup(QName service, QName operation) {
+            ServiceRules serviceRules = service != null ? services.get(service) : null;
+            if (serviceRules == null) {
+                return defaultRule;
+            }
+            if (operation != null && !serviceRules.operations.isEmpty()) {
+                Rule rule = serviceRules.operations.get(operation.getLocalPart());
+                if (rule != null) {
+                    return rule;
+                }
+            }
+            return serviceRules.rule;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.tracking;
+
+import javax.jbi.messaging.ExchangeStatus;
+import javax.jbi.messaging.MessageExchange;
+
+import org.eclipse.swordfish.core.event.TrackingSampler;
+
+/**
+ * Tracks the exchanges which have failed.
+ */
+public class ErrorSampler implements TrackingSampler {
+
+    public boolean sample(MessageExchange exchange) {
+        return exchange.getError() != null || exchange.getFault() != null
+            || ExchangeStatus.ERROR.equals(exchange.getStatus());
+    }
+}
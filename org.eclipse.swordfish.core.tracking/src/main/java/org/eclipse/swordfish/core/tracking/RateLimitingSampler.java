@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.tracking;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.jbi.messaging.MessageExchange;
+import javax.xml.namespace.QName;
+
+import org.eclipse.swordfish.core.event.TrackingSampler;
+import org.eclipse.swordfish.core.util.TokenBucket;
+
+/**
+ * Limits the tracked exchanges to a rate per second. Every service gets a
+ * token bucket of its own, so a busy service does not use up the tracking
+ * budget of the others.
+ */
+public class RateLimitingSampler implements TrackingSampler {
+    private static final QName NO_SERVICE = new QName("");
+
+    private final double rate;
+    private final int burst;
+    private final ConcurrentHashMap<QName, TokenBucket> buckets = new ConcurrentHashMap<QName, TokenBucket>();
+
+    public RateLimitingSampler(double rate, int burst) {
+        this.rate = rate;
+        this.burst = burst;
+        // fail early on invalid settings
+        new TokenBucket(rate, burst);
+    }
+
+    public boolean sample(MessageExchange exchange) {
+        QName service = exchange.getService();
+        if (service == null) {
+            service = NO_SERVICE;
+        }
+        TokenBucket bucket = buckets.get(service);
+        if (bucket == null) {
+            TokenBucket created = new TokenBucket(rate, burst);
+            bucket = buckets.putIfAbsent(service, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        return bucket.tryAcquire();
+    }
+}
@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.tracking;
+
+import javax.jbi.messaging.MessageExchange;
+
+import org.eclipse.swordfish.core.event.TrackingSampler;
+import org.springframework.util.Assert;
+
+/**
+ * Tracks a fixed share of the exchanges. The decision is derived from the
+ * exchange id, so all the steps of an exchange are either tracked or not.
+ */
+public class RatioSampler implements TrackingSampler {
+    private static final int RESOLUTION = 10000;
+
+    private final int threshold;
+
+    /**
+     * @param ratio - share of the exchanges to track between 0 and 1
+     */
+    public RatioSampler(double ratio) {
+        Assert.isTrue(ratio >= 0 && ratio <= 1, "The ratio must be between 0 and 1");
+        threshold = (int) Math.round(ratio * RESOLUTION);
+    }
+
+    public boolean sample(MessageExchange exchange) {
+        String id = exchange.getExchangeId();
+        if (id == null) {
+            return threshold > 0;
+        }
+        // spread the hash, exchange ids often differ in the last characters only
+        int hash = id.hashCode() * 0x9E3779B9;
+        return ((hash >>> 1) % RESOLUTION) < threshold;
+    }
+}
@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.tracking;
+
+import javax.jbi.messaging.MessageExchange;
+
+import org.eclipse.swordfish.core.event.TrackingSampler;
+
+/**
+ * Tracks the exchanges which take longer than a threshold. The time an
+ * exchange is seen first is kept in an exchange property, the exchange is
+ * tracked from the first step after the threshold has been exceeded.
+ * <p>
+ * Only the tail of a slow exchange is tracked: the steps before the
+ * threshold are not buffered, as the sampling decision is taken before a
+ * tracking event is created.
+ */
+public class TailSampler implements TrackingSampler {
+    private final long threshold;
+
+    /**
+     * @param threshold - the threshold in nanoseconds
+     */
+    public TailSampler(long threshold) {
+        this.threshold = threshold;
+    }
+
+    public boolean sample(MessageExchange exchange) {
+        long now = System.nanoTime();
+        Object start = exchange.getProperty(START_PROPERTY);
+        if (!(start instanceof Long)) {
+            exchange.setProperty(START_PROPERTY, now);
+            return false;
+        }
+        return now - (Long) start >= threshold;
+    }
+}
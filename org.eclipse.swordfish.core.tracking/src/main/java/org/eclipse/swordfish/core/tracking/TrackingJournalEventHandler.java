@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.tracking;
+
+import org.eclipse.swordfish.api.event.EventConstants;
+import org.eclipse.swordfish.api.event.EventFilter;
+import org.eclipse.swordfish.api.event.EventHandler;
+import org.eclipse.swordfish.api.event.TrackingEvent;
+import org.eclipse.swordfish.core.event.TrackingEventImpl;
+import org.eclipse.swordfish.core.tracking.journal.TrackingJournal;
+import org.eclipse.swordfish.core.tracking.journal.TrackingRecord;
+import org.springframework.util.Assert;
+
+/**
+ * Writes the tracking events into a {@link TrackingJournal}. The state of
+ * the exchange is taken from the event, which has captured it when it was
+ * posted. The message content is only stored when the journal keeps
+ * payloads and the event carries one, which the exchange listener only
+ * copies into the events when its <code>trackPayloads</code> setting is on.
+ */
+public class TrackingJournalEventHandler implements EventHandler<TrackingEvent> {
+
+    private TrackingJournal journal;
+
+    public EventFilter getEventFilter() {
+        return null;
+    }
+
+    public String getSubscribedTopic() {
+        return EventConstants.TOPIC_TRACKING_EVENT;
+    }
+
+    public void handleEvent(TrackingEvent event) {
+        Assert.notNull(journal, "The tracking journal is not set");
+        if (event.getExchange() == null) {
+            return;
+        }
+        // events of other implementations only have the exchange as it is now
+        TrackingEventImpl tracked = event instanceof TrackingEventImpl
+            ? (TrackingEventImpl) event : new TrackingEventImpl(event.getExchange());
+        String payload = journal.getMaxPayloadSize() > 0 ? tracked.getPayload() : null;
+        journal.append(new TrackingRecord(tracked.getExchangeId(), tracked.getRole(), tracked.getService(),
+            tracked.getOperation(), tracked.getTimestamp(), tracked.getElapsed(), tracked.getStatus(), payload));
+    }
+
+    public TrackingJournal getJournal() {
+        return journal;
+    }
+
+    public void setJournal(TrackingJournal journal) {
+        this.journal = journal;
+    }
+}
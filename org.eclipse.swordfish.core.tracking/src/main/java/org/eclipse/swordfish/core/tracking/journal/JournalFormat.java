@@ -0,0 +1,266 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.tracking.journal;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import javax.jbi.messaging.ExchangeStatus;
+import javax.jbi.messaging.MessageExchange.Role;
+import javax.xml.namespace.QName;
+
+import org.eclipse.swordfish.api.SwordfishException;
+
+/**
+ * Binary layout of the journal segments. A segment starts with a header
+ * holding a magic number, the format version, the sequence number and the
+ * creation time of the segment. The records follow, each one prefixed with
+ * the length of its body. The length is written after the body, a zero
+ * length marks the end of the written part of the pre-allocated segment.
+ */
+final class JournalFormat {
+    static final int MAGIC = 0x53465452;
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final String PREFIX = "tracking-";
+    static final String SUFFIX = ".journal";
+
+    private static final int FIXED_SIZE = 8 + 8 + 1 + 1;
+    private static final String CHARSET = "UTF-8";
+
+    private JournalFormat() {
+    }
+
+    static String getSegmentName(long sequence) {
+        String number = Long.toString(sequence);
+        StringBuilder name = new StringBuilder(PREFIX);
+        for (int i = number.length(); i < 19; i++) {
+            name.append('0');
+        }
+        return name.append(number).append(SUFFIX).toString();
+    }
+
+    static long getSequence(File segment) {
+        String name = segment.getName();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * @return the segments of the directory ordered by sequence number
+     */
+    static File[] listSegments(File directory) {
+        File[] segments = directory.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                String name = file.getName();
+                if (!file.isFile() || !name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) {
+                    return false;
+                }
+                try {
+                    getSequence(file);
+                    return true;
+                } catch (NumberFormatException ex) {
+                    return false;
+                }
+            }
+        });
+        if (segments == null) {
+            return new File[0];
+        }
+        Arrays.sort(segments, new Comparator<File>() {
+            public int compare(File first, File second) {
+                long diff = getSequence(first) - getSequence(second);
+                return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+            }
+        });
+        return segments;
+    }
+
+    static void writeHeader(ByteBuffer buffer, long sequence, long created) {
+        buffer.putInt(0, MAGIC);
+        buffer.putShort(4, VERSION);
+        buffer.putLong(8, sequence);
+        buffer.putLong(16, created);
+        buffer.position(HEADER_SIZE);
+    }
+
+    /**
+     * @return the creation time of the segment or -1 if the header is invalid
+     */
+    static long readHeader(ByteBuffer buffer) {
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION) {
+            return -1;
+        }
+        buffer.position(HEADER_SIZE);
+        return buffer.getLong(16);
+    }
+
+    /**
+     * Encoded form of a record, computed before the record is written to
+     * know whether it fits into the current segment.
+     */
+    static class EncodedRecord {
+        private final TrackingRecord record;
+        private final byte[] exchangeId;
+        private final byte[] service;
+        private final byte[] operation;
+        private final byte[] payload;
+        private final int size;
+
+        EncodedRecord(TrackingRecord record, int maxPayloadSize) {
+            this.record = record;
+            exchangeId = encode(record.getExchangeId(), Short.MAX_VALUE);
+            service = encode(record.getService() != null ? record.getService().toString() : null, Short.MAX_VALUE);
+            operation = encode(record.getOperation() != null ? record.getOperation().toString() : null, Short.MAX_VALUE);
+            payload = encode(record.getPayload(), maxPayloadSize);
+            size = FIXED_SIZE + 2 + length(exchangeId) + 2 + length(service) + 2 + length(operation)
+                + 4 + length(payload);
+        }
+
+        /**
+         * @return the number of bytes taken by the record including its
+         * length prefix
+         */
+        int getSize() {
+            return 4 + size;
+        }
+
+        void write(ByteBuffer buffer) {
+            int start = buffer.position();
+            buffer.position(start + 4);
+            buffer.putLong(record.getTimestamp());
+            buffer.putLong(record.getElapsed());
+            buffer.put(record.getRole() == Role.PROVIDER ? (byte) 1 : (byte) 0);
+            buffer.put(encodeStatus(record.getStatus()));
+            putShortBytes(buffer, exchangeId);
+            putShortBytes(buffer, service);
+            putShortBytes(buffer, operation);
+            if (payload == null) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(payload.length);
+                buffer.put(payload);
+            }
+            // publish the record once its body is complete
+            buffer.putInt(start, size);
+        }
+    }
+
+    /**
+     * Reads the record at the current position of the buffer.
+     * @return the record or <code>null</code> at the end of the segment
+     */
+    static TrackingRecord read(ByteBuffer buffer) {
+        if (buffer.remaining() < 4) {
+            return null;
+        }
+        int start = buffer.position();
+        int size = buffer.getInt(start);
+        if (size < FIXED_SIZE || size > buffer.remaining() - 4) {
+            return null;
+        }
+        buffer.position(start + 4);
+        long timestamp = buffer.getLong();
+        long elapsed = buffer.getLong();
+        Role role = buffer.get() == 1 ? Role.PROVIDER : Role.CONSUMER;
+        ExchangeStatus status = decodeStatus(buffer.get());
+        String exchangeId = decode(getShortBytes(buffer));
+        String service = decode(getShortBytes(buffer));
+        String operation = decode(getShortBytes(buffer));
+        byte[] payload = null;
+        int payloadLength = buffer.getInt();
+        if (payloadLength >= 0) {
+            payload = new byte[payloadLength];
+            buffer.get(payload);
+        }
+        buffer.position(start + 4 + size);
+        return new TrackingRecord(exchangeId, role, service != null ? QName.valueOf(service) : null,
+            operation != null ? QName.valueOf(operation) : null, timestamp, elapsed, status, decode(payload));
+    }
+
+    private static byte encodeStatus(ExchangeStatus status) {
+        if (status == ExchangeStatus.DONE) {
+            return 1;
+        } else if (status == ExchangeStatus.ERROR) {
+            return 2;
+        }
+        return 0;
+    }
+
+    private static ExchangeStatus decodeStatus(byte status) {
+        switch (status) {
+        case 1:
+            return ExchangeStatus.DONE;
+        case 2:
+            return ExchangeStatus.ERROR;
+        default:
+            return ExchangeStatus.ACTIVE;
+        }
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes != null ? bytes.length : 0;
+    }
+
+    private static void putShortBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putShort((short) -1);
+        } else {
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private static byte[] getShortBytes(ByteBuffer buffer) {
+        short length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Encodes the value, truncating it to at most maxLength bytes without
+     * splitting a character.
+     */
+    private static byte[] encode(String value, int maxLength) {
+        if (value == null || maxLength <= 0) {
+            return null;
+        }
+        try {
+            String truncated = value.length() > maxLength ? value.substring(0, maxLength) : value;
+            byte[] bytes = truncated.getBytes(CHARSET);
+            while (bytes.length > maxLength) {
+                truncated = truncated.substring(0, truncated.length() - Math.max(1, (bytes.length - maxLength) / 3));
+                bytes = truncated.getBytes(CHARSET);
+            }
+            return bytes;
+        } catch (UnsupportedEncodingException ex) {
+            throw new SwordfishException(ex);
+        }
+    }
+
+    private static String decode(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            return new String(bytes, CHARSET);
+        } catch (UnsupportedEncodingException ex) {
+            throw new SwordfishException(ex);
+        }
+    }
+}
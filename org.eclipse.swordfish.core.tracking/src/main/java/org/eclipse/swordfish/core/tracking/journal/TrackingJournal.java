@@ -0,0 +1,240 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.tracking.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.eclipse.swordfish.api.SwordfishException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * Append-only journal of tracking records. The records are written into
+ * pre-allocated segment files mapped into memory, so appending a record
+ * does not involve a system call. The segments are flushed to disk when
+ * they are rolled over and when the journal is closed.
+ * <p>
+ * A new segment is started when a record does not fit into the current
+ * one, when the current segment is older than the rollover interval and
+ * every time the journal is opened. The oldest segments are deleted when
+ * there are more than maxSegments of them.
+ * <p>
+ * The directory has no default, the journal takes up to maxSegments times
+ * segmentSize bytes of disk space there.
+ */
+public class TrackingJournal implements InitializingBean, DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(TrackingJournal.class);
+
+    private File directory;
+    private int segmentSize = 16 * 1024 * 1024;
+    private long rolloverInterval = 60 * 60 * 1000;
+    private int maxSegments = 64;
+    private int maxPayloadSize = 0;
+
+    private RandomAccessFile file;
+    private MappedByteBuffer buffer;
+    private long sequence;
+    private long segmentCreated;
+    private long droppedRecords;
+
+    public void afterPropertiesSet() throws Exception {
+        Assert.notNull(directory, "The directory of the tracking journal must be configured");
+        Assert.isTrue(segmentSize > JournalFormat.HEADER_SIZE, "The segment size is too small");
+        open();
+    }
+
+    public void destroy() throws Exception {
+        close();
+    }
+
+    public synchronized void open() {
+        if (file != null) {
+            return;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new SwordfishException("Could not create the tracking journal directory " + directory);
+        }
+        File[] segments = JournalFormat.listSegments(directory);
+        sequence = segments.length > 0 ? JournalFormat.getSequence(segments[segments.length - 1]) : 0;
+        startSegment(System.currentTimeMillis());
+    }
+
+    /**
+     * Appends a record to the journal. Records which do not fit into an
+     * empty segment are dropped.
+     * @return <code>true</code> if the record was written
+     */
+    public boolean append(TrackingRecord record) {
+        JournalFormat.EncodedRecord encoded = new JournalFormat.EncodedRecord(record, maxPayloadSize);
+        synchronized (this) {
+            if (file == null) {
+                throw new IllegalStateException("The tracking journal is closed");
+            }
+            long now = System.currentTimeMillis();
+            if (buffer.remaining() < encoded.getSize()
+                    || (rolloverInterval > 0 && now - segmentCreated >= rolloverInterval)) {
+                if (encoded.getSize() > segmentSize - JournalFormat.HEADER_SIZE) {
+                    droppedRecords++;
+                    LOG.warn("The tracking record for the exchange [" + record.getExchangeId()
+                        + "] does not fit into a journal segment, it is dropped");
+                    return false;
+                }
+                rollover(now);
+            }
+            encoded.write(buffer);
+            return true;
+        }
+    }
+
+    /**
+     * Forces the written records of the current segment to disk.
+     */
+    public synchronized void flush() {
+        if (buffer != null) {
+            buffer.force();
+        }
+    }
+
+    public synchronized void close() {
+        if (file == null) {
+            return;
+        }
+        closeSegment();
+        LOG.info("Closed the tracking journal in " + directory);
+    }
+
+    public synchronized long getDroppedRecords() {
+        return droppedRecords;
+    }
+
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return a reader over the segments of this journal
+     */
+    public TrackingJournalReader createReader() {
+        return new TrackingJournalReader(directory);
+    }
+
+    private void rollover(long now) {
+        closeSegment();
+        startSegment(now);
+        deleteOldSegments();
+    }
+
+    private void startSegment(long now) {
+        sequence++;
+        File segment = new File(directory, JournalFormat.getSegmentName(sequence));
+        try {
+            file = new RandomAccessFile(segment, "rw");
+            file.setLength(segmentSize);
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        } catch (IOException ex) {
+            closeQuietly();
+            throw new SwordfishException("Could not create the tracking journal segment " + segment, ex);
+        }
+        JournalFormat.writeHeader(buffer, sequence, now);
+        segmentCreated = now;
+        LOG.debug("Started tracking journal segment " + segment);
+    }
+
+    private void closeSegment() {
+        buffer.force();
+        buffer = null;
+        closeQuietly();
+    }
+
+    private void closeQuietly() {
+        try {
+            if (file != null) {
+                file.close();
+            }
+        } catch (IOException ex) {
+            LOG.warn("Could not close the tracking journal segment", ex);
+        }
+        file = null;
+    }
+
+    private void deleteOldSegments() {
+        if (maxSegments <= 0) {
+            return;
+        }
+        File[] segments = JournalFormat.listSegments(directory);
+        for (int i = 0; i < segments.length - maxSegments; i++) {
+            if (!segments[i].delete()) {
+                LOG.warn("Could not delete the tracking journal segment " + segments[i]);
+            }
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @param directory - the directory of the segment files, mandatory
+     */
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public long getRolloverInterval() {
+        return rolloverInterval;
+    }
+
+    /**
+     * @param rolloverInterval - maximum age of a segment in milliseconds, 0
+     * to roll over by size only
+     */
+    public void setRolloverInterval(long rolloverInterval) {
+        this.rolloverInterval = rolloverInterval;
+    }
+
+    public int getMaxSegments() {
+        return maxSegments;
+    }
+
+    /**
+     * @param maxSegments - number of segments to keep, 0 to keep all
+     */
+    public void setMaxSegments(int maxSegments) {
+        this.maxSegments = maxSegments;
+    }
+
+    public int getMaxPayloadSize() {
+        return maxPayloadSize;
+    }
+
+    /**
+     * @param maxPayloadSize - maximum number of payload bytes stored per
+     * record, 0 to omit the payload
+     */
+    public void setMaxPayloadSize(int maxPayloadSize) {
+        this.maxPayloadSize = maxPayloadSize;
+    }
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.tracking.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.swordfish.api.SwordfishException;
+import org.springframework.util.Assert;
+
+/**
+ * Reads the records of a {@link TrackingJournal}. The reader may be used
+ * while the journal is written, it then sees the records published so far.
+ */
+public class TrackingJournalReader {
+    private final File directory;
+
+    public TrackingJournalReader(File directory) {
+        Assert.notNull(directory);
+        this.directory = directory;
+    }
+
+    /**
+     * @return the segment files ordered from the oldest to the newest
+     */
+    public List<File> getSegments() {
+        return Arrays.asList(JournalFormat.listSegments(directory));
+    }
+
+    /**
+     * Passes all the records to the handler in the order they were written.
+     */
+    public void replay(TrackingRecordHandler handler) {
+        replay(handler, Long.MIN_VALUE);
+    }
+
+    /**
+     * Returns the records created in the given time range and accepted by the
+     * filter. Segments which were closed before the start of the range are
+     * skipped.
+     * @param filter - the filter or <code>null</code> to select all records
+     */
+    public List<TrackingRecord> query(final long from, final long to, final TrackingRecordFilter filter) {
+        final List<TrackingRecord> records = new ArrayList<TrackingRecord>();
+        replay(new TrackingRecordHandler() {
+            public boolean handle(TrackingRecord record) {
+                if (record.getTimestamp() >= from && record.getTimestamp() <= to
+                        && (filter == null || filter.accept(record))) {
+                    records.add(record);
+                }
+                return true;
+            }
+        }, from);
+        return records;
+    }
+
+    private void replay(TrackingRecordHandler handler, long from) {
+        File[] segments = JournalFormat.listSegments(directory);
+        ByteBuffer current = segments.length > 0 ? map(segments[0]) : null;
+        for (int i = 0; i < segments.length; i++) {
+            ByteBuffer next = i + 1 < segments.length ? map(segments[i + 1]) : null;
+            // all the records of a segment are created before the next segment
+            long closed = next != null ? JournalFormat.readHeader(next.duplicate()) : -1;
+            if (current != null && (closed < 0 || closed >= from) && JournalFormat.readHeader(current) >= 0) {
+                TrackingRecord record;
+                while ((record = JournalFormat.read(current)) != null) {
+                    if (!handler.handle(record)) {
+                        return;
+                    }
+                }
+            }
+            current = next;
+        }
+    }
+
+    private ByteBuffer map(File segment) {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(segment, "r");
+            return file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        } catch (IOException ex) {
+            if (!segment.exists()) {
+                // deleted by the retention of the journal
+                return null;
+            }
+            throw new SwordfishException("Could not read the tracking journal segment " + segment, ex);
+        } finally {
+            try {
+                if (file != null) {
+                    file.close();
+                }
+            } catch (IOException ex) {
+                // ignore, the mapping stays valid
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.tracking.journal;
+
+import javax.jbi.messaging.ExchangeStatus;
+import javax.jbi.messaging.MessageExchange.Role;
+import javax.xml.namespace.QName;
+
+/**
+ * A tracking record as stored in the {@link TrackingJournal}.
+ */
+public class TrackingRecord {
+    private final String exchangeId;
+    private final Role role;
+    private final QName service;
+    private final QName operation;
+    private final long timestamp;
+    private final long elapsed;
+    private final ExchangeStatus status;
+    private final String payload;
+
+    /**
+     * @param timestamp - time the record was created at in milliseconds
+     * @param elapsed - time since the start of the exchange in nanoseconds or
+     * -1 if unknown
+     * @param payload - the possibly truncated message content or
+     * <code>null</code>
+     */
+    public TrackingRecord(String exchangeId, Role role, QName service, QName operation,
+            long timestamp, long elapsed, ExchangeStatus status, String payload) {
+        this.exchangeId = exchangeId;
+        this.role = role;
+        this.service = service;
+        this.operation = operation;
+        this.timestamp = timestamp;
+        this.elapsed = elapsed;
+        this.status = status;
+        this.payload = payload;
+    }
+
+    public String getExchangeId() {
+        return exchangeId;
+    }
+
+    public Role getRole() {
+        return role;
+    }
+
+    public QName getService() {
+        return service;
+    }
+
+    public QName getOperation() {
+        return operation;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    public ExchangeStatus getStatus() {
+        return status;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    @Override
+    public String toString() {
+        return "TrackingRecord[exchangeId=" + exchangeId + ", role=" + role + ", service=" + service
+            + ", operation=" + operation + ", timestamp=" + timestamp + ", status=" + status + "]";
+    }
+}
@@ -0,0 +1,22 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.tracking.journal;
+
+/**
+ * Call-back receiving the records of a journal replay.
+ */
+public interface TrackingRecordHandler {
+
+    /**
+     * @return <code>false</code> to stop the replay
+     */
+    boolean handle(TrackingRecord record);
+}
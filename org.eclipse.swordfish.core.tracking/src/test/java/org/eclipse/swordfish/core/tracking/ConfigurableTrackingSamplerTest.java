@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.tracking;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.jbi.messaging.ExchangeStatus;
+import javax.jbi.messaging.MessageExchange;
+import javax.xml.namespace.QName;
+
+import org.junit.Test;
+
+public class ConfigurableTrackingSamplerTest {
+    private static final QName SERVICE = new QName("http://example.org", "Service");
+    private static final QName OTHER_SERVICE = new QName("http://example.org", "OtherService");
+
+    private int exchangeCount;
+
+    @Test
+    public void test1AllExchangesAreTrackedWithoutConfiguration() {
+        ConfigurableTrackingSampler sampler = new ConfigurableTrackingSampler();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(sampler.sample(createExchange(SERVICE, "op", ExchangeStatus.ACTIVE)));
+        }
+    }
+
+    @Test
+    public void test2RatioIsAppliedPerServiceAndDecisionIsSticky() {
+        ConfigurableTrackingSampler sampler = new ConfigurableTrackingSampler();
+        Map<String, Object> configuration = new HashMap<String, Object>();
+        configuration.put(SERVICE + "." + ConfigurableTrackingSampler.RATIO, "0.1");
+        sampler.onReceiveConfiguration(configuration);
+
+        int tracked = 0;
+        for (int i = 0; i < 10000; i++) {
+            MessageExchange exchange = createExchange(SERVICE, "op", ExchangeStatus.ACTIVE);
+            boolean sampled = sampler.sample(exchange);
+            assertEquals(sampled, sampler.sample(exchange));
+            if (sampled) {
+                tracked++;
+            }
+        }
+        assertTrue("Tracked " + tracked, tracked > 700 && tracked < 1300);
+        assertTrue(sampler.sample(createExchange(OTHER_SERVICE, "op", ExchangeStatus.ACTIVE)));
+
+        sampler.onReceiveConfiguration(null);
+        assertTrue(sampler.sample(createExchange(SERVICE, "op", ExchangeStatus.ACTIVE)));
+    }
+
+    @Test
+    public void test3RateLimitAndErrorsOverride() {
+        ConfigurableTrackingSampler sampler = new ConfigurableTrackingSampler();
+        Map<String, Object> configuration = new HashMap<String, Object>();
+        configuration.put(ConfigurableTrackingSampler.DEFAULT_SCOPE + "." + ConfigurableTrackingSampler.RATE, "1");
+        configuration.put(ConfigurableTrackingSampler.DEFAULT_SCOPE + "." + ConfigurableTrackingSampler.BURST, "5");
+        configuration.put(SERVICE + "/op." + ConfigurableTrackingSampler.ERRORS, "false");
+        sampler.onReceiveConfiguration(configuration);
+
+        int tracked = 0;
+        for (int i = 0; i < 100; i++) {
+            if (sampler.sample(createExchange(SERVICE, "other", ExchangeStatus.ACTIVE))) {
+                tracked++;
+            }
+        }
+        assertEquals(5, tracked);
+        assertTrue(sampler.sample(createExchange(SERVICE, "other", ExchangeStatus.ERROR)));
+        assertFalse(sampler.sample(createExchange(SERVICE, "op", ExchangeStatus.ERROR)));
+    }
+
+    private MessageExchange createExchange(final QName service, String operation, final ExchangeStatus status) {
+        final Map<String, Object> properties = new HashMap<String, Object>();
+        final String id = "ID:exchange-" + exchangeCount++;
+        final QName operationName = new QName(service.getNamespaceURI(), operation);
+        return (MessageExchange) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class[] {MessageExchange.class}, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    String name = method.getName();
+                    if ("getExchangeId".equals(name)) {
+                        return id;
+                    } else if ("getService".equals(name)) {
+                        return service;
+                    } else if ("getOperation".equals(name)) {
+                        return operationName;
+                    } else if ("getStatus".equals(name)) {
+                        return status;
+                    } else if ("getProperty".equals(name)) {
+                        return properties.get(args[0]);
+                    } else if ("setProperty".equals(name)) {
+                        properties.put((String) args[0], args[1]);
+                    }
+                    return null;
+                }
+            });
+    }
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.tracking.journal;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import javax.jbi.messaging.ExchangeStatus;
+import javax.jbi.messaging.MessageExchange.Role;
+import javax.xml.namespace.QName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TrackingJournalTest {
+    private static final QName SERVICE = new QName("http://example.org", "Service");
+    private static final QName OPERATION = new QName("http://example.org", "operation");
+
+    private File directory;
+    private TrackingJournal journal;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("journal", "");
+        directory.delete();
+        journal = new TrackingJournal();
+        journal.setDirectory(directory);
+        journal.setSegmentSize(4096);
+        journal.setRolloverInterval(0);
+        journal.setMaxSegments(0);
+        journal.setMaxPayloadSize(16);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        journal.destroy();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void test1RecordsAreReadBack() throws Exception {
+        journal.afterPropertiesSet();
+        journal.append(new TrackingRecord("ID:1", Role.CONSUMER, SERVICE, OPERATION, 1000, 42,
+            ExchangeStatus.ACTIVE, "<payload>with more than sixteen bytes</payload>"));
+        journal.append(new TrackingRecord("ID:2", Role.PROVIDER, null, null, 2000, -1, ExchangeStatus.ERROR, null));
+
+        List<TrackingRecord> records = journal.createReader().query(Long.MIN_VALUE, Long.MAX_VALUE, null);
+        assertEquals(2, records.size());
+        TrackingRecord first = records.get(0);
+        assertEquals("ID:1", first.getExchangeId());
+        assertEquals(Role.CONSUMER, first.getRole());
+        assertEquals(SERVICE, first.getService());
+        assertEquals(OPERATION, first.getOperation());
+        assertEquals(1000, first.getTimestamp());
+        assertEquals(42, first.getElapsed());
+        assertEquals(ExchangeStatus.ACTIVE, first.getStatus());
+        assertEquals("<payload>with mo", first.getPayload());
+        TrackingRecord second = records.get(1);
+        assertEquals(Role.PROVIDER, second.getRole());
+        assertNull(second.getService());
+        assertEquals(ExchangeStatus.ERROR, second.getStatus());
+        assertNull(second.getPayload());
+    }
+
+    @Test
+    public void test2SegmentsAreRolledOverAndRetained() throws Exception {
+        journal.setMaxSegments(3);
+        journal.afterPropertiesSet();
+        for (int i = 0; i < 500; i++) {
+            assertTrue(journal.append(new TrackingRecord("ID:" + i, Role.CONSUMER, SERVICE, OPERATION, i, -1,
+                ExchangeStatus.DONE, null)));
+        }
+        TrackingJournalReader reader = journal.createReader();
+        assertEquals(3, reader.getSegments().size());
+        List<TrackingRecord> records = reader.query(Long.MIN_VALUE, Long.MAX_VALUE, null);
+        assertFalse(records.isEmpty());
+        assertEquals("ID:499", records.get(records.size() - 1).getExchangeId());
+        for (int i = 1; i < records.size(); i++) {
+            assertEquals(records.get(i - 1).getTimestamp() + 1, records.get(i).getTimestamp());
+        }
+    }
+
+    @Test
+    public void test3QueryAndReopen() throws Exception {
+        journal.afterPropertiesSet();
+        journal.append(new TrackingRecord("ID:1", Role.CONSUMER, SERVICE, OPERATION, 1000, -1, ExchangeStatus.DONE, null));
+        journal.append(new TrackingRecord("ID:2", Role.CONSUMER, OPERATION, OPERATION, 2000, -1, ExchangeStatus.DONE, null));
+        journal.close();
+        journal.open();
+        journal.append(new TrackingRecord("ID:3", Role.CONSUMER, SERVICE, OPERATION, 3000, -1, ExchangeStatus.DONE, null));
+
+        TrackingJournalReader reader = journal.createReader();
+        assertEquals(2, reader.getSegments().size());
+        List<TrackingRecord> records = reader.query(1500, Long.MAX_VALUE, new TrackingRecordFilter() {
+            public boolean accept(TrackingRecord record) {
+                return SERVICE.equals(record.getService());
+            }
+        });
+        assertEquals(1, records.size());
+        assertEquals("ID:3", records.get(0).getExchangeId());
+
+        final int[] count = new int[1];
+        reader.replay(new TrackingRecordHandler() {
+            public boolean handle(TrackingRecord record) {
+                return ++count[0] < 2;
+            }
+        });
+        assertEquals(2, count[0]);
+    }
+}
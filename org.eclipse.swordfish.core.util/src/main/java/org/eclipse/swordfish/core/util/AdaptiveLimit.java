@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.util;
+
+import org.springframework.util.Assert;
+
+/**
+ * Concurrency limit adapting to the round trip time of the calls it admits,
+ * gradient style. The shortest round trip time seen recently is taken as
+ * the no-load baseline, the limit is scaled by the ratio of the tolerated
+ * baseline to the current round trip time and grows by the square root of
+ * the limit while the latency stays within the tolerance. Dropped calls cut
+ * the limit by the backoff ratio.
+ */
+public class AdaptiveLimit {
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final double backoffRatio;
+    private final int baselineWindow;
+
+    private double limit;
+    private int inFlight;
+    private long baseline = Long.MAX_VALUE;
+    private long nextBaseline = Long.MAX_VALUE;
+    private int samples;
+
+    /**
+     * @param initialLimit - the limit before any round trip has been measured
+     * @param minLimit - the lower bound of the limit
+     * @param maxLimit - the upper bound of the limit
+     * @param tolerance - the factor of the baseline round trip time which is
+     * not considered an increase of the latency
+     * @param smoothing - the weight of a new sample in the limit, in (0, 1]
+     * @param backoffRatio - the factor the limit is cut by when a call is dropped
+     * @param baselineWindow - the number of samples after which the baseline is
+     * measured anew, so that it follows a provider which permanently got slower
+     */
+    public AdaptiveLimit(int initialLimit, int minLimit, int maxLimit, double tolerance,
+            double smoothing, double backoffRatio, int baselineWindow) {
+        Assert.isTrue(minLimit > 0 && minLimit <= initialLimit && initialLimit <= maxLimit,
+            "minLimit <= initialLimit <= maxLimit must hold for positive limits");
+        Assert.isTrue(tolerance >= 1, "tolerance must not be less than 1");
+        Assert.isTrue(smoothing > 0 && smoothing <= 1, "smoothing must be in (0, 1]");
+        Assert.isTrue(backoffRatio > 0 && backoffRatio < 1, "backoffRatio must be in (0, 1)");
+        Assert.isTrue(baselineWindow > 0, "baselineWindow must be positive");
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.backoffRatio = backoffRatio;
+        this.baselineWindow = baselineWindow;
+    }
+
+    /**
+     * @return whether the call is admitted, every admitted call has to be
+     * {@link #release(long, boolean) released}
+     */
+    public synchronized boolean tryAcquire() {
+        if (inFlight >= getLimit()) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Waits up to the timeout for the call to be admitted.
+     */
+    public synchronized boolean acquire(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (inFlight >= getLimit()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * @param roundTripTime - the round trip time of the call in nanoseconds
+     * @param dropped - whether the call has failed or been abandoned, its
+     * round trip time is not sampled then
+     */
+    public synchronized void release(long roundTripTime, boolean dropped) {
+        boolean used = inFlight * 2 >= limit;
+        inFlight--;
+        if (dropped) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+        } else {
+            sample(Math.max(roundTripTime, 1), used);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Gives the slot of a call back which has not reached its target, the
+     * limit is left as it is.
+     */
+    public synchronized void cancel() {
+        inFlight--;
+        notifyAll();
+    }
+
+    private void sample(long roundTripTime, boolean used) {
+        baseline = Math.min(baseline, roundTripTime);
+        nextBaseline = Math.min(nextBaseline, roundTripTime);
+        if (++samples % baselineWindow == 0) {
+            baseline = nextBaseline;
+            nextBaseline = Long.MAX_VALUE;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * baseline / roundTripTime));
+        // a limit which is not used is not raised any further
+        double growth = used ? Math.sqrt(limit) : 0;
+        double newLimit = limit * gradient + growth;
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - smoothing) + newLimit * smoothing));
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return the baseline round trip time in nanoseconds, Long.MAX_VALUE
+     * before the first sample
+     */
+    public synchronized long getBaseline() {
+        return baseline;
+    }
+}
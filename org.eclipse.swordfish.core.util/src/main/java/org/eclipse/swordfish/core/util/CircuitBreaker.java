@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.util;
+
+import org.springframework.util.Assert;
+
+/**
+ * Count based circuit breaker. The outcomes of the last calls are kept in a
+ * ring, once it is full and the share of failed or slow calls reaches its
+ * threshold the breaker opens and rejects all calls for the open duration.
+ * It then lets a few trial calls pass (half open) and closes again if all of
+ * them succeed, a single failed trial opens it again.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private final int failureLimit;
+    private final int slowLimit;
+    private final long slowCallThreshold;
+    private final long openDuration;
+    private final int halfOpenCalls;
+
+    private State state = State.CLOSED;
+    private int position;
+    private int recorded;
+    private int failureCount;
+    private int slowCount;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    /**
+     * @param windowSize - the number of calls the rates are computed over
+     * @param failureRateThreshold - the share of failed calls opening the breaker
+     * @param slowCallThreshold - the duration in nanoseconds from which on a
+     * call is slow, zero to ignore the duration of the calls
+     * @param slowCallRateThreshold - the share of slow calls opening the breaker
+     * @param openDuration - the time in nanoseconds the breaker stays open
+     * @param halfOpenCalls - the number of trial calls of the half open breaker
+     */
+    public CircuitBreaker(int windowSize, double failureRateThreshold, long slowCallThreshold,
+            double slowCallRateThreshold, long openDuration, int halfOpenCalls) {
+        Assert.isTrue(windowSize > 0, "windowSize must be positive");
+        Assert.isTrue(failureRateThreshold > 0 && failureRateThreshold <= 1,
+            "failureRateThreshold must be in (0, 1]");
+        Assert.isTrue(slowCallRateThreshold > 0 && slowCallRateThreshold <= 1,
+            "slowCallRateThreshold must be in (0, 1]");
+        Assert.isTrue(halfOpenCalls > 0, "halfOpenCalls must be positive");
+        failed = new boolean[windowSize];
+        slow = new boolean[windowSize];
+        failureLimit = Math.max(1, (int) Math.ceil(failureRateThreshold * windowSize));
+        slowLimit = Math.max(1, (int) Math.ceil(slowCallRateThreshold * windowSize));
+        this.slowCallThreshold = slowCallThreshold;
+        this.openDuration = openDuration;
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    /**
+     * @param now - the current time in nanoseconds as returned by System.nanoTime()
+     * @return whether the call may pass, every permitted call has to be
+     * {@link #record(long, boolean, long) recorded}
+     */
+    public synchronized boolean tryAcquire(long now) {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.OPEN) {
+            if (now - openedAt < openDuration) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            halfOpenPermits = halfOpenCalls;
+            halfOpenSuccesses = 0;
+        }
+        if (halfOpenPermits == 0) {
+            return false;
+        }
+        halfOpenPermits--;
+        return true;
+    }
+
+    /**
+     * @param duration - the duration of the call in nanoseconds
+     * @param failure - whether the call has failed
+     * @param now - the current time in nanoseconds as returned by System.nanoTime()
+     * @return whether the call has opened the breaker
+     */
+    public synchronized boolean record(long duration, boolean failure, long now) {
+        boolean isSlow = slowCallThreshold > 0 && duration >= slowCallThreshold;
+        if (state == State.HALF_OPEN) {
+            if (failure || isSlow) {
+                open(now);
+                return true;
+            } else if (++halfOpenSuccesses >= halfOpenCalls) {
+                reset(State.CLOSED);
+            }
+            return false;
+        }
+        if (state == State.OPEN) {
+            // a call permitted before the breaker opened
+            return false;
+        }
+        if (recorded == failed.length) {
+            failureCount -= failed[position] ? 1 : 0;
+            slowCount -= slow[position] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        failed[position] = failure;
+        slow[position] = isSlow;
+        failureCount += failure ? 1 : 0;
+        slowCount += isSlow ? 1 : 0;
+        position = (position + 1) % failed.length;
+        if (recorded == failed.length && (failureCount >= failureLimit || slowCount >= slowLimit)) {
+            open(now);
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void open(long now) {
+        reset(State.OPEN);
+        openedAt = now;
+    }
+
+    private void reset(State state) {
+        this.state = state;
+        position = 0;
+        recorded = 0;
+        failureCount = 0;
+        slowCount = 0;
+    }
+}
@@ -0,0 +1,282 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.util;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.namespace.QName;
+
+import org.eclipse.swordfish.api.SwordfishException;
+import org.eclipse.swordfish.api.configuration.ConfigurationSnapshot;
+import org.springframework.util.Assert;
+
+/**
+ * The values are converted when they are first read as a type and the result
+ * is cached in the entry of the property. The cached conversions are immutable
+ * objects held in volatile fields, so the snapshot can be shared between
+ * threads without synchronization; at worst two threads convert the same
+ * value concurrently. A value which cannot be converted to a type is reported
+ * whenever it is read as that type.
+ */
+public class ConfigurationSnapshotImpl implements ConfigurationSnapshot {
+    private final String id;
+    private final Map<String, Entry> entries;
+    private final Map<String, Object> values;
+
+    public ConfigurationSnapshotImpl(String id, Map<String, ?> configuration) {
+        Assert.notNull(id, "The configuration id must be supplied");
+        this.id = id;
+        Map<String, Entry> entries = new HashMap<String, Entry>();
+        Map<String, Object> values = new HashMap<String, Object>();
+        if (configuration != null) {
+            for (Map.Entry<String, ?> property : configuration.entrySet()) {
+                if (property.getValue() != null) {
+                    entries.put(property.getKey(), new Entry(property.getValue()));
+                    values.put(property.getKey(), property.getValue());
+                }
+            }
+        }
+        this.entries = entries;
+        this.values = Collections.unmodifiableMap(values);
+    }
+
+    public static ConfigurationSnapshotImpl fromDictionary(String id, Dictionary properties) {
+        Map<String, Object> configuration = new HashMap<String, Object>();
+        for (Enumeration keys = properties.keys(); keys.hasMoreElements();) {
+            Object key = keys.nextElement();
+            configuration.put(key.toString(), properties.get(key));
+        }
+        return new ConfigurationSnapshotImpl(id, configuration);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public boolean contains(String key) {
+        return entries.containsKey(key);
+    }
+
+    public String getString(String key) {
+        Entry entry = entries.get(key);
+        return entry != null ? entry.stringValue : null;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return defaultValue;
+        }
+        Integer value = entry.intValue;
+        if (value == null) {
+            try {
+                value = Integer.valueOf(toInt(entry));
+            } catch (NumberFormatException ex) {
+                throw conversionFailed(key, entry, "an int", ex);
+            }
+            entry.intValue = value;
+        }
+        return value;
+    }
+
+    public long getLong(String key, long defaultValue) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return defaultValue;
+        }
+        Long value = entry.longValue;
+        if (value == null) {
+            try {
+                value = Long.valueOf(toLong(entry));
+            } catch (NumberFormatException ex) {
+                throw conversionFailed(key, entry, "a long", ex);
+            }
+            entry.longValue = value;
+        }
+        return value;
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return defaultValue;
+        }
+        Double value = entry.doubleValue;
+        if (value == null) {
+            try {
+                value = Double.valueOf(toDouble(entry));
+            } catch (NumberFormatException ex) {
+                throw conversionFailed(key, entry, "a double", ex);
+            }
+            entry.doubleValue = value;
+        }
+        return value;
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return defaultValue;
+        }
+        return entry.raw instanceof Boolean
+            ? ((Boolean) entry.raw).booleanValue() : Boolean.valueOf(entry.stringValue.trim()).booleanValue();
+    }
+
+    public long getDuration(String key, TimeUnit unit, long defaultValue) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return defaultValue;
+        }
+        Long durationMillis = entry.durationMillis;
+        if (durationMillis == null) {
+            try {
+                durationMillis = Long.valueOf(toDuration(entry));
+            } catch (IllegalArgumentException ex) {
+                throw conversionFailed(key, entry, "a duration", ex);
+            }
+            entry.durationMillis = durationMillis;
+        }
+        return unit.convert(durationMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public URL getURL(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        URL value = entry.urlValue;
+        if (value == null) {
+            try {
+                value = toURL(entry);
+            } catch (MalformedURLException ex) {
+                throw conversionFailed(key, entry, "an URL", ex);
+            }
+            entry.urlValue = value;
+        }
+        return value;
+    }
+
+    public QName getQName(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        QName value = entry.qnameValue;
+        if (value == null) {
+            try {
+                value = toQName(entry);
+            } catch (IllegalArgumentException ex) {
+                throw conversionFailed(key, entry, "a QName", ex);
+            }
+            entry.qnameValue = value;
+        }
+        return value;
+    }
+
+    public Map<String, ?> asMap() {
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigurationSnapshot[" + id + "]" + values;
+    }
+
+    private SwordfishException conversionFailed(String key, Entry entry, String type, Exception cause) {
+        return new SwordfishException("The configuration property [" + key + "] of [" + id
+                + "] is not " + type + ": " + entry.raw, cause);
+    }
+
+    private static int toInt(Entry entry) {
+        if (entry.raw instanceof Number) {
+            return ((Number) entry.raw).intValue();
+        }
+        long value = Long.parseLong(entry.stringValue.trim());
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Out of the int range: " + value);
+        }
+        return (int) value;
+    }
+
+    private static long toLong(Entry entry) {
+        if (entry.raw instanceof Number) {
+            return ((Number) entry.raw).longValue();
+        }
+        return Long.parseLong(entry.stringValue.trim());
+    }
+
+    private static double toDouble(Entry entry) {
+        if (entry.raw instanceof Number) {
+            return ((Number) entry.raw).doubleValue();
+        }
+        return Double.parseDouble(entry.stringValue.trim());
+    }
+
+    private static long toDuration(Entry entry) {
+        if (entry.raw instanceof Number) {
+            return ((Number) entry.raw).longValue();
+        }
+        String value = entry.stringValue.trim().toLowerCase();
+        int unitStart = value.length();
+        while (unitStart > 0 && Character.isLetter(value.charAt(unitStart - 1))) {
+            unitStart--;
+        }
+        String unit = value.substring(unitStart).trim();
+        long amount = Long.parseLong(value.substring(0, unitStart).trim());
+        if (unit.length() == 0 || unit.equals("ms")) {
+            return amount;
+        } else if (unit.equals("s")) {
+            return amount * 1000L;
+        } else if (unit.equals("m")) {
+            return amount * 60 * 1000L;
+        } else if (unit.equals("h")) {
+            return amount * 60 * 60 * 1000L;
+        } else if (unit.equals("d")) {
+            return amount * 24 * 60 * 60 * 1000L;
+        }
+        throw new IllegalArgumentException("Unknown duration unit: " + unit);
+    }
+
+    private static URL toURL(Entry entry) throws MalformedURLException {
+        return entry.raw instanceof URL ? (URL) entry.raw : new URL(entry.stringValue.trim());
+    }
+
+    private static QName toQName(Entry entry) {
+        return entry.raw instanceof QName ? (QName) entry.raw : QName.valueOf(entry.stringValue.trim());
+    }
+
+    /**
+     * The raw value of a property and its conversions, <code>null</code>
+     * stands for a type the value has not been read as yet.
+     */
+    private static class Entry {
+        private final Object raw;
+        private final String stringValue;
+        private volatile Integer intValue;
+        private volatile Long longValue;
+        private volatile Double doubleValue;
+        private volatile Long durationMillis;
+        private volatile URL urlValue;
+        private volatile QName qnameValue;
+
+        public Entry(Object raw) {
+            this.raw = raw;
+            this.stringValue = raw.toString();
+        }
+    }
+}
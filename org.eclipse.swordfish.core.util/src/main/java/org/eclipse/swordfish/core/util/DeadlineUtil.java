@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.jbi.messaging.ExchangeStatus;
+import javax.jbi.messaging.MessageExchange;
+import javax.jbi.messaging.NormalizedMessage;
+
+import org.eclipse.swordfish.api.DeadlineExpiredException;
+
+/**
+ * Reads and writes the {@link JbiConstants#EXCHANGE_DEADLINE} of message
+ * exchanges. Interceptors doing expensive work call
+ * {@link #checkDeadline(MessageExchange)} first, so that no work is spent on
+ * exchanges nobody waits for any more.
+ */
+public class DeadlineUtil {
+
+    public static final long NO_DEADLINE = 0;
+
+    /**
+     * @return the deadline of the exchange in milliseconds since the epoch,
+     * {@link #NO_DEADLINE} if it has none
+     */
+    public static long getDeadline(MessageExchange exchange) {
+        Object deadline = exchange.getProperty(JbiConstants.EXCHANGE_DEADLINE);
+        if (deadline instanceof Number) {
+            return ((Number) deadline).longValue();
+        }
+        if (deadline != null) {
+            try {
+                return Long.parseLong(deadline.toString().trim());
+            } catch (NumberFormatException ex) {
+                return NO_DEADLINE;
+            }
+        }
+        return NO_DEADLINE;
+    }
+
+    public static void setDeadline(MessageExchange exchange, long deadline) {
+        exchange.setProperty(JbiConstants.EXCHANGE_DEADLINE, deadline);
+    }
+
+    /**
+     * Gives an exchange created on behalf of another one the deadline of the
+     * other exchange, unless its own deadline is earlier.
+     */
+    public static void propagate(MessageExchange from, MessageExchange to) {
+        long deadline = getDeadline(from);
+        long own = getDeadline(to);
+        if (deadline != NO_DEADLINE && (own == NO_DEADLINE || deadline < own)) {
+            setDeadline(to, deadline);
+        }
+    }
+
+    /**
+     * @return the milliseconds left until the deadline of the exchange,
+     * Long.MAX_VALUE if it has none
+     */
+    public static long getRemaining(MessageExchange exchange, long now) {
+        long deadline = getDeadline(exchange);
+        return deadline == NO_DEADLINE ? Long.MAX_VALUE : deadline - now;
+    }
+
+    /**
+     * Only active exchanges expire, their completion is always delivered.
+     */
+    public static boolean isExpired(MessageExchange exchange, long now) {
+        long deadline = getDeadline(exchange);
+        return deadline != NO_DEADLINE && deadline <= now
+            && ExchangeStatus.ACTIVE.equals(exchange.getStatus());
+    }
+
+    /**
+     * An interceptor may let the exception pass, the exchange listener fails
+     * the exchange as expired without reporting an interceptor failure.
+     * @throws DeadlineExpiredException if the deadline of the active exchange has passed
+     */
+    public static void checkDeadline(MessageExchange exchange) throws DeadlineExpiredException {
+        if (isExpired(exchange, System.currentTimeMillis())) {
+            throw new DeadlineExpiredException("The deadline of the exchange ["
+                + exchange.getExchangeId() + "] has passed", getDeadline(exchange));
+        }
+    }
+
+    /**
+     * Passes the remaining budget of the exchange on to the next hop in the
+     * {@link JbiConstants#DEADLINE_BUDGET_HEADER} protocol header of the
+     * in message.
+     */
+    @SuppressWarnings("unchecked")
+    public static void setBudgetHeader(MessageExchange exchange, long now) {
+        long remaining = getRemaining(exchange, now);
+        NormalizedMessage in = exchange.getMessage("in");
+        if (remaining == Long.MAX_VALUE || in == null) {
+            return;
+        }
+        Object headers = in.getProperty(JbiConstants.PROTOCOL_HEADERS);
+        Map<String, Object> updated = headers instanceof Map
+            ? new HashMap<String, Object>((Map<String, Object>) headers) : new HashMap<String, Object>();
+        updated.put(JbiConstants.DEADLINE_BUDGET_HEADER, String.valueOf(Math.max(remaining, 0)));
+        in.setProperty(JbiConstants.PROTOCOL_HEADERS, updated);
+    }
+
+    /**
+     * @return the budget a previous hop has passed on in the in message,
+     * -1 if there is none
+     */
+    public static long getBudgetHeader(MessageExchange exchange) {
+        NormalizedMessage in = exchange.getMessage("in");
+        Object headers = in != null ? in.getProperty(JbiConstants.PROTOCOL_HEADERS) : null;
+        Object budget = headers instanceof Map ? ((Map<?, ?>) headers).get(JbiConstants.DEADLINE_BUDGET_HEADER) : null;
+        if (budget != null) {
+            try {
+                return Long.parseLong(budget.toString().trim());
+            } catch (NumberFormatException ex) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+}
@@ -42,4 +42,40 @@ public interface JbiConstants {
 	     * of the provider exchange if the property does not exist.
 	     */
 	    String CORRELATION_ID = "org.apache.servicemix.correlationId";
+
+	    /**
+	     * Numeric id assigned by Swordfish to a message exchange, shared by the
+	     * consumer and the provider side of the exchange.
+	     */
+	    String EXCHANGE_SEQUENCE = "org.eclipse.swordfish.exchange.sequence";
+
+	    /**
+	     * Time in milliseconds the consumer has sent the exchange at.
+	     */
+	    String EXCHANGE_START_TIME = "org.eclipse.swordfish.exchange.startTime";
+
+	    /**
+	     * Time in milliseconds the exchange has been completed or has failed at.
+	     */
+	    String EXCHANGE_END_TIME = "org.eclipse.swordfish.exchange.endTime";
+
+	    /**
+	     * Time in milliseconds since the epoch after which the consumer does not
+	     * wait for the exchange any more. Set by the consumer or derived from the
+	     * configured timeout of the service, see {@link DeadlineUtil}.
+	     */
+	    String EXCHANGE_DEADLINE = "org.eclipse.swordfish.exchange.deadline";
+
+	    /**
+	     * Protocol header carrying the remaining time budget of an exchange in
+	     * milliseconds to the next hop, which derives its own deadline from it.
+	     */
+	    String DEADLINE_BUDGET_HEADER = "X-Swordfish-Deadline-Budget";
+
+	    /**
+	     * Name of the QoS class of an exchange, which decides how soon a request
+	     * is admitted to the interceptor processing under load. Set by the consumer or
+	     * derived from the configuration of the service or operation.
+	     */
+	    String EXCHANGE_QOS_CLASS = "org.eclipse.swordfish.exchange.qosClass";
 }
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.util;
+
+/**
+ * Snapshot of the queue figures of one lane of a {@link WeightedFairSemaphore}.
+ */
+public class LaneStatistics {
+    private final String lane;
+    private final double weight;
+    private final int queueLength;
+    private final long admittedCount;
+    private final long rejectedCount;
+    private final long averageQueueTime;
+    private final long maxQueueTime;
+
+    public LaneStatistics(String lane, double weight, int queueLength, long admittedCount,
+            long rejectedCount, long averageQueueTime, long maxQueueTime) {
+        this.lane = lane;
+        this.weight = weight;
+        this.queueLength = queueLength;
+        this.admittedCount = admittedCount;
+        this.rejectedCount = rejectedCount;
+        this.averageQueueTime = averageQueueTime;
+        this.maxQueueTime = maxQueueTime;
+    }
+
+    public String getLane() {
+        return lane;
+    }
+
+    public double getWeight() {
+        return weight;
+    }
+
+    public int getQueueLength() {
+        return queueLength;
+    }
+
+    public long getAdmittedCount() {
+        return admittedCount;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * @return the average time in nanoseconds the admitted threads have
+     * waited in the queue
+     */
+    public long getAverageQueueTime() {
+        return averageQueueTime;
+    }
+
+    /**
+     * @return the longest time in nanoseconds a thread has waited in the queue
+     */
+    public long getMaxQueueTime() {
+        return maxQueueTime;
+    }
+
+    @Override
+    public String toString() {
+        return lane + "[weight=" + weight + ", queued=" + queueLength + ", admitted=" + admittedCount
+            + ", rejected=" + rejectedCount + ", averageQueueTime=" + averageQueueTime
+            + "ns, maxQueueTime=" + maxQueueTime + "ns]";
+    }
+}
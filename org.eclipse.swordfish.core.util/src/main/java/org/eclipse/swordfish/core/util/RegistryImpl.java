@@ -16,6 +16,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.swordfish.api.SwordfishException;
 import org.eclipse.swordfish.api.Registry;
@@ -32,6 +33,8 @@ public class RegistryImpl<T> implements Registry<T>, BundleContextAware, Disposa
 
     private ConcurrentMap<T, Map<String, ?>> registry = new ConcurrentHashMap<T, Map<String, ?>>();
 
+    private final AtomicLong generation = new AtomicLong();
+
     protected BundleContext bundleContext;
 
     public void register(T key, Map<String, ?> properties) throws SwordfishException {
@@ -50,6 +53,7 @@ public class RegistryImpl<T> implements Registry<T>, BundleContextAware, Disposa
                 throw new SwordfishException("Unable to register key " +
                         key + " with properties " + properties + ". Reason: " + e, e);
             }
+            generation.incrementAndGet();
         }
     }
     public void unregister(T key, Map<String, ?> properties) throws SwordfishException {
@@ -62,6 +66,8 @@ public class RegistryImpl<T> implements Registry<T>, BundleContextAware, Disposa
                         key + ". Reason: " + e);
                 throw new SwordfishException("Unable to unregister key " +
                         key + ". Reason: " + e);
+            } finally {
+                generation.incrementAndGet();
             }
         }
     }
@@ -79,6 +85,23 @@ public class RegistryImpl<T> implements Registry<T>, BundleContextAware, Disposa
     	return defensiveSet;
     }
 
+    /**
+     * Returns a counter which is incremented whenever a key is registered or
+     * unregistered, so callers can cache results derived from the registry
+     * until the counter changes.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Increments the generation, to be called by subclasses when state
+     * derived from the registered keys has changed.
+     */
+    protected void invalidate() {
+        generation.incrementAndGet();
+    }
+
     public Map<String, ?> getProperties(T key) {
         return registry.get(key);
     }
@@ -14,32 +14,64 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jbi.messaging.MessageExchange;
-import javax.jbi.messaging.NormalizedMessage;
+import javax.xml.namespace.QName;
 import javax.xml.transform.Source;
 
 import org.apache.servicemix.common.JbiConstants;
 import org.apache.servicemix.jbi.jaxp.SourceTransformer;
 import org.apache.servicemix.jbi.runtime.impl.MessageExchangeImpl;
-import org.apache.servicemix.jbi.runtime.impl.NormalizedMessageImpl;
+import org.apache.servicemix.nmr.api.Channel;
 import org.apache.servicemix.nmr.api.Endpoint;
+import org.apache.servicemix.nmr.api.Exchange;
+import org.apache.servicemix.nmr.api.Message;
 import org.apache.servicemix.nmr.api.NMR;
+import org.apache.servicemix.nmr.api.Pattern;
+import org.apache.servicemix.nmr.api.Reference;
 import org.apache.servicemix.nmr.core.ClientChannel;
 import org.apache.servicemix.nmr.core.ExchangeImpl;
-import org.apache.servicemix.nmr.core.MessageImpl;
 import org.apache.servicemix.soap.Context;
 import org.apache.servicemix.soap.SoapHelper;
-import org.apache.servicemix.soap.marshalers.JBIMarshaler;
 import org.apache.servicemix.soap.marshalers.SoapMarshaler;
 import org.apache.servicemix.soap.marshalers.SoapMessage;
+import org.eclipse.swordfish.core.util.xml.StringSource;
+import org.eclipse.swordfish.core.util.xml.XmlUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.util.Assert;
 
-public class SimpleClient implements InitializingBean {
+/**
+ * Sends the SOAP message given in dataToSend to the target endpoint after
+ * delayBeforeSending milliseconds. With the default settings exactly one
+ * synchronous request is sent.
+ * <p>
+ * The client doubles as a load driver: virtualUsers threads send requests
+ * built from a template which is parsed only once. In the closed loop mode
+ * every virtual user sends its next request as soon as the previous one
+ * returned (plus thinkTime); in the fixed rate mode requestsPerSecond are
+ * spread over the virtual users regardless of the response times. Latencies
+ * are recorded in a histogram and a summary is logged when the run is over or
+ * the bean is destroyed. Only the fixed rate mode has an intended start time
+ * for every request, so only its latencies are corrected for coordinated
+ * omission; the closed loop mode reports the latencies as measured.
+ */
+public class SimpleClient implements InitializingBean, DisposableBean {
     private static Logger log = LoggerFactory.getLogger(SimpleClient.class);
+
+    public static final String MODE_CLOSED_LOOP = "closedLoop";
+    public static final String MODE_FIXED_RATE = "fixedRate";
+
     private String dataToSend;
     private String uriToSend;
     private String targetEndpointName;
@@ -54,26 +86,52 @@ public class SimpleClient implements InitializingBean {
     private Integer delayBeforeSending = 5000;
     private NMR nmr;
 
+    private String mode = MODE_CLOSED_LOOP;
+    private int virtualUsers = 1;
+    private int requestsPerUser = 1;
+    private long duration = 0;
+    private double requestsPerSecond = 10;
+    private long thinkTime = 0;
+
+    private volatile boolean running;
+    private volatile ExchangeTemplate template;
+    private Timer timer;
+    private ExecutorService virtualUserPool;
+    private final LatencyHistogram correctedLatencies = new LatencyHistogram();
+    private final LatencyHistogram measuredLatencies = new LatencyHistogram();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicBoolean summaryLogged = new AtomicBoolean();
+    private volatile long startedAt;
+    private volatile long finishedAt;
+
     public SimpleClient() {
     }
 
     private void checkConstraints() {
         Assert.notNull(dataToSend, "dataToSend property is compulsory");
         Assert.notNull(nmr, "nmr property is compulsory");
-
-
+        Assert.isTrue(MODE_CLOSED_LOOP.equals(mode) || MODE_FIXED_RATE.equals(mode),
+                "mode must be either " + MODE_CLOSED_LOOP + " or " + MODE_FIXED_RATE);
+        Assert.isTrue(virtualUsers > 0, "virtualUsers must be positive");
+        Assert.isTrue(requestsPerUser > 0 || duration > 0,
+                "either requestsPerUser or duration has to limit the run");
+        Assert.isTrue(!MODE_FIXED_RATE.equals(mode) || requestsPerSecond > 0,
+                "requestsPerSecond must be positive in the " + MODE_FIXED_RATE + " mode");
     }
 
     public void start() {
         checkConstraints();
-        Timer timer = new Timer();
+        timer = new Timer();
         timer.schedule(new TimerTask() {
             @Override
             public void run() {
                 try {
-                    sendRequestSynchronously();
+                    runLoad();
                 } catch (Exception ex) {
                     throw new RuntimeException(ex);
+                } finally {
+                    timer.cancel();
                 }
             }
         }, delayBeforeSending);
@@ -81,15 +139,144 @@ public class SimpleClient implements InitializingBean {
     }
 
     public void sendRequestSynchronously() throws Exception {
+        Channel channel = new ClientChannel(nmr);
+        try {
+            invoke(getTemplate(), channel, true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void runLoad() throws Exception {
+        final ExchangeTemplate exchangeTemplate = getTemplate();
+        final boolean logExchanges = virtualUsers == 1 && requestsPerUser == 1 && duration <= 0;
+        final CountDownLatch finished = new CountDownLatch(virtualUsers);
+        final AtomicInteger userCounter = new AtomicInteger();
+        virtualUserPool = Executors.newFixedThreadPool(virtualUsers, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SimpleClient-user-" + userCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        running = true;
+        startedAt = System.nanoTime();
+        if (!logExchanges) {
+            log.info("SimpleClient starts " + virtualUsers + " virtual users in the " + mode + " mode");
+        }
+        for (int i = 0; i < virtualUsers; i++) {
+            final int userIndex = i;
+            virtualUserPool.execute(new Runnable() {
+                public void run() {
+                    Channel channel = new ClientChannel(nmr);
+                    try {
+                        if (MODE_FIXED_RATE.equals(mode)) {
+                            runFixedRate(exchangeTemplate, channel, userIndex, logExchanges);
+                        } else {
+                            runClosedLoop(exchangeTemplate, channel, logExchanges);
+                        }
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        channel.close();
+                        finished.countDown();
+                    }
+                }
+            });
+        }
+        finished.await();
+        finishedAt = System.nanoTime();
+        running = false;
+        virtualUserPool.shutdown();
+        if (!logExchanges) {
+            logSummary();
+        }
+    }
+
+    private void runClosedLoop(ExchangeTemplate exchangeTemplate, Channel channel, boolean logExchanges)
+            throws InterruptedException {
+        long end = duration > 0 ? startedAt + TimeUnit.MILLISECONDS.toNanos(duration) : Long.MAX_VALUE;
+        for (int sent = 0; running && (requestsPerUser <= 0 || sent < requestsPerUser)
+                && System.nanoTime() < end; sent++) {
+            long start = System.nanoTime();
+            invoke(exchangeTemplate, channel, logExchanges);
+            measuredLatencies.recordValue(System.nanoTime() - start);
+            if (thinkTime > 0) {
+                Thread.sleep(thinkTime);
+            }
+        }
+    }
+
+    private void runFixedRate(ExchangeTemplate exchangeTemplate, Channel channel, int userIndex,
+            boolean logExchanges) throws InterruptedException {
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) * virtualUsers / requestsPerSecond);
+        long end = duration > 0 ? startedAt + TimeUnit.MILLISECONDS.toNanos(duration) : Long.MAX_VALUE;
+        // stagger the users so that the requests are spread over the interval
+        long intendedStart = startedAt + interval * userIndex / virtualUsers;
+        for (int sent = 0; running && (requestsPerUser <= 0 || sent < requestsPerUser)
+                && intendedStart < end; sent++) {
+            long now = System.nanoTime();
+            if (intendedStart > now) {
+                TimeUnit.NANOSECONDS.sleep(intendedStart - now);
+            }
+            long start = System.nanoTime();
+            invoke(exchangeTemplate, channel, logExchanges);
+            long completed = System.nanoTime();
+            measuredLatencies.recordValue(completed - start);
+            // measuring from the intended start time accounts for the requests
+            // which were held back while a slow response was outstanding
+            correctedLatencies.recordValue(completed - intendedStart);
+            intendedStart += interval;
+        }
+    }
+
+    private void invoke(ExchangeTemplate exchangeTemplate, Channel channel, boolean logExchange) {
+        Exchange exchange = exchangeTemplate.createExchange();
+        if (logExchange) {
+            log.info("!!SimpleClient is sending synchronous request with in message " + dataToSend);
+        }
+        try {
+            channel.sendSync(exchange);
+        } catch (RuntimeException ex) {
+            failed.incrementAndGet();
+            log.error("The invocation wasn't successful", ex);
+            return;
+        }
+        if (exchange.getError() != null) {
+            failed.incrementAndGet();
+            log.error("The invocation wasn't successful", exchange.getError());
+        } else if (exchange.getFault() != null
+                && exchange.getFault().getBody() != null) {
+            failed.incrementAndGet();
+            log.error("The invocation wasn't successful "
+                    + exchange.getFault().getBody().toString());
+        } else {
+            succeeded.incrementAndGet();
+            if (logExchange) {
+                try {
+                    log.info("!!SimpleClient have received the response: "
+                            + new SourceTransformer().toString(exchange.getOut().getBody(
+                                    Source.class)));
+                } catch (Exception ex) {
+                    log.warn("Could not read the response", ex);
+                }
+            }
+        }
+    }
+
+    private ExchangeTemplate getTemplate() throws Exception {
+        if (template == null) {
+            template = createTemplate();
+        }
+        return template;
+    }
+
+    private ExchangeTemplate createTemplate() throws Exception {
         SoapMarshaler soapMarshaler = new SoapMarshaler();
         soapMarshaler.setUseDom(true);
-        JBIMarshaler marshaler  = new JBIMarshaler();
         SoapMessage soapMessage = soapMarshaler
                 .createReader().read(
                         ServiceMixSupport.convertStringToIS(dataToSend, "UTF8"));
-        NormalizedMessage normalizedMessage = new NormalizedMessageImpl(
-                new MessageImpl());
-        marshaler.toNMS(normalizedMessage, soapMessage);
         SoapHelper helper = new MockSoapHelper();
         Context ctx = helper.createContext(soapMessage);
         MessageExchange messageExchange = helper.onReceive(ctx);
@@ -107,19 +294,30 @@ public class SimpleClient implements InitializingBean {
         }
         targetProps.put(Endpoint.ENDPOINT_NAME, targetEndpointName);
         exchange.setTarget(nmr.getEndpointRegistry().lookup(targetProps));
-        log.info("!!SimpleClient is sending synchronous request with in message " + dataToSend);
-        new ClientChannel(nmr).sendSync(exchange);
-        if (exchange.getError() != null) {
-            log.error("The invocation wasn't successful", exchange.getError());
+        return new ExchangeTemplate(exchange);
+    }
+
+    /**
+     * Logs the number of requests, the throughput and the latency percentiles
+     * of the run so far.
+     */
+    public void logSummary() {
+        if (!summaryLogged.compareAndSet(false, true)) {
+            return;
         }
-        if (exchange.getFault() != null
-                && exchange.getFault().getBody() != null) {
-            log.error("The invocation wasn't successful "
-                    + exchange.getFault().getBody().toString());
+        long end = finishedAt != 0 ? finishedAt : System.nanoTime();
+        double seconds = startedAt != 0 ? (end - startedAt) / (double) TimeUnit.SECONDS.toNanos(1) : 0;
+        long total = succeeded.get() + failed.get();
+        log.info(String.format("SimpleClient summary: mode=%s virtualUsers=%d duration=%.1fs "
+                + "requests=%d succeeded=%d failed=%d throughput=%.1f req/s",
+                mode, virtualUsers, seconds, total, succeeded.get(), failed.get(),
+                seconds > 0 ? total / seconds : 0));
+        if (MODE_FIXED_RATE.equals(mode)) {
+            log.info("SimpleClient latency [ms] corrected for coordinated omission: "
+                    + correctedLatencies.toSummaryString(TimeUnit.MILLISECONDS));
         }
-        log.info("!!SimpleClient have received the response: "
-                + new SourceTransformer().toString(exchange.getOut().getBody(
-                        Source.class)));
+        log.info("SimpleClient latency [ms] as measured: "
+                + measuredLatencies.toSummaryString(TimeUnit.MILLISECONDS));
     }
 
     public String getDataToSend() {
@@ -155,9 +353,131 @@ public class SimpleClient implements InitializingBean {
         this.nmr = nmr;
     }
 
+    public String getMode() {
+        return mode;
+    }
+
+    /**
+     * @param mode - {@link #MODE_CLOSED_LOOP} (default) or {@link #MODE_FIXED_RATE}
+     */
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    public int getVirtualUsers() {
+        return virtualUsers;
+    }
+
+    public void setVirtualUsers(int virtualUsers) {
+        this.virtualUsers = virtualUsers;
+    }
+
+    public int getRequestsPerUser() {
+        return requestsPerUser;
+    }
+
+    /**
+     * @param requestsPerUser - requests sent by each virtual user, 0 to send until the duration is over
+     */
+    public void setRequestsPerUser(int requestsPerUser) {
+        this.requestsPerUser = requestsPerUser;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @param duration - maximum length of the run in milliseconds, 0 for no limit
+     */
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    public double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    /**
+     * @param requestsPerSecond - total rate of all virtual users in the fixed rate mode
+     */
+    public void setRequestsPerSecond(double requestsPerSecond) {
+        this.requestsPerSecond = requestsPerSecond;
+    }
+
+    public long getThinkTime() {
+        return thinkTime;
+    }
+
+    /**
+     * @param thinkTime - pause in milliseconds between two requests of a virtual user in the closed loop mode
+     */
+    public void setThinkTime(long thinkTime) {
+        this.thinkTime = thinkTime;
+    }
+
+    /**
+     * @return the latencies corrected for coordinated omission in the fixed
+     * rate mode, the measured latencies in the closed loop mode
+     */
+    public LatencyHistogram getLatencies() {
+        return MODE_FIXED_RATE.equals(mode) ? correctedLatencies : measuredLatencies;
+    }
+
     public void afterPropertiesSet() throws Exception {
         start();
     }
 
+    public void destroy() throws Exception {
+        running = false;
+        if (timer != null) {
+            timer.cancel();
+        }
+        if (virtualUserPool != null) {
+            virtualUserPool.shutdownNow();
+            virtualUserPool.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        if (startedAt != 0) {
+            logSummary();
+        }
+    }
+
+    /**
+     * The parsed request. New exchanges are assembled from the extracted
+     * parts, so the SOAP envelope is parsed and the target is looked up only
+     * once per client.
+     */
+    private static class ExchangeTemplate {
+        private final Pattern pattern;
+        private final QName operation;
+        private final Reference target;
+        private final Map<String, Object> properties;
+        private final Map<String, Object> headers;
+        private final String body;
+
+        ExchangeTemplate(Exchange exchange) {
+            pattern = exchange.getPattern();
+            operation = exchange.getOperation();
+            target = exchange.getTarget();
+            properties = new HashMap<String, Object>(exchange.getProperties());
+            Message in = exchange.getIn();
+            headers = new HashMap<String, Object>(in.getHeaders());
+            body = XmlUtil.toString(in.getBody(Source.class));
+        }
 
+        Exchange createExchange() {
+            ExchangeImpl exchange = new ExchangeImpl(pattern);
+            exchange.setOperation(operation);
+            exchange.setTarget(target);
+            for (Map.Entry<String, Object> property : properties.entrySet()) {
+                exchange.setProperty(property.getKey(), property.getValue());
+            }
+            Message in = exchange.getIn();
+            for (Map.Entry<String, Object> header : headers.entrySet()) {
+                in.setHeader(header.getKey(), header.getValue());
+            }
+            in.setBody(new StringSource(body));
+            return exchange;
+        }
+    }
 }
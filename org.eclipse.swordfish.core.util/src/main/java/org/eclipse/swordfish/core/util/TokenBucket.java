@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.util.Assert;
+
+/**
+ * Lock free token bucket refilled with a fixed rate. The bucket is kept as
+ * the theoretical arrival time of the next permit (the generic cell rate
+ * algorithm), so acquiring a permit is a single compare-and-set and there is
+ * no refill thread.
+ */
+public class TokenBucket {
+    private final long interval;
+    private final long tolerance;
+    private final AtomicLong nextFree = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * @param permitsPerSecond - the rate the bucket is refilled with
+     * @param burst - the number of permits the bucket holds when full
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        Assert.isTrue(permitsPerSecond > 0, "permitsPerSecond must be positive");
+        Assert.isTrue(burst > 0, "burst must be positive");
+        interval = Math.max(1, Math.round(1000000000d / permitsPerSecond));
+        tolerance = interval * burst;
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+
+    /**
+     * @param now - the current time in nanoseconds as returned by System.nanoTime()
+     */
+    public boolean tryAcquire(long now) {
+        while (true) {
+            long next = nextFree.get();
+            long start = next == Long.MIN_VALUE || next - now < 0 ? now : next;
+            long updated = start + interval;
+            if (updated - now > tolerance) {
+                return false;
+            }
+            if (nextFree.compareAndSet(next, updated)) {
+                return true;
+            }
+        }
+    }
+}
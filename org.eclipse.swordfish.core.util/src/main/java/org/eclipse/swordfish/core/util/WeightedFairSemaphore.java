@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.util.Assert;
+
+/**
+ * Semaphore with a queue of waiting threads per lane, which hands the
+ * released permits to the lanes in proportion to their weights. Every lane
+ * advances a virtual time by the inverse of its weight with each permit it
+ * gets and a released permit always goes to the first waiting thread of the
+ * lane with the smallest virtual time, so a lane of weight 4 is admitted
+ * four times for every admission of a lane of weight 1 as long as both are
+ * waiting. A lane which has been idle starts at the current virtual time and
+ * does not catch up on the share it has not used. Threads only wait while
+ * all permits are taken, the weights take effect under saturation.
+ * <p>
+ * The queue of every lane is bounded, a thread finding its lane full is
+ * rejected right away. The time the threads wait for their permit is
+ * recorded per lane.
+ */
+public class WeightedFairSemaphore {
+    private final Map<String, Lane> lanes = new LinkedHashMap<String, Lane>();
+    private final Lane[] laneArray;
+    private final Lane defaultLane;
+    private final int maxQueueLength;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private double virtualTime;
+    private int available;
+    private int queued;
+
+    /**
+     * @param weights - the weights of the lanes by lane name
+     * @param defaultLane - the lane of the threads without a lane or with an
+     * unknown one, it gets the weight 1 unless it is among the weights
+     * @param permits - the number of threads holding a permit at the same time
+     * @param maxQueueLength - the number of threads a lane holds at most
+     */
+    public WeightedFairSemaphore(Map<String, ? extends Number> weights, String defaultLane,
+            int permits, int maxQueueLength) {
+        Assert.notNull(defaultLane, "defaultLane must not be null");
+        Assert.isTrue(permits > 0, "permits must be positive");
+        Assert.isTrue(maxQueueLength > 0, "maxQueueLength must be positive");
+        this.available = permits;
+        this.maxQueueLength = maxQueueLength;
+        for (Map.Entry<String, ? extends Number> entry : weights.entrySet()) {
+            double weight = entry.getValue().doubleValue();
+            Assert.isTrue(weight > 0, "The weight of the lane " + entry.getKey() + " must be positive");
+            lanes.put(entry.getKey(), new Lane(entry.getKey(), weight));
+        }
+        if (!lanes.containsKey(defaultLane)) {
+            lanes.put(defaultLane, new Lane(defaultLane, 1));
+        }
+        this.defaultLane = lanes.get(defaultLane);
+        this.laneArray = lanes.values().toArray(new Lane[lanes.size()]);
+    }
+
+    /**
+     * Takes a permit in the named lane, waiting up to the timeout while all
+     * permits are taken. Unknown lanes and <code>null</code> stand for the
+     * default lane.
+     * @return whether the permit has been taken, <code>false</code> if the
+     * lane is full or the timeout has passed
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean tryAcquire(String lane, long timeout, TimeUnit unit) throws InterruptedException {
+        Lane target = lane != null ? lanes.get(lane) : null;
+        if (target == null) {
+            target = defaultLane;
+        }
+        lock.lock();
+        try {
+            if (available > 0 && queued == 0) {
+                available--;
+                target.admitted++;
+                return true;
+            }
+            if (target.waiters.size() >= maxQueueLength || timeout <= 0) {
+                target.rejected++;
+                return false;
+            }
+            if (target.waiters.isEmpty()) {
+                // an idle lane must not bank the share it has not used
+                target.virtualTime = Math.max(target.virtualTime, virtualTime);
+            }
+            Waiter waiter = new Waiter(lock.newCondition(), System.nanoTime());
+            target.waiters.add(waiter);
+            queued++;
+            long nanos = unit.toNanos(timeout);
+            try {
+                while (!waiter.admitted) {
+                    if (nanos <= 0) {
+                        target.waiters.remove(waiter);
+                        queued--;
+                        target.rejected++;
+                        return false;
+                    }
+                    nanos = waiter.condition.awaitNanos(nanos);
+                }
+                return true;
+            } catch (InterruptedException ex) {
+                if (waiter.admitted) {
+                    // the permit has been handed over already, it is kept
+                    Thread.currentThread().interrupt();
+                    return true;
+                }
+                target.waiters.remove(waiter);
+                queued--;
+                throw ex;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a permit, which goes to the next waiting thread if there is one.
+     */
+    public void release() {
+        lock.lock();
+        try {
+            Lane next = null;
+            for (Lane lane : laneArray) {
+                if (!lane.waiters.isEmpty() && (next == null || lane.virtualTime < next.virtualTime)) {
+                    next = lane;
+                }
+            }
+            if (next == null) {
+                available++;
+                return;
+            }
+            virtualTime = next.virtualTime;
+            next.virtualTime += 1 / next.weight;
+            queued--;
+            Waiter waiter = next.waiters.removeFirst();
+            long queueTime = System.nanoTime() - waiter.enqueued;
+            next.admitted++;
+            next.totalQueueTime += queueTime;
+            next.maxQueueTime = Math.max(next.maxQueueTime, queueTime);
+            waiter.admitted = true;
+            waiter.condition.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the names of the lanes, the default lane included
+     */
+    public List<String> getLanes() {
+        return Collections.unmodifiableList(new ArrayList<String>(lanes.keySet()));
+    }
+
+    public String getDefaultLane() {
+        return defaultLane.name;
+    }
+
+    public int getMaxQueueLength() {
+        return maxQueueLength;
+    }
+
+    /**
+     * @return the number of permits which are not taken
+     */
+    public int getAvailablePermits() {
+        lock.lock();
+        try {
+            return available;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the figures of all lanes, taken at the same time
+     */
+    public List<LaneStatistics> getStatistics() {
+        lock.lock();
+        try {
+            List<LaneStatistics> statistics = new ArrayList<LaneStatistics>(laneArray.length);
+            for (Lane lane : laneArray) {
+                statistics.add(new LaneStatistics(lane.name, lane.weight, lane.waiters.size(), lane.admitted,
+                    lane.rejected, lane.admitted > 0 ? lane.totalQueueTime / lane.admitted : 0, lane.maxQueueTime));
+            }
+            return statistics;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class Lane {
+        private final String name;
+        private final double weight;
+        private final LinkedList<Waiter> waiters = new LinkedList<Waiter>();
+        private double virtualTime;
+        private long admitted;
+        private long rejected;
+        private long totalQueueTime;
+        private long maxQueueTime;
+
+        Lane(String name, double weight) {
+            this.name = name;
+            this.weight = weight;
+        }
+    }
+
+    private static class Waiter {
+        private final Condition condition;
+        private final long enqueued;
+        private boolean admitted;
+
+        Waiter(Condition condition, long enqueued) {
+            this.condition = condition;
+            this.enqueued = enqueued;
+        }
+    }
+}
@@ -11,6 +11,9 @@
 package org.eclipse.swordfish.core.exception;
 
 
+import java.util.Collections;
+import java.util.List;
+
 import javax.jbi.messaging.MessageExchange;
 
 import org.eclipse.swordfish.api.Interceptor;
@@ -26,6 +29,8 @@ public class InterceptorExceptionEvent extends EventImpl {
 	private Exception exception;
 	private MessageExchange exchange;
 	private Interceptor interceptor;
+	private int count = 1;
+	private List<MessageExchange> sampleExchanges;
 	
 
 	public Exception getException() {
@@ -42,6 +47,17 @@ public class InterceptorExceptionEvent extends EventImpl {
 	}
 
 
+	/**
+	 * Creates the event for the repeated failures of an aggregation window.
+	 */
+	public InterceptorExceptionEvent(Exception exception,
+			List<MessageExchange> sampleExchanges, Interceptor interceptor, int count) {
+		this(exception, sampleExchanges.isEmpty() ? null : sampleExchanges.get(0), interceptor);
+		this.sampleExchanges = sampleExchanges;
+		this.count = count;
+	}
+
+
 	public void setException(Exception exception) {
 		this.exception = exception;
 	}
@@ -67,6 +83,23 @@ public class InterceptorExceptionEvent extends EventImpl {
 	}
 
 
+	/**
+	 * @return the number of failures reported by this event
+	 */
+	public int getCount() {
+		return count;
+	}
+
+
+	public List<MessageExchange> getSampleExchanges() {
+		if (sampleExchanges == null) {
+			return exchange != null ? Collections.singletonList(exchange)
+				: Collections.<MessageExchange>emptyList();
+		}
+		return sampleExchanges;
+	}
+
+
 	public String getTopic() {
 		return TOPIC_INTECEPTOR_EXCEPTOIN_EVENT;
 	}
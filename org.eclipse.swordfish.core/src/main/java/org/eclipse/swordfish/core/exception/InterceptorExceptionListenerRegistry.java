@@ -15,13 +15,17 @@ import java.util.Hashtable;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import javax.jbi.messaging.MessageExchange;
 
+import org.eclipse.swordfish.api.AggregatingInterceptorExceptionListener;
 import org.eclipse.swordfish.api.Interceptor;
 import org.eclipse.swordfish.api.InterceptorExceptionListener;
 import org.eclipse.swordfish.api.event.EventFilter;
 import org.eclipse.swordfish.api.event.EventHandler;
 import org.eclipse.swordfish.core.util.RegistryImpl;
+import org.eclipse.swordfish.core.util.TokenBucket;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceRegistration;
 import org.slf4j.Logger;
@@ -32,6 +36,24 @@ public class InterceptorExceptionListenerRegistry extends RegistryImpl<Intercept
 	
 	private static final Logger LOG = LoggerFactory.getLogger(InterceptorExceptionListenerRegistry.class);
 	
+	/**
+	 * Service property of a listener limiting the notifications it receives
+	 * per second, the notifications above the limit are dropped.
+	 */
+	public static final String RATE_LIMIT_PROPERTY = "rateLimit";
+	
+	/**
+	 * Service property of a listener, the number of notifications it may
+	 * receive in a burst above its rate limit.
+	 */
+	public static final String RATE_BURST_PROPERTY = "rateBurst";
+	
+	private double defaultRateLimit;
+	
+	private int defaultRateBurst = 10;
+	
+	private final AtomicLong droppedCount = new AtomicLong();
+	
 	
 	private Dictionary<String,Object> execptionProperties = new Hashtable<String, Object>();
 	
@@ -54,16 +76,27 @@ public class InterceptorExceptionListenerRegistry extends RegistryImpl<Intercept
 
 	protected void doRegister(final InterceptorExceptionListener exceptionListener, Map<String, ?> properties) throws Exception {
 		
-		LOG.debug("Registeting Interceptor Exception Listener Service [%s] ", exceptionListener);
+		LOG.debug("Registeting Interceptor Exception Listener Service [{}] ", exceptionListener);
 		
 		Assert.notNull(exceptionListener);
 		
+		final TokenBucket rateLimiter = createRateLimiter(properties);
 		EventHandler<InterceptorExceptionEvent> exceptionHandler = new EventHandler<InterceptorExceptionEvent>(){
 			public void handleEvent(InterceptorExceptionEvent event) {
+				if (rateLimiter != null && !rateLimiter.tryAcquire()) {
+					droppedCount.incrementAndGet();
+					LOG.debug("Rate limit of the interceptor exception listener [{}] exceeded", exceptionListener);
+					return;
+				}
 				Exception exception = event.getException();
 				MessageExchange exchange = event.getExchange();
 				Interceptor interceptor = event.getInterceptor();
-				exceptionListener.handle(exception, exchange, interceptor);
+				if (event.getCount() > 1 && exceptionListener instanceof AggregatingInterceptorExceptionListener) {
+					((AggregatingInterceptorExceptionListener) exceptionListener).handle(
+							exception, event.getSampleExchanges(), interceptor, event.getCount());
+				} else {
+					exceptionListener.handle(exception, exchange, interceptor);
+				}
 			}
 
 			public EventFilter getEventFilter() {
@@ -75,10 +108,7 @@ public class InterceptorExceptionListenerRegistry extends RegistryImpl<Intercept
 			}
 		};
 	
-		//registering service
-		ServiceRegistration serviceRegistration = 
-			bundleContext.registerService(EventHandler.class.getName(),exceptionHandler, execptionProperties);
-		
+		//registering service, once, the handler would receive every event twice otherwise
         registrations.put(exceptionListener, bundleContext.registerService(
         		EventHandler.class.getName(), 
         		exceptionHandler, null));
@@ -86,6 +116,18 @@ public class InterceptorExceptionListenerRegistry extends RegistryImpl<Intercept
 		
 	}
 
+    private TokenBucket createRateLimiter(Map<String, ?> properties) {
+        double rateLimit = defaultRateLimit;
+        int rateBurst = defaultRateBurst;
+        if (properties != null && properties.get(RATE_LIMIT_PROPERTY) != null) {
+            rateLimit = Double.parseDouble(properties.get(RATE_LIMIT_PROPERTY).toString());
+        }
+        if (properties != null && properties.get(RATE_BURST_PROPERTY) != null) {
+            rateBurst = Integer.parseInt(properties.get(RATE_BURST_PROPERTY).toString());
+        }
+        return rateLimit > 0 ? new TokenBucket(rateLimit, rateBurst) : null;
+    }
+
     protected void doUnregister(InterceptorExceptionListener key, Map<String, ?> properties) throws Exception {
         ServiceRegistration serviceRegistration = registrations.get(key);
         Assert.notNull(serviceRegistration, 
@@ -94,6 +136,34 @@ public class InterceptorExceptionListenerRegistry extends RegistryImpl<Intercept
         super.doUnregister(key, properties);
     }
     
+    public double getDefaultRateLimit() {
+        return defaultRateLimit;
+    }
+
+    /**
+     * @param defaultRateLimit - the notifications per second a listener
+     * without the {@link #RATE_LIMIT_PROPERTY} property receives, zero for
+     * no limit
+     */
+    public void setDefaultRateLimit(double defaultRateLimit) {
+        this.defaultRateLimit = defaultRateLimit;
+    }
+
+    public int getDefaultRateBurst() {
+        return defaultRateBurst;
+    }
+
+    public void setDefaultRateBurst(int defaultRateBurst) {
+        this.defaultRateBurst = defaultRateBurst;
+    }
+
+    /**
+     * @return the number of notifications dropped by the rate limits
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
     protected void doDestroy() throws Exception {
         for (ServiceRegistration registration : registrations.values()) {
             registration.unregister();
@@ -11,19 +11,39 @@
 package org.eclipse.swordfish.core.exception;
 
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
 import javax.jbi.messaging.MessageExchange;
+import javax.xml.namespace.QName;
 
 import org.eclipse.swordfish.api.Interceptor;
 import org.eclipse.swordfish.api.event.EventService;
 import org.eclipse.swordfish.core.util.AopProxyUtil;
 import org.osgi.framework.BundleContext;
 
-import org.osgi.service.event.EventAdmin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.osgi.context.BundleContextAware;
 
-public class InterceptorExceptionNofiticationSender implements BundleContextAware {
+/**
+ * Posts an {@link InterceptorExceptionEvent} for the failures of the
+ * interceptors. Identical failures, the same interceptor throwing the same
+ * exception class for the same service, are collapsed: the first one of an
+ * aggregation window is posted right away, the repeats are posted as a
+ * single event with their count and some sample exchanges when the window
+ * is flushed. A flush interval of zero posts every failure on its own.
+ */
+public class InterceptorExceptionNofiticationSender implements BundleContextAware, InitializingBean, DisposableBean {
     
     private static final Logger LOG = LoggerFactory
             .getLogger(InterceptorExceptionNofiticationSender.class);
@@ -38,15 +58,93 @@ public class InterceptorExceptionNofiticationSender implements BundleContextAwar
 
     private EventService eventService;
 
+    private long flushInterval = 1000;
+
+    private int maxSamples = 3;
+
+    private ScheduledExecutorService flushExecutor;
+
+    private final ConcurrentMap<FailureKey, Failures> pending =
+        new ConcurrentHashMap<FailureKey, Failures>();
+
     public <T extends Interceptor> void sendNotification(Exception exception, MessageExchange exchange,
             T interceptor) {
-        LOG.debug(String.format("received exception [%s] thrown during [%s] interceptor work "
-                        + "for message exchange [%s]", exception, interceptor.getClass().getName(), exchange));
-        LOG.debug("Proceed to sending notification event");
-        InterceptorExceptionEvent event = new InterceptorExceptionEvent(exception, exchange, 
-        		                                    AopProxyUtil.getTargetService(interceptor, bundleContext));
-        eventService.postEvent(event);
+        if (!eventService.hasSubscribers(InterceptorExceptionEvent.TOPIC_INTECEPTOR_EXCEPTOIN_EVENT)) {
+            return;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("received exception [%s] thrown during [%s] interceptor work "
+                            + "for message exchange [%s]", exception, interceptor.getClass().getName(), exchange));
+        }
+        Interceptor target = AopProxyUtil.getTargetService(interceptor, bundleContext);
+        if (flushExecutor == null) {
+            eventService.postEvent(new InterceptorExceptionEvent(exception, exchange, target));
+            return;
+        }
+        FailureKey key = new FailureKey(target, exception.getClass(), exchange != null ? exchange.getService() : null);
+        while (true) {
+            Failures failures = pending.get(key);
+            if (failures == null) {
+                if (pending.putIfAbsent(key, new Failures()) == null) {
+                    // the first failure of a window is reported without delay
+                    eventService.postEvent(new InterceptorExceptionEvent(exception, exchange, target));
+                    return;
+                }
+            } else if (failures.add(exception, exchange, maxSamples)) {
+                return;
+            }
+            // the window has been flushed meanwhile, the failure opens a new one
+        }
+    }
+
+    /**
+     * Posts the repeated failures collected since the last flush.
+     */
+    public void flush() {
+        for (Map.Entry<FailureKey, Failures> entry : pending.entrySet()) {
+            if (!pending.remove(entry.getKey(), entry.getValue())) {
+                continue;
+            }
+            Failures failures = entry.getValue();
+            // the failures are not changed any more once the window is closed
+            synchronized (failures) {
+                failures.closed = true;
+            }
+            if (failures.count > 0) {
+                LOG.debug("Collapsed [{}] failures of the interceptor [{}]", failures.count, entry.getKey().interceptor);
+                eventService.postEvent(new InterceptorExceptionEvent(failures.exception,
+                    failures.samples, entry.getKey().interceptor, failures.count));
+            }
+        }
+    }
+
+    public void afterPropertiesSet() throws Exception {
+        if (flushInterval > 0) {
+            flushExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "swordfish-exception-aggregator");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            flushExecutor.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    try {
+                        flush();
+                    } catch (RuntimeException ex) {
+                        LOG.warn("Could not post the collapsed interceptor failures", ex);
+                    }
+                }
+            }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        }
+    }
 
+    public void destroy() throws Exception {
+        if (flushExecutor != null) {
+            flushExecutor.shutdownNow();
+            flushExecutor = null;
+            flush();
+        }
     }
 
     
@@ -61,5 +159,77 @@ public class InterceptorExceptionNofiticationSender implements BundleContextAwar
 	public void setBundleContext(BundleContext bundleContext) {
         this.bundleContext = bundleContext;
     }
-    
+
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * @param flushInterval - the length of the aggregation window in
+     * milliseconds, zero disables the aggregation
+     */
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public int getMaxSamples() {
+        return maxSamples;
+    }
+
+    /**
+     * @param maxSamples - the number of exchanges kept for the collapsed failures
+     */
+    public void setMaxSamples(int maxSamples) {
+        this.maxSamples = maxSamples;
+    }
+
+    private static class FailureKey {
+        private final Interceptor interceptor;
+        private final Class<?> exceptionClass;
+        private final QName service;
+
+        FailureKey(Interceptor interceptor, Class<?> exceptionClass, QName service) {
+            this.interceptor = interceptor;
+            this.exceptionClass = exceptionClass;
+            this.service = service;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = System.identityHashCode(interceptor) * 31 + exceptionClass.hashCode();
+            return hash * 31 + (service != null ? service.hashCode() : 0);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof FailureKey)) {
+                return false;
+            }
+            FailureKey other = (FailureKey) obj;
+            return interceptor == other.interceptor && exceptionClass == other.exceptionClass
+                && (service == null ? other.service == null : service.equals(other.service));
+        }
+    }
+
+    /**
+     * The repeats of a failure within the current window.
+     */
+    private static class Failures {
+        private boolean closed;
+        private int count;
+        private Exception exception;
+        private final List<MessageExchange> samples = new ArrayList<MessageExchange>();
+
+        synchronized boolean add(Exception exception, MessageExchange exchange, int maxSamples) {
+            if (closed) {
+                return false;
+            }
+            count++;
+            this.exception = exception;
+            if (exchange != null && samples.size() < maxSamples) {
+                samples.add(exchange);
+            }
+            return true;
+        }
+    }
 }
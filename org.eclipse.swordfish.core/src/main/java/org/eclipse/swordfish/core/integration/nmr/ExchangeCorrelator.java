@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.integration.nmr;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jbi.messaging.ExchangeStatus;
+import javax.jbi.messaging.MessageExchange;
+import javax.jbi.messaging.MessageExchange.Role;
+import javax.xml.namespace.QName;
+
+import org.eclipse.swordfish.core.util.JbiConstants;
+import org.eclipse.swordfish.core.util.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Ties the consumer and the provider side of a message exchange together.
+ * An exchange is opened when the consumer sends it and closed when the
+ * provider answers it, when it is completed with a done or error status or
+ * when it fails. The end-to-end latency of the closed exchanges is recorded
+ * per service.
+ * <p>
+ * The sequence number, start and end time of an exchange are published as
+ * the {@link JbiConstants#EXCHANGE_SEQUENCE},
+ * {@link JbiConstants#EXCHANGE_START_TIME} and
+ * {@link JbiConstants#EXCHANGE_END_TIME} exchange properties. Open exchanges
+ * are kept in a bounded map, the exchanges which are not closed within the
+ * abandon timeout are evicted.
+ */
+public class ExchangeCorrelator {
+    private static final Logger LOG = LoggerFactory.getLogger(ExchangeCorrelator.class);
+    private static final QName UNKNOWN_SERVICE = new QName("unknown");
+
+    private int maxInFlight = 10000;
+    private long abandonTimeout = 5 * 60 * 1000;
+    private long sweepInterval = 1000;
+
+    private final ConcurrentMap<String, CorrelatedExchange> inFlight =
+        new ConcurrentHashMap<String, CorrelatedExchange>();
+    private final ConcurrentMap<QName, LatencyHistogram> latencies =
+        new ConcurrentHashMap<QName, LatencyHistogram>();
+    private final AtomicInteger inFlightCount = new AtomicInteger();
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong abandonedCount = new AtomicLong();
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
+
+    public void exchangeSent(MessageExchange exchange) {
+        String id = exchange.getExchangeId();
+        if (id == null) {
+            return;
+        }
+        ExchangeStatus status = exchange.getStatus();
+        if (exchange.getRole() == Role.CONSUMER && ExchangeStatus.ACTIVE.equals(status)) {
+            if (!inFlight.containsKey(id) && exchange.getProperty(JbiConstants.EXCHANGE_START_TIME) == null) {
+                open(id, exchange);
+            }
+        } else {
+            close(id, exchange, ExchangeStatus.ERROR.equals(status) || exchange.getError() != null);
+        }
+    }
+
+    public void exchangeDelivered(MessageExchange exchange) {
+        ExchangeStatus status = exchange.getStatus();
+        if (status != null && !ExchangeStatus.ACTIVE.equals(status) && exchange.getExchangeId() != null) {
+            close(exchange.getExchangeId(), exchange, ExchangeStatus.ERROR.equals(status));
+        }
+    }
+
+    public void exchangeFailed(MessageExchange exchange) {
+        if (exchange.getExchangeId() != null) {
+            close(exchange.getExchangeId(), exchange, true);
+        }
+    }
+
+    private void open(String id, MessageExchange exchange) {
+        long now = System.nanoTime();
+        long next = nextSweep.get();
+        // one sender sweeps per interval, a full map does not make every send sweep
+        if (now - next >= 0 && nextSweep.compareAndSet(next, now + sweepInterval * 1000000)) {
+            evictAbandoned();
+        }
+        if (inFlightCount.get() >= maxInFlight) {
+            LOG.debug("Too many exchanges in flight, exchange [{}] is not correlated", id);
+            return;
+        }
+        CorrelatedExchange correlated = new CorrelatedExchange(
+            exchange.getService() != null ? exchange.getService() : UNKNOWN_SERVICE);
+        if (inFlight.putIfAbsent(id, correlated) == null) {
+            inFlightCount.incrementAndGet();
+            // only correlated exchanges take a sequence number
+            exchange.setProperty(JbiConstants.EXCHANGE_SEQUENCE, sequence.incrementAndGet());
+            exchange.setProperty(JbiConstants.EXCHANGE_START_TIME, correlated.startTime);
+        }
+    }
+
+    private void close(String id, MessageExchange exchange, boolean failed) {
+        CorrelatedExchange correlated = inFlight.remove(id);
+        if (correlated == null) {
+            return;
+        }
+        inFlightCount.decrementAndGet();
+        long elapsed = System.nanoTime() - correlated.startNanos;
+        exchange.setProperty(JbiConstants.EXCHANGE_END_TIME, correlated.startTime + elapsed / 1000000);
+        getHistogram(correlated.service).recordValue(elapsed);
+        if (failed) {
+            failedCount.incrementAndGet();
+        } else {
+            completedCount.incrementAndGet();
+        }
+    }
+
+    private LatencyHistogram getHistogram(QName service) {
+        LatencyHistogram histogram = latencies.get(service);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            LatencyHistogram existing = latencies.putIfAbsent(service, histogram);
+            if (existing != null) {
+                histogram = existing;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Removes the exchanges which have been open for longer than the abandon
+     * timeout.
+     * @return the number of evicted exchanges
+     */
+    public int evictAbandoned() {
+        long oldest = System.nanoTime() - abandonTimeout * 1000000;
+        int evicted = 0;
+        for (Iterator<CorrelatedExchange> it = inFlight.values().iterator(); it.hasNext();) {
+            CorrelatedExchange correlated = it.next();
+            if (correlated.startNanos - oldest < 0) {
+                it.remove();
+                inFlightCount.decrementAndGet();
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            abandonedCount.addAndGet(evicted);
+            LOG.debug("Evicted " + evicted + " abandoned exchanges");
+        }
+        return evicted;
+    }
+
+    /**
+     * @return the number of exchanges which have been sent and not closed yet
+     */
+    public int getInFlightCount() {
+        return inFlightCount.get();
+    }
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getAbandonedCount() {
+        return abandonedCount.get();
+    }
+
+    /**
+     * @return the end-to-end latency histogram of the service in nanoseconds
+     * or <code>null</code> if no exchange with the service has been closed
+     */
+    public LatencyHistogram getLatency(QName service) {
+        return latencies.get(service);
+    }
+
+    public Map<QName, LatencyHistogram> getLatencies() {
+        return Collections.unmodifiableMap(new HashMap<QName, LatencyHistogram>(latencies));
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public long getAbandonTimeout() {
+        return abandonTimeout;
+    }
+
+    /**
+     * @param abandonTimeout - time in milliseconds after which an open
+     * exchange is considered abandoned
+     */
+    public void setAbandonTimeout(long abandonTimeout) {
+        this.abandonTimeout = abandonTimeout;
+    }
+
+    public long getSweepInterval() {
+        return sweepInterval;
+    }
+
+    /**
+     * @param sweepInterval - time in milliseconds between two searches for
+     * abandoned exchanges
+     */
+    public void setSweepInterval(long sweepInterval) {
+        this.sweepInterval = sweepInterval;
+    }
+
+    private static class CorrelatedExchange {
+        private final QName service;
+        private final long startTime = System.currentTimeMillis();
+        private final long startNanos = System.nanoTime();
+
+        CorrelatedExchange(QName service) {
+            this.service = service;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.integration.nmr;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jbi.messaging.MessageExchange;
+import javax.xml.namespace.QName;
+
+import org.eclipse.swordfish.api.DeadlineExpiredException;
+import org.eclipse.swordfish.core.util.DeadlineUtil;
+import org.eclipse.swordfish.core.util.JbiConstants;
+
+/**
+ * Assigns deadlines to the requests sent by consumers and counts the
+ * exchanges failed because their deadline has passed. A request keeps the
+ * deadline its consumer has set, otherwise the deadline is derived from the
+ * budget passed on by the previous hop in the
+ * {@link JbiConstants#DEADLINE_BUDGET_HEADER} or from the timeout configured
+ * for the target service.
+ */
+public class ExchangeDeadlines {
+    private static final QName UNKNOWN_SERVICE = new QName("unknown");
+
+    private long defaultTimeout;
+    private Map<QName, Long> serviceTimeouts = Collections.emptyMap();
+
+    private final AtomicLong expiredCount = new AtomicLong();
+    private final ConcurrentMap<QName, AtomicLong> expiredCounts = new ConcurrentHashMap<QName, AtomicLong>();
+
+    /**
+     * Called for the requests sent by consumers.
+     * @return the deadline of the exchange, {@link DeadlineUtil#NO_DEADLINE} if it has none
+     */
+    public long assignDeadline(MessageExchange exchange, long now) {
+        long deadline = DeadlineUtil.getDeadline(exchange);
+        if (deadline != DeadlineUtil.NO_DEADLINE) {
+            return deadline;
+        }
+        long budget = DeadlineUtil.getBudgetHeader(exchange);
+        long timeout = budget >= 0 ? budget : getTimeout(exchange.getService());
+        // an exhausted budget of zero still yields a deadline, which has passed
+        if (budget < 0 && timeout <= 0) {
+            return DeadlineUtil.NO_DEADLINE;
+        }
+        deadline = now + timeout;
+        DeadlineUtil.setDeadline(exchange, deadline);
+        return deadline;
+    }
+
+    /**
+     * Counts the exchange as expired.
+     * @return the error to fail the exchange with
+     */
+    public DeadlineExpiredException expired(MessageExchange exchange) {
+        expiredCount.incrementAndGet();
+        QName service = exchange.getService() != null ? exchange.getService() : UNKNOWN_SERVICE;
+        AtomicLong count = expiredCounts.get(service);
+        if (count == null) {
+            AtomicLong created = new AtomicLong();
+            count = expiredCounts.putIfAbsent(service, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        count.incrementAndGet();
+        return new DeadlineExpiredException("The deadline of the exchange [" + exchange.getExchangeId()
+            + "] to the service [" + service + "] has passed", DeadlineUtil.getDeadline(exchange));
+    }
+
+    private long getTimeout(QName service) {
+        Long timeout = service != null ? serviceTimeouts.get(service) : null;
+        return timeout != null ? timeout : defaultTimeout;
+    }
+
+    /**
+     * @return the number of exchanges failed because their deadline had passed
+     */
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    public long getExpiredCount(QName service) {
+        AtomicLong count = expiredCounts.get(service);
+        return count != null ? count.get() : 0;
+    }
+
+    public long getDefaultTimeout() {
+        return defaultTimeout;
+    }
+
+    /**
+     * @param defaultTimeout - the timeout in milliseconds of the requests to
+     * services without a configured timeout, zero for no deadline
+     */
+    public void setDefaultTimeout(long defaultTimeout) {
+        this.defaultTimeout = defaultTimeout;
+    }
+
+    /**
+     * @param serviceTimeouts - the timeouts in milliseconds of the requests
+     * by service name, in the {namespace}localPart notation
+     */
+    public void setServiceTimeouts(Map<String, ?> serviceTimeouts) {
+        Map<QName, Long> timeouts = new HashMap<QName, Long>();
+        for (Map.Entry<String, ?> entry : serviceTimeouts.entrySet()) {
+            timeouts.put(QName.valueOf(entry.getKey().trim()), Long.valueOf(entry.getValue().toString().trim()));
+        }
+        this.serviceTimeouts = timeouts;
+    }
+}
@@ -0,0 +1,341 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.integration.nmr;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.jbi.messaging.MessageExchange;
+import javax.wsdl.Definition;
+import javax.wsdl.Operation;
+import javax.wsdl.PortType;
+import javax.wsdl.WSDLException;
+import javax.xml.namespace.QName;
+
+import org.eclipse.swordfish.api.ConcurrencyLimitExceededException;
+import org.eclipse.swordfish.core.util.DeadlineUtil;
+import org.eclipse.swordfish.core.util.JbiConstants;
+import org.eclipse.swordfish.core.util.LaneStatistics;
+import org.eclipse.swordfish.core.util.WeightedFairSemaphore;
+import org.eclipse.swordfish.core.wsdl.WSDLManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Assigns the requests sent by consumers to a QoS class, which decides the
+ * share of the interceptor processing the exchange gets under load. At most
+ * maxConcurrentRequests requests run their interceptor chain at the same
+ * time, the others wait in the queue of their class and are admitted in
+ * proportion to the class weights, see {@link WeightedFairSemaphore}. A
+ * request waits at most queueTimeout milliseconds and not beyond its
+ * deadline. The queue figures of the classes are available from
+ * {@link #getStatistics()}.
+ * <p>
+ * A request keeps the class its
+ * consumer has set in the {@link JbiConstants#EXCHANGE_QOS_CLASS} property,
+ * otherwise the class configured for its operation or its service applies.
+ * Services without configuration may declare the class of their port type
+ * or operations in the WSDL with the {@link #QOS_CLASS_ATTRIBUTE} attribute.
+ */
+public class ExchangeQos {
+    private static final Logger LOG = LoggerFactory.getLogger(ExchangeQos.class);
+
+    /**
+     * Extension attribute of WSDL port types and operations naming their QoS
+     * class.
+     */
+    public static final QName QOS_CLASS_ATTRIBUTE = new QName("http://www.eclipse.org/swordfish/qos", "class");
+
+    public static final String DEFAULT_CLASS = "default";
+
+    private String defaultClass = DEFAULT_CLASS;
+    private Map<String, Integer> classWeights = Collections.emptyMap();
+    private Map<QName, String> serviceClasses = Collections.emptyMap();
+    private Map<QName, String> operationClasses = Collections.emptyMap();
+    private WSDLManager wsdlManager;
+    private int maxConcurrentRequests;
+    private int maxQueueLength = 1000;
+    private long queueTimeout = 5000;
+    private volatile WeightedFairSemaphore admission;
+
+    // the permit is returned to the semaphore it has been taken from, nested
+    // requests sent from within a chain do not take a second one
+    private final ThreadLocal<WeightedFairSemaphore> permits = new ThreadLocal<WeightedFairSemaphore>();
+
+    private final ConcurrentMap<QName, PortTypeClasses> wsdlClasses = new ConcurrentHashMap<QName, PortTypeClasses>();
+
+    /**
+     * Called for the requests sent by consumers.
+     * @return the QoS class of the exchange
+     */
+    public String assignQosClass(MessageExchange exchange) {
+        Object requested = exchange.getProperty(JbiConstants.EXCHANGE_QOS_CLASS);
+        if (isKnown(requested)) {
+            return (String) requested;
+        }
+        String qosClass = resolve(exchange);
+        exchange.setProperty(JbiConstants.EXCHANGE_QOS_CLASS, qosClass);
+        return qosClass;
+    }
+
+    /**
+     * @return the QoS class assigned to the exchange, the default class if
+     * it has none
+     */
+    public String getQosClass(MessageExchange exchange) {
+        Object qosClass = exchange.getProperty(JbiConstants.EXCHANGE_QOS_CLASS);
+        return isKnown(qosClass) ? (String) qosClass : defaultClass;
+    }
+
+    private String resolve(MessageExchange exchange) {
+        QName operation = exchange.getOperation();
+        String qosClass = operation != null ? operationClasses.get(operation) : null;
+        if (qosClass == null && exchange.getService() != null) {
+            qosClass = serviceClasses.get(exchange.getService());
+        }
+        if (qosClass == null && wsdlManager != null && exchange.getInterfaceName() != null) {
+            qosClass = getPortTypeClasses(exchange.getInterfaceName()).get(operation);
+        }
+        return isKnown(qosClass) ? qosClass : defaultClass;
+    }
+
+    private boolean isKnown(Object qosClass) {
+        return qosClass != null && (classWeights.containsKey(qosClass) || defaultClass.equals(qosClass));
+    }
+
+    private PortTypeClasses getPortTypeClasses(QName interfaceName) {
+        PortTypeClasses classes = wsdlClasses.get(interfaceName);
+        if (classes == null) {
+            classes = new PortTypeClasses();
+            try {
+                Definition definition = wsdlManager.getDefinition(interfaceName);
+                PortType portType = definition != null ? definition.getPortType(interfaceName) : null;
+                if (portType == null) {
+                    // the WSDL may not have been loaded yet
+                    return classes;
+                }
+                classes.portTypeClass = toClass(portType.getExtensionAttribute(QOS_CLASS_ATTRIBUTE));
+                for (Object element : portType.getOperations()) {
+                    Operation operation = (Operation) element;
+                    String operationClass = toClass(operation.getExtensionAttribute(QOS_CLASS_ATTRIBUTE));
+                    if (operationClass != null) {
+                        classes.operationClasses.put(operation.getName(), operationClass);
+                    }
+                }
+            } catch (WSDLException ex) {
+                // the port type is not looked up again, the class is configured instead
+                LOG.debug("The QoS class of the port type [" + interfaceName + "] cannot be read", ex);
+            }
+            wsdlClasses.putIfAbsent(interfaceName, classes);
+        }
+        return classes;
+    }
+
+    private static String toClass(Object attribute) {
+        if (attribute == null) {
+            return null;
+        }
+        return attribute instanceof QName ? ((QName) attribute).getLocalPart() : attribute.toString().trim();
+    }
+
+    /**
+     * Admits a request of a consumer with an assigned class to its
+     * interceptor chain, waiting in the queue of its class while
+     * maxConcurrentRequests chains are processed.
+     * @return whether a permit has been taken, which has to be given back with
+     * {@link #release()} once the chain has been processed
+     * @throws ConcurrencyLimitExceededException if the queue of the class is
+     * full or the request has waited too long
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean admit(MessageExchange exchange) throws InterruptedException {
+        WeightedFairSemaphore current = getAdmission();
+        if (current == null || permits.get() != null) {
+            return false;
+        }
+        String qosClass = getQosClass(exchange);
+        long timeout = Math.min(queueTimeout, DeadlineUtil.getRemaining(exchange, System.currentTimeMillis()));
+        if (!current.tryAcquire(qosClass, timeout, TimeUnit.MILLISECONDS)) {
+            throw new ConcurrencyLimitExceededException("The request [" + exchange.getExchangeId()
+                + "] of the QoS class " + qosClass + " has not been admitted to the interceptor processing", qosClass);
+        }
+        permits.set(current);
+        return true;
+    }
+
+    /**
+     * Gives back the permit taken by {@link #admit(MessageExchange)} on the
+     * current thread.
+     */
+    public void release() {
+        WeightedFairSemaphore current = permits.get();
+        if (current != null) {
+            permits.remove();
+            current.release();
+        }
+    }
+
+    private WeightedFairSemaphore getAdmission() {
+        WeightedFairSemaphore current = admission;
+        if (current != null || maxConcurrentRequests <= 0) {
+            return current;
+        }
+        synchronized (this) {
+            if (admission == null) {
+                admission = new WeightedFairSemaphore(classWeights, defaultClass, maxConcurrentRequests, maxQueueLength);
+            }
+            return admission;
+        }
+    }
+
+    /**
+     * @return the queue figures of the QoS classes, empty without admission
+     * control
+     */
+    public List<LaneStatistics> getStatistics() {
+        WeightedFairSemaphore current = getAdmission();
+        return current != null ? current.getStatistics() : Collections.<LaneStatistics>emptyList();
+    }
+
+    /**
+     * @return the configured QoS classes, the default class included
+     */
+    public List<String> getQosClasses() {
+        List<String> qosClasses = new ArrayList<String>(classWeights.keySet());
+        if (!qosClasses.contains(defaultClass)) {
+            qosClasses.add(defaultClass);
+        }
+        return qosClasses;
+    }
+
+    public String getDefaultClass() {
+        return defaultClass;
+    }
+
+    /**
+     * @param defaultClass - the class of the exchanges without a known class,
+     * it gets the weight 1 unless it is among the class weights
+     */
+    public void setDefaultClass(String defaultClass) {
+        Assert.hasText(defaultClass, "defaultClass must not be empty");
+        this.defaultClass = defaultClass;
+        admission = null;
+    }
+
+    /**
+     * @param classWeights - the relative shares of the QoS classes by class
+     * name
+     */
+    public void setClassWeights(Map<String, ?> classWeights) {
+        Map<String, Integer> weights = new LinkedHashMap<String, Integer>();
+        for (Map.Entry<String, ?> entry : classWeights.entrySet()) {
+            Integer weight = Integer.valueOf(entry.getValue().toString().trim());
+            Assert.isTrue(weight > 0, "The weight of the QoS class " + entry.getKey() + " must be positive");
+            weights.put(entry.getKey().trim(), weight);
+        }
+        this.classWeights = weights;
+        admission = null;
+    }
+
+    /**
+     * @param serviceClasses - the QoS classes of the requests by service
+     * name, in the {namespace}localPart notation
+     */
+    public void setServiceClasses(Map<String, ?> serviceClasses) {
+        this.serviceClasses = toQNameMap(serviceClasses);
+    }
+
+    /**
+     * @param operationClasses - the QoS classes of the requests by operation
+     * name, in the {namespace}localPart notation, they take precedence over
+     * the classes of the services
+     */
+    public void setOperationClasses(Map<String, ?> operationClasses) {
+        this.operationClasses = toQNameMap(operationClasses);
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    /**
+     * @param maxConcurrentRequests - the number of requests running their
+     * interceptor chain at the same time, zero to admit all requests right
+     * away
+     */
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        Assert.isTrue(maxConcurrentRequests >= 0, "maxConcurrentRequests must not be negative");
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        admission = null;
+    }
+
+    public int getMaxQueueLength() {
+        return maxQueueLength;
+    }
+
+    /**
+     * @param maxQueueLength - the number of requests waiting per QoS class,
+     * the requests which do not fit are rejected
+     */
+    public void setMaxQueueLength(int maxQueueLength) {
+        Assert.isTrue(maxQueueLength > 0, "maxQueueLength must be positive");
+        this.maxQueueLength = maxQueueLength;
+        admission = null;
+    }
+
+    public long getQueueTimeout() {
+        return queueTimeout;
+    }
+
+    /**
+     * @param queueTimeout - the milliseconds a request waits for its
+     * admission at most, zero to reject the requests finding all permits
+     * taken
+     */
+    public void setQueueTimeout(long queueTimeout) {
+        this.queueTimeout = queueTimeout;
+    }
+
+    private static Map<QName, String> toQNameMap(Map<String, ?> map) {
+        Map<QName, String> result = new HashMap<QName, String>();
+        for (Map.Entry<String, ?> entry : map.entrySet()) {
+            result.put(QName.valueOf(entry.getKey().trim()), entry.getValue().toString().trim());
+        }
+        return result;
+    }
+
+    /**
+     * @param wsdlManager - the source of the WSDLs declaring the QoS classes
+     * of the services which are not configured, optional
+     */
+    public void setWsdlManager(WSDLManager wsdlManager) {
+        this.wsdlManager = wsdlManager;
+        wsdlClasses.clear();
+    }
+
+    private static class PortTypeClasses {
+        private String portTypeClass;
+        private final Map<String, String> operationClasses = new HashMap<String, String>();
+
+        String get(QName operation) {
+            String qosClass = operation != null ? operationClasses.get(operation.getLocalPart()) : null;
+            return qosClass != null ? qosClass : portTypeClass;
+        }
+    }
+}
@@ -0,0 +1,348 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.integration.nmr;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jbi.messaging.MessageExchange;
+
+import org.eclipse.swordfish.api.ConcurrencyLimitExceededException;
+import org.eclipse.swordfish.api.DeadlineExpiredException;
+import org.eclipse.swordfish.api.Interceptor;
+import org.eclipse.swordfish.api.InterceptorRejectedException;
+import org.eclipse.swordfish.api.SwordfishException;
+import org.eclipse.swordfish.core.planner.api.Planner;
+import org.eclipse.swordfish.core.util.CircuitBreaker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Protects the exchange listener from failing and saturated interceptors.
+ * Every interceptor gets a {@link CircuitBreaker} which opens when too many
+ * of its recent calls failed or were slow, and optionally a bulkhead
+ * limiting the exchanges it processes at the same time. While an interceptor
+ * is open or saturated it is not invoked, the exchange is failed with an
+ * {@link InterceptorRejectedException} or passed on according to the
+ * {@link Interceptor#GUARD_POLICY_PROPERTY} of the interceptor. Interceptors
+ * without the property get no circuit breaker unless the default policy is
+ * changed. A concurrency limit applies under every policy, with the policy
+ * <code>NONE</code> the exchanges exceeding it are failed.
+ * <p>
+ * The exceptions which report the state of the exchange rather than a fault
+ * of the interceptor, like an expired deadline, do not count as failures,
+ * see {@link #setIgnoredExceptions(List)}. The guards of interceptors which
+ * are not registered any more are dropped every sweep interval.
+ */
+public class InterceptorGuard {
+    private static final Logger LOG = LoggerFactory.getLogger(InterceptorGuard.class);
+
+    public enum Policy {
+        FAIL, SKIP, NONE
+    }
+
+    private int windowSize = 20;
+    private double failureRateThreshold = 0.5;
+    private long slowCallThreshold;
+    private double slowCallRateThreshold = 1.0;
+    private long openDuration = 30000;
+    private int halfOpenCalls = 3;
+    private int maxConcurrentCalls;
+    private Policy defaultPolicy = Policy.NONE;
+    private Class<?>[] ignoredExceptions = {
+        DeadlineExpiredException.class, ConcurrencyLimitExceededException.class, InterceptorRejectedException.class
+    };
+    private Planner planner;
+    private long sweepInterval = 60000;
+
+    private final ConcurrentMap<Interceptor, Guard> guards = new ConcurrentHashMap<Interceptor, Guard>();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private volatile long nextSweep = System.nanoTime() + sweepInterval * 1000000L;
+
+    /**
+     * Invokes the interceptor unless its breaker is open or its bulkhead is full.
+     * @throws SwordfishException if the interceptor throws or is rejected
+     * with the fail policy
+     */
+    public void process(Interceptor interceptor, MessageExchange exchange) throws SwordfishException {
+        if (planner != null && System.nanoTime() - nextSweep >= 0) {
+            sweep();
+        }
+        Guard guard = getGuard(interceptor);
+        if (guard.policy == Policy.NONE && guard.bulkhead == null) {
+            interceptor.process(exchange);
+            return;
+        }
+        if (guard.bulkhead != null && !guard.bulkhead.tryAcquire()) {
+            reject(guard, interceptor, "has reached its concurrency limit");
+            return;
+        }
+        try {
+            if (guard.policy == Policy.NONE) {
+                interceptor.process(exchange);
+                return;
+            }
+            long start = System.nanoTime();
+            if (!guard.breaker.tryAcquire(start)) {
+                reject(guard, interceptor, "is unavailable, its circuit breaker is open");
+                return;
+            }
+            boolean failed = true;
+            try {
+                interceptor.process(exchange);
+                failed = false;
+            } catch (RuntimeException ex) {
+                failed = isFailure(ex);
+                throw ex;
+            } finally {
+                long end = System.nanoTime();
+                if (guard.breaker.record(end - start, failed, end)) {
+                    LOG.warn("The circuit breaker of the interceptor " + interceptor + " has opened");
+                }
+            }
+        } finally {
+            if (guard.bulkhead != null) {
+                guard.bulkhead.release();
+            }
+        }
+    }
+
+    /**
+     * @return the state of the circuit breaker of the interceptor
+     */
+    public CircuitBreaker.State getState(Interceptor interceptor) {
+        return getGuard(interceptor).breaker.getState();
+    }
+
+    /**
+     * @return the number of calls rejected by open breakers or full bulkheads
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Forgets the state of all the interceptors, e.g. after the settings changed.
+     */
+    public void reset() {
+        guards.clear();
+    }
+
+    private boolean isFailure(RuntimeException ex) {
+        for (Class<?> ignored : ignoredExceptions) {
+            if (ignored.isInstance(ex)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void reject(Guard guard, Interceptor interceptor, String reason) throws SwordfishException {
+        rejectedCount.incrementAndGet();
+        if (guard.policy == Policy.SKIP) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("The interceptor " + interceptor + " " + reason + ", it is skipped");
+            }
+            return;
+        }
+        throw new InterceptorRejectedException("The interceptor " + interceptor + " " + reason);
+    }
+
+    /**
+     * Drops the guards of the interceptors which are not registered any more.
+     */
+    private void sweep() {
+        nextSweep = System.nanoTime() + sweepInterval * 1000000L;
+        for (Interceptor interceptor : guards.keySet()) {
+            if (planner.getInterceptorProperties(interceptor) == null) {
+                guards.remove(interceptor);
+            }
+        }
+    }
+
+    private Guard getGuard(Interceptor interceptor) {
+        Guard guard = guards.get(interceptor);
+        if (guard == null) {
+            Guard created = createGuard(interceptor);
+            guard = guards.putIfAbsent(interceptor, created);
+            if (guard == null) {
+                guard = created;
+            }
+        }
+        return guard;
+    }
+
+    private Guard createGuard(Interceptor interceptor) {
+        Map<String, ?> properties = planner != null ? planner.getInterceptorProperties(interceptor) : null;
+        if (properties == null) {
+            properties = interceptor.getProperties();
+        }
+        Object policyValue = properties != null ? properties.get(Interceptor.GUARD_POLICY_PROPERTY) : null;
+        Object limitValue = properties != null ? properties.get(Interceptor.MAX_CONCURRENT_CALLS_PROPERTY) : null;
+        Policy policy = defaultPolicy;
+        int limit = maxConcurrentCalls;
+        try {
+            if (policyValue != null) {
+                policy = Policy.valueOf(policyValue.toString().trim().toUpperCase());
+            }
+            if (limitValue != null) {
+                limit = Integer.parseInt(limitValue.toString().trim());
+            }
+        } catch (IllegalArgumentException ex) {
+            LOG.warn("Invalid guard settings of the interceptor " + interceptor + ", the defaults apply", ex);
+            policy = defaultPolicy;
+            limit = maxConcurrentCalls;
+        }
+        return new Guard(policy,
+            new CircuitBreaker(windowSize, failureRateThreshold, slowCallThreshold * 1000000L,
+                slowCallRateThreshold, openDuration * 1000000L, halfOpenCalls),
+            limit > 0 ? new Semaphore(limit) : null);
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * @param windowSize - the number of recent calls of an interceptor the
+     * failure and slow call rates are computed over
+     */
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    public double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public void setFailureRateThreshold(double failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    public long getSlowCallThreshold() {
+        return slowCallThreshold;
+    }
+
+    /**
+     * @param slowCallThreshold - the duration in milliseconds from which on
+     * a call is slow, zero to ignore the duration of the calls
+     */
+    public void setSlowCallThreshold(long slowCallThreshold) {
+        this.slowCallThreshold = slowCallThreshold;
+    }
+
+    public double getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    public void setSlowCallRateThreshold(double slowCallRateThreshold) {
+        this.slowCallRateThreshold = slowCallRateThreshold;
+    }
+
+    public long getOpenDuration() {
+        return openDuration;
+    }
+
+    /**
+     * @param openDuration - the time in milliseconds an open breaker rejects
+     * all calls before it lets trial calls pass
+     */
+    public void setOpenDuration(long openDuration) {
+        this.openDuration = openDuration;
+    }
+
+    public int getHalfOpenCalls() {
+        return halfOpenCalls;
+    }
+
+    public void setHalfOpenCalls(int halfOpenCalls) {
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    /**
+     * @param maxConcurrentCalls - the concurrency limit of the interceptors
+     * without the {@link Interceptor#MAX_CONCURRENT_CALLS_PROPERTY} whatever
+     * their policy, zero for no limit
+     */
+    public void setMaxConcurrentCalls(int maxConcurrentCalls) {
+        this.maxConcurrentCalls = maxConcurrentCalls;
+    }
+
+    public Policy getDefaultPolicy() {
+        return defaultPolicy;
+    }
+
+    /**
+     * @param defaultPolicy - the policy of the interceptors without the
+     * {@link Interceptor#GUARD_POLICY_PROPERTY}
+     */
+    public void setDefaultPolicy(Policy defaultPolicy) {
+        this.defaultPolicy = defaultPolicy;
+    }
+
+    public List<Class<?>> getIgnoredExceptions() {
+        return Arrays.asList(ignoredExceptions);
+    }
+
+    /**
+     * @param ignoredExceptions - the exceptions thrown by interceptors which
+     * do not count as failures of the interceptor
+     */
+    public void setIgnoredExceptions(List<Class<?>> ignoredExceptions) {
+        this.ignoredExceptions = ignoredExceptions.toArray(new Class<?>[ignoredExceptions.size()]);
+    }
+
+    public Planner getPlanner() {
+        return planner;
+    }
+
+    /**
+     * @param planner - the source of the registration properties of the
+     * interceptors, without it only their own properties are read
+     */
+    public void setPlanner(Planner planner) {
+        this.planner = planner;
+    }
+
+    public long getSweepInterval() {
+        return sweepInterval;
+    }
+
+    /**
+     * @param sweepInterval - the milliseconds between the checks for guards
+     * of interceptors which are not registered any more
+     */
+    public void setSweepInterval(long sweepInterval) {
+        this.sweepInterval = sweepInterval;
+        nextSweep = System.nanoTime() + sweepInterval * 1000000L;
+    }
+
+    private static class Guard {
+        private final Policy policy;
+        private final CircuitBreaker breaker;
+        private final Semaphore bulkhead;
+
+        Guard(Policy policy, CircuitBreaker breaker, Semaphore bulkhead) {
+            this.policy = policy;
+            this.breaker = breaker;
+            this.bulkhead = bulkhead;
+        }
+    }
+}
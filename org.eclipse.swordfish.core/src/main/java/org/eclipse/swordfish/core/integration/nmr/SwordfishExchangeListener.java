@@ -11,34 +11,72 @@
 package org.eclipse.swordfish.core.integration.nmr;
 
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.jbi.messaging.MessageExchange;
 import javax.jbi.messaging.MessageExchange.Role;
 
 import org.apache.servicemix.jbi.runtime.impl.MessageExchangeImpl;
 import org.apache.servicemix.nmr.api.Exchange;
 import org.apache.servicemix.nmr.api.NMR;
 import org.apache.servicemix.nmr.api.event.ExchangeListener;
+import org.eclipse.swordfish.api.ConcurrencyLimitExceededException;
+import org.eclipse.swordfish.api.DeadlineExpiredException;
 import org.eclipse.swordfish.api.Interceptor;
+import org.eclipse.swordfish.api.InterceptorPhase;
+import org.eclipse.swordfish.api.InterceptorRejectedException;
 import org.eclipse.swordfish.api.Registry;
 import org.eclipse.swordfish.api.SwordfishException;
 import org.eclipse.swordfish.api.context.SwordfishContext;
-import org.eclipse.swordfish.api.event.TrackingEvent;
+import org.eclipse.swordfish.api.event.EventConstants;
+import org.eclipse.swordfish.api.event.EventService;
 import org.eclipse.swordfish.core.event.TrackingEventImpl;
+import org.eclipse.swordfish.core.event.TrackingSampler;
 import org.eclipse.swordfish.core.exception.InterceptorExceptionNofiticationSender;
+import org.eclipse.swordfish.core.interceptor.ConcurrencyLimitInterceptor;
 import org.eclipse.swordfish.core.planner.api.Planner;
+import org.eclipse.swordfish.core.util.DeadlineUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.util.Assert;
 
-public class SwordfishExchangeListener implements ExchangeListener, InitializingBean {
+public class SwordfishExchangeListener implements ExchangeListener, InitializingBean, DisposableBean {
 	private transient static final Logger LOG = LoggerFactory.getLogger(SwordfishExchangeListener.class);
+	/**
+	 * Exchange property holding the JBI view created by the listener. A key
+	 * of its own keeps it apart from the view the JBI runtime caches under
+	 * {@code MessageExchange.class}.
+	 */
+	private static final String MESSAGE_EXCHANGE_PROPERTY = SwordfishExchangeListener.class.getName() + ".messageExchange";
 	private NMR nmr;
 	private Planner planner;
 	private Registry<Interceptor> interceptorRegistry;
 	private InterceptorExceptionNofiticationSender exceptionNotificationSender;
     private SwordfishContext swordfishContext;
+    private volatile TrackingSampler trackingSampler;
+    private boolean trackPayloads;
+    private ExchangeCorrelator exchangeCorrelator;
+    private InterceptorGuard interceptorGuard;
+    private ExchangeDeadlines exchangeDeadlines;
+    private ExchangeQos exchangeQos;
+    private ConcurrencyLimitInterceptor concurrencyLimitInterceptor;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private volatile ExecutorService interceptorExecutor;
+    private boolean ownsInterceptorExecutor;
+    private boolean destroyed;
 
 	public Registry<Interceptor> getInterceptorRegistry() {
 		return interceptorRegistry;
@@ -50,7 +88,9 @@ public class SwordfishExchangeListener implements ExchangeListener, Initializing
 
 	public void exchangeDelivered(Exchange exchange) {
 		LOG.debug("ExchangeDelivered exchangeId=" + exchange.getId());
-
+		if (exchangeCorrelator != null) {
+			exchangeCorrelator.exchangeDelivered(getMessageExchange(exchange));
+		}
 	}
 
 	public InterceptorExceptionNofiticationSender getExceptionNotificationSender() {
@@ -63,34 +103,362 @@ public class SwordfishExchangeListener implements ExchangeListener, Initializing
 	}
 
 	public void exchangeSent(Exchange exchange) {
-		MessageExchangeImpl exchangeImpl = new MessageExchangeImpl(exchange);
+		MessageExchangeImpl exchangeImpl = getMessageExchange(exchange);
+		if (exchangeCorrelator != null) {
+			exchangeCorrelator.exchangeSent(exchangeImpl);
+		}
 		try {
 
-        	TrackingEvent trackingEvent = new TrackingEventImpl(exchangeImpl);
-        	swordfishContext.getEventService().postEvent(trackingEvent);
+        	EventService eventService = swordfishContext.getEventService();
+        	boolean tracked = eventService.hasSubscribers(EventConstants.TOPIC_TRACKING_EVENT);
+        	if (tracked && isSampled(exchangeImpl)) {
+        		eventService.postEvent(new TrackingEventImpl(exchangeImpl, trackPayloads));
+        	}
 
-			List<Interceptor> interceptors = planner.getInterceptorChain(interceptorRegistry.getKeySet(), exchangeImpl);
-			for (Interceptor interceptor : interceptors) {
+			InterceptorPhase phase = InterceptorPhase.forExchange(exchangeImpl);
+			if (exchangeDeadlines != null && failExpired(phase, exchangeImpl, eventService, tracked)) {
+				return;
+			}
+			boolean admitted = false;
+			if (exchangeQos != null && phase == InterceptorPhase.CONSUMER_REQUEST) {
+				exchangeQos.assignQosClass(exchangeImpl);
 				try {
-					interceptor.process(exchangeImpl);
-				} catch (SwordfishException ex) {
-					LOG.warn("The interceptor has thrown exception", ex);
-					exceptionNotificationSender.sendNotification(ex, exchangeImpl, interceptor);
-
-					exchangeImpl.setError(ex);
-					// send tracking event
-		        	trackingEvent = new TrackingEventImpl(exchangeImpl);
-		        	swordfishContext.getEventService().postEvent(trackingEvent);
-
-	                if(exchangeImpl.getRole() == Role.CONSUMER) {
-	                    throw ex;
-	                }
+					admitted = exchangeQos.admit(exchangeImpl);
+				} catch (ConcurrencyLimitExceededException ex) {
+					LOG.debug("The exchange [{}] has not been admitted", exchangeImpl.getExchangeId());
+					failExchange(ex, exchangeImpl, eventService, tracked);
+					return;
+				}
+			}
+			try {
+				if (!processStages(phase, exchangeImpl, eventService, tracked)) {
+					return;
+				}
+			} finally {
+				if (admitted) {
+					exchangeQos.release();
 				}
 			}
+			if (exchangeDeadlines != null && phase == InterceptorPhase.CONSUMER_REQUEST) {
+				DeadlineUtil.setBudgetHeader(exchangeImpl, System.currentTimeMillis());
+			}
 		} catch (Exception ex) {
+			// a failed send of the consumer does not reach its target, its slot is free again
+			if (concurrencyLimitInterceptor != null && exchangeImpl.getRole() == Role.CONSUMER) {
+				concurrencyLimitInterceptor.cancel(exchangeImpl);
+			}
 			throw new RuntimeException(ex);
 		}
 	}
+
+	/**
+	 * Runs the interceptor chain of the phase stage by stage.
+	 * @return <code>false</code> if the exchange has expired between two stages
+	 */
+	private boolean processStages(InterceptorPhase phase, MessageExchangeImpl exchangeImpl,
+			EventService eventService, boolean tracked) throws Exception {
+		List<List<Interceptor>> stages = planner.getInterceptorStages(phase, exchangeImpl);
+		// indexed loops, the common path must not allocate iterators
+		for (int i = 0; i < stages.size(); i++) {
+			if (i > 0 && exchangeDeadlines != null && failExpired(phase, exchangeImpl, eventService, tracked)) {
+				return false;
+			}
+			List<Interceptor> stage = stages.get(i);
+			ExecutorService executor = stage.size() > 1 ? getConcurrentExecutor() : null;
+			if (executor == null) {
+				for (int j = 0; j < stage.size(); j++) {
+					Interceptor interceptor = stage.get(j);
+					try {
+						invoke(interceptor, exchangeImpl);
+					} catch (SwordfishException ex) {
+						handleInterceptorException(ex, exchangeImpl, interceptor, eventService, tracked);
+					}
+				}
+			} else {
+				processConcurrently(stage, executor, exchangeImpl, eventService, tracked);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The JBI view of an exchange is created on its first send and kept in
+	 * the exchange properties, the later sends of the exchange reuse it.
+	 */
+	private static MessageExchangeImpl getMessageExchange(Exchange exchange) {
+		Object cached = exchange.getProperty(MESSAGE_EXCHANGE_PROPERTY);
+		// copies of an exchange carry the view of the original along
+		if (cached instanceof MessageExchangeImpl
+				&& ((MessageExchangeImpl) cached).getInternalExchange() == exchange) {
+			return (MessageExchangeImpl) cached;
+		}
+		MessageExchangeImpl messageExchange = new MessageExchangeImpl(exchange);
+		exchange.setProperty(MESSAGE_EXCHANGE_PROPERTY, messageExchange);
+		return messageExchange;
+	}
+
+	/**
+	 * Runs the interceptors of a concurrent stage in parallel. The calling
+	 * thread processes the first interceptor itself, the rest are handed to
+	 * the interceptor executor. The members share the exchange, concurrent
+	 * interceptors only read it. Failures are reported in chain order once
+	 * the whole stage has completed.
+	 */
+	private void processConcurrently(List<Interceptor> stage, ExecutorService executor,
+			final MessageExchangeImpl exchangeImpl, EventService eventService, boolean tracked) throws Exception {
+		List<FutureTask<Object>> futures = new ArrayList<FutureTask<Object>>(stage.size() - 1);
+		for (int i = 1; i < stage.size(); i++) {
+			final Interceptor interceptor = stage.get(i);
+			FutureTask<Object> future = new FutureTask<Object>(new Callable<Object>() {
+				public Object call() throws Exception {
+					invoke(interceptor, exchangeImpl);
+					return null;
+				}
+			});
+			try {
+				executor.execute(future);
+			} catch (RejectedExecutionException ex) {
+				// the calling thread runs it below
+			}
+			futures.add(future);
+		}
+		Throwable[] failures = new Throwable[stage.size()];
+		try {
+			invoke(stage.get(0), exchangeImpl);
+		} catch (Exception ex) {
+			failures[0] = ex;
+		}
+		for (int i = 1; i < stage.size(); i++) {
+			FutureTask<Object> future = futures.get(i - 1);
+			// a member no thread has started yet runs on the calling thread, so
+			// a busy executor, or an interceptor of a nested synchronous send
+			// waiting for one of its threads, cannot stall the stage
+			future.run();
+			try {
+				future.get();
+			} catch (ExecutionException ex) {
+				failures[i] = ex.getCause();
+			} catch (InterruptedException ex) {
+				for (Future<Object> pending : futures) {
+					pending.cancel(true);
+				}
+				Thread.currentThread().interrupt();
+				throw ex;
+			}
+		}
+		for (int i = 0; i < failures.length; i++) {
+			if (failures[i] instanceof SwordfishException) {
+				handleInterceptorException((SwordfishException) failures[i], exchangeImpl, stage.get(i), eventService, tracked);
+			} else if (failures[i] instanceof Exception) {
+				throw (Exception) failures[i];
+			} else if (failures[i] != null) {
+				throw (Error) failures[i];
+			}
+		}
+	}
+
+	/**
+	 * The executor of the concurrent stages is created when the first chain
+	 * with a concurrent stage is processed.
+	 * @return <code>null</code> if the stages are processed sequentially
+	 */
+	private ExecutorService getConcurrentExecutor() {
+		ExecutorService executor = interceptorExecutor;
+		if (executor != null || parallelism <= 1) {
+			return executor;
+		}
+		synchronized (this) {
+			if (interceptorExecutor == null && !destroyed) {
+				interceptorExecutor = createInterceptorExecutor();
+				ownsInterceptorExecutor = true;
+			}
+			return interceptorExecutor;
+		}
+	}
+
+	private ExecutorService createInterceptorExecutor() {
+		final AtomicInteger threadNumber = new AtomicInteger();
+		return Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "swordfish-interceptor-" + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	private void invoke(Interceptor interceptor, MessageExchangeImpl exchangeImpl) throws SwordfishException {
+		if (interceptorGuard != null) {
+			interceptorGuard.process(interceptor, exchangeImpl);
+		} else {
+			interceptor.process(exchangeImpl);
+		}
+	}
+
+	private void handleInterceptorException(SwordfishException ex, MessageExchangeImpl exchangeImpl,
+			Interceptor interceptor, EventService eventService, boolean tracked) {
+		if (ex instanceof DeadlineExpiredException) {
+			// an interceptor found the deadline passed, it is an expiry like the ones between the stages
+			LOG.debug("The deadline of the exchange [{}] has passed", exchangeImpl.getExchangeId());
+			if (exchangeDeadlines != null) {
+				ex = exchangeDeadlines.expired(exchangeImpl);
+			}
+		} else if (isRejection(ex)) {
+			// rejections come in storms under load, they are counted where they happen
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("The exchange [" + exchangeImpl.getExchangeId() + "] has been rejected: " + ex.getMessage());
+			}
+		} else {
+			LOG.warn("The interceptor has thrown exception", ex);
+			exceptionNotificationSender.sendNotification(ex, exchangeImpl, interceptor);
+		}
+		failExchange(ex, exchangeImpl, eventService, tracked);
+	}
+
+	/**
+	 * @return whether the exception rejects the exchange because of overload
+	 * rather than reporting a fault of the interceptor
+	 */
+	private static boolean isRejection(SwordfishException ex) {
+		return ex instanceof InterceptorRejectedException || ex instanceof ConcurrencyLimitExceededException;
+	}
+
+	private void failExchange(SwordfishException ex, MessageExchangeImpl exchangeImpl,
+			EventService eventService, boolean tracked) {
+		exchangeImpl.setError(ex);
+		// send tracking event
+		if (tracked && isSampled(exchangeImpl)) {
+			eventService.postEvent(new TrackingEventImpl(exchangeImpl, trackPayloads));
+		}
+
+		if (exchangeImpl.getRole() == Role.CONSUMER) {
+			throw ex;
+		}
+	}
+
+	/**
+	 * Fails the exchange if its deadline has passed. Requests of consumers
+	 * get their deadline assigned on the first check, only requests and
+	 * responses expire.
+	 * @return whether the exchange has been failed
+	 */
+	private boolean failExpired(InterceptorPhase phase, MessageExchangeImpl exchangeImpl,
+			EventService eventService, boolean tracked) {
+		long now = System.currentTimeMillis();
+		if (phase == InterceptorPhase.CONSUMER_REQUEST) {
+			exchangeDeadlines.assignDeadline(exchangeImpl, now);
+		} else if (phase != InterceptorPhase.PROVIDER_RESPONSE) {
+			return false;
+		}
+		if (!DeadlineUtil.isExpired(exchangeImpl, now)) {
+			return false;
+		}
+		LOG.debug("The deadline of the exchange [{}] has passed", exchangeImpl.getExchangeId());
+		failExchange(exchangeDeadlines.expired(exchangeImpl), exchangeImpl, eventService, tracked);
+		return true;
+	}
+
+	private boolean isSampled(MessageExchange exchange) {
+		TrackingSampler sampler = trackingSampler;
+		return sampler == null || sampler.sample(exchange);
+	}
+
+	public TrackingSampler getTrackingSampler() {
+		return trackingSampler;
+	}
+
+	public void setTrackingSampler(TrackingSampler trackingSampler) {
+		this.trackingSampler = trackingSampler;
+	}
+
+	public void bindTrackingSampler(TrackingSampler trackingSampler, Map properties) {
+		setTrackingSampler(trackingSampler);
+	}
+
+	public void unbindTrackingSampler(TrackingSampler trackingSampler, Map properties) {
+		if (this.trackingSampler == trackingSampler) {
+			setTrackingSampler(null);
+		}
+	}
+
+	public boolean isTrackPayloads() {
+		return trackPayloads;
+	}
+
+	/**
+	 * Whether the tracking events carry a copy of the message content, which
+	 * a tracking journal keeping payloads needs. The content is copied when
+	 * the event is posted, not when it is handled.
+	 */
+	public void setTrackPayloads(boolean trackPayloads) {
+		this.trackPayloads = trackPayloads;
+	}
+
+	public ExchangeCorrelator getExchangeCorrelator() {
+		return exchangeCorrelator;
+	}
+
+	public void setExchangeCorrelator(ExchangeCorrelator exchangeCorrelator) {
+		this.exchangeCorrelator = exchangeCorrelator;
+	}
+
+	public InterceptorGuard getInterceptorGuard() {
+		return interceptorGuard;
+	}
+
+	public void setInterceptorGuard(InterceptorGuard interceptorGuard) {
+		this.interceptorGuard = interceptorGuard;
+	}
+
+	public ExchangeDeadlines getExchangeDeadlines() {
+		return exchangeDeadlines;
+	}
+
+	public void setExchangeDeadlines(ExchangeDeadlines exchangeDeadlines) {
+		this.exchangeDeadlines = exchangeDeadlines;
+	}
+
+	public ExchangeQos getExchangeQos() {
+		return exchangeQos;
+	}
+
+	public void setExchangeQos(ExchangeQos exchangeQos) {
+		this.exchangeQos = exchangeQos;
+	}
+
+	public ConcurrencyLimitInterceptor getConcurrencyLimitInterceptor() {
+		return concurrencyLimitInterceptor;
+	}
+
+	/**
+	 * The concurrency limit whose slots are given back when exchanges fail
+	 * outside of its reach.
+	 */
+	public void setConcurrencyLimitInterceptor(ConcurrencyLimitInterceptor concurrencyLimitInterceptor) {
+		this.concurrencyLimitInterceptor = concurrencyLimitInterceptor;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Number of threads used to run concurrent interceptor stages. A value
+	 * of one processes every chain sequentially on the calling thread. The
+	 * threads are only started once a chain has a concurrent stage.
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	public ExecutorService getInterceptorExecutor() {
+		return interceptorExecutor;
+	}
+
+	public void setInterceptorExecutor(ExecutorService interceptorExecutor) {
+		this.interceptorExecutor = interceptorExecutor;
+	}
+
 	public NMR getNmr() {
 		return nmr;
 	}
@@ -119,11 +487,26 @@ public class SwordfishExchangeListener implements ExchangeListener, Initializing
 		Assert.notNull(planner);
 		Assert.notNull(interceptorRegistry);
 		Assert.notNull(swordfishContext);
+		Assert.isTrue(parallelism > 0, "parallelism must be positive");
 		start();
 	}
 
-    public void exchangeFailed(Exchange arg0) {
-        // TODO Auto-generated method stub
+	public synchronized void destroy() throws Exception {
+		destroyed = true;
+		if (ownsInterceptorExecutor) {
+			interceptorExecutor.shutdownNow();
+			interceptorExecutor = null;
+			ownsInterceptorExecutor = false;
+		}
+	}
 
+    public void exchangeFailed(Exchange exchange) {
+        LOG.debug("ExchangeFailed exchangeId=" + exchange.getId());
+        if (exchangeCorrelator != null) {
+            exchangeCorrelator.exchangeFailed(getMessageExchange(exchange));
+        }
+        if (concurrencyLimitInterceptor != null) {
+            concurrencyLimitInterceptor.exchangeFailed(getMessageExchange(exchange));
+        }
     }
 }
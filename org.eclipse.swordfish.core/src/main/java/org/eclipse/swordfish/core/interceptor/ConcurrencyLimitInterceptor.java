@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.interceptor;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jbi.messaging.MessageExchange;
+import javax.jbi.servicedesc.ServiceEndpoint;
+
+import org.apache.servicemix.jbi.runtime.impl.MessageExchangeImpl;
+import org.apache.servicemix.nmr.api.Exchange;
+import org.apache.servicemix.nmr.api.internal.InternalEndpoint;
+import org.eclipse.swordfish.api.ConcurrencyLimitExceededException;
+import org.eclipse.swordfish.api.Interceptor;
+import org.eclipse.swordfish.api.InterceptorPhase;
+import org.eclipse.swordfish.api.SwordfishException;
+import org.eclipse.swordfish.core.util.AdaptiveLimit;
+import org.eclipse.swordfish.core.util.JbiConstants;
+import org.eclipse.swordfish.core.util.ServiceMixSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Admission control for the requests of consumers. Every target gets an
+ * {@link AdaptiveLimit} of the requests in flight, measured from the send of
+ * the request by the consumer to the answer of the provider. The target is
+ * the service the request is addressed to, otherwise the endpoint it has
+ * been resolved to, otherwise its interface. The interceptor has to run after
+ * the endpoint resolution, so that the requests addressed by interface are
+ * limited per resolved endpoint. Requests
+ * above the limit are rejected with a {@link ConcurrencyLimitExceededException}
+ * right away, or after waiting up to the queue timeout for a free slot.
+ * <p>
+ * The exchange listener reports the requests which fail before they reach
+ * their target and the ones the NMR fails to deliver, see
+ * {@link #cancel(MessageExchange)} and {@link #exchangeFailed(MessageExchange)}.
+ * Exchanges which are never answered are released as dropped after the
+ * abandon timeout, so that they do not hold their slots forever.
+ */
+public class ConcurrencyLimitInterceptor implements Interceptor {
+    private static final Logger LOG = LoggerFactory.getLogger(ConcurrencyLimitInterceptor.class);
+
+    private final Map<String, Object> properties = new HashMap<String, Object>();
+    private final ConcurrentMap<Object, AdaptiveLimit> limits = new ConcurrentHashMap<Object, AdaptiveLimit>();
+    private final ConcurrentMap<String, Permit> permits = new ConcurrentHashMap<String, Permit>();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private int initialLimit = 20;
+    private int minLimit = 1;
+    private int maxLimit = 1000;
+    private double tolerance = 1.5;
+    private double smoothing = 0.2;
+    private double backoffRatio = 0.9;
+    private int baselineWindow = 1000;
+    private long queueTimeout;
+    private long abandonTimeout = 60000;
+
+    public ConcurrencyLimitInterceptor() {
+        // rejecting requests is the purpose of the interceptor, not a failure to guard against
+        properties.put(GUARD_POLICY_PROPERTY, "none");
+    }
+
+    public void process(MessageExchange exchange) throws SwordfishException {
+        String id = exchange.getExchangeId();
+        if (id == null) {
+            return;
+        }
+        InterceptorPhase phase = InterceptorPhase.forExchange(exchange);
+        if (phase == InterceptorPhase.CONSUMER_REQUEST) {
+            admit(id, exchange);
+            return;
+        }
+        Permit permit = permits.remove(id);
+        if (permit != null) {
+            permit.limit.release(System.nanoTime() - permit.start, phase == InterceptorPhase.ERROR);
+        }
+    }
+
+    /**
+     * Called when the request of a consumer fails before it has been sent to
+     * its target, e.g. because a later interceptor has thrown. The slot of
+     * the request is given back without a sample.
+     */
+    public void cancel(MessageExchange exchange) {
+        Permit permit = exchange.getExchangeId() != null ? permits.remove(exchange.getExchangeId()) : null;
+        if (permit != null) {
+            permit.limit.cancel();
+        }
+    }
+
+    /**
+     * Called when the NMR fails to deliver the exchange, the request counts
+     * as dropped.
+     */
+    public void exchangeFailed(MessageExchange exchange) {
+        Permit permit = exchange.getExchangeId() != null ? permits.remove(exchange.getExchangeId()) : null;
+        if (permit != null) {
+            permit.limit.release(System.nanoTime() - permit.start, true);
+        }
+    }
+
+    private void admit(String id, MessageExchange exchange) throws SwordfishException {
+        Object target = getTarget(exchange);
+        if (target == null || permits.containsKey(id)) {
+            return;
+        }
+        AdaptiveLimit limit = limitFor(target);
+        if (!tryAcquire(limit) && (evictAbandoned() == 0 || !tryAcquire(limit))) {
+            rejectedCount.incrementAndGet();
+            LOG.debug("Rejected the exchange [{}], the limit of the target [{}] is reached", id, target);
+            throw new ConcurrencyLimitExceededException("The target [" + target + "] is at its limit of "
+                + limit.getLimit() + " concurrent requests", target.toString());
+        }
+        permits.put(id, new Permit(limit, System.nanoTime()));
+    }
+
+    /**
+     * @return the key of the limit of the exchange, <code>null</code> if the
+     * target of the exchange is not known
+     */
+    static Object getTarget(MessageExchange exchange) {
+        if (exchange.getService() != null) {
+            return exchange.getService();
+        }
+        if (exchange instanceof MessageExchangeImpl) {
+            Exchange internal = ((MessageExchangeImpl) exchange).getInternalExchange();
+            InternalEndpoint endpoint = internal.getTarget() != null
+                ? ServiceMixSupport.getEndpoint(internal.getTarget()) : null;
+            if (endpoint != null) {
+                // a transport endpoint serves all the destinations it is given
+                Object destination = internal.getIn(false) != null
+                    ? internal.getIn(false).getHeader(JbiConstants.HTTP_DESTINATION_URI) : null;
+                return destination != null ? endpoint.getId() + " " + destination : endpoint.getId();
+            }
+        }
+        ServiceEndpoint endpoint = exchange.getEndpoint();
+        if (endpoint != null) {
+            return endpoint.getServiceName() + ":" + endpoint.getEndpointName();
+        }
+        return exchange.getInterfaceName();
+    }
+
+    private boolean tryAcquire(AdaptiveLimit limit) {
+        if (queueTimeout <= 0) {
+            return limit.tryAcquire();
+        }
+        try {
+            return limit.acquire(queueTimeout);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private int evictAbandoned() {
+        long oldest = System.nanoTime() - abandonTimeout * 1000000L;
+        int evicted = 0;
+        for (Map.Entry<String, Permit> entry : permits.entrySet()) {
+            Permit permit = entry.getValue();
+            if (permit.start - oldest < 0 && permits.remove(entry.getKey(), permit)) {
+                permit.limit.release(0, true);
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            LOG.warn("Released " + evicted + " exchanges which have not been answered within "
+                + abandonTimeout + " ms");
+        }
+        return evicted;
+    }
+
+    private AdaptiveLimit limitFor(Object target) {
+        AdaptiveLimit limit = limits.get(target);
+        if (limit == null) {
+            AdaptiveLimit created = new AdaptiveLimit(initialLimit, minLimit, maxLimit,
+                tolerance, smoothing, backoffRatio, baselineWindow);
+            limit = limits.putIfAbsent(target, created);
+            if (limit == null) {
+                limit = created;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * @param target - the service name, the id of the endpoint or the
+     * interface name, see {@link #getTarget(MessageExchange)}
+     * @return the current limit of the target, the initial limit if it has
+     * not been called yet
+     */
+    public int getLimit(Object target) {
+        AdaptiveLimit limit = limits.get(target);
+        return limit != null ? limit.getLimit() : initialLimit;
+    }
+
+    public int getInFlight(Object target) {
+        AdaptiveLimit limit = limits.get(target);
+        return limit != null ? limit.getInFlight() : 0;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public Map<String, ?> getProperties() {
+        return properties;
+    }
+
+    public void setInitialLimit(int initialLimit) {
+        this.initialLimit = initialLimit;
+    }
+
+    public void setMinLimit(int minLimit) {
+        this.minLimit = minLimit;
+    }
+
+    public void setMaxLimit(int maxLimit) {
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * @param tolerance - the factor of the no-load round trip time up to
+     * which the latency is not considered increased
+     */
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public void setSmoothing(double smoothing) {
+        this.smoothing = smoothing;
+    }
+
+    public void setBackoffRatio(double backoffRatio) {
+        this.backoffRatio = backoffRatio;
+    }
+
+    public void setBaselineWindow(int baselineWindow) {
+        this.baselineWindow = baselineWindow;
+    }
+
+    /**
+     * @param queueTimeout - the milliseconds a request waits for a free slot,
+     * zero rejects the requests above the limit right away
+     */
+    public void setQueueTimeout(long queueTimeout) {
+        this.queueTimeout = queueTimeout;
+    }
+
+    /**
+     * @param abandonTimeout - the milliseconds after which an unanswered
+     * request gives its slot back
+     */
+    public void setAbandonTimeout(long abandonTimeout) {
+        this.abandonTimeout = abandonTimeout;
+    }
+
+    private static class Permit {
+        private final AdaptiveLimit limit;
+        private final long start;
+
+        Permit(AdaptiveLimit limit, long start) {
+            this.limit = limit;
+            this.start = start;
+        }
+    }
+}
@@ -11,6 +11,7 @@
 package org.eclipse.swordfish.core.interceptor;
 
 import java.lang.reflect.Field;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -26,7 +27,9 @@ import org.apache.servicemix.nmr.api.internal.InternalEndpoint;
 import org.apache.servicemix.nmr.api.internal.InternalExchange;
 import org.apache.servicemix.nmr.core.InternalEndpointWrapper;
 import org.eclipse.swordfish.api.Interceptor;
+import org.eclipse.swordfish.api.InterceptorPhase;
 import org.eclipse.swordfish.api.SwordfishException;
+import org.eclipse.swordfish.core.util.DeadlineUtil;
 import org.eclipse.swordfish.core.util.ServiceMixSupport;
 import org.eclipse.swordfish.core.util.xml.StringSource;
 import org.eclipse.swordfish.core.util.xml.XmlUtil;
@@ -38,9 +41,14 @@ public class CxfDecoratingInterceptor implements Interceptor {
 	private final static String SOAP_MESSAGE_PREFIX = "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\">" +
 		"<soap:Body>";
 	private final static String SOAP_MESSAGE_SUFFIX = "</soap:Body></soap:Envelope>";
-	private Map<String, ?> properties = new HashMap<String, Object>();
+	private Map<String, Object> properties = new HashMap<String, Object>();
 	private NMR nmr;
 
+	public CxfDecoratingInterceptor() {
+		properties.put(PHASES_PROPERTY, EnumSet.of(InterceptorPhase.CONSUMER_REQUEST,
+				InterceptorPhase.PROVIDER_RESPONSE, InterceptorPhase.FAULT));
+	}
+
 
 	public synchronized NMR getNmr() {
 		return nmr;
@@ -68,6 +76,10 @@ public class CxfDecoratingInterceptor implements Interceptor {
 	}
 
 	public void process(MessageExchange exchange) throws SwordfishException {
+		// only requests are expired, late responses and faults are passed on as they are
+		if (exchange.getRole() == MessageExchange.Role.CONSUMER && exchange.getFault() == null) {
+			DeadlineUtil.checkDeadline(exchange);
+		}
 		InternalExchange messageExchange = (InternalExchange) ServiceMixSupport.toNMRExchange(exchange);
 		if (messageExchange.getTarget() == null) {
 			throw new UnsupportedOperationException();
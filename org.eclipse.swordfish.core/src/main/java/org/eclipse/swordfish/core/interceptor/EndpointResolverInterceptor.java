@@ -31,9 +31,14 @@ import org.apache.servicemix.nmr.api.internal.InternalEndpoint;
 import org.apache.servicemix.nmr.core.DynamicReferenceImpl;
 import org.apache.servicemix.nmr.core.StaticReferenceImpl;
 import org.apache.servicemix.nmr.core.util.Filter;
+import org.eclipse.swordfish.api.Interceptor;
+import org.eclipse.swordfish.api.InterceptorPhase;
 import org.eclipse.swordfish.api.SwordfishException;
-import org.eclipse.swordfish.api.configuration.ConfigurationConsumer;
+import org.eclipse.swordfish.api.configuration.ConfigurationSnapshot;
+import org.eclipse.swordfish.api.configuration.TypedConfigurationConsumer;
+import org.eclipse.swordfish.core.util.ConfigurationSnapshotImpl;
 import org.eclipse.swordfish.core.util.JbiConstants;
+import org.eclipse.swordfish.core.util.DeadlineUtil;
 import org.eclipse.swordfish.core.util.ServiceMixSupport;
 import org.eclipse.swordfish.core.wsdl.ServiceDescription;
 import org.eclipse.swordfish.core.wsdl.WSDLInterceptor;
@@ -44,15 +49,22 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.util.Assert;
 
-public class EndpointResolverInterceptor<T> implements ConfigurationConsumer<T>, WSDLInterceptor, InitializingBean {
+public class EndpointResolverInterceptor<T> implements TypedConfigurationConsumer<T>, WSDLInterceptor, InitializingBean {
 	private Logger logger = LoggerFactory.getLogger(EndpointResolverInterceptor.class);
     private NMR nmr;
     private WSDLManager wsdlManager;
-    private String wsdlStorage;
-    private Map<String, ?> properties = new HashMap<String, Object>();
+    private volatile String wsdlStorage;
+    private Map<String, Object> properties = new HashMap<String, Object>();
+
+    public EndpointResolverInterceptor() {
+        // endpoints are only resolved when the consumer sends the request
+        properties.put(Interceptor.PHASES_PROPERTY, InterceptorPhase.CONSUMER_REQUEST);
+    }
 
 	public void process(MessageExchange messageExchange) throws SwordfishException {
 	    Assert.notNull(wsdlStorage, "wsdlStorage is not loaded");
+	    // resolving the endpoint is wasted on requests nobody waits for
+	    DeadlineUtil.checkDeadline(messageExchange);
 		Exchange exchange = ServiceMixSupport.toNMRExchange(messageExchange);
 		try {
 		if (exchange.getRole() != Role.Consumer) {
@@ -151,7 +163,9 @@ public class EndpointResolverInterceptor<T> implements ConfigurationConsumer<T>,
 
 	public void afterPropertiesSet() throws Exception {
 		Assert.notNull(nmr);
-		wsdlManager = new WSDLManagerImpl();
+		if (wsdlManager == null) {
+			wsdlManager = new WSDLManagerImpl();
+		}
 
 	}
 
@@ -162,14 +176,23 @@ public class EndpointResolverInterceptor<T> implements ConfigurationConsumer<T>,
 
     public void onReceiveConfiguration(Map<String, T> configuration) {
         if (configuration != null) {
-            wsdlStorage = (String) configuration.get("wsdlStorage");
-            try {
-                wsdlManager.setupWSDLs(new URL(wsdlStorage));
-            } catch (Exception ex) {
-               throw new SwordfishException(ex);
-            }
+            onReceiveSnapshot(new ConfigurationSnapshotImpl(getId(), configuration));
         }
+    }
 
-
+    public void onReceiveSnapshot(ConfigurationSnapshot snapshot) {
+        if (snapshot == null) {
+            return;
+        }
+        URL location = snapshot.getURL("wsdlStorage");
+        if (location == null) {
+            throw new SwordfishException("The wsdlStorage property is missing in the configuration " + snapshot.getId());
+        }
+        try {
+            wsdlManager.setupWSDLs(location);
+        } catch (Exception ex) {
+            throw new SwordfishException(ex);
+        }
+        wsdlStorage = snapshot.getString("wsdlStorage");
     }
 }
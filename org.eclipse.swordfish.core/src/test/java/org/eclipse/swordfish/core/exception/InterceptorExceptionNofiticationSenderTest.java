@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.exception;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.jbi.messaging.MessageExchange;
+import javax.xml.namespace.QName;
+
+import org.eclipse.swordfish.api.Interceptor;
+import org.eclipse.swordfish.api.SwordfishException;
+import org.eclipse.swordfish.api.event.Event;
+import org.eclipse.swordfish.api.event.EventService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InterceptorExceptionNofiticationSenderTest {
+    private static final QName SERVICE = new QName("http://example.org", "Service");
+
+    private InterceptorExceptionNofiticationSender sender;
+    private List<InterceptorExceptionEvent> events;
+    private Interceptor interceptor;
+
+    @Before
+    public void setUp() throws Exception {
+        events = new ArrayList<InterceptorExceptionEvent>();
+        sender = new InterceptorExceptionNofiticationSender();
+        sender.setEventService(new EventService() {
+            public void postEvent(Event event) {
+                events.add((InterceptorExceptionEvent) event);
+            }
+
+            public boolean hasSubscribers(String topic) {
+                return true;
+            }
+        });
+        // long enough for the test to flush the window itself
+        sender.setFlushInterval(60000);
+        sender.setMaxSamples(2);
+        sender.afterPropertiesSet();
+        interceptor = new Interceptor() {
+            public void process(MessageExchange exchange) throws SwordfishException {
+            }
+
+            public Map<String, ?> getProperties() {
+                return null;
+            }
+        };
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        sender.destroy();
+    }
+
+    @Test
+    public void test1RepeatedFailuresAreCollapsed() {
+        MessageExchange first = createExchange(SERVICE);
+        sender.sendNotification(new SwordfishException("first"), first, interceptor);
+        assertEquals(1, events.size());
+        assertSame(first, events.get(0).getExchange());
+
+        SwordfishException last = null;
+        for (int i = 0; i < 100; i++) {
+            last = new SwordfishException("repeat " + i);
+            sender.sendNotification(last, createExchange(SERVICE), interceptor);
+        }
+        assertEquals(1, events.size());
+
+        sender.flush();
+        assertEquals(2, events.size());
+        InterceptorExceptionEvent collapsed = events.get(1);
+        assertEquals(100, collapsed.getCount());
+        assertEquals(2, collapsed.getSampleExchanges().size());
+        assertSame(last, collapsed.getException());
+        assertSame(interceptor, collapsed.getInterceptor());
+
+        // the next failure opens a new window
+        sender.sendNotification(new SwordfishException("again"), first, interceptor);
+        assertEquals(3, events.size());
+        assertEquals(1, events.get(2).getCount());
+    }
+
+    @Test
+    public void test2DifferentFailuresAreReportedSeparately() {
+        sender.sendNotification(new SwordfishException("first"), createExchange(SERVICE), interceptor);
+        sender.sendNotification(new IllegalStateException("other class"), createExchange(SERVICE), interceptor);
+        sender.sendNotification(new SwordfishException("other service"),
+            createExchange(new QName("http://example.org", "Other")), interceptor);
+        assertEquals(3, events.size());
+
+        sender.flush();
+        assertEquals(3, events.size());
+    }
+
+    @Test
+    public void test3AggregationCanBeDisabled() throws Exception {
+        sender.destroy();
+        sender.setFlushInterval(0);
+        sender.afterPropertiesSet();
+        for (int i = 0; i < 5; i++) {
+            sender.sendNotification(new SwordfishException("failure"), createExchange(SERVICE), interceptor);
+        }
+        assertEquals(5, events.size());
+    }
+
+    private static MessageExchange createExchange(final QName service) {
+        return (MessageExchange) Proxy.newProxyInstance(MessageExchange.class.getClassLoader(),
+            new Class[] {MessageExchange.class}, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if ("getService".equals(method.getName())) {
+                        return service;
+                    }
+                    return null;
+                }
+            });
+    }
+}
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.integration.nmr;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jbi.messaging.MessageExchange;
+
+import org.apache.servicemix.nmr.api.Pattern;
+import org.apache.servicemix.nmr.core.ExchangeImpl;
+import org.eclipse.swordfish.api.Interceptor;
+import org.eclipse.swordfish.api.SortingStrategy;
+import org.eclipse.swordfish.api.SwordfishException;
+import org.eclipse.swordfish.api.event.Event;
+import org.eclipse.swordfish.api.event.EventService;
+import org.eclipse.swordfish.core.context.SwordfishContextImpl;
+import org.eclipse.swordfish.core.planner.DefaultHintExtractor;
+import org.eclipse.swordfish.core.planner.FilterStrategyImpl;
+import org.eclipse.swordfish.core.planner.InterceptorRegistry;
+import org.eclipse.swordfish.core.planner.PlannerImpl;
+import org.eclipse.swordfish.core.planner.SimpleSortingStrategy;
+import org.eclipse.swordfish.core.planner.SortingStrategyImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConcurrentStagesTest {
+    private InterceptorRegistry registry;
+    private SwordfishExchangeListener listener;
+    private final AtomicInteger processed = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        registry = new InterceptorRegistry();
+        SortingStrategyImpl sortingStrategy = new SortingStrategyImpl();
+        sortingStrategy.setSortingStrategies(Arrays.<SortingStrategy>asList(new SimpleSortingStrategy()));
+        PlannerImpl planner = new PlannerImpl();
+        planner.setInterceptorRegistry(registry);
+        planner.setSortingStrategy(sortingStrategy);
+        planner.setFilterStrategy(new FilterStrategyImpl());
+        planner.setHintExtractor(new DefaultHintExtractor());
+
+        SwordfishContextImpl swordfishContext = new SwordfishContextImpl();
+        swordfishContext.setEventService(new EventService() {
+            public boolean hasSubscribers(String topic) {
+                return false;
+            }
+
+            public void postEvent(Event event) {
+            }
+        });
+        listener = new SwordfishExchangeListener();
+        listener.setPlanner(planner);
+        listener.setInterceptorRegistry(registry);
+        listener.setSwordfishContext(swordfishContext);
+        listener.setParallelism(2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        listener.destroy();
+    }
+
+    @Test
+    public void test1SequentialChainsStartNoThreads() {
+        register(2, false);
+        register(1, false);
+        listener.exchangeSent(new ExchangeImpl(Pattern.InOut));
+        assertEquals(2, processed.get());
+        assertNull(listener.getInterceptorExecutor());
+    }
+
+    @Test
+    public void test2ConcurrentStageStartsTheExecutor() {
+        register(2, true);
+        register(1, true);
+        listener.exchangeSent(new ExchangeImpl(Pattern.InOut));
+        assertEquals(2, processed.get());
+        assertNotNull(listener.getInterceptorExecutor());
+    }
+
+    @Test
+    public void test3BusyExecutorDoesNotStallTheStage() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        listener.setInterceptorExecutor(executor);
+        register(3, true);
+        register(2, true);
+        register(1, true);
+        try {
+            listener.exchangeSent(new ExchangeImpl(Pattern.InOut));
+            assertEquals(3, processed.get());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    private void register(int priority, boolean concurrent) {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(SimpleSortingStrategy.PRIORITY_KEYWORD, priority);
+        properties.put(Interceptor.CONCURRENT_PROPERTY, concurrent);
+        registry.register(new Interceptor() {
+            public void process(MessageExchange exchange) throws SwordfishException {
+                processed.incrementAndGet();
+            }
+
+            public Map<String, ?> getProperties() {
+                return null;
+            }
+        }, properties);
+    }
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.integration.nmr;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import javax.jbi.messaging.ExchangeStatus;
+import javax.jbi.messaging.MessageExchange.Role;
+import javax.xml.namespace.QName;
+
+import org.eclipse.swordfish.core.util.JbiConstants;
+import org.junit.Test;
+
+public class ExchangeCorrelatorTest {
+    private static final QName SERVICE = new QName("http://example.org", "Service");
+
+    @Test
+    public void test1ConsumerAndProviderSidesAreCorrelated() {
+        ExchangeCorrelator correlator = new ExchangeCorrelator();
+        TestExchange exchange = new TestExchange("ID:1", SERVICE);
+
+        correlator.exchangeSent(exchange.view());
+        assertEquals(1, correlator.getInFlightCount());
+        Object sequence = exchange.getProperties().get(JbiConstants.EXCHANGE_SEQUENCE);
+        assertNotNull(sequence);
+        assertNotNull(exchange.getProperties().get(JbiConstants.EXCHANGE_START_TIME));
+
+        // delivery of the request to the provider keeps the exchange open
+        exchange.setRole(Role.PROVIDER);
+        correlator.exchangeDelivered(exchange.view());
+        assertEquals(1, correlator.getInFlightCount());
+
+        // the answer of the provider closes it
+        correlator.exchangeSent(exchange.view());
+        assertEquals(0, correlator.getInFlightCount());
+        assertEquals(1, correlator.getCompletedCount());
+        assertEquals(sequence, exchange.getProperties().get(JbiConstants.EXCHANGE_SEQUENCE));
+        assertTrue((Long) exchange.getProperties().get(JbiConstants.EXCHANGE_END_TIME)
+            >= (Long) exchange.getProperties().get(JbiConstants.EXCHANGE_START_TIME));
+        assertEquals(1, correlator.getLatency(SERVICE).getTotalCount());
+
+        // the final done status of the consumer is ignored
+        exchange.setRole(Role.CONSUMER);
+        exchange.setStatus(ExchangeStatus.DONE);
+        correlator.exchangeSent(exchange.view());
+        assertEquals(1, correlator.getLatency(SERVICE).getTotalCount());
+    }
+
+    @Test
+    public void test2FailedExchangesAreCounted() {
+        ExchangeCorrelator correlator = new ExchangeCorrelator();
+        TestExchange exchange = new TestExchange("ID:2", SERVICE);
+        correlator.exchangeSent(exchange.view());
+        correlator.exchangeFailed(exchange.view());
+
+        assertEquals(0, correlator.getInFlightCount());
+        assertEquals(1, correlator.getFailedCount());
+        assertEquals(1, correlator.getLatency(SERVICE).getTotalCount());
+    }
+
+    @Test
+    public void test3AbandonedExchangesAreEvicted() throws Exception {
+        ExchangeCorrelator correlator = new ExchangeCorrelator();
+        correlator.setMaxInFlight(2);
+        correlator.setAbandonTimeout(1);
+        correlator.setSweepInterval(0);
+        correlator.exchangeSent(new TestExchange("ID:1", SERVICE).view());
+        correlator.exchangeSent(new TestExchange("ID:2", SERVICE).view());
+        assertEquals(2, correlator.getInFlightCount());
+
+        Thread.sleep(10);
+        TestExchange exchange = new TestExchange("ID:3", SERVICE);
+        correlator.exchangeSent(exchange.view());
+        assertEquals(1, correlator.getInFlightCount());
+        assertEquals(2, correlator.getAbandonedCount());
+        assertNotNull(exchange.getProperties().get(JbiConstants.EXCHANGE_SEQUENCE));
+
+        correlator.setAbandonTimeout(60000);
+        correlator.exchangeSent(new TestExchange("ID:4", SERVICE).view());
+        TestExchange rejected = new TestExchange("ID:5", SERVICE);
+        correlator.exchangeSent(rejected.view());
+        assertEquals(2, correlator.getInFlightCount());
+        assertNull(rejected.getProperties().get(JbiConstants.EXCHANGE_SEQUENCE));
+
+        // rejected exchanges do not use up sequence numbers
+        correlator.exchangeFailed(exchange.view());
+        TestExchange next = new TestExchange("ID:6", SERVICE);
+        correlator.exchangeSent(next.view());
+        assertEquals(5, next.getProperties().get(JbiConstants.EXCHANGE_SEQUENCE));
+    }
+
+    @Test
+    public void test4FullMapIsSweptOncePerInterval() throws Exception {
+        ExchangeCorrelator correlator = new ExchangeCorrelator();
+        correlator.setMaxInFlight(1);
+        correlator.setAbandonTimeout(1);
+        correlator.setSweepInterval(60000);
+        correlator.exchangeSent(new TestExchange("ID:1", SERVICE).view());
+        Thread.sleep(10);
+        correlator.exchangeSent(new TestExchange("ID:2", SERVICE).view());
+        assertEquals(0, correlator.getAbandonedCount());
+        assertEquals(1, correlator.getInFlightCount());
+    }
+}
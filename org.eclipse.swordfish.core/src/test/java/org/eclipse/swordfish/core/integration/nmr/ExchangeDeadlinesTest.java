@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.integration.nmr;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.jbi.messaging.ExchangeStatus;
+import javax.jbi.messaging.MessageExchange;
+import javax.xml.namespace.QName;
+
+import org.apache.servicemix.nmr.api.Exchange;
+import org.apache.servicemix.nmr.api.Pattern;
+import org.apache.servicemix.nmr.core.ExchangeImpl;
+import org.eclipse.swordfish.api.DeadlineExpiredException;
+import org.eclipse.swordfish.api.Interceptor;
+import org.eclipse.swordfish.api.SortingStrategy;
+import org.eclipse.swordfish.api.SwordfishException;
+import org.eclipse.swordfish.api.event.Event;
+import org.eclipse.swordfish.api.event.EventService;
+import org.eclipse.swordfish.core.context.SwordfishContextImpl;
+import org.eclipse.swordfish.core.exception.InterceptorExceptionNofiticationSender;
+import org.eclipse.swordfish.core.planner.DefaultHintExtractor;
+import org.eclipse.swordfish.core.planner.FilterStrategyImpl;
+import org.eclipse.swordfish.core.planner.InterceptorRegistry;
+import org.eclipse.swordfish.core.planner.PlannerImpl;
+import org.eclipse.swordfish.core.planner.SimpleSortingStrategy;
+import org.eclipse.swordfish.core.planner.SortingStrategyImpl;
+import org.eclipse.swordfish.core.util.DeadlineUtil;
+import org.eclipse.swordfish.core.util.JbiConstants;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExchangeDeadlinesTest {
+    private static final QName SERVICE = new QName("http://example.org", "Service");
+
+    private ExchangeDeadlines deadlines;
+
+    @Before
+    public void setUp() {
+        deadlines = new ExchangeDeadlines();
+        deadlines.setServiceTimeouts(Collections.singletonMap(SERVICE.toString(), "500"));
+    }
+
+    @Test
+    public void test1DeadlinesAreAssignedFromTimeoutsAndBudgets() {
+        TestExchange configured = new TestExchange("ID:1", SERVICE);
+        assertEquals(1500, deadlines.assignDeadline(configured.view(), 1000));
+        assertEquals(1500L, configured.getProperties().get(JbiConstants.EXCHANGE_DEADLINE));
+
+        TestExchange unconfigured = new TestExchange("ID:1", new QName("http://example.org", "Other"));
+        assertEquals(DeadlineUtil.NO_DEADLINE, deadlines.assignDeadline(unconfigured.view(), 1000));
+        deadlines.setDefaultTimeout(100);
+        assertEquals(1100, deadlines.assignDeadline(unconfigured.view(), 1000));
+
+        // the consumer's own deadline wins
+        TestExchange own = new TestExchange("ID:1", SERVICE);
+        own.getProperties().put(JbiConstants.EXCHANGE_DEADLINE, 1200L);
+        assertEquals(1200, deadlines.assignDeadline(own.view(), 1000));
+
+        // the budget of the previous hop wins over the configured timeout
+        TestExchange forwarded = new TestExchange("ID:1", SERVICE);
+        forwarded.getInProperties().put(JbiConstants.PROTOCOL_HEADERS,
+            Collections.singletonMap(JbiConstants.DEADLINE_BUDGET_HEADER, "50"));
+        assertEquals(1050, deadlines.assignDeadline(forwarded.view(), 1000));
+    }
+
+    @Test
+    public void test2ExpiredExchangesFailFast() {
+        TestExchange exchange = new TestExchange("ID:1", SERVICE);
+        DeadlineUtil.setDeadline(exchange.view(), System.currentTimeMillis() - 1);
+        try {
+            DeadlineUtil.checkDeadline(exchange.view());
+            fail("The deadline has passed");
+        } catch (DeadlineExpiredException ex) {
+            // expected
+        }
+        // completions are always delivered
+        exchange.setStatus(ExchangeStatus.DONE);
+        DeadlineUtil.checkDeadline(exchange.view());
+
+        DeadlineExpiredException ex = deadlines.expired(exchange.view());
+        assertEquals(exchange.getProperties().get(JbiConstants.EXCHANGE_DEADLINE), ex.getDeadline());
+        assertEquals(1, deadlines.getExpiredCount());
+        assertEquals(1, deadlines.getExpiredCount(SERVICE));
+    }
+
+    @Test
+    public void test3RemainingBudgetIsPassedOn() {
+        TestExchange exchange = new TestExchange("ID:1", SERVICE);
+        DeadlineUtil.setBudgetHeader(exchange.view(), 1000);
+        assertFalse(exchange.getInProperties().containsKey(JbiConstants.PROTOCOL_HEADERS));
+
+        DeadlineUtil.setDeadline(exchange.view(), 1300);
+        DeadlineUtil.setBudgetHeader(exchange.view(), 1000);
+        assertEquals(300, DeadlineUtil.getBudgetHeader(exchange.view()));
+
+        TestExchange downstream = new TestExchange("ID:1", SERVICE);
+        DeadlineUtil.propagate(exchange.view(), downstream.view());
+        assertEquals(1300, DeadlineUtil.getDeadline(downstream.view()));
+        assertTrue(DeadlineUtil.isExpired(downstream.view(), 1300));
+    }
+
+    @Test
+    public void test4ExpiriesFoundByInterceptorsAreCounted() {
+        InterceptorRegistry registry = new InterceptorRegistry();
+        registry.register(new Interceptor() {
+            public void process(MessageExchange exchange) throws SwordfishException {
+                // the deadline passes while the interceptor works
+                DeadlineUtil.setDeadline(exchange, System.currentTimeMillis() - 1);
+                DeadlineUtil.checkDeadline(exchange);
+            }
+
+            public Map<String, ?> getProperties() {
+                return null;
+            }
+        }, Collections.<String, Object>singletonMap(SimpleSortingStrategy.PRIORITY_KEYWORD, 1));
+        SortingStrategyImpl sortingStrategy = new SortingStrategyImpl();
+        sortingStrategy.setSortingStrategies(Arrays.<SortingStrategy>asList(new SimpleSortingStrategy()));
+        PlannerImpl planner = new PlannerImpl();
+        planner.setInterceptorRegistry(registry);
+        planner.setSortingStrategy(sortingStrategy);
+        planner.setFilterStrategy(new FilterStrategyImpl());
+        planner.setHintExtractor(new DefaultHintExtractor());
+        SwordfishContextImpl swordfishContext = new SwordfishContextImpl();
+        swordfishContext.setEventService(new EventService() {
+            public boolean hasSubscribers(String topic) {
+                return false;
+            }
+
+            public void postEvent(Event event) {
+            }
+        });
+        final List<Exception> notified = new ArrayList<Exception>();
+        SwordfishExchangeListener listener = new SwordfishExchangeListener();
+        listener.setPlanner(planner);
+        listener.setInterceptorRegistry(registry);
+        listener.setSwordfishContext(swordfishContext);
+        listener.setExchangeDeadlines(deadlines);
+        listener.setExceptionNotificationSender(new InterceptorExceptionNofiticationSender() {
+            @Override
+            public <T extends Interceptor> void sendNotification(Exception exception, MessageExchange exchange,
+                    T interceptor) {
+                notified.add(exception);
+            }
+        });
+
+        Exchange exchange = new ExchangeImpl(Pattern.InOut);
+        try {
+            listener.exchangeSent(exchange);
+            fail("The expired request has been sent");
+        } catch (RuntimeException ex) {
+            assertTrue(ex.getCause() instanceof DeadlineExpiredException);
+        }
+        assertTrue(exchange.getError() instanceof DeadlineExpiredException);
+        assertEquals(1, deadlines.getExpiredCount());
+        assertTrue(notified.isEmpty());
+    }
+}
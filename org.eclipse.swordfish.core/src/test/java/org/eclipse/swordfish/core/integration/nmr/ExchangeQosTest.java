@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.integration.nmr;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import javax.jbi.messaging.MessageExchange;
+import javax.wsdl.Definition;
+import javax.wsdl.Operation;
+import javax.wsdl.PortType;
+import javax.wsdl.factory.WSDLFactory;
+import javax.xml.namespace.QName;
+
+import org.eclipse.swordfish.api.ConcurrencyLimitExceededException;
+import org.eclipse.swordfish.core.util.JbiConstants;
+import org.eclipse.swordfish.core.util.LaneStatistics;
+import org.eclipse.swordfish.core.wsdl.WSDLManager;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExchangeQosTest {
+    private static final String NS = "http://swordfish.eclipse.org/test";
+    private static final QName SERVICE = new QName(NS, "Service");
+    private static final QName PORT_TYPE = new QName(NS, "PortType");
+
+    private ExchangeQos qos;
+
+    @Before
+    public void setUp() {
+        qos = new ExchangeQos();
+        Map<String, Object> weights = new HashMap<String, Object>();
+        weights.put("interactive", "8");
+        weights.put("batch", 1);
+        qos.setClassWeights(weights);
+        qos.setServiceClasses(Collections.singletonMap(SERVICE.toString(), "batch"));
+        qos.setOperationClasses(Collections.singletonMap("{" + NS + "}lookup", "interactive"));
+    }
+
+    @Test
+    public void test1ClassIsConfiguredOrRequested() {
+        assertEquals("batch", qos.assignQosClass(exchange(SERVICE, "store").view()));
+        assertEquals("interactive", qos.assignQosClass(exchange(SERVICE, "lookup").view()));
+        assertEquals(ExchangeQos.DEFAULT_CLASS, qos.assignQosClass(exchange(null, "store").view()));
+
+        TestExchange requested = exchange(SERVICE, "store");
+        requested.getProperties().put(JbiConstants.EXCHANGE_QOS_CLASS, "interactive");
+        assertEquals("interactive", qos.assignQosClass(requested.view()));
+        // unknown classes are replaced
+        requested.getProperties().put(JbiConstants.EXCHANGE_QOS_CLASS, "platinum");
+        assertEquals("batch", qos.assignQosClass(requested.view()));
+        assertEquals("batch", qos.getQosClass(requested.view()));
+    }
+
+    @Test
+    public void test2ClassIsDeclaredInTheWsdl() throws Exception {
+        final Definition definition = WSDLFactory.newInstance().newDefinition();
+        PortType portType = definition.createPortType();
+        portType.setQName(PORT_TYPE);
+        portType.setExtensionAttribute(ExchangeQos.QOS_CLASS_ATTRIBUTE, "batch");
+        Operation operation = definition.createOperation();
+        operation.setName("search");
+        operation.setUndefined(false);
+        operation.setExtensionAttribute(ExchangeQos.QOS_CLASS_ATTRIBUTE, "interactive");
+        portType.addOperation(operation);
+        definition.addPortType(portType);
+        qos.setWsdlManager((WSDLManager) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class[] {WSDLManager.class}, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    return "getDefinition".equals(method.getName()) ? definition : null;
+                }
+            }));
+
+        TestExchange search = exchange(null, "search");
+        search.setInterfaceName(PORT_TYPE);
+        assertEquals("interactive", qos.assignQosClass(search.view()));
+        TestExchange other = exchange(null, "other");
+        other.setInterfaceName(PORT_TYPE);
+        assertEquals("batch", qos.assignQosClass(other.view()));
+    }
+
+    @Test
+    public void test3HeavierClassesAreAdmittedFirst() throws Exception {
+        qos.setMaxConcurrentRequests(1);
+        assertTrue(qos.admit(exchange(SERVICE, "store").view()));
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 10; i++) {
+            threads.add(admitLater(exchange(SERVICE, "store"), order));
+            threads.add(admitLater(exchange(SERVICE, "lookup"), order));
+        }
+        while (getStatistics("batch").getQueueLength() + getStatistics("interactive").getQueueLength() < 20) {
+            Thread.sleep(1);
+        }
+        qos.release();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        assertEquals(20, order.size());
+        int interactive = Collections.frequency(order.subList(0, 9), "interactive");
+        assertTrue("Only " + interactive + " of the first 9 requests were interactive", interactive >= 7);
+        LaneStatistics batch = getStatistics("batch");
+        assertEquals(10, batch.getAdmittedCount());
+        assertEquals(0, batch.getQueueLength());
+        assertTrue(batch.getMaxQueueTime() >= batch.getAverageQueueTime());
+        assertTrue(getStatistics("interactive").getAverageQueueTime() < batch.getAverageQueueTime());
+    }
+
+    @Test
+    public void test4FullQueuesAndLongWaitsAreRejected() throws Exception {
+        qos.setMaxConcurrentRequests(1);
+        qos.setMaxQueueLength(1);
+        assertTrue(qos.admit(exchange(SERVICE, "store").view()));
+        // a request sent from within the chain does not need a permit of its own
+        assertFalse(qos.admit(exchange(SERVICE, "store").view()));
+
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        Thread waiting = admitLater(exchange(SERVICE, "store"), order);
+        while (getStatistics("batch").getQueueLength() == 0) {
+            Thread.sleep(1);
+        }
+        assertRejected(exchange(SERVICE, "store"));
+        qos.setQueueTimeout(10);
+        assertRejected(exchange(SERVICE, "lookup"));
+
+        qos.release();
+        waiting.join(5000);
+        assertEquals(Arrays.asList("batch"), order);
+        assertEquals(1, getStatistics("batch").getAdmittedCount());
+        assertEquals(1, getStatistics("batch").getRejectedCount());
+        assertEquals(1, getStatistics("interactive").getRejectedCount());
+    }
+
+    /**
+     * Starts a thread which assigns the class of the request, waits for its
+     * admission, records the class and gives the permit back.
+     */
+    private Thread admitLater(final TestExchange request, final List<String> order) {
+        Thread thread = new Thread() {
+            public void run() {
+                try {
+                    String qosClass = qos.assignQosClass(request.view());
+                    if (qos.admit(request.view())) {
+                        order.add(qosClass);
+                        qos.release();
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    private void assertRejected(TestExchange request) throws Exception {
+        final MessageExchange view = request.view();
+        qos.assignQosClass(view);
+        FutureTask<Boolean> admission = new FutureTask<Boolean>(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return qos.admit(view);
+            }
+        });
+        Thread thread = new Thread(admission);
+        thread.start();
+        try {
+            admission.get(5, TimeUnit.SECONDS);
+            fail("The request has been admitted");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof ConcurrencyLimitExceededException);
+        }
+    }
+
+    private LaneStatistics getStatistics(String qosClass) {
+        for (LaneStatistics statistics : qos.getStatistics()) {
+            if (qosClass.equals(statistics.getLane())) {
+                return statistics;
+            }
+        }
+        throw new AssertionError("No statistics of the class " + qosClass);
+    }
+
+    private static TestExchange exchange(QName service, String operation) {
+        return new TestExchange("ID:1", service).setOperation(new QName(NS, operation));
+    }
+}
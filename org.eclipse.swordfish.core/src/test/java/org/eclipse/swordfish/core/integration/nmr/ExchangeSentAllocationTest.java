@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.integration.nmr;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.jbi.messaging.MessageExchange;
+
+import org.apache.servicemix.nmr.api.Exchange;
+import org.apache.servicemix.nmr.api.Pattern;
+import org.apache.servicemix.nmr.core.ExchangeImpl;
+import org.eclipse.swordfish.api.Interceptor;
+import org.eclipse.swordfish.api.SortingStrategy;
+import org.eclipse.swordfish.api.SwordfishException;
+import org.eclipse.swordfish.api.event.Event;
+import org.eclipse.swordfish.api.event.EventService;
+import org.eclipse.swordfish.core.context.SwordfishContextImpl;
+import org.eclipse.swordfish.core.event.TrackingSampler;
+import org.eclipse.swordfish.core.interceptor.ConcurrencyLimitInterceptor;
+import org.eclipse.swordfish.core.planner.DefaultHintExtractor;
+import org.eclipse.swordfish.core.planner.FilterStrategyImpl;
+import org.eclipse.swordfish.core.planner.InterceptorRegistry;
+import org.eclipse.swordfish.core.planner.PlannerImpl;
+import org.eclipse.swordfish.core.planner.SimpleSortingStrategy;
+import org.eclipse.swordfish.core.planner.SortingStrategyImpl;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Guards the steady state of {@link SwordfishExchangeListener#exchangeSent(Exchange)}
+ * against allocations: once the interceptor chain is cached and the exchange
+ * has been seen, a send which is not tracked and does not fail must not
+ * allocate at all. Uses the per-thread allocation counter of the HotSpot
+ * {@link ThreadMXBean}, the test is skipped on VMs without it.
+ * <p>
+ * Only repeated sends of one exchange are measured. The first send of every
+ * new exchange allocates its JBI view and, with the shipped wiring, its
+ * correlation entry, the boxed sequence, start time and deadline properties
+ * and the copied headers of the budget header if it has a deadline.
+ */
+public class ExchangeSentAllocationTest {
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 10000;
+
+    private SwordfishExchangeListener listener;
+    private TestEventService eventService;
+    private CountingInterceptor interceptor;
+    private Exchange exchange;
+    private PlannerImpl planner;
+
+    @Before
+    public void setUp() {
+        InterceptorRegistry registry = new InterceptorRegistry();
+        interceptor = new CountingInterceptor();
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(SimpleSortingStrategy.PRIORITY_KEYWORD, 1);
+        registry.register(interceptor, properties);
+
+        SortingStrategyImpl sortingStrategy = new SortingStrategyImpl();
+        sortingStrategy.setSortingStrategies(Arrays.<SortingStrategy>asList(new SimpleSortingStrategy()));
+        PlannerImpl planner = new PlannerImpl();
+        planner.setInterceptorRegistry(registry);
+        planner.setSortingStrategy(sortingStrategy);
+        planner.setFilterStrategy(new FilterStrategyImpl());
+        planner.setHintExtractor(new DefaultHintExtractor());
+
+        eventService = new TestEventService();
+        SwordfishContextImpl swordfishContext = new SwordfishContextImpl();
+        swordfishContext.setEventService(eventService);
+
+        listener = new SwordfishExchangeListener();
+        listener.setPlanner(planner);
+        listener.setInterceptorRegistry(registry);
+        listener.setSwordfishContext(swordfishContext);
+        exchange = new ExchangeImpl(Pattern.InOut);
+        this.planner = planner;
+    }
+
+    @Test
+    public void test1UntrackedSendDoesNotAllocate() throws Exception {
+        assertSteadyStateDoesNotAllocate();
+    }
+
+    @Test
+    public void test2SampledOutSendDoesNotAllocate() throws Exception {
+        eventService.subscribed = true;
+        listener.setTrackingSampler(new TrackingSampler() {
+            public boolean sample(MessageExchange exchange) {
+                return false;
+            }
+        });
+        assertSteadyStateDoesNotAllocate();
+        assertEquals(0, eventService.posted);
+    }
+
+    @Test
+    public void test3GuardedSendDoesNotAllocate() throws Exception {
+        listener.setInterceptorGuard(new InterceptorGuard());
+        assertSteadyStateDoesNotAllocate();
+    }
+
+    @Test
+    public void test4SendWithShippedWiringDoesNotAllocate() throws Exception {
+        // the listener as configured in exchange-listener.xml
+        ExchangeCorrelator exchangeCorrelator = new ExchangeCorrelator();
+        exchangeCorrelator.setMaxInFlight(10000);
+        exchangeCorrelator.setAbandonTimeout(300000);
+        InterceptorGuard interceptorGuard = new InterceptorGuard();
+        interceptorGuard.setPlanner(planner);
+        ExchangeDeadlines exchangeDeadlines = new ExchangeDeadlines();
+        exchangeDeadlines.setDefaultTimeout(0);
+        ExchangeQos exchangeQos = new ExchangeQos();
+        Map<String, Object> classWeights = new HashMap<String, Object>();
+        classWeights.put("interactive", "8");
+        classWeights.put("default", "4");
+        classWeights.put("batch", "1");
+        exchangeQos.setClassWeights(classWeights);
+        exchangeQos.setDefaultClass("default");
+        listener.setExchangeCorrelator(exchangeCorrelator);
+        listener.setInterceptorGuard(interceptorGuard);
+        listener.setExchangeDeadlines(exchangeDeadlines);
+        listener.setExchangeQos(exchangeQos);
+        listener.setConcurrencyLimitInterceptor(new ConcurrencyLimitInterceptor());
+        exchange.getIn();
+
+        assertSteadyStateDoesNotAllocate();
+        assertEquals(1, exchangeCorrelator.getInFlightCount());
+    }
+
+    private void assertSteadyStateDoesNotAllocate() throws Exception {
+        Method allocatedBytes = getAllocatedBytesMethod();
+        Assume.assumeTrue(allocatedBytes != null);
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Long threadId = Thread.currentThread().getId();
+
+        for (int i = 0; i < WARMUP; i++) {
+            listener.exchangeSent(exchange);
+        }
+        long before = (Long) allocatedBytes.invoke(threads, threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            listener.exchangeSent(exchange);
+        }
+        long allocated = (Long) allocatedBytes.invoke(threads, threadId) - before;
+
+        assertEquals(WARMUP + ITERATIONS, interceptor.processed);
+        // the reflective reading of the counter itself may allocate a few bytes
+        assertTrue("exchangeSent allocated " + allocated + " bytes in " + ITERATIONS + " sends",
+            allocated < ITERATIONS);
+    }
+
+    private static Method getAllocatedBytesMethod() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        try {
+            Method method = Class.forName("com.sun.management.ThreadMXBean")
+                .getMethod("getThreadAllocatedBytes", long.class);
+            if (!method.getDeclaringClass().isInstance(threads)) {
+                return null;
+            }
+            Method supported = method.getDeclaringClass().getMethod("isThreadAllocatedMemorySupported");
+            return Boolean.TRUE.equals(supported.invoke(threads)) ? method : null;
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    private static class CountingInterceptor implements Interceptor {
+        private int processed;
+
+        public void process(MessageExchange exchange) throws SwordfishException {
+            processed++;
+        }
+
+        public Map<String, ?> getProperties() {
+            return null;
+        }
+    }
+
+    private static class TestEventService implements EventService {
+        private boolean subscribed;
+        private int posted;
+
+        public boolean hasSubscribers(String topic) {
+            return subscribed;
+        }
+
+        public void postEvent(Event event) {
+            posted++;
+        }
+    }
+}
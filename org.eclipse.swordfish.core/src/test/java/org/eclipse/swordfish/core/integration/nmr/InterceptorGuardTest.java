@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.integration.nmr;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.jbi.messaging.MessageExchange;
+
+import org.eclipse.swordfish.api.DeadlineExpiredException;
+import org.eclipse.swordfish.api.Interceptor;
+import org.eclipse.swordfish.api.InterceptorRejectedException;
+import org.eclipse.swordfish.api.SortingStrategy;
+import org.eclipse.swordfish.api.SwordfishException;
+import org.eclipse.swordfish.core.planner.DefaultHintExtractor;
+import org.eclipse.swordfish.core.planner.FilterStrategyImpl;
+import org.eclipse.swordfish.core.planner.InterceptorRegistry;
+import org.eclipse.swordfish.core.planner.PlannerImpl;
+import org.eclipse.swordfish.core.planner.SimpleSortingStrategy;
+import org.eclipse.swordfish.core.planner.SortingStrategyImpl;
+import org.eclipse.swordfish.core.util.CircuitBreaker;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InterceptorGuardTest {
+    private InterceptorGuard guard;
+
+    @Before
+    public void setUp() {
+        guard = new InterceptorGuard();
+        guard.setWindowSize(4);
+        guard.setFailureRateThreshold(0.5);
+        guard.setHalfOpenCalls(2);
+    }
+
+    @Test
+    public void test1FailingInterceptorIsFailedFast() {
+        TestInterceptor interceptor = new TestInterceptor(InterceptorGuard.Policy.FAIL);
+        interceptor.failing = true;
+        for (int i = 0; i < 4; i++) {
+            assertFails(interceptor);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, guard.getState(interceptor));
+        assertEquals(4, interceptor.processed);
+
+        assertTrue(assertFails(interceptor) instanceof InterceptorRejectedException);
+        assertEquals(4, interceptor.processed);
+        assertEquals(1, guard.getRejectedCount());
+    }
+
+    @Test
+    public void test2OpenInterceptorIsSkippedAndRecovers() {
+        guard.setOpenDuration(0);
+        TestInterceptor interceptor = new TestInterceptor(InterceptorGuard.Policy.SKIP);
+        interceptor.failing = true;
+        for (int i = 0; i < 4; i++) {
+            assertFails(interceptor);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, guard.getState(interceptor));
+
+        // the open duration is over, the trial calls close the breaker again
+        interceptor.failing = false;
+        guard.process(interceptor, null);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, guard.getState(interceptor));
+        guard.process(interceptor, null);
+        assertEquals(CircuitBreaker.State.CLOSED, guard.getState(interceptor));
+        assertEquals(6, interceptor.processed);
+    }
+
+    @Test
+    public void test3SaturatedInterceptorIsRejected() throws Exception {
+        final TestInterceptor interceptor = new TestInterceptor(InterceptorGuard.Policy.SKIP);
+        interceptor.properties.put(Interceptor.MAX_CONCURRENT_CALLS_PROPERTY, 1);
+        interceptor.blocked = new CountDownLatch(1);
+        interceptor.entered = new CountDownLatch(1);
+        Thread thread = new Thread() {
+            public void run() {
+                guard.process(interceptor, null);
+            }
+        };
+        thread.start();
+        interceptor.entered.await(10, TimeUnit.SECONDS);
+
+        guard.process(interceptor, null);
+        assertEquals(1, guard.getRejectedCount());
+        interceptor.blocked.countDown();
+        thread.join();
+        assertEquals(1, interceptor.processed);
+    }
+
+    @Test
+    public void test4InterceptorsAreNotGuardedByDefault() {
+        TestInterceptor interceptor = new TestInterceptor(null);
+        interceptor.failing = true;
+        for (int i = 0; i < 8; i++) {
+            assertFails(interceptor);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, guard.getState(interceptor));
+        assertEquals(8, interceptor.processed);
+    }
+
+    @Test
+    public void test5ExpiredDeadlinesAreNoFailures() {
+        TestInterceptor interceptor = new TestInterceptor(InterceptorGuard.Policy.FAIL);
+        interceptor.failing = true;
+        interceptor.failure = new DeadlineExpiredException("expired", 0);
+        for (int i = 0; i < 8; i++) {
+            assertTrue(assertFails(interceptor) instanceof DeadlineExpiredException);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, guard.getState(interceptor));
+    }
+
+    @Test
+    public void test6RegistrationPropertiesApplyWhileRegistered() {
+        InterceptorRegistry registry = new InterceptorRegistry();
+        SortingStrategyImpl sortingStrategy = new SortingStrategyImpl();
+        sortingStrategy.setSortingStrategies(Arrays.<SortingStrategy>asList(new SimpleSortingStrategy()));
+        PlannerImpl planner = new PlannerImpl();
+        planner.setInterceptorRegistry(registry);
+        planner.setSortingStrategy(sortingStrategy);
+        planner.setFilterStrategy(new FilterStrategyImpl());
+        planner.setHintExtractor(new DefaultHintExtractor());
+        guard.setPlanner(planner);
+        guard.setSweepInterval(0);
+
+        TestInterceptor interceptor = new TestInterceptor(null);
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(Interceptor.GUARD_POLICY_PROPERTY, "fail");
+        registry.register(interceptor, properties);
+        interceptor.failing = true;
+        for (int i = 0; i < 4; i++) {
+            assertFails(interceptor);
+        }
+        assertTrue(assertFails(interceptor) instanceof InterceptorRejectedException);
+        assertEquals(4, interceptor.processed);
+
+        // the guard of the unregistered interceptor is dropped with its state
+        registry.unregister(interceptor, properties);
+        assertFails(interceptor);
+        assertEquals(5, interceptor.processed);
+    }
+
+    @Test
+    public void test7ConcurrencyLimitAppliesWithoutPolicy() throws Exception {
+        final TestInterceptor interceptor = new TestInterceptor(null);
+        interceptor.properties.put(Interceptor.MAX_CONCURRENT_CALLS_PROPERTY, 1);
+        interceptor.blocked = new CountDownLatch(1);
+        interceptor.entered = new CountDownLatch(1);
+        Thread thread = new Thread() {
+            public void run() {
+                guard.process(interceptor, null);
+            }
+        };
+        thread.start();
+        interceptor.entered.await(10, TimeUnit.SECONDS);
+
+        assertTrue(assertFails(interceptor) instanceof InterceptorRejectedException);
+        assertEquals(1, guard.getRejectedCount());
+        interceptor.blocked.countDown();
+        thread.join();
+        assertEquals(1, interceptor.processed);
+    }
+
+    private SwordfishException assertFails(Interceptor interceptor) {
+        try {
+            guard.process(interceptor, null);
+            fail("The interceptor has not failed");
+            return null;
+        } catch (SwordfishException ex) {
+            return ex;
+        }
+    }
+
+    private static class TestInterceptor implements Interceptor {
+        private final Map<String, Object> properties = new HashMap<String, Object>();
+        private volatile boolean failing;
+        private RuntimeException failure = new SwordfishException("failure");
+        private volatile int processed;
+        private CountDownLatch entered;
+        private CountDownLatch blocked;
+
+        TestInterceptor(InterceptorGuard.Policy policy) {
+            if (policy != null) {
+                properties.put(GUARD_POLICY_PROPERTY, policy.name().toLowerCase());
+            }
+        }
+
+        public void process(MessageExchange exchange) throws SwordfishException {
+            processed++;
+            if (entered != null) {
+                entered.countDown();
+                try {
+                    blocked.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failing) {
+                throw failure;
+            }
+        }
+
+        public Map<String, ?> getProperties() {
+            return properties;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.integration.nmr;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.jbi.messaging.ExchangeStatus;
+import javax.jbi.messaging.MessageExchange;
+import javax.jbi.messaging.MessageExchange.Role;
+import javax.jbi.messaging.NormalizedMessage;
+import javax.xml.namespace.QName;
+
+/**
+ * Message exchange of the tests, backed by plain fields. The exchange is
+ * sent by its consumer and active unless the test changes it, its in
+ * message only carries properties.
+ */
+public class TestExchange implements InvocationHandler {
+    private final String id;
+    private QName service;
+    private QName interfaceName;
+    private QName operation;
+    private Role role = Role.CONSUMER;
+    private ExchangeStatus status = ExchangeStatus.ACTIVE;
+    private final Map<String, Object> properties = new HashMap<String, Object>();
+    private final Map<String, Object> inProperties = new HashMap<String, Object>();
+
+    public TestExchange(String id, QName service) {
+        this.id = id;
+        this.service = service;
+    }
+
+    public MessageExchange view() {
+        return (MessageExchange) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class[] {MessageExchange.class}, this);
+    }
+
+    public TestExchange setService(QName service) {
+        this.service = service;
+        return this;
+    }
+
+    public TestExchange setInterfaceName(QName interfaceName) {
+        this.interfaceName = interfaceName;
+        return this;
+    }
+
+    public TestExchange setOperation(QName operation) {
+        this.operation = operation;
+        return this;
+    }
+
+    public TestExchange setRole(Role role) {
+        this.role = role;
+        return this;
+    }
+
+    public TestExchange setStatus(ExchangeStatus status) {
+        this.status = status;
+        return this;
+    }
+
+    public Map<String, Object> getProperties() {
+        return properties;
+    }
+
+    public Map<String, Object> getInProperties() {
+        return inProperties;
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if ("getExchangeId".equals(name)) {
+            return id;
+        } else if ("getService".equals(name)) {
+            return service;
+        } else if ("getInterfaceName".equals(name)) {
+            return interfaceName;
+        } else if ("getOperation".equals(name)) {
+            return operation;
+        } else if ("getRole".equals(name)) {
+            return role;
+        } else if ("getStatus".equals(name)) {
+            return status;
+        } else if ("getProperty".equals(name)) {
+            return properties.get(args[0]);
+        } else if ("setProperty".equals(name)) {
+            properties.put((String) args[0], args[1]);
+        } else if ("getMessage".equals(name) && "in".equals(args[0])) {
+            return Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] {NormalizedMessage.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("getProperty".equals(method.getName())) {
+                            return inProperties.get(args[0]);
+                        } else if ("setProperty".equals(method.getName())) {
+                            inProperties.put((String) args[0], args[1]);
+                        }
+                        return null;
+                    }
+                });
+        }
+        return null;
+    }
+}
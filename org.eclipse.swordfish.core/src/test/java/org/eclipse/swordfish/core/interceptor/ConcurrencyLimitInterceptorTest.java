@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2009 SOPERA GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     SOPERA GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swordfish.core.interceptor;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import javax.jbi.messaging.ExchangeStatus;
+import javax.jbi.messaging.MessageExchange;
+import javax.xml.namespace.QName;
+
+import org.eclipse.swordfish.api.ConcurrencyLimitExceededException;
+import org.eclipse.swordfish.core.integration.nmr.TestExchange;
+import org.eclipse.swordfish.core.util.AdaptiveLimit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConcurrencyLimitInterceptorTest {
+    private static final QName SERVICE = new QName("http://swordfish.eclipse.org/test", "Service");
+    private static final QName INTERFACE = new QName("http://swordfish.eclipse.org/test", "Interface");
+
+    private ConcurrencyLimitInterceptor interceptor;
+
+    @Before
+    public void setUp() {
+        interceptor = new ConcurrencyLimitInterceptor();
+        interceptor.setInitialLimit(2);
+        interceptor.setMaxLimit(10);
+    }
+
+    @Test
+    public void test1RequestsAboveTheLimitAreRejected() {
+        TestExchange first = exchange("1");
+        TestExchange second = exchange("2");
+        interceptor.process(first.view());
+        interceptor.process(second.view());
+        assertEquals(2, interceptor.getInFlight(SERVICE));
+        try {
+            interceptor.process(exchange("3").view());
+            fail("The request above the limit must be rejected");
+        } catch (ConcurrencyLimitExceededException ex) {
+            assertEquals(SERVICE.toString(), ex.getTarget());
+        }
+        assertEquals(1, interceptor.getRejectedCount());
+
+        // the response of the provider gives the slot back
+        first.setRole(MessageExchange.Role.PROVIDER);
+        interceptor.process(first.view());
+        assertEquals(1, interceptor.getInFlight(SERVICE));
+        interceptor.process(exchange("4").view());
+        assertEquals(2, interceptor.getInFlight(SERVICE));
+    }
+
+    @Test
+    public void test2FailedRequestsShrinkTheLimit() {
+        interceptor.setInitialLimit(10);
+        for (int i = 0; i < 10; i++) {
+            TestExchange exchange = exchange(String.valueOf(i));
+            interceptor.process(exchange.view());
+            exchange.setStatus(ExchangeStatus.ERROR);
+            interceptor.process(exchange.view());
+        }
+        assertEquals(3, interceptor.getLimit(SERVICE));
+        assertEquals(0, interceptor.getInFlight(SERVICE));
+    }
+
+    @Test
+    public void test3LimitFollowsTheRoundTripTime() {
+        AdaptiveLimit limit = new AdaptiveLimit(10, 1, 100, 1.5, 1.0, 0.9, 1000);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limit.tryAcquire());
+        }
+        // round trips within the tolerance raise a used limit
+        limit.release(1000, false);
+        assertEquals(13, limit.getLimit());
+        // slower round trips lower it
+        for (int i = 0; i < 9; i++) {
+            limit.release(10000, false);
+        }
+        assertTrue(limit.getLimit() < 13);
+        assertEquals(1000, limit.getBaseline());
+    }
+
+    @Test
+    public void test4RequestsByInterfaceAreLimitedPerInterface() {
+        interceptor.setInitialLimit(1);
+        TestExchange first = exchange("1");
+        first.setService(null);
+        interceptor.process(first.view());
+        assertEquals(1, interceptor.getInFlight(INTERFACE));
+        assertEquals(0, interceptor.getInFlight(SERVICE));
+        TestExchange second = exchange("2");
+        second.setService(null);
+        try {
+            interceptor.process(second.view());
+            fail("The request above the limit of the interface must be rejected");
+        } catch (ConcurrencyLimitExceededException ex) {
+            assertEquals(INTERFACE.toString(), ex.getTarget());
+        }
+        // requests to the service are counted apart
+        interceptor.process(exchange("3").view());
+        assertEquals(1, interceptor.getInFlight(SERVICE));
+    }
+
+    @Test
+    public void test5FailedSendsGiveTheirSlotBack() {
+        interceptor.setInitialLimit(10);
+        TestExchange cancelled = exchange("1");
+        interceptor.process(cancelled.view());
+        TestExchange undelivered = exchange("2");
+        interceptor.process(undelivered.view());
+        assertEquals(2, interceptor.getInFlight(SERVICE));
+
+        // a request failed by a later interceptor has not reached the provider
+        interceptor.cancel(cancelled.view());
+        assertEquals(1, interceptor.getInFlight(SERVICE));
+        assertEquals(10, interceptor.getLimit(SERVICE));
+        // a request the NMR has failed to deliver counts as dropped
+        interceptor.exchangeFailed(undelivered.view());
+        assertEquals(0, interceptor.getInFlight(SERVICE));
+        assertEquals(9, interceptor.getLimit(SERVICE));
+    }
+
+    @Test
+    public void test6AbandonedRequestsAreReleased() throws Exception {
+        interceptor.setAbandonTimeout(0);
+        interceptor.process(exchange("1").view());
+        interceptor.process(exchange("2").view());
+        Thread.sleep(1);
+        // the unanswered requests are evicted instead of rejecting the new one
+        interceptor.process(exchange("3").view());
+        assertEquals(1, interceptor.getInFlight(SERVICE));
+        assertEquals(0, interceptor.getRejectedCount());
+    }
+
+    private static TestExchange exchange(String id) {
+        return new TestExchange(id, SERVICE).setInterfaceName(INTERFACE);
+    }
+}